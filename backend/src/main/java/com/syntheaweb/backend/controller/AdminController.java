@@ -2,6 +2,8 @@ package com.syntheaweb.backend.controller;
 
 import com.syntheaweb.backend.dto.PasswordUpdateRequest;
 import com.syntheaweb.backend.dto.RoleUpdateRequest;
+import com.syntheaweb.backend.dto.RunCacheStats;
+import com.syntheaweb.backend.service.RunCache;
 import com.syntheaweb.backend.service.UserService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -19,14 +21,27 @@ import java.util.UUID;
 public class AdminController {
 
     private final UserService userService;
+    private final RunCache runCache;
 
     /**
      * Constructor for AdminController.
      *
      * @param userService Service to manage user operations.
+     * @param runCache    Cache of generated run outputs.
      */
-    public AdminController(UserService userService) {
+    public AdminController(UserService userService, RunCache runCache) {
         this.userService = userService;
+        this.runCache = runCache;
+    }
+
+    /**
+     * Gets the size and hit/miss statistics of the run cache.
+     *
+     * @return a response entity containing the cache statistics.
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<RunCacheStats> getCacheStats() {
+        return ResponseEntity.ok(runCache.getStats());
     }
 
     /**
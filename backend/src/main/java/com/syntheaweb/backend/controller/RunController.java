@@ -3,11 +3,15 @@ package com.syntheaweb.backend.controller;
 import com.syntheaweb.backend.database.entity.Run;
 import com.syntheaweb.backend.database.entity.User;
 import com.syntheaweb.backend.database.repository.UserRepository;
+import com.syntheaweb.backend.dto.RunStatusResponse;
 import com.syntheaweb.backend.service.JwtUtil;
+import com.syntheaweb.backend.service.RunProgressService;
 import com.syntheaweb.backend.service.RunService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Optional;
@@ -22,11 +26,14 @@ public class RunController {
     private static final String ROLE_ADMIN = "ADMIN";
 
     private final RunService runService;
+    private final RunProgressService runProgressService;
     private final UserRepository userRepository;
     private final JwtUtil jwtUtil;
 
-    public RunController(RunService runService, UserRepository userRepository, JwtUtil jwtUtil) {
+    public RunController(RunService runService, RunProgressService runProgressService,
+                         UserRepository userRepository, JwtUtil jwtUtil) {
         this.runService = runService;
+        this.runProgressService = runProgressService;
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
     }
@@ -87,6 +94,83 @@ public class RunController {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
+    /**
+     * get the status and progress of a run
+     *
+     * @param runId The ID of the run
+     * @param token The JWT token provided in the Authorization header.
+     * @return ResponseEntity containing the status of the run, or an error status
+     */
+    @GetMapping("/{runId}/status")
+    public ResponseEntity<RunStatusResponse> getRunStatus(@PathVariable String runId, @RequestHeader("Authorization") String token) {
+        Optional<User> authenticatedUser = getAuthenticatedUser(token);
+
+        if (authenticatedUser.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        User user = authenticatedUser.get();
+
+        if (!ROLE_ADMIN.equals(user.getRole()) && !runService.isRunOwner(runId, user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        return runService.getRunStatus(runId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    /**
+     * streams the live progress of a run as Server-Sent Events until the run has finished
+     *
+     * @param runId The ID of the run
+     * @param token The JWT token provided in the Authorization header.
+     * @return ResponseEntity containing the event stream, or an error status
+     */
+    @GetMapping(value = "/{runId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRunProgress(@PathVariable String runId, @RequestHeader("Authorization") String token) {
+        Optional<User> authenticatedUser = getAuthenticatedUser(token);
+
+        if (authenticatedUser.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        User user = authenticatedUser.get();
+
+        if (!ROLE_ADMIN.equals(user.getRole()) && !runService.isRunOwner(runId, user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        return ResponseEntity.ok(runProgressService.subscribe(runId));
+    }
+
+    /**
+     * Cancels a queued or running run
+     *
+     * @param runId The ID of the run to cancel
+     * @param token The JWT token provided in the Authorization header.
+     * @return ResponseEntity returning the result of the cancel operation
+     */
+    @PostMapping("/{runId}/cancel")
+    public ResponseEntity<Void> cancelRun(@PathVariable String runId, @RequestHeader("Authorization") String token) {
+        Optional<User> authenticatedUser = getAuthenticatedUser(token);
+
+        if (authenticatedUser.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        User user = authenticatedUser.get();
+
+        if (!ROLE_ADMIN.equals(user.getRole()) && !runService.isRunOwner(runId, user)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        if (!runService.cancelRun(runId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+    }
 
     /**
      * Saves a new run for the authenticated user
@@ -1,16 +1,26 @@
 package com.syntheaweb.backend.controller;
 
-import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.database.entity.User;
 import com.syntheaweb.backend.dto.SyntheaApiResponse;
 import com.syntheaweb.backend.dto.SyntheaParameterBody;
+import com.syntheaweb.backend.service.PatientStream;
+import com.syntheaweb.backend.service.RunArchive;
+import com.syntheaweb.backend.service.RunService;
 import com.syntheaweb.backend.service.SyntheaService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -23,94 +33,176 @@ import org.springframework.security.core.context.SecurityContextHolder;
 public class SyntheaController {
 
     private final SyntheaService syntheaService;
+    private final RunService runService;
 
     /**
      * Constructor for SyntheaController.
      *
      * @param syntheaService The service responsible for generating and managing synthetic data.
+     * @param runService     The service responsible for creating and scheduling runs.
      */
-    public SyntheaController(SyntheaService syntheaService) {
+    public SyntheaController(SyntheaService syntheaService, RunService runService) {
         this.syntheaService = syntheaService;
+        this.runService = runService;
     }
 
     /**
-     * Generates synthetic patient data based on the provided parameters
+     * Queues the generation of synthetic patient data based on the provided parameters.
+     * The run is generated in the background; its progress is available at /api/runs/{runId}/status.
      *
      * @param requestBody The parameters for the synthetic data to be generated.
-     * @return ResponseEntity containing a success message and the generated run ID, or an error message if the process fails.
+     * @return ResponseEntity containing a message and the ID of the queued run, or an error message if the run could not be queued.
      */
     @PostMapping("/generate")
     public ResponseEntity<SyntheaApiResponse> generateSyntheticData(@RequestBody SyntheaParameterBody requestBody) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
-        if (authentication == null || !authentication.isAuthenticated()) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || !(authentication.getPrincipal() instanceof User user)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(new SyntheaApiResponse("User not authenticated!", null));
         }
 
-        // TODO need to save the run here first with runId for concurrency to work
-              
         try {
-            // Generate and return the generated run ID
-            String runID = syntheaService.generateSyntheticData(
-                    requestBody.getPopulationSize(),
-                    requestBody.getGender(),
-                    requestBody.getMinAge(),
-                    requestBody.getMaxAge(),
-                    requestBody.getState(),
-                    requestBody.getCity()
-            );
-
-            return ResponseEntity.ok(new SyntheaApiResponse("Generating was successful!", runID));
-        } catch (IOException | InterruptedException e) {
+            Run run = runService.queueRun(requestBody, user);
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(new SyntheaApiResponse("Generation was queued!", run.getRunId()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new SyntheaApiResponse(e.getMessage(), null));
+        } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new SyntheaApiResponse("Error while generating: " + e.getMessage(), null));
+                    .body(new SyntheaApiResponse("Error while queueing: " + e.getMessage(), null));
         }
     }
 
     /**
-     *  provides download link for the generated synthetic data
+     * Generates synthetic patients and streams them as NDJSON, one FHIR Bundle per line,
+     * as soon as each patient is complete. The patients are not saved as a run.
      *
-     * @param runID  The ID of the syntheaRun run.
-     * @param format The format of the synthetic data (CSV or FHIR)
-     * @return ResponseEntity containing the requested file or an error message if the process fails.
+     * @param requestBody The parameters for the synthetic data to be generated.
+     * @param batchSize   The number of patients buffered for the client, the configured default if not set.
+     * @return ResponseEntity streaming the patients, or an error message if no stream is available.
+     */
+    @PostMapping("/stream")
+    public ResponseEntity<?> streamSyntheticData(@RequestBody SyntheaParameterBody requestBody,
+                                                 @RequestParam(name = "batchSize", required = false) Integer batchSize) {
+        PatientStream stream;
+        try {
+            stream = runService.openPatientStream(requestBody, batchSize);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new SyntheaApiResponse(e.getMessage(), null));
+        }
+
+        StreamingResponseBody body = stream::writeTo;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Streams an archive of the generated synthetic data. The archive is compressed while it is sent,
+     * single byte ranges are supported so interrupted downloads can be resumed.
+     *
+     * @param runID       The ID of the syntheaRun run.
+     * @param format      The format of the synthetic data (CSV or FHIR)
+     * @param archiveType The archive format (zip or tar.gz)
+     * @param level       The compression level from 0 to 9, the configured default if not set
+     * @param range       The requested byte range, if any
+     * @param ifRange     The entity tag the range request is conditional on, if any
+     * @return ResponseEntity streaming the requested archive or an error message if the process fails.
      */
     @GetMapping("/download")
     public ResponseEntity<?> downloadSyntheticData(@RequestParam(name = "runID") String runID,
-                                                   @RequestParam(name = "format") String format) {
+                                                   @RequestParam(name = "format") String format,
+                                                   @RequestParam(name = "archive", defaultValue = "zip") String archiveType,
+                                                   @RequestParam(name = "level", required = false) Integer level,
+                                                   @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+                                                   @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange) {
+        // runs that reused the output of an identical run are served from that run's folder
+        String outputId = runService.getOutputId(runID).orElse(null);
+        if (outputId == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new SyntheaApiResponse("RunID not found", runID));
+        }
+
+        RunArchive archive;
         try {
-            // retrieve the zipped folder based on the requested format
-            File zipFolder = getZippedFolder(runID, format);
-            if (zipFolder == null) {
-                return ResponseEntity.badRequest()
-                        .body(new SyntheaApiResponse("Invalid type: " + format, runID));
+            archive = syntheaService.getRunArchive(outputId, format, archiveType, level);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new SyntheaApiResponse(e.getMessage(), runID));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new SyntheaApiResponse("RunID not found", runID));
+        }
+
+        if (archive == null) {
+            return ResponseEntity.badRequest()
+                    .body(new SyntheaApiResponse("Invalid type: " + format, runID));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(ContentDisposition.attachment().filename(archive.getFileName()).build());
+        headers.setContentType(MediaType.parseMediaType(archive.getContentType()));
+        headers.setETag(archive.getETag());
+        headers.setLastModified(archive.getLastModified());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // a range is only served if the client still has the same archive
+        List<HttpRange> ranges = parseRanges(range);
+        if (ranges.size() != 1 || (ifRange != null && !ifRange.equals(archive.getETag()))) {
+            Long length = syntheaService.getKnownArchiveLength(outputId, archive);
+            if (length != null) {
+                headers.setContentLength(length);
             }
+            StreamingResponseBody body = out -> syntheaService.writeArchive(outputId, archive, out);
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
 
-            // Prepare file download
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + zipFolder.getName() + "\"");
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(new FileSystemResource(zipFolder));
+        long length;
+        try {
+            length = syntheaService.getArchiveLength(outputId, archive);
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(new SyntheaApiResponse("RunID not found", runID));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new SyntheaApiResponse("Error while preparing the download: " + e.getMessage(), runID));
+        }
+
+        HttpRange httpRange = ranges.get(0);
+        long start;
+        long end;
+        try {
+            start = httpRange.getRangeStart(length);
+            end = httpRange.getRangeEnd(length);
+        } catch (IllegalArgumentException e) {
+            // no byte of the range exists
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
         }
+
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        headers.setContentLength(end - start + 1);
+        StreamingResponseBody body = out -> archive.writeTo(out, start, end);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
     }
 
     /**
-     * get the zip folder for the requested synthetic data format.
+     * parse the Range header, invalid headers are ignored as if no range was requested.
      *
-     * @param runID  The ID of the synthearun.
-     * @param format The requested format (CSV or FHIR)
-     * @return The zip folder containing the synthetic data, or null if the format is invalid.
-     * @throws IOException if an error occurs
+     * @param range The Range header, or null
+     * @return The requested ranges, empty if the whole archive is requested
      */
-    private File getZippedFolder(String runID, String format) throws IOException {
-         return switch (format.toLowerCase()) {
-            case "csv" -> syntheaService.zipCSVFolderIfNeeded(runID);
-            case "fhir" -> syntheaService.zipFHIRFolderIfNeeded(runID);
-            default -> null;
-        };
+    private List<HttpRange> parseRanges(String range) {
+        if (range == null) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
     }
 }
@@ -37,6 +37,30 @@ public class Run {
     @Column(nullable = true)
     private Integer maxAge;
 
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = true)
+    private RunStatus status;
+
+    @Column(nullable = true)
+    private LocalDateTime startedAt;
+
+    @Column(nullable = true)
+    private LocalDateTime finishedAt;
+
+    @Column(nullable = true)
+    private Integer generatedPatients;
+
+    @Column(nullable = true)
+    private Long seed;
+
+    // hash of everything that determines the output, set for runs with a seed
+    @Column(nullable = true, length = 64)
+    private String cacheKey;
+
+    // run folder holding the output, if the output of an identical earlier run is reused
+    @Column(nullable = true)
+    private String outputId;
+
     public Run(String runId, User user, LocalDateTime createdAt, String state, String city, String gender, Integer populationSize, Integer minAge, Integer maxAge) {
         this.runId = runId;
         this.user = user;
@@ -124,4 +148,60 @@ public class Run {
     public void setPopulationSize(Integer populationSize) {
         this.populationSize = populationSize;
     }
-}
\ No newline at end of file
+
+    public RunStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RunStatus status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public Integer getGeneratedPatients() {
+        return generatedPatients;
+    }
+
+    public void setGeneratedPatients(Integer generatedPatients) {
+        this.generatedPatients = generatedPatients;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public String getOutputId() {
+        return outputId;
+    }
+
+    public void setOutputId(String outputId) {
+        this.outputId = outputId;
+    }
+}
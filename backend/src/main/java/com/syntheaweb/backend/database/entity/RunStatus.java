@@ -0,0 +1,19 @@
+package com.syntheaweb.backend.database.entity;
+
+/**
+ * Lifecycle states of a generation run.
+ */
+public enum RunStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * @return true if the run will not change its status anymore.
+     */
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
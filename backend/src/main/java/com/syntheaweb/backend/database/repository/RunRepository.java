@@ -1,5 +1,6 @@
 package com.syntheaweb.backend.database.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -9,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.database.entity.RunStatus;
 
 /**
  * Repository interface for managing Runs in the database.
@@ -39,4 +41,22 @@ public interface RunRepository extends JpaRepository<Run, String> {
      */
     void deleteByUser(User user);
 
+    /**
+     * Finds all runs with one of the given statuses, oldest first.
+     *
+     * @param statuses The statuses to look for
+     * @return A list of matching runs ordered by creation time.
+     */
+    List<Run> findByStatusInOrderByCreatedAtAsc(Collection<RunStatus> statuses);
+
+    /**
+     * Checks if any run uses the output in the given run folder,
+     * either as its own output or as the reused output of an identical run.
+     *
+     * @param runId    The run folder
+     * @param outputId The run folder again
+     * @return true if the output is still in use.
+     */
+    boolean existsByRunIdOrOutputId(String runId, String outputId);
+
 }
@@ -0,0 +1,104 @@
+package com.syntheaweb.backend.dto;
+
+import java.util.Map;
+
+import com.syntheaweb.backend.database.entity.RunStatus;
+
+public class RunProgress {
+
+    private String runId;
+    private RunStatus status;
+    private Integer populationSize;
+    private int generatedPatients;
+    private int alivePatients;
+    private int deadPatients;
+    private double patientsPerSecond;
+    private Long etaSeconds;
+    private Map<String, Long> exporterBytes;
+
+    public RunProgress(String runId, RunStatus status, Integer populationSize,
+                       int generatedPatients, int alivePatients, int deadPatients,
+                       double patientsPerSecond, Long etaSeconds, Map<String, Long> exporterBytes) {
+        this.runId = runId;
+        this.status = status;
+        this.populationSize = populationSize;
+        this.generatedPatients = generatedPatients;
+        this.alivePatients = alivePatients;
+        this.deadPatients = deadPatients;
+        this.patientsPerSecond = patientsPerSecond;
+        this.etaSeconds = etaSeconds;
+        this.exporterBytes = exporterBytes;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public RunStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RunStatus status) {
+        this.status = status;
+    }
+
+    public Integer getPopulationSize() {
+        return populationSize;
+    }
+
+    public void setPopulationSize(Integer populationSize) {
+        this.populationSize = populationSize;
+    }
+
+    public int getGeneratedPatients() {
+        return generatedPatients;
+    }
+
+    public void setGeneratedPatients(int generatedPatients) {
+        this.generatedPatients = generatedPatients;
+    }
+
+    public int getAlivePatients() {
+        return alivePatients;
+    }
+
+    public void setAlivePatients(int alivePatients) {
+        this.alivePatients = alivePatients;
+    }
+
+    public int getDeadPatients() {
+        return deadPatients;
+    }
+
+    public void setDeadPatients(int deadPatients) {
+        this.deadPatients = deadPatients;
+    }
+
+    public double getPatientsPerSecond() {
+        return patientsPerSecond;
+    }
+
+    public void setPatientsPerSecond(double patientsPerSecond) {
+        this.patientsPerSecond = patientsPerSecond;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    public Map<String, Long> getExporterBytes() {
+        return exporterBytes;
+    }
+
+    public void setExporterBytes(Map<String, Long> exporterBytes) {
+        this.exporterBytes = exporterBytes;
+    }
+}
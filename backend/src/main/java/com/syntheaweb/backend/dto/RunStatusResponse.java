@@ -0,0 +1,83 @@
+package com.syntheaweb.backend.dto;
+
+import java.time.LocalDateTime;
+
+import com.syntheaweb.backend.database.entity.RunStatus;
+
+public class RunStatusResponse {
+
+    private String runId;
+    private RunStatus status;
+    private Integer populationSize;
+    private Integer generatedPatients;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public RunStatusResponse(String runId, RunStatus status, Integer populationSize, Integer generatedPatients,
+                             LocalDateTime createdAt, LocalDateTime startedAt, LocalDateTime finishedAt) {
+        this.runId = runId;
+        this.status = status;
+        this.populationSize = populationSize;
+        this.generatedPatients = generatedPatients;
+        this.createdAt = createdAt;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public RunStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RunStatus status) {
+        this.status = status;
+    }
+
+    public Integer getPopulationSize() {
+        return populationSize;
+    }
+
+    public void setPopulationSize(Integer populationSize) {
+        this.populationSize = populationSize;
+    }
+
+    public Integer getGeneratedPatients() {
+        return generatedPatients;
+    }
+
+    public void setGeneratedPatients(Integer generatedPatients) {
+        this.generatedPatients = generatedPatients;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
@@ -7,6 +7,7 @@ public class SyntheaParameterBody {
     private Integer maxAge;
     private String state;
     private String city;
+    private Long seed;
 
     public Integer getPopulationSize() {
         return populationSize;
@@ -55,4 +56,12 @@ public class SyntheaParameterBody {
     public void setCity(String city) {
         this.city = city;
     }
-}
\ No newline at end of file
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+}
@@ -0,0 +1,120 @@
+package com.syntheaweb.backend.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.export.Exporter;
+
+/**
+ * Generation whose patients are sent to the client as NDJSON, one FHIR Bundle per line,
+ * as soon as they are generated. Nothing is written to disk.
+ * The record queue is bounded, so a slow client slows down the generator instead of filling the memory.
+ */
+public class PatientStream {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final SyntheaEngine syntheaEngine;
+    private final Generator.GeneratorOptions options;
+    private final Exporter.ExporterRuntimeOptions exporterOptions;
+    private final int batchCapacity;
+    private final ExecutorService generators;
+    private final Runnable onClose;
+
+    /**
+     * @param syntheaEngine The engine that generates the patients.
+     * @param options       The generator options of the stream.
+     * @param batchCapacity The number of records that are buffered for the client.
+     * @param generators    The executor the generator runs on.
+     * @param onClose       Called once the stream has ended.
+     */
+    PatientStream(SyntheaEngine syntheaEngine, Generator.GeneratorOptions options, int batchCapacity,
+                  ExecutorService generators, Runnable onClose) {
+        this.syntheaEngine = syntheaEngine;
+        this.options = options;
+        this.batchCapacity = batchCapacity;
+        this.generators = generators;
+        this.onClose = onClose;
+
+        this.exporterOptions = new Exporter.ExporterRuntimeOptions();
+        exporterOptions.enableQueue(Exporter.SupportedFhirVersion.R4, batchCapacity, true);
+    }
+
+    /**
+     * Generates the patients and writes their records until the population is complete.
+     * If the client goes away, the generation is stopped.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream cannot be written or the generation failed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        Future<String> generation = null;
+        try {
+            generation = generators.submit(() -> syntheaEngine.generate(options, exporterOptions, null));
+
+            List<String> batch = new ArrayList<>(batchCapacity);
+            while (true) {
+                String record = exporterOptions.pollNextRecord(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    if (generation.isDone() && exporterOptions.isRecordQueueEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                // take everything that is waiting, so a fast client gets whole batches per write
+                batch.add(record);
+                exporterOptions.drainRecords(batch, batchCapacity - 1);
+                for (String bundle : batch) {
+                    out.write(toLine(bundle));
+                }
+                out.flush();
+                batch.clear();
+            }
+
+            generation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Patient stream was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Generation failed", e.getCause());
+        } finally {
+            if (generation != null) {
+                // stops the generator if the client went away
+                generation.cancel(true);
+            }
+            onClose.run();
+        }
+    }
+
+    // Private helper methods for internal operations
+
+    /**
+     * Removes the line breaks of a pretty printed Bundle. JSON strings cannot contain
+     * raw line breaks, so only the formatting between tokens is removed.
+     */
+    private static byte[] toLine(String bundle) {
+        StringBuilder line = new StringBuilder(bundle.length() + 1);
+        int i = 0;
+        while (i < bundle.length()) {
+            char c = bundle.charAt(i++);
+            if (c == '\n' || c == '\r') {
+                // skip the indentation of the next line as well
+                while (i < bundle.length() && (bundle.charAt(i) == ' ' || bundle.charAt(i) == '\t')) {
+                    i++;
+                }
+            } else {
+                line.append(c);
+            }
+        }
+        return line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,321 @@
+package com.syntheaweb.backend.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archive of one output format of a run, written on the fly from the run's files.
+ * The same files and compression level always produce the same bytes, so byte ranges
+ * of an archive can be served without storing it.
+ */
+public class RunArchive {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK_SIZE = 512;
+
+    /**
+     * Supported archive formats.
+     */
+    public enum Type {
+        ZIP("zip", "application/zip"),
+        TAR_GZ("tar.gz", "application/gzip");
+
+        private final String extension;
+        private final String contentType;
+
+        Type(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        /**
+         * @param extension The file extension of the archive ("zip" or "tar.gz").
+         * @return The matching archive type.
+         * @throws IllegalArgumentException If the extension is not supported.
+         */
+        public static Type fromExtension(String extension) {
+            for (Type type : values()) {
+                if (type.extension.equalsIgnoreCase(extension)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Invalid archive type: " + extension);
+        }
+    }
+
+    private final String name;
+    private final List<File> files;
+    private final Type type;
+    private final int compressionLevel;
+
+    /**
+     * @param name             The file name of the archive without extension.
+     * @param files            The files to archive, in archive order.
+     * @param type             The archive format.
+     * @param compressionLevel The deflate compression level, 0 (none) to 9 (best).
+     */
+    public RunArchive(String name, List<File> files, Type type, int compressionLevel) {
+        this.name = name;
+        this.files = files;
+        this.type = type;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public String getFileName() {
+        return name + "." + type.extension;
+    }
+
+    public String getContentType() {
+        return type.contentType;
+    }
+
+    /**
+     * @return A quoted entity tag that changes whenever the archive content would change.
+     */
+    public String getETag() {
+        StringBuilder descriptor = new StringBuilder()
+                .append(name).append('|').append(type).append('|').append(compressionLevel);
+        for (File file : files) {
+            descriptor.append('|').append(file.getName())
+                    .append(':').append(file.length())
+                    .append(':').append(file.lastModified());
+        }
+        return "\"" + UUID.nameUUIDFromBytes(descriptor.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    public long getLastModified() {
+        return files.stream().mapToLong(File::lastModified).max().orElse(0L);
+    }
+
+    /**
+     * Writes the whole archive.
+     *
+     * @param out The stream to write to. It is not closed.
+     * @return The number of bytes written.
+     * @throws IOException If a file cannot be read or the stream cannot be written.
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        write(counter);
+        return counter.count;
+    }
+
+    /**
+     * Writes the bytes from start to end (both inclusive) of the archive.
+     * The archive is generated up to the end of the range, the bytes before its start are discarded.
+     *
+     * @param out   The stream to write to. It is not closed.
+     * @param start The first byte to write.
+     * @param end   The last byte to write, which must be within the archive.
+     * @throws IOException If a file cannot be read or the stream cannot be written.
+     */
+    public void writeTo(OutputStream out, long start, long end) throws IOException {
+        try {
+            write(new RangeOutputStream(out, start, end));
+        } catch (RangeCompleteException e) {
+            // the requested range has been written, the rest of the archive is not needed
+        }
+    }
+
+    // Private helper methods for internal operations
+
+    private void write(OutputStream out) throws IOException {
+        switch (type) {
+            case ZIP -> writeZip(out);
+            case TAR_GZ -> writeTarGz(out);
+        }
+        out.flush();
+    }
+
+    private void writeZip(OutputStream out) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(out);
+        zos.setLevel(compressionLevel);
+        for (File file : files) {
+            ZipEntry entry = new ZipEntry(file.getName());
+            entry.setTime(file.lastModified());
+            zos.putNextEntry(entry);
+            copy(file, zos);
+            zos.closeEntry();
+        }
+        zos.finish();
+    }
+
+    private void writeTarGz(OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new LeveledGZIPOutputStream(out, compressionLevel);
+        for (File file : files) {
+            gzip.write(tarHeader(file));
+            long size = copy(file, gzip);
+            long padding = (TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE;
+            gzip.write(new byte[(int) padding]);
+        }
+        // end of archive marker
+        gzip.write(new byte[2 * TAR_BLOCK_SIZE]);
+        gzip.finish();
+    }
+
+    private static long copy(File file, OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Builds the ustar header block of a regular file.
+     */
+    private static byte[] tarHeader(File file) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        byte[] fileName = file.getName().getBytes(StandardCharsets.UTF_8);
+        if (fileName.length > 100) {
+            throw new IOException("File name too long for tar archive: " + file.getName());
+        }
+        System.arraycopy(fileName, 0, header, 0, fileName.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putSize(header, file.length());
+        putOctal(header, 136, 12, file.lastModified() / 1000);
+        header[156] = '0';
+        putString(header, 257, "ustar");
+        putString(header, 263, "00");
+
+        // the checksum is calculated with the checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return header;
+    }
+
+    private static void putSize(byte[] header, long size) {
+        if (size < 077777777777L) {
+            putOctal(header, 124, 12, size);
+        } else {
+            // files of 8 GB and more use the base-256 encoding
+            header[124] = (byte) 0x80;
+            for (int i = 135; i > 124; i--) {
+                header[i] = (byte) size;
+                size >>>= 8;
+            }
+        }
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        // zero padded digits followed by a NUL
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static void putString(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    /**
+     * GZIP stream with a configurable compression level.
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * Counts the bytes written to the wrapped stream.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Passes only the bytes of a range to the wrapped stream and stops the
+     * archive once the range is complete.
+     */
+    private static class RangeOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final long start;
+        private final long end;
+        private long position;
+
+        RangeOutputStream(OutputStream out, long start, long end) {
+            this.out = out;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long from = Math.max(position, start);
+            long to = Math.min(position + len - 1, end);
+            if (from <= to) {
+                out.write(b, off + (int) (from - position), (int) (to - from + 1));
+            }
+            position += len;
+            if (position > end) {
+                out.flush();
+                throw new RangeCompleteException();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static class RangeCompleteException extends IOException {
+    }
+}
@@ -0,0 +1,218 @@
+package com.syntheaweb.backend.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.database.repository.RunRepository;
+import com.syntheaweb.backend.dto.RunCacheStats;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Content-addressed cache of run outputs. Runs with a seed are keyed by a hash of their parameters,
+ * the seed and the engine's modules and configuration, so an identical run can reuse the output
+ * of an earlier one instead of being generated again.
+ * Cached outputs are kept even if their run is deleted, until they are evicted (least recently used first)
+ * because the cache grows beyond its maximum number of entries or size.
+ */
+@Service
+public class RunCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunCache.class);
+
+    private final SyntheaService syntheaService;
+    private final SyntheaEngine syntheaEngine;
+    private final RunRepository runRepository;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // cached outputs by cache key, least recently used first (guarded by this)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RunCache(SyntheaService syntheaService,
+                    SyntheaEngine syntheaEngine,
+                    RunRepository runRepository,
+                    @Value("${synthea.cache.enabled:true}") boolean enabled,
+                    @Value("${synthea.cache.max-entries:100}") int maxEntries,
+                    @Value("${synthea.cache.max-size-mb:10240}") long maxSizeMb) {
+        this.syntheaService = syntheaService;
+        this.syntheaEngine = syntheaEngine;
+        this.runRepository = runRepository;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxSizeMb) * 1024 * 1024;
+    }
+
+    /**
+     * Picks up the outputs that were cached before the backend stopped.
+     */
+    @PostConstruct
+    public void load() {
+        List<Entry> evicted;
+        synchronized (this) {
+            for (Map.Entry<String, String> marked : syntheaService.findCacheKeys().entrySet()) {
+                Entry entry = new Entry(marked.getKey(), syntheaService.getOutputSize(marked.getKey()));
+                entries.put(marked.getValue(), entry);
+                totalBytes += entry.bytes;
+            }
+            evicted = evict();
+        }
+        release(evicted);
+    }
+
+    /**
+     * Computes the cache key of a run.
+     *
+     * @param run The run. Its parameters, seed and creation time must be set.
+     * @return The hex encoded key, or null if the run cannot be cached because it has no seed.
+     */
+    public String getCacheKey(Run run) {
+        if (!enabled || run.getSeed() == null) {
+            return null;
+        }
+
+        String descriptor = String.join("|",
+                syntheaEngine.getFingerprint(),
+                String.valueOf(run.getPopulationSize()),
+                String.valueOf(run.getGender()),
+                String.valueOf(run.getMinAge()),
+                String.valueOf(run.getMaxAge()),
+                String.valueOf(run.getState()),
+                String.valueOf(run.getCity()),
+                String.valueOf(run.getSeed()),
+                String.valueOf(SyntheaService.getReferenceTime(run)));
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(descriptor.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks up the output of an identical earlier run.
+     *
+     * @param cacheKey The cache key of the run.
+     * @return The ID of the run folder holding the output, or empty on a cache miss.
+     */
+    public synchronized Optional<String> lookup(String cacheKey) {
+        Entry entry = entries.get(cacheKey);
+        if (entry != null && syntheaService.hasOutput(entry.runId)) {
+            hits.increment();
+            return Optional.of(entry.runId);
+        }
+
+        if (entry != null) {
+            // the output was removed behind the cache's back
+            entries.remove(cacheKey);
+            totalBytes -= entry.bytes;
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Adds the output of a completed run to the cache.
+     *
+     * @param cacheKey The cache key of the run.
+     * @param runId    The ID of the run.
+     */
+    public void put(String cacheKey, String runId) {
+        try {
+            syntheaService.writeCacheKey(runId, cacheKey);
+        } catch (IOException e) {
+            logger.warn("Could not cache the output of run {}", runId, e);
+            return;
+        }
+
+        List<Entry> evicted;
+        synchronized (this) {
+            Entry entry = new Entry(runId, syntheaService.getOutputSize(runId));
+            Entry previous = entries.put(cacheKey, entry);
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += entry.bytes;
+            evicted = evict();
+        }
+        release(evicted);
+    }
+
+    /**
+     * Deletes the output in a run folder once neither the cache nor any run uses it anymore.
+     *
+     * @param runId The ID of the run folder.
+     */
+    public void release(String runId) {
+        synchronized (this) {
+            if (entries.values().stream().anyMatch(entry -> entry.runId.equals(runId))) {
+                return;
+            }
+        }
+        if (!runRepository.existsByRunIdOrOutputId(runId, runId)) {
+            syntheaService.deleteRunFiles(runId);
+        }
+    }
+
+    public synchronized RunCacheStats getStats() {
+        return new RunCacheStats(entries.size(), totalBytes, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    // Private helper methods for internal operations
+
+    private List<Entry> evict() {
+        List<Entry> evicted = new ArrayList<>();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.bytes;
+            evictions.increment();
+            evicted.add(entry);
+        }
+        return evicted;
+    }
+
+    private void release(List<Entry> evicted) {
+        for (Entry entry : evicted) {
+            syntheaService.deleteCacheKey(entry.runId);
+            release(entry.runId);
+        }
+    }
+
+    /**
+     * The cached output of a run.
+     */
+    private static class Entry {
+        final String runId;
+        final long bytes;
+
+        Entry(String runId, long bytes) {
+            this.runId = runId;
+            this.bytes = bytes;
+        }
+    }
+}
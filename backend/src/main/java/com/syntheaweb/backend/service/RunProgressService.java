@@ -0,0 +1,152 @@
+package com.syntheaweb.backend.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.syntheaweb.backend.database.entity.RunStatus;
+import com.syntheaweb.backend.database.repository.RunRepository;
+import com.syntheaweb.backend.dto.RunProgress;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes the progress of runs to subscribed clients as Server-Sent Events.
+ * A single thread samples each subscribed run once per interval, no matter how many
+ * clients follow it, and the stream ends with the run's final status.
+ */
+@Service
+public class RunProgressService {
+
+    private static final String PROGRESS_EVENT = "progress";
+
+    private final RunScheduler runScheduler;
+    private final RunRepository runRepository;
+    private final SyntheaService syntheaService;
+    private final long intervalMillis;
+
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "run-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RunProgressService(RunScheduler runScheduler,
+                              RunRepository runRepository,
+                              SyntheaService syntheaService,
+                              @Value("${synthea.progress.interval-ms:1000}") long intervalMillis) {
+        this.runScheduler = runScheduler;
+        this.runRepository = runRepository;
+        this.syntheaService = syntheaService;
+        this.intervalMillis = Math.max(100, intervalMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        sampler.scheduleWithFixedDelay(this::publishAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampler.shutdownNow();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    /**
+     * Subscribes to the progress of a run. The current progress is sent right away.
+     *
+     * @param runId The ID of the run.
+     * @return The emitter streaming the progress events.
+     */
+    public SseEmitter subscribe(String runId) {
+        SseEmitter emitter = new SseEmitter();
+        emitter.onCompletion(() -> unsubscribe(runId, emitter));
+        emitter.onTimeout(() -> unsubscribe(runId, emitter));
+        emitter.onError(e -> unsubscribe(runId, emitter));
+
+        subscribers.compute(runId, (id, emitters) -> {
+            List<SseEmitter> list = emitters != null ? emitters : new CopyOnWriteArrayList<>();
+            list.add(emitter);
+            return list;
+        });
+        // the first event is sent by the sampler as well, so events of a run never overlap
+        sampler.execute(() -> publish(runId));
+        return emitter;
+    }
+
+    // Private helper methods for internal operations
+
+    private void publishAll() {
+        for (String runId : subscribers.keySet()) {
+            publish(runId);
+        }
+    }
+
+    private void publish(String runId) {
+        List<SseEmitter> emitters = subscribers.get(runId);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+
+        RunProgress progress;
+        try {
+            progress = getProgress(runId).orElse(null);
+        } catch (RuntimeException e) {
+            // try again with the next sample
+            return;
+        }
+
+        boolean finished = progress == null || progress.getStatus().isFinished();
+        for (SseEmitter emitter : emitters) {
+            try {
+                if (progress != null) {
+                    emitter.send(SseEmitter.event().name(PROGRESS_EVENT).data(progress));
+                }
+                if (finished) {
+                    emitter.complete();
+                    unsubscribe(runId, emitter);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client went away
+                emitter.completeWithError(e);
+                unsubscribe(runId, emitter);
+            }
+        }
+    }
+
+    private Optional<RunProgress> getProgress(String runId) {
+        // the scheduler keeps a run until its final status has been saved
+        Optional<RunProgress> progress = runScheduler.getProgress(runId);
+        if (progress.isPresent()) {
+            return progress;
+        }
+
+        return runRepository.findById(runId).map(run -> {
+            RunStatus status = run.getStatus() != null ? run.getStatus() : RunStatus.COMPLETED;
+            int generated = run.getGeneratedPatients() != null ? run.getGeneratedPatients() : 0;
+            return new RunProgress(runId, status, run.getPopulationSize(), generated, generated, 0, 0,
+                    status.isFinished() ? 0L : null,
+                    syntheaService.getExporterBytes(run.getOutputId() != null ? run.getOutputId() : runId));
+        });
+    }
+
+    private void unsubscribe(String runId, SseEmitter emitter) {
+        subscribers.computeIfPresent(runId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,372 @@
+package com.syntheaweb.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mitre.synthea.engine.Generator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.database.entity.RunStatus;
+import com.syntheaweb.backend.database.repository.RunRepository;
+import com.syntheaweb.backend.dto.RunProgress;
+import com.syntheaweb.backend.dto.SyntheaParameterBody;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Queues generation runs and executes them in the background.
+ * Queued runs are dispatched round-robin between users, so one user with many runs
+ * cannot starve the others, and all running generations and patient streams share a global CPU budget.
+ */
+@Service
+public class RunScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunScheduler.class);
+
+    private final SyntheaService syntheaService;
+    private final RunRepository runRepository;
+    private final RunCache runCache;
+
+    private final int maxConcurrentRuns;
+    private final int maxQueuedRuns;
+    private final int cpuBudget;
+    private final ExecutorService workers;
+
+    // queued jobs per user, in the order the users get their next turn (guarded by this)
+    private final LinkedHashMap<UUID, Deque<Job>> queues = new LinkedHashMap<>();
+    // all queued and running jobs by run ID
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private int queuedRuns;
+    private int runningRuns;
+    private int usedThreads;
+
+    public RunScheduler(SyntheaService syntheaService,
+                        RunRepository runRepository,
+                        RunCache runCache,
+                        @Value("${synthea.scheduler.max-concurrent-runs:2}") int maxConcurrentRuns,
+                        @Value("${synthea.scheduler.max-queued-runs:100}") int maxQueuedRuns,
+                        @Value("${synthea.scheduler.cpu-budget:0}") int cpuBudget) {
+        this.syntheaService = syntheaService;
+        this.runRepository = runRepository;
+        this.runCache = runCache;
+        this.maxConcurrentRuns = Math.max(1, maxConcurrentRuns);
+        this.maxQueuedRuns = maxQueuedRuns;
+        this.cpuBudget = cpuBudget > 0 ? cpuBudget : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(this.maxConcurrentRuns);
+    }
+
+    /**
+     * Picks up the runs that were still queued when the backend stopped.
+     * Runs that were in progress cannot be resumed and are marked as failed.
+     */
+    @PostConstruct
+    public synchronized void recover() {
+        List<Run> unfinished = runRepository.findByStatusInOrderByCreatedAtAsc(
+                List.of(RunStatus.QUEUED, RunStatus.RUNNING));
+
+        for (Run run : unfinished) {
+            if (run.getStatus() == RunStatus.RUNNING) {
+                run.setStatus(RunStatus.FAILED);
+                run.setFinishedAt(LocalDateTime.now());
+                runRepository.save(run);
+            } else {
+                enqueue(new Job(run.getRunId(), run.getUser().getId(), run.getPopulationSize()));
+            }
+        }
+
+        dispatch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Saves a run as queued and schedules it for generation.
+     *
+     * @param run The run to schedule. Its ID and user must already be set.
+     * @return The saved run.
+     * @throws RejectedExecutionException If the queue is full.
+     */
+    public synchronized Run submit(Run run) {
+        if (queuedRuns >= maxQueuedRuns) {
+            throw new RejectedExecutionException("Too many runs are waiting, please try again later.");
+        }
+
+        run.setStatus(RunStatus.QUEUED);
+        Run saved = runRepository.save(run);
+
+        enqueue(new Job(saved.getRunId(), saved.getUser().getId(), saved.getPopulationSize()));
+        dispatch();
+        return saved;
+    }
+
+    /**
+     * Cancels a queued or running run. A running generation is interrupted
+     * and its partial output is deleted once its threads have stopped.
+     *
+     * @param runId The ID of the run to cancel.
+     * @return true if the run was queued or running, false otherwise.
+     */
+    public synchronized boolean cancel(String runId) {
+        Job job = jobs.get(runId);
+        if (job == null) {
+            return false;
+        }
+
+        job.cancelled = true;
+
+        if (!job.started) {
+            Deque<Job> queue = queues.get(job.userId);
+            if (queue != null && queue.remove(job)) {
+                if (queue.isEmpty()) {
+                    queues.remove(job.userId);
+                }
+                queuedRuns--;
+                jobs.remove(runId);
+                updateRun(runId, RunStatus.CANCELLED, null);
+            }
+        } else if (job.thread != null) {
+            job.thread.interrupt();
+        }
+        // a job that was dispatched but has not started yet notices the flag itself
+
+        return true;
+    }
+
+    /**
+     * Returns the number of patients generated so far by a running run.
+     *
+     * @param runId The ID of the run.
+     * @return The number of generated patients, or empty if the run is not running.
+     */
+    public Optional<Integer> getGeneratedPatients(String runId) {
+        Job job = jobs.get(runId);
+        if (job == null || job.generator == null) {
+            return Optional.empty();
+        }
+        return Optional.of(job.alive.get());
+    }
+
+    /**
+     * Takes a snapshot of the progress of a queued or running run.
+     * Only the generator's counters are read, the generator threads are never blocked.
+     *
+     * @param runId The ID of the run.
+     * @return The progress, or empty if the run is neither queued nor running.
+     */
+    public Optional<RunProgress> getProgress(String runId) {
+        Job job = jobs.get(runId);
+        if (job == null) {
+            return Optional.empty();
+        }
+
+        if (job.generator == null) {
+            RunStatus status = job.started ? RunStatus.RUNNING : RunStatus.QUEUED;
+            return Optional.of(new RunProgress(runId, status, job.population, 0, 0, 0, 0, null, Map.of()));
+        }
+
+        int alive = job.alive.get();
+        int dead = job.dead.get();
+        int generated = job.generator.totalGeneratedPopulation.get();
+        double seconds = (System.nanoTime() - job.startNanos) / 1e9;
+
+        double patientsPerSecond = seconds > 0 ? generated / seconds : 0;
+        // only patients that are kept count towards the population, so they determine the remaining time
+        Long etaSeconds = null;
+        if (alive > 0 && seconds > 0) {
+            etaSeconds = Math.round(Math.max(0, job.population - alive) * seconds / alive);
+        }
+
+        return Optional.of(new RunProgress(runId, RunStatus.RUNNING, job.population, generated, alive, dead,
+                patientsPerSecond, etaSeconds, syntheaService.getExporterBytes(runId)));
+    }
+
+    /**
+     * Opens a stream of synthetic patients. The threads of its generator are taken from the
+     * CPU budget until the stream ends, so queued runs wait for them like for other runs.
+     *
+     * @param parameters    The parameters of the patients to generate.
+     * @param batchCapacity The number of records buffered for the client, or null for the default capacity.
+     * @return The stream, which must be written to release its threads.
+     * @throws RejectedExecutionException If the CPU budget is used up or too many streams are open.
+     */
+    public synchronized PatientStream openPatientStream(SyntheaParameterBody parameters, Integer batchCapacity) {
+        int threads = Math.min(syntheaService.getStreamThreads(), cpuBudget - usedThreads);
+        if (threads < 1) {
+            throw new RejectedExecutionException("All processors are busy, please try again later.");
+        }
+
+        PatientStream stream = syntheaService.openPatientStream(parameters, batchCapacity, threads,
+                () -> releaseThreads(threads));
+        usedThreads += threads;
+        return stream;
+    }
+
+    // Private helper methods for internal operations
+
+    private synchronized void releaseThreads(int threads) {
+        usedThreads -= threads;
+        dispatch();
+    }
+
+    private void enqueue(Job job) {
+        queues.computeIfAbsent(job.userId, id -> new ArrayDeque<>()).add(job);
+        jobs.put(job.runId, job);
+        queuedRuns++;
+    }
+
+    private synchronized void dispatch() {
+        while (!queues.isEmpty() && runningRuns < maxConcurrentRuns && usedThreads < cpuBudget) {
+            // take the next job of the first user and move that user to the back of the line
+            Iterator<Map.Entry<UUID, Deque<Job>>> users = queues.entrySet().iterator();
+            Map.Entry<UUID, Deque<Job>> next = users.next();
+            users.remove();
+
+            Deque<Job> queue = next.getValue();
+            Job job = queue.poll();
+            if (!queue.isEmpty()) {
+                queues.put(next.getKey(), queue);
+            }
+            queuedRuns--;
+
+            // split the budget between the concurrent runs, but never hand out more threads than patients
+            int share = Math.max(1, cpuBudget / maxConcurrentRuns);
+            job.threads = Math.max(1, Math.min(Math.min(share, cpuBudget - usedThreads), job.population));
+            job.started = true;
+            usedThreads += job.threads;
+            runningRuns++;
+
+            workers.execute(() -> execute(job));
+        }
+    }
+
+    private void execute(Job job) {
+        synchronized (this) {
+            if (job.cancelled) {
+                finish(job, RunStatus.CANCELLED);
+                return;
+            }
+            job.thread = Thread.currentThread();
+        }
+
+        RunStatus result;
+        try {
+            Run run = updateRun(job.runId, RunStatus.RUNNING, null);
+            if (run == null) {
+                // the run was deleted while it was queued
+                result = RunStatus.CANCELLED;
+            } else {
+                syntheaService.generateSyntheticData(run, job.threads, job::start);
+                result = job.cancelled ? RunStatus.CANCELLED : RunStatus.COMPLETED;
+            }
+        } catch (InterruptedException e) {
+            // the generator has stopped all threads of the run, so its files can be deleted
+            result = RunStatus.CANCELLED;
+        } catch (RuntimeException e) {
+            logger.error("Run {} failed", job.runId, e);
+            result = job.cancelled ? RunStatus.CANCELLED : RunStatus.FAILED;
+        }
+
+        synchronized (this) {
+            job.thread = null;
+        }
+        // clear an interrupt that arrived after the generator returned
+        Thread.interrupted();
+
+        finish(job, result);
+    }
+
+    private void finish(Job job, RunStatus result) {
+        try {
+            Integer generated = job.generator != null ? job.alive.get() : null;
+            Run run = updateRun(job.runId, result, generated);
+
+            if (result == RunStatus.COMPLETED && run != null && run.getCacheKey() != null) {
+                runCache.put(run.getCacheKey(), run.getRunId());
+            }
+            if (result == RunStatus.COMPLETED) {
+                // resumed downloads need the length of the archive, which is measured once in the background
+                syntheaService.measureArchives(job.runId);
+            }
+            if (result == RunStatus.CANCELLED) {
+                syntheaService.deleteRunFiles(job.runId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not record the result of run {}", job.runId, e);
+        } finally {
+            synchronized (this) {
+                jobs.remove(job.runId);
+                runningRuns--;
+                usedThreads -= job.threads;
+                dispatch();
+            }
+        }
+    }
+
+    private Run updateRun(String runId, RunStatus status, Integer generatedPatients) {
+        return runRepository.findById(runId).map(run -> {
+            run.setStatus(status);
+            if (status == RunStatus.RUNNING) {
+                run.setStartedAt(LocalDateTime.now());
+            }
+            if (status.isFinished()) {
+                run.setFinishedAt(LocalDateTime.now());
+            }
+            if (generatedPatients != null) {
+                run.setGeneratedPatients(generatedPatients);
+            }
+            return runRepository.save(run);
+        }).orElse(null);
+    }
+
+    /**
+     * A queued or running generation.
+     */
+    private static class Job {
+        final String runId;
+        final UUID userId;
+        final int population;
+
+        int threads;
+        boolean started;
+        volatile boolean cancelled;
+        volatile Thread thread;
+        volatile Generator generator;
+        // set before the generator is published
+        AtomicInteger alive;
+        AtomicInteger dead;
+        long startNanos;
+
+        Job(String runId, UUID userId, Integer population) {
+            this.runId = runId;
+            this.userId = userId;
+            this.population = population != null ? population : 1;
+        }
+
+        void start(Generator generator) {
+            alive = generator.stats.get("alive");
+            dead = generator.stats.get("dead");
+            startNanos = System.nanoTime();
+            this.generator = generator;
+        }
+    }
+}
@@ -1,26 +1,33 @@
 package com.syntheaweb.backend.service;
 
 import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.database.entity.RunStatus;
 import com.syntheaweb.backend.database.entity.User;
 import com.syntheaweb.backend.database.repository.RunRepository;
+import com.syntheaweb.backend.dto.RunStatusResponse;
+import com.syntheaweb.backend.dto.SyntheaParameterBody;
+import org.mitre.synthea.helpers.Config;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
- * Service for managing Runs, including retrieval, creation, deletion, and ownership checks.
+ * Service for managing Runs, including retrieval, creation, scheduling, deletion, and ownership checks.
  */
 @Service
 public class RunService {
 
     private final RunRepository runRepository;
-    private final SyntheaService syntheaService;
+    private final RunScheduler runScheduler;
+    private final RunCache runCache;
 
-    public RunService(RunRepository runRepository, SyntheaService syntheaService) {
+    public RunService(RunRepository runRepository, RunScheduler runScheduler, RunCache runCache) {
         this.runRepository = runRepository;
-        this.syntheaService = syntheaService;
+        this.runScheduler = runScheduler;
+        this.runCache = runCache;
     }
 
     /**
@@ -64,6 +71,96 @@ public class RunService {
         runRepository.save(run);
     }
 
+    /**
+     * Creates a new run for the specified user and queues it for generation.
+     * If an identical run with the same seed was generated before, its output is reused
+     * and the new run is completed right away.
+     *
+     * @param parameters The parameters of the synthetic data to generate.
+     * @param user       The user requesting the run.
+     * @return The queued run.
+     * @throws java.util.concurrent.RejectedExecutionException If too many runs are already waiting.
+     */
+    public Run queueRun(SyntheaParameterBody parameters, User user) {
+        Integer populationSize = parameters.getPopulationSize() != null
+                ? parameters.getPopulationSize()
+                : Config.getAsInteger("generate.default_population", 1);
+
+        Run run = new Run(UUID.randomUUID().toString(), user, LocalDateTime.now(),
+                parameters.getState(), parameters.getCity(), parameters.getGender(),
+                populationSize, parameters.getMinAge(), parameters.getMaxAge());
+        run.setSeed(parameters.getSeed());
+
+        String cacheKey = runCache.getCacheKey(run);
+        if (cacheKey != null) {
+            run.setCacheKey(cacheKey);
+            Optional<String> cachedOutput = runCache.lookup(cacheKey);
+            if (cachedOutput.isPresent()) {
+                LocalDateTime now = LocalDateTime.now();
+                run.setOutputId(cachedOutput.get());
+                run.setStatus(RunStatus.COMPLETED);
+                run.setStartedAt(now);
+                run.setFinishedAt(now);
+                run.setGeneratedPatients(populationSize);
+                return runRepository.save(run);
+            }
+        }
+
+        return runScheduler.submit(run);
+    }
+
+    /**
+     * Returns the run folder holding the output of a run. Runs that reused the output
+     * of an identical run point to that run's folder.
+     *
+     * @param runId The ID of the run.
+     * @return An Optional containing the ID of the run folder if the run exists, or empty otherwise.
+     */
+    public Optional<String> getOutputId(String runId) {
+        return runRepository.findById(runId)
+                .map(run -> run.getOutputId() != null ? run.getOutputId() : run.getRunId());
+    }
+
+    /**
+     * Retrieves the status and progress of a specific run.
+     *
+     * @param runId The ID of the run.
+     * @return An Optional containing the status if the run exists, or empty otherwise.
+     */
+    public Optional<RunStatusResponse> getRunStatus(String runId) {
+        return runRepository.findById(runId).map(run -> {
+            // runs created before the scheduler existed were generated synchronously
+            RunStatus status = run.getStatus() != null ? run.getStatus() : RunStatus.COMPLETED;
+            Integer generatedPatients = runScheduler.getGeneratedPatients(runId)
+                    .orElse(run.getGeneratedPatients());
+
+            return new RunStatusResponse(run.getRunId(), status, run.getPopulationSize(), generatedPatients,
+                    run.getCreatedAt(), run.getStartedAt(), run.getFinishedAt());
+        });
+    }
+
+    /**
+     * Opens a stream of synthetic patients, which shares the processors with the runs.
+     *
+     * @param parameters The parameters of the patients to generate.
+     * @param batchSize  The number of patients buffered for the client, or null for the default.
+     * @return The stream, which must be written to release its threads.
+     * @throws java.util.concurrent.RejectedExecutionException If no stream can be opened right now.
+     */
+    public PatientStream openPatientStream(SyntheaParameterBody parameters, Integer batchSize) {
+        return runScheduler.openPatientStream(parameters, batchSize);
+    }
+
+    /**
+     * Cancels a queued or running run.
+     *
+     * @param runId The ID of the run to cancel.
+     * @return true if the run was cancelled, false if it is not queued or running.
+     */
+    public boolean cancelRun(String runId) {
+        return runScheduler.cancel(runId);
+    }
+
     /**
      * Deletes a specific run by its ID, including its associated files.
      *
@@ -73,8 +170,10 @@ public class RunService {
     public boolean deleteRun(String runId) {
         // Fetch the Run and delete if it exists
         return runRepository.findById(runId).map(run -> {
+            runScheduler.cancel(runId);
             runRepository.deleteById(runId);
-            syntheaService.deleteRunFiles(runId);
+            // the output may still be cached or reused by other runs
+            runCache.release(run.getOutputId() != null ? run.getOutputId() : runId);
             return true;
         }).orElse(false);
     }
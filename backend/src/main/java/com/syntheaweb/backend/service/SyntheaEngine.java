@@ -0,0 +1,190 @@
+package com.syntheaweb.backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.engine.Module;
+import org.mitre.synthea.export.Exporter;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.geography.Location;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Long-lived Synthea engine embedded in the backend.
+ * Modules, providers, payers and geography are loaded once and stay in memory,
+ * so each run only has to simulate its population.
+ * Every run writes into its own folder below the output directory and counts the utilization,
+ * revenue and costs of the shared providers, clinicians and payers for its own population only,
+ * so runs can execute in parallel and a seeded run always reports the same figures.
+ */
+@Component
+public class SyntheaEngine {
+
+    private final String outputDirectory;
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private final Set<String> loadedStates = ConcurrentHashMap.newKeySet();
+    private String fingerprint;
+
+    // Providers and payers of a state are loaded into Synthea's shared caches the first time
+    // the state is used. Loading a new state must not overlap with running generations.
+    private final ReadWriteLock worldLock = new ReentrantReadWriteLock();
+
+    public SyntheaEngine(@Value("${SYNTHEA_OUTPUT_DIRECTORY:/synthea/output}") String outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Configures Synthea and loads the modules and the default state's
+     * providers, payers and geography before the first request arrives.
+     */
+    @PostConstruct
+    public void warmUp() {
+        Config.set("exporter.baseDirectory", outputDirectory);
+
+        Module.getModules();
+
+        // an empty population loads providers, payers and costs for the default state
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.population = 0;
+        options.location = getLocation(Generator.DEFAULT_STATE, null);
+        new Generator(options, new Exporter.ExporterRuntimeOptions());
+        loadedStates.add(Generator.DEFAULT_STATE);
+
+        fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Returns a hash of the loaded modules and the configuration.
+     * Runs with the same parameters and seed produce the same output as long as it does not change.
+     *
+     * @return The hex encoded SHA-256 fingerprint of the engine.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Runs the generator with the given options.
+     * The output of the run is written to a folder named after its run ID.
+     *
+     * @param options The generator options of this run. A random run ID is chosen if none is set.
+     * @param onStart Called with the generator right before the simulation starts,
+     *                so callers can follow its progress. May be null.
+     * @return The ID of the generated run.
+     * @throws InterruptedException If the thread was interrupted while waiting for another run or while
+     *                              generating.
+     */
+    public String generate(Generator.GeneratorOptions options, Consumer<Generator> onStart)
+            throws InterruptedException {
+        return generate(options, new Exporter.ExporterRuntimeOptions(), onStart);
+    }
+
+    /**
+     * Runs the generator with the given options and exporter options,
+     * e.g. to receive the records through a record queue.
+     *
+     * @param options         The generator options of this run. A random run ID is chosen if none is set.
+     * @param exporterOptions The exporter options of this run.
+     * @param onStart         Called with the generator right before the simulation starts. May be null.
+     * @return The ID of the generated run.
+     * @throws InterruptedException If the thread was interrupted while waiting for another run or while
+     *                              generating. The run's threads have stopped writing by then.
+     */
+    public String generate(Generator.GeneratorOptions options, Exporter.ExporterRuntimeOptions exporterOptions,
+                           Consumer<Generator> onStart) throws InterruptedException {
+        if (options.state == null) {
+            options.state = Generator.DEFAULT_STATE;
+        }
+        if (options.runId == null) {
+            options.runId = UUID.randomUUID();
+        }
+        options.location = getLocation(options.state, options.city);
+
+        Generator generator = createGenerator(options, exporterOptions);
+        try {
+            if (onStart != null) {
+                onStart.accept(generator);
+            }
+            generator.run();
+            if (Thread.interrupted()) {
+                // the generator stopped its threads and skipped the exports of the incomplete population
+                throw new InterruptedException("Run " + options.runId + " was interrupted");
+            }
+            return options.runId.toString();
+        } finally {
+            worldLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates the generator of a run and returns with the read lock held.
+     * The first run of a state loads the state exclusively.
+     */
+    private Generator createGenerator(Generator.GeneratorOptions options, Exporter.ExporterRuntimeOptions exporterOptions)
+            throws InterruptedException {
+        if (!loadedStates.contains(options.state)) {
+            worldLock.writeLock().lockInterruptibly();
+            try {
+                Generator generator = new Generator(options, exporterOptions);
+                loadedStates.add(options.state);
+                // downgrade, so other runs can proceed while this one is generating
+                worldLock.readLock().lock();
+                return generator;
+            } finally {
+                worldLock.writeLock().unlock();
+            }
+        }
+
+        worldLock.readLock().lockInterruptibly();
+        try {
+            return new Generator(options, exporterOptions);
+        } catch (RuntimeException e) {
+            worldLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    private static String computeFingerprint() {
+        StringBuilder descriptor = new StringBuilder();
+        for (String module : new TreeSet<>(Arrays.asList(Module.getModuleNames()))) {
+            descriptor.append(module).append('\n');
+        }
+        for (String property : new TreeSet<>(Config.allPropertyNames())) {
+            descriptor.append(property).append('=').append(Config.get(property)).append('\n');
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(descriptor.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached location for a state and city, loading it on first use.
+     *
+     * @param state The state of the location.
+     * @param city  The city of the location, or null for the whole state.
+     * @return The location.
+     */
+    private Location getLocation(String state, String city) {
+        String key = city == null ? state : state + "/" + city;
+        return locations.computeIfAbsent(key, k -> new Location(state, city));
+    }
+}
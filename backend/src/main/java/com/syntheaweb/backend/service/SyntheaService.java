@@ -1,90 +1,365 @@
 package com.syntheaweb.backend.service;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Objects;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.mitre.synthea.engine.Generator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.syntheaweb.backend.database.entity.Run;
+import com.syntheaweb.backend.dto.SyntheaParameterBody;
+
+import jakarta.annotation.PreDestroy;
+
 /**
  * Service responsible for handling Synthea synthetic data operations,
- * including generation, compression, and deletion.
+ * including generation, archiving, and deletion.
  */
 @Service
 public class SyntheaService {
 
-    private static final String SYNTHEA_DIRECTORY = "/synthea/";
-    private static final String SYNTHEA_OUTPUT_DIRECTORY = "/synthea/output/";
     private static final String DATAFORMAT_CSV = "csv";
     private static final String DATAFORMAT_FHIR = "fhir";
+    private static final String CACHE_KEY_FILE = ".cache-key";
+    private static final String ARCHIVE_LENGTHS_FILE = ".archive-lengths";
+    private static final String DEFAULT_ARCHIVE_TYPE = "zip";
+
+    private final SyntheaEngine syntheaEngine;
+    private final String outputDirectory;
+    private final int defaultCompressionLevel;
+
+    // length of archives that were measured or written completely before, by run ID and entity tag,
+    // also stored in the run folder so they are known after a restart
+    private final Map<String, Long> archiveLengths = new ConcurrentHashMap<>();
+    // archives being measured, so each archive is compressed only once to learn its length
+    private final Map<String, CompletableFuture<Long>> archiveMeasurements = new ConcurrentHashMap<>();
+    private final ExecutorService archiveMeasurer = Executors.newSingleThreadExecutor();
+
+    private final Semaphore streamPermits;
+    private final int streamThreads;
+    private final int defaultStreamBatchCapacity;
+    private final int maxStreamBatchCapacity;
+    private final ExecutorService streamGenerators = Executors.newCachedThreadPool();
+
+    public SyntheaService(SyntheaEngine syntheaEngine,
+                          @Value("${SYNTHEA_OUTPUT_DIRECTORY:/synthea/output}") String outputDirectory,
+                          @Value("${synthea.download.compression-level:6}") int defaultCompressionLevel,
+                          @Value("${synthea.stream.max-concurrent-streams:2}") int maxConcurrentStreams,
+                          @Value("${synthea.stream.batch-capacity:1000}") int defaultStreamBatchCapacity,
+                          @Value("${synthea.stream.max-batch-capacity:10000}") int maxStreamBatchCapacity) {
+        this.syntheaEngine = syntheaEngine;
+        this.outputDirectory = outputDirectory;
+        this.defaultCompressionLevel = defaultCompressionLevel;
+        this.streamPermits = new Semaphore(Math.max(1, maxConcurrentStreams));
+        // the concurrent streams share the processors
+        this.streamThreads = Math.max(1,
+                Runtime.getRuntime().availableProcessors() / Math.max(1, maxConcurrentStreams));
+        this.defaultStreamBatchCapacity = Math.max(1, defaultStreamBatchCapacity);
+        this.maxStreamBatchCapacity = Math.max(this.defaultStreamBatchCapacity, maxStreamBatchCapacity);
+    }
 
+    @PreDestroy
+    public void shutdown() {
+        streamGenerators.shutdownNow();
+        archiveMeasurer.shutdownNow();
+    }
 
     /**
-     * Generates synthetic data based on the provided parameters.
+     * Generates synthetic data for a run based on its parameters.
      *
-     * @param populationSize The number of patients to generate.
-     * @param gender         The gender of the patients ("M" or "F").
-     * @param minAge         The minimum age of patients.
-     * @param maxAge         The maximum age of patients.
-     * @param state          The state for patient generation.
-     * @param city           The city for patient generation.
+     * @param run            The run to generate. Its ID is used for the output folders.
+     * @param threadPoolSize The number of threads the generator may use.
+     * @param onStart        Called with the generator once the simulation starts. May be null.
      * @return The ID of the generated run.
-     * @throws IOException          If there is an issue during execution.
-     * @throws InterruptedException If the generation process is interrupted.
-     */
-    public String generateSyntheticData(Integer populationSize, String gender, Integer minAge, Integer maxAge, String state, String city) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder("./run_synthea");
-
-        addPopulationParameter(processBuilder, populationSize);
-        addGenderParameter(processBuilder, gender);
-        addAgeParameter(processBuilder, minAge, maxAge);
-        addLocationParameter(processBuilder, state, city);
-
-        processBuilder.directory(new File(SYNTHEA_DIRECTORY));
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        // comment this part out to hide synthea output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+     * @throws InterruptedException If the run was cancelled while waiting for the engine.
+     */
+    public String generateSyntheticData(Run run, int threadPoolSize, Consumer<Generator> onStart)
+            throws InterruptedException {
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.runId = UUID.fromString(run.getRunId());
+        options.threadPoolSize = threadPoolSize;
+
+        addPopulationParameter(options, run.getPopulationSize());
+        addGenderParameter(options, run.getGender());
+        addAgeParameter(options, run.getMinAge(), run.getMaxAge());
+        addLocationParameter(options, run.getState(), run.getCity());
+        addSeedParameter(options, run);
+
+        return syntheaEngine.generate(options, onStart);
+    }
+
+    /**
+     * Returns the number of threads a patient stream generates with, unless fewer are available.
+     *
+     * @return The number of threads of one stream.
+     */
+    public int getStreamThreads() {
+        return streamThreads;
+    }
+
+    /**
+     * Opens a stream of synthetic patients generated from the given parameters.
+     * The patients are generated when the stream is written and are not saved.
+     *
+     * @param parameters    The parameters of the patients to generate.
+     * @param batchCapacity The number of records buffered for the client, or null for the default capacity.
+     * @param threads       The number of threads the generator may use.
+     * @param onClose       Called once the stream has ended.
+     * @return The stream, which must be written to release its slot.
+     * @throws RejectedExecutionException If the maximum number of streams is already open.
+     */
+    public PatientStream openPatientStream(SyntheaParameterBody parameters, Integer batchCapacity, int threads,
+                                           Runnable onClose) {
+        int capacity = batchCapacity != null
+                ? Math.max(1, Math.min(batchCapacity, maxStreamBatchCapacity))
+                : defaultStreamBatchCapacity;
+
+        Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+        options.threadPoolSize = threads;
+        addPopulationParameter(options, parameters.getPopulationSize());
+        addGenderParameter(options, parameters.getGender());
+        addAgeParameter(options, parameters.getMinAge(), parameters.getMaxAge());
+        addLocationParameter(options, parameters.getState(), parameters.getCity());
+
+        if (!streamPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many patient streams are open, please try again later.");
+        }
+        return new PatientStream(syntheaEngine, options, capacity, streamGenerators, () -> {
+            streamPermits.release();
+            onClose.run();
+        });
+    }
+
+    /**
+     * Prepares the archive of one output format of a run. Nothing is compressed yet,
+     * the archive is written when it is downloaded.
+     *
+     * @param runID            The ID of the generated run.
+     * @param format           The output format ("csv" or "fhir").
+     * @param archiveType      The archive format ("zip" or "tar.gz").
+     * @param compressionLevel The compression level from 0 to 9, or null for the default level.
+     * @return The archive, or null if the format is invalid.
+     * @throws FileNotFoundException If the run has no output in this format.
+     * @throws IllegalArgumentException If the archive type or compression level is invalid.
+     */
+    public RunArchive getRunArchive(String runID, String format, String archiveType, Integer compressionLevel)
+            throws FileNotFoundException {
+        String dataFormat = format.toLowerCase();
+        if (!dataFormat.equals(DATAFORMAT_CSV) && !dataFormat.equals(DATAFORMAT_FHIR)) {
+            return null;
+        }
+
+        RunArchive.Type type = RunArchive.Type.fromExtension(archiveType);
+        int level = compressionLevel != null ? compressionLevel : defaultCompressionLevel;
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        File[] files = getRunFolder(runID, dataFormat).listFiles(File::isFile);
+        if (files == null) {
+            throw new FileNotFoundException("Folder with runID " + runID + " does not exist.");
+        }
+        List<File> sortedFiles = Arrays.stream(files).sorted(Comparator.comparing(File::getName)).toList();
+
+        return new RunArchive(runID + "_" + dataFormat, sortedFiles, type, level);
+    }
+
+    /**
+     * Writes a complete archive and remembers its length for later range requests.
+     *
+     * @param runID   The ID of the generated run.
+     * @param archive The archive to write.
+     * @param out     The stream to write to.
+     * @throws IOException If the archive cannot be written.
+     */
+    public void writeArchive(String runID, RunArchive archive, OutputStream out) throws IOException {
+        long length = archive.writeTo(out);
+        recordArchiveLength(runID, archive, length);
+    }
+
+    /**
+     * Returns the length of an archive if it is known without compressing the archive.
+     *
+     * @param runID   The ID of the generated run.
+     * @param archive The archive.
+     * @return The length in bytes, or null if the archive has not been measured yet.
+     */
+    public Long getKnownArchiveLength(String runID, RunArchive archive) {
+        String key = archiveKey(runID, archive);
+        Long length = archiveLengths.get(key);
+        if (length == null) {
+            String stored = readArchiveLengths(runID).getProperty(archive.getETag());
+            if (stored != null) {
+                length = Long.valueOf(stored);
+                archiveLengths.put(key, length);
             }
         }
+        return length;
+    }
 
-        int exitCode = process.waitFor();
+    /**
+     * Returns the length of an archive, which range requests are checked against. An archive that has not
+     * been measured yet is compressed once to measure it, concurrent requests wait for the same measurement.
+     *
+     * @param runID   The ID of the generated run.
+     * @param archive The archive.
+     * @return The length in bytes.
+     * @throws IOException If the archive cannot be measured.
+     */
+    public long getArchiveLength(String runID, RunArchive archive) throws IOException {
+        Long known = getKnownArchiveLength(runID, archive);
+        if (known != null) {
+            return known;
+        }
+        CompletableFuture<Long> measurement = measureArchive(runID, archive);
+        try {
+            return measurement.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while measuring " + archive.getFileName());
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to measure " + archive.getFileName(), e.getCause());
+        }
+    }
 
-        if (exitCode != 0) {
-            throw new RuntimeException("Error occurred while generating synthetic data.");
+    /**
+     * Measures the archives of a finished run that are downloaded by default, in the background,
+     * so the first range request for them does not wait for a measurement.
+     *
+     * @param runID The ID of the run.
+     */
+    public void measureArchives(String runID) {
+        for (String format : List.of(DATAFORMAT_CSV, DATAFORMAT_FHIR)) {
+            try {
+                RunArchive archive = getRunArchive(runID, format, DEFAULT_ARCHIVE_TYPE, null);
+                if (getKnownArchiveLength(runID, archive) == null) {
+                    measureArchive(runID, archive);
+                }
+            } catch (FileNotFoundException e) {
+                // the run has no output in this format
+            }
         }
+    }
 
-        // this needs to change for multiple user support!
-        return getLatestRunIDFolder();
+    /**
+     * Measures the output written so far by each exporter of a run.
+     *
+     * @param runID The ID of the run.
+     * @return The bytes written per output folder (e.g. "csv", "fhir"), empty if there is no output yet.
+     */
+    public Map<String, Long> getExporterBytes(String runID) {
+        Map<String, Long> bytes = new TreeMap<>();
+        File[] folders = new File(outputDirectory, runID).listFiles(File::isDirectory);
+        if (folders == null) {
+            return bytes;
+        }
+        for (File folder : folders) {
+            try (Stream<Path> files = Files.walk(folder.toPath())) {
+                long size = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+                bytes.put(folder.getName(), size);
+            } catch (IOException | UncheckedIOException e) {
+                // the folder changed while it was walked, it is measured again with the next update
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks if a run folder exists.
+     *
+     * @param runID The ID of the run.
+     * @return true if the run has an output folder.
+     */
+    public boolean hasOutput(String runID) {
+        return new File(outputDirectory, runID).isDirectory();
+    }
+
+    /**
+     * Returns the total size of a run's output.
+     *
+     * @param runID The ID of the run.
+     * @return The size of all output files in bytes.
+     */
+    public long getOutputSize(String runID) {
+        return getExporterBytes(runID).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Marks the output of a run as cached, so it is found again after a restart.
+     *
+     * @param runID    The ID of the run.
+     * @param cacheKey The cache key of the run's parameters.
+     * @throws IOException If the marker cannot be written.
+     */
+    public void writeCacheKey(String runID, String cacheKey) throws IOException {
+        Files.writeString(Path.of(outputDirectory, runID, CACHE_KEY_FILE), cacheKey);
+    }
+
+    /**
+     * Removes the cache marker of a run's output.
+     *
+     * @param runID The ID of the run.
+     */
+    public void deleteCacheKey(String runID) {
+        new File(new File(outputDirectory, runID), CACHE_KEY_FILE).delete();
     }
 
     /**
-     * Retrieves the zipped folder for the generated CSV format if needed.
+     * Finds the outputs that are marked as cached.
      *
-     * @param runID The ID of the generated run.
-     * @return A File representing the zipped folder.
-     * @throws IOException If an error occurs during the zipping process.
+     * @return The cache key of each marked run, by run ID.
      */
-    public File zipCSVFolderIfNeeded(String runID) throws IOException {
-        return zipFolderIfNeeded(runID, DATAFORMAT_CSV);
+    public Map<String, String> findCacheKeys() {
+        Map<String, String> cacheKeys = new HashMap<>();
+        File[] folders = new File(outputDirectory).listFiles(File::isDirectory);
+        if (folders == null) {
+            return cacheKeys;
+        }
+        for (File folder : folders) {
+            File marker = new File(folder, CACHE_KEY_FILE);
+            if (marker.isFile()) {
+                try {
+                    cacheKeys.put(folder.getName(), Files.readString(marker.toPath()).trim());
+                } catch (IOException e) {
+                    // an unreadable marker is treated like a missing one
+                }
+            }
+        }
+        return cacheKeys;
     }
 
     /**
-     * Retrieves the zipped folder for the generated FHIR format if needed.
+     * Returns the time the simulation of a run ends. Runs with a seed end at the start
+     * of the day they were created (UTC), so identical runs of the same day have identical output.
      *
-     * @param runID The ID of the generated run.
-     * @return A File representing the zipped folder.
-     * @throws IOException If an error occurs during the zipping process.
+     * @param run The run.
+     * @return The reference time in milliseconds, or null to use the current time.
      */
-    public File zipFHIRFolderIfNeeded(String runID) throws IOException {
-        return zipFolderIfNeeded(runID, DATAFORMAT_FHIR);
+    static Long getReferenceTime(Run run) {
+        if (run.getSeed() == null || run.getCreatedAt() == null) {
+            return null;
+        }
+        return run.getCreatedAt().toLocalDate().atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
     }
 
     /**
@@ -93,99 +368,109 @@ public class SyntheaService {
      * @param runId The ID of the run to delete.
      */
     public void deleteRunFiles(String runId) {
-        Arrays.asList(DATAFORMAT_CSV, DATAFORMAT_FHIR).forEach(format -> {
-            File runFolder = new File(SYNTHEA_OUTPUT_DIRECTORY + format + "/" + runId);
-            if (runFolder.exists()) {
-                deleteFolder(runFolder);
-            }
-
-            File zipFile = new File(SYNTHEA_OUTPUT_DIRECTORY + format + "/" + runId + "_" + format + ".zip");
-            if (zipFile.exists()) {
-                zipFile.delete();
-            }
-        });
+        deleteFolder(new File(outputDirectory, runId));
+        archiveLengths.keySet().removeIf(key -> key.startsWith(runId + "/"));
+        archiveMeasurements.keySet().removeIf(key -> key.startsWith(runId + "/"));
     }
 
     // Private helper methods for internal operations
 
-    private void addPopulationParameter(ProcessBuilder processBuilder, Integer populationSize) {
+    private void addPopulationParameter(Generator.GeneratorOptions options, Integer populationSize) {
         if (populationSize != null) {
-            processBuilder.command().add("-p");
-            processBuilder.command().add(String.valueOf(populationSize));
+            options.population = populationSize;
         }
     }
 
-    private void addGenderParameter(ProcessBuilder processBuilder, String gender) {
+    private void addGenderParameter(Generator.GeneratorOptions options, String gender) {
         if (gender != null && (gender.equalsIgnoreCase("M") || gender.equalsIgnoreCase("F"))) {
-            processBuilder.command().add("-g");
-            processBuilder.command().add(gender.toUpperCase());
+            options.gender = gender.toUpperCase();
         }
     }
 
-    private void addAgeParameter(ProcessBuilder processBuilder, Integer minAge, Integer maxAge) {
+    private void addAgeParameter(Generator.GeneratorOptions options, Integer minAge, Integer maxAge) {
         if (minAge != null && maxAge != null) {
-            processBuilder.command().add("-a");
-            processBuilder.command().add(minAge + "-" + maxAge);
+            options.ageSpecified = true;
+            options.minAge = minAge;
+            options.maxAge = maxAge;
         }
     }
 
-    private void addLocationParameter(ProcessBuilder processBuilder, String state, String city) {
+    private void addLocationParameter(Generator.GeneratorOptions options, String state, String city) {
         if (state != null && !state.isEmpty()) {
-            processBuilder.command().add(state);
+            options.state = state;
             if (city != null && !city.isEmpty()) {
-                processBuilder.command().add(city);
+                options.city = city;
             }
         }
     }
 
-    private String getLatestRunIDFolder() {
-        File outputDir = new File(SYNTHEA_OUTPUT_DIRECTORY + DATAFORMAT_CSV);
-        File[] directories = outputDir.listFiles(File::isDirectory);
-
-        if (directories == null || directories.length == 0) {
-            throw new RuntimeException("No output directory found in: " + outputDir.getAbsolutePath());
+    private void addSeedParameter(Generator.GeneratorOptions options, Run run) {
+        if (run.getSeed() != null) {
+            options.seed = run.getSeed();
+            options.clinicianSeed = run.getSeed();
+            options.referenceTime = getReferenceTime(run);
+            options.endTime = options.referenceTime;
         }
-
-        return Arrays.stream(directories)
-                .max(Comparator.comparingLong(File::lastModified))
-                .orElseThrow(() -> new RuntimeException("Could not find the latest folder."))
-                .getName();
     }
 
-    private File zipFolderIfNeeded(String runID, String format) throws IOException {
-        File zipFile = new File(SYNTHEA_OUTPUT_DIRECTORY + format + "/" + runID + "_" + format + ".zip");
-
-        if (zipFile.exists()) {
-            return zipFile;
-        }
-
-        return zipFolder(runID, format);
+    private static String archiveKey(String runID, RunArchive archive) {
+        return runID + "/" + archive.getETag();
     }
 
-    private File zipFolder(String runID, String format) throws IOException {
-        File generatedRunFolder = new File(SYNTHEA_OUTPUT_DIRECTORY + format + "/" + runID);
+    private CompletableFuture<Long> measureArchive(String runID, RunArchive archive) {
+        String key = archiveKey(runID, archive);
+        return archiveMeasurements.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> {
+            try {
+                long length = archive.writeTo(OutputStream.nullOutputStream());
+                recordArchiveLength(runID, archive, length);
+                return length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                archiveMeasurements.remove(k);
+            }
+        }, archiveMeasurer));
+    }
 
-        if (!generatedRunFolder.exists()) {
-            throw new FileNotFoundException("Folder with runID " + runID + " does not exist.");
+    private synchronized void recordArchiveLength(String runID, RunArchive archive, long length) {
+        if (archiveLengths.put(archiveKey(runID, archive), length) != null) {
+            return;
         }
+        File runFolder = new File(outputDirectory, runID);
+        if (!runFolder.isDirectory()) {
+            // the run was deleted while its archive was written
+            return;
+        }
+        Properties lengths = readArchiveLengths(runID);
+        lengths.setProperty(archive.getETag(), Long.toString(length));
+        try (Writer writer = Files.newBufferedWriter(runFolder.toPath().resolve(ARCHIVE_LENGTHS_FILE))) {
+            lengths.store(writer, null);
+        } catch (IOException e) {
+            // the length is measured again after a restart
+        }
+    }
 
-        File zippedRunFolder = new File(SYNTHEA_OUTPUT_DIRECTORY + format + "/" + runID + "_" + format + ".zip");
-
-        try (FileOutputStream fos = new FileOutputStream(zippedRunFolder);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-
-            for (File file : Objects.requireNonNull(generatedRunFolder.listFiles())) {
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    zos.putNextEntry(new ZipEntry(file.getName()));
-                    fis.transferTo(zos);
-                    zos.closeEntry();
-                }
+    private Properties readArchiveLengths(String runID) {
+        Properties lengths = new Properties();
+        Path file = Path.of(outputDirectory, runID, ARCHIVE_LENGTHS_FILE);
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                lengths.load(reader);
+            } catch (IOException e) {
+                // an unreadable file is treated like a missing one
             }
         }
+        return lengths;
+    }
 
-        deleteFolder(generatedRunFolder);
-
-        return zippedRunFolder;
+    private File getRunFolder(String runID, String format) throws FileNotFoundException {
+        try {
+            // only accept real run IDs, they end up in a file system path
+            UUID.fromString(runID);
+        } catch (IllegalArgumentException e) {
+            throw new FileNotFoundException("Invalid runID " + runID);
+        }
+        return new File(new File(outputDirectory, runID), format);
     }
 
     private void deleteFolder(File folder) {
@@ -193,7 +478,11 @@ public class SyntheaService {
             File[] files = folder.listFiles();
             if (files != null) {
                 for (File file : files) {
-                    file.delete();
+                    if (file.isDirectory()) {
+                        deleteFolder(file);
+                    } else {
+                        file.delete();
+                    }
                 }
             }
             folder.delete();
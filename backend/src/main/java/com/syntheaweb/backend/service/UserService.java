@@ -25,7 +25,7 @@ public class UserService implements UserDetailsService {
     private final JwtUtil jwtUtil;
     private final BCryptPasswordEncoder passwordEncoder;
     private final RunRepository runRepository;
-    private final SyntheaService syntheaService;
+    private final RunCache runCache;
 
 
     /**
@@ -35,14 +35,14 @@ public class UserService implements UserDetailsService {
      * @param jwtUtil          Utility class for handling JWT operations.
      * @param passwordEncoder  Utility for encrypting user passwords.
      * @param runRepository    Repository for managing generated runs.
-     * @param syntheaService   Service responsible for handling Synthea operations.
+     * @param runCache         Cache that decides when the output of deleted runs can be removed.
      */
-    public UserService(UserRepository userRepository, JwtUtil jwtUtil, BCryptPasswordEncoder passwordEncoder, RunRepository runRepository, SyntheaService syntheaService) {
+    public UserService(UserRepository userRepository, JwtUtil jwtUtil, BCryptPasswordEncoder passwordEncoder, RunRepository runRepository, RunCache runCache) {
         this.userRepository = userRepository;
         this.jwtUtil = jwtUtil;
         this.passwordEncoder = passwordEncoder;
         this.runRepository = runRepository;
-        this.syntheaService = syntheaService;
+        this.runCache = runCache;
     }
 
     /**
@@ -170,14 +170,16 @@ public class UserService implements UserDetailsService {
 
         User user = getUserById(id);
 
-        // Delete all files associated with the user's runs
-        runRepository.findByUser(user).forEach(run -> {
-            syntheaService.deleteRunFiles(run.getRunId());
-        });
+        List<String> outputIds = runRepository.findByUser(user).stream()
+                .map(run -> run.getOutputId() != null ? run.getOutputId() : run.getRunId())
+                .toList();
 
         // Remove all runs before deleting the user
         runRepository.deleteByUser(user);
         userRepository.deleteById(id);
+
+        // Delete the files of the user's runs, unless they are cached or reused by other runs
+        outputIds.forEach(runCache::release);
     }
 
     /**
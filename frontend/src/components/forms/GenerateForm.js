@@ -3,6 +3,71 @@ import * as mui from "@mui/material";
 import demographicsAustria from "../../data/demographicsAustria";
 import { ArrowLeft, InfoOutlined } from "@mui/icons-material";
 
+/**
+ * formatBytes
+ * Formats a number of bytes with the largest fitting unit.
+ */
+const formatBytes = (bytes) => {
+  const units = ["B", "KB", "MB", "GB"];
+  let value = bytes;
+  let unit = 0;
+  while (value >= 1024 && unit < units.length - 1) {
+    value /= 1024;
+    unit++;
+  }
+  return `${value.toFixed(unit === 0 ? 0 : 1)} ${units[unit]}`;
+};
+
+/**
+ * RunProgress
+ * Shows the live progress of a running generation.
+ */
+function RunProgress({ progress }) {
+  const {
+    status,
+    populationSize,
+    alivePatients,
+    deadPatients,
+    patientsPerSecond,
+    etaSeconds,
+    exporterBytes,
+  } = progress;
+
+  if (status === "QUEUED") {
+    return (
+      <mui.Typography variant="body2" sx={{ mt: 2 }}>
+        Waiting for a free generator...
+      </mui.Typography>
+    );
+  }
+
+  const percent = populationSize
+    ? Math.min(100, (alivePatients / populationSize) * 100)
+    : 0;
+
+  return (
+    <mui.Box sx={{ width: "100%", mt: 2 }}>
+      <mui.LinearProgress variant="determinate" value={percent} />
+      <mui.Typography variant="body2" sx={{ mt: 1 }}>
+        {alivePatients} / {populationSize} patients ({deadPatients} deceased)
+        {" - "}
+        {patientsPerSecond.toFixed(1)} patients/s
+        {etaSeconds != null && ` - about ${etaSeconds} s left`}
+      </mui.Typography>
+      {exporterBytes && Object.keys(exporterBytes).length > 0 && (
+        <mui.Typography variant="body2">
+          {Object.entries(exporterBytes)
+            .map(
+              ([exporter, bytes]) =>
+                `${exporter.toUpperCase()}: ${formatBytes(bytes)}`
+            )
+            .join(", ")}
+        </mui.Typography>
+      )}
+    </mui.Box>
+  );
+}
+
 function GenerateForm({
   generateOptions,
   onInputChange,
@@ -13,11 +78,12 @@ function GenerateForm({
   loading,
   downloading,
   generationTime,
+  progress,
   isAgeInvalid,
   isPopulationSizeInvalid,
   isFormInvalid,
 }) {
-  const { populationSize, gender, minAge, maxAge, state, city } =
+  const { populationSize, gender, minAge, maxAge, state, city, seed } =
     generateOptions;
 
   return (
@@ -163,6 +229,20 @@ function GenerateForm({
             </mui.Box>
           )}
 
+          <mui.Box sx={{ display: "flex", alignItems: "center", gap: 1 }}>
+            <mui.TextField
+              label="Seed (optional)"
+              type="number"
+              name="seed"
+              value={seed}
+              onChange={onInputChange}
+              fullWidth
+            />
+            <mui.Tooltip title="Runs with the same seed and settings produce the same patients. Repeated runs are served instantly.">
+              <InfoOutlined color="info" />
+            </mui.Tooltip>
+          </mui.Box>
+
           <mui.Box
             sx={{
               display: "flex",
@@ -192,6 +272,7 @@ function GenerateForm({
                 "Generate"
               )}
             </mui.Button>
+            {loading && progress && <RunProgress progress={progress} />}
           </mui.Box>
         </mui.Box>
       ) : (
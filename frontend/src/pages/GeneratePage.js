@@ -1,14 +1,17 @@
-import React, { useState, useContext } from "react";
+import React, { useState } from "react";
 import GenerateForm from "../components/forms/GenerateForm";
 import * as mui from "@mui/material";
-import { saveRun } from "../services/runs/generatedRunService";
+import {
+  getRunStatus,
+  streamRunProgress,
+} from "../services/runs/generatedRunService";
 import axios from "axios";
-import { AuthContext } from "../AuthContext";
 import { useSnackbar } from "../components/SnackbarProvider";
 import Layout from "../components/layout/Layout";
 
+const STATUS_POLL_INTERVAL = 2000;
+
 function GeneratePage() {
-  const { user } = useContext(AuthContext);
   const { showSnackbar } = useSnackbar();
 
   const [generateOptions, setGenerateOptions] = useState({
@@ -18,12 +21,14 @@ function GeneratePage() {
     maxAge: "",
     state: "",
     city: "",
+    seed: "",
   });
 
   const [runID, setRunID] = useState(null);
   const [loading, setLoading] = useState(false);
   const [downloading, setDownloading] = useState(false);
   const [generationTime, setGenerationTime] = useState(null);
+  const [progress, setProgress] = useState(null);
 
   /**
    * handleInput
@@ -71,13 +76,42 @@ function GeneratePage() {
    */
   const isFormInvalid = isAgeInvalid || isPopulationSizeInvalid;
 
+  /**
+   * waitForRun
+   * Follows the live progress of a queued run until it has finished.
+   * Falls back to polling its status if the progress stream is not available.
+   */
+  const waitForRun = async (queuedRunID) => {
+    try {
+      const { status } = await streamRunProgress(queuedRunID, setProgress);
+      if (
+        status === "COMPLETED" ||
+        status === "FAILED" ||
+        status === "CANCELLED"
+      ) {
+        return status;
+      }
+    } catch (error) {
+      // the stream was interrupted, poll instead
+    }
+
+    for (;;) {
+      const { status } = await getRunStatus(queuedRunID);
+      if (status === "COMPLETED" || status === "FAILED" || status === "CANCELLED") {
+        return status;
+      }
+      await new Promise((resolve) => setTimeout(resolve, STATUS_POLL_INTERVAL));
+    }
+  };
+
   /**
    * handleGenerate
-   * Makes the API call to generate synthetic data.
+   * Makes the API call to queue the generation and waits until it is done.
    */
   const handleGenerate = async (event) => {
     event.preventDefault();
     setLoading(true);
+    setProgress(null);
 
     const token = localStorage.getItem("token");
     const startTime = Date.now();
@@ -93,6 +127,7 @@ function GeneratePage() {
           maxAge: generateOptions.maxAge || null,
           state: generateOptions.state || null,
           city: generateOptions.city || null,
+          seed: generateOptions.seed !== "" ? generateOptions.seed : null,
         },
         {
           headers: { Authorization: `Bearer ${token}` },
@@ -103,18 +138,17 @@ function GeneratePage() {
         throw new Error("No Run ID returned from the server.");
       }
 
+      const status = await waitForRun(response.data.runID);
+      if (status !== "COMPLETED") {
+        throw new Error(`Run ${status.toLowerCase()}.`);
+      }
+
       setRunID(response.data.runID);
 
       const endTime = Date.now();
       const elapsedTime = ((endTime - startTime) / 1000).toFixed(2);
       setGenerationTime(elapsedTime);
 
-      await saveRun({
-        runId: response.data.runID,
-        userId: user?.id,
-        ...generateOptions,
-      });
-
       showSnackbar(
         "Synthetic data generated and saved successfully!",
         "success"
@@ -190,6 +224,7 @@ function GeneratePage() {
         loading={loading}
         downloading={downloading}
         generationTime={generationTime}
+        progress={progress}
         isAgeInvalid={isAgeInvalid}
         isPopulationSizeInvalid={isPopulationSizeInvalid}
         isFormInvalid={isFormInvalid}
@@ -77,3 +77,100 @@ export const deleteRun = async (runId) => {
     throw error.response?.data || "Error while deleting the run.";
   }
 };
+
+/**
+ * getRunStatus
+ * Fetches the status and progress of a queued or running run.
+ *
+ * @param {string} runId - Unique identifier of the run.
+ * @returns {Promise<Object>} - The status, population size and number of generated patients.
+ * @throws an error if the request fails.
+ */
+export const getRunStatus = async (runId) => {
+  try {
+    const token = localStorage.getItem("token");
+    const response = await axios.get(`${API_URL}/${runId}/status`, {
+      headers: { Authorization: `Bearer ${token}` },
+    });
+    return response.data;
+  } catch (error) {
+    throw error.response?.data || "Error while loading the run status.";
+  }
+};
+
+/**
+ * cancelRun
+ * Cancels a queued or running run.
+ *
+ * @param {string} runId - Unique identifier of the run to be cancelled.
+ * @throws an error if the request fails.
+ */
+export const cancelRun = async (runId) => {
+  try {
+    const token = localStorage.getItem("token");
+    await axios.post(`${API_URL}/${runId}/cancel`, null, {
+      headers: { Authorization: `Bearer ${token}` },
+    });
+  } catch (error) {
+    throw error.response?.data || "Error while cancelling the run.";
+  }
+};
+
+/**
+ * streamRunProgress
+ * Follows the live progress of a run over Server-Sent Events.
+ * EventSource cannot send the Authorization header, so the stream is read with fetch.
+ *
+ * @param {string} runId - Unique identifier of the run.
+ * @param {Function} onProgress - Called with every progress update.
+ * @returns {Promise<Object>} - The last progress update, sent when the run has finished.
+ * @throws an error if the stream cannot be opened or ends before the run has finished.
+ */
+export const streamRunProgress = async (runId, onProgress) => {
+  const token = localStorage.getItem("token");
+  const response = await fetch(`${API_URL}/${runId}/progress`, {
+    headers: {
+      Authorization: `Bearer ${token}`,
+      Accept: "text/event-stream",
+    },
+  });
+
+  if (!response.ok || !response.body) {
+    throw new Error("Error while following the run progress.");
+  }
+
+  const reader = response.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = "";
+  let last = null;
+
+  for (;;) {
+    const { done, value } = await reader.read();
+    if (done) {
+      break;
+    }
+    buffer += decoder.decode(value, { stream: true });
+
+    // events are separated by an empty line, only their data lines are needed
+    let end;
+    while ((end = buffer.indexOf("\n\n")) !== -1) {
+      const data = buffer
+        .slice(0, end)
+        .split("\n")
+        .filter((line) => line.startsWith("data:"))
+        .map((line) => line.slice(5))
+        .join("\n");
+      buffer = buffer.slice(end + 2);
+
+      if (data) {
+        last = JSON.parse(data);
+        onProgress(last);
+      }
+    }
+  }
+
+  if (!last) {
+    throw new Error("Error while following the run progress.");
+  }
+  return last;
+};
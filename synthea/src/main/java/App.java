@@ -6,8 +6,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.TimeZone;
 
@@ -22,6 +24,7 @@ import org.mitre.synthea.helpers.Utilities;
  * This Java source file was generated by the Gradle 'init' task.
  */
 public class App {
+  private static final String SHARD_FORMAT = "Shard format: shardStart-shardEnd. E.g. 0-500.";
 
   /**
    * Display usage info - what are the command line args, examples, etc.
@@ -41,6 +44,8 @@ public class App {
     System.out.println("         [-t updateTimePeriodInDays]");
     System.out.println("         [-f fixedRecordPath]");
     System.out.println("         [-k keepMatchingPatientsPath]");
+    System.out.println("         [-x shardStart-shardEnd]");
+    System.out.println("         [-ms shardFolder1:shardFolder2:...]");
     System.out.println("         [--config*=value]");
     System.out.println("          * any setting from src/main/resources/synthea.properties");
     System.out.println("Examples:");
@@ -53,6 +58,8 @@ public class App {
     System.out.println("run_synthea -g M -a 60-65");
     System.out.println("run_synthea -p 10 --exporter.fhir.export=true");
     System.out.println("run_synthea --exporter.baseDirectory=\"./output_tx/\" Texas");
+    System.out.println("run_synthea -s 42 -p 1000 -x 0-500 --exporter.baseDirectory=./shard_0");
+    System.out.println("run_synthea -s 42 -p 1000 -ms ./shard_0:./shard_1");
   }
 
   /**
@@ -126,6 +133,26 @@ public class App {
             } else {
               throw new Exception("Age format: minAge-maxAge. E.g. 60-65.");
             }
+          } else if (currArg.equalsIgnoreCase("-x")) {
+            String value = argsQ.poll();
+            String[] values = value.split("-");
+            if (values.length != 2) {
+              throw new Exception(SHARD_FORMAT);
+            }
+            options.shardStart = Integer.parseInt(values[0]);
+            options.shardEnd = Integer.parseInt(values[1]);
+          } else if (currArg.equalsIgnoreCase("-ms")) {
+            String value = argsQ.poll();
+            List<File> shardFolders = new ArrayList<>();
+            for (String folder : value.split(File.pathSeparator)) {
+              File shardFolder = new File(folder);
+              if (!shardFolder.isDirectory()) {
+                throw new FileNotFoundException(String.format(
+                    "Specified shard folder (%s) is not a directory", folder));
+              }
+              shardFolders.add(shardFolder);
+            }
+            options.shardFolders = shardFolders;
           } else if (currArg.equalsIgnoreCase("-m")) {
             String value = argsQ.poll();
             String[] values = value.split(File.pathSeparator);
@@ -270,6 +297,17 @@ public class App {
       resetOptionsFromConfig(options, exportOptions);
     }
 
+    if (validArgs && options.shardEnd >= 0) {
+      // checked once the population is final, it may be given after the shard or by the config
+      try {
+        validateShard(options);
+      } catch (Exception e) {
+        e.printStackTrace();
+        usage();
+        validArgs = false;
+      }
+    }
+
     if (validArgs && validateConfig(options, overrideFutureDateError)) {
       Generator generator = new Generator(options, exportOptions);
       generator.run();
@@ -285,12 +323,21 @@ public class App {
     // file during options initialization need to be reset here.
     options.population = Config.getAsInteger("generate.default_population", 1);
     options.threadPoolSize = Config.getAsInteger("generate.thread_pool_size", -1);
+    options.executor = Config.get("generate.executor", "fixed");
 
     exportOptions.yearsOfHistory = Config.getAsInteger("exporter.years_of_history", 10);
     exportOptions.terminologyService = !Config.get("generate.terminology_service_url", "")
             .isEmpty();
   }
 
+  private static void validateShard(Generator.GeneratorOptions options) throws Exception {
+    if (options.shardStart < 0 || options.shardStart >= options.shardEnd
+        || options.shardEnd > options.population) {
+      throw new Exception(SHARD_FORMAT + " The shard must be a non-empty range of the "
+          + options.population + " people of the population.");
+    }
+  }
+
   private static boolean validateConfig(Generator.GeneratorOptions options,
           boolean overrideFutureDateError) {
     boolean valid = true;
@@ -7,11 +7,13 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -19,6 +21,7 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -29,8 +32,8 @@ import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.mitre.synthea.editors.GrowthDataErrorsEditor;
 import org.mitre.synthea.export.CDWExporter;
 import org.mitre.synthea.export.Exporter;
+import org.mitre.synthea.export.ShardMerger;
 import org.mitre.synthea.helpers.Config;
-import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.identity.Entity;
@@ -43,6 +46,7 @@ import org.mitre.synthea.modules.LifecycleModule;
 import org.mitre.synthea.world.agents.PayerManager;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.agents.Provider;
+import org.mitre.synthea.world.agents.RunUtilization;
 import org.mitre.synthea.world.concepts.Costs;
 import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
 import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
@@ -60,16 +64,21 @@ public class Generator {
    * Unique ID for this instance of the Generator.
    * Even if the same settings are used multiple times, this ID should be unique.
    */
-  public static final UUID id = UUID.randomUUID();
+  public final UUID id;
   public GeneratorOptions options;
-  private DefaultRandomNumberGenerator populationRandom;
-  private DefaultRandomNumberGenerator clinicianRandom;
+  private RandomNumberGenerator populationRandom;
+  private RandomNumberGenerator clinicianRandom;
   public long timestep;
+  // only process a module when its current state can make progress, see updatePerson
+  public boolean eventScheduler;
   public long stop;
   public long referenceTime;
   public Map<String, AtomicInteger> stats;
   public Location location;
   public AtomicInteger totalGeneratedPopulation;
+  // the alive and dead entries of stats, so recording a patient does not lock the map
+  private AtomicInteger aliveCount;
+  private AtomicInteger deadCount;
   private String logLevel;
   private boolean onlyAlivePatients;
   private boolean onlyDeadPatients;
@@ -80,11 +89,8 @@ public class Generator {
   private Exporter.ExporterRuntimeOptions exporterRuntimeOptions;
   public static EntityManager entityManager;
   public final int threadPoolSize;
-
-  // added for SYNTHEAWEB
-  public static String getRunID() {
-    return id.toString();
-  }
+  // limits the persons simulated at once when the executor runs more tasks than cores
+  private Semaphore simulationPermits;
 
   /**
    * Used only for testing and debugging. Populate this field to keep track of all
@@ -113,6 +119,12 @@ public class Generator {
   public static class GeneratorOptions {
     public int population = Config.getAsInteger("generate.default_population", 1);
     public int threadPoolSize = Config.getAsInteger("generate.thread_pool_size", -1);
+    /**
+     * Executor of the per-person tasks: "fixed" for a pool of threadPoolSize threads,
+     * "virtual" for a virtual thread per person where threadPoolSize persons are simulated
+     * at once, so a thread blocked on writing a record does not hold back the simulation.
+     */
+    public String executor = Config.get("generate.executor", "fixed");
     /**
      * Reference Time when to start Synthea. By default equal to the current system
      * time.
@@ -162,6 +174,37 @@ public class Generator {
     public int daysToTravelForward = -1;
     /** Path to a module defining which patients should be kept and exported. */
     public Path keepPatientsModulePath;
+    /**
+     * Previously loaded Location for the given state and city. When Synthea is embedded
+     * in a long-running process this avoids reloading the geography for every run.
+     */
+    public Location location;
+    /**
+     * ID of the run, chosen by the caller. If set, all exporters write into
+     * a folder of this name below the base directory.
+     */
+    public UUID runId;
+    /**
+     * First index (inclusive) of the persons this run generates, when the population
+     * is split into shards that run on several processes or nodes. Every shard draws
+     * the seeds of the whole population, so person i gets the same seed in any shard.
+     */
+    public int shardStart = 0;
+    /** Last index (exclusive) of the persons this run generates, -1 for the population. */
+    public int shardEnd = -1;
+    /**
+     * Output folders of the shards to merge into the output of this run. A merging run
+     * generates no persons itself, it combines the records and utilization of the shards.
+     */
+    public List<File> shardFolders;
+
+    /**
+     * Whether this run generates only a shard of the population.
+     * @return true if a shard range is set.
+     */
+    public boolean isShard() {
+      return shardFolders == null && (shardStart > 0 || shardEnd >= 0);
+    }
   }
 
   /**
@@ -214,8 +257,12 @@ public class Generator {
    * @param ero Desired exporter options
    */
   public Generator(GeneratorOptions o, Exporter.ExporterRuntimeOptions ero) {
+    id = o.runId != null ? o.runId : UUID.randomUUID();
     options = o;
     exporterRuntimeOptions = ero;
+    if (o.runId != null) {
+      exporterRuntimeOptions.setRunId(o.runId.toString());
+    }
     if (options.updatedPopulationSnapshotPath != null) {
       exporterRuntimeOptions.deferExports = true;
       internalStore = Collections.synchronizedList(new LinkedList<>());
@@ -242,13 +289,18 @@ public class Generator {
     Exporter.loadCustomExporters();
     Exporter.loadCodeMappers();
 
-    this.populationRandom = new DefaultRandomNumberGenerator(options.seed);
-    this.clinicianRandom = new DefaultRandomNumberGenerator(options.clinicianSeed);
+    this.populationRandom = RandomNumberGenerator.create(options.seed);
+    this.clinicianRandom = RandomNumberGenerator.create(options.clinicianSeed);
     this.timestep = Long.parseLong(Config.get("generate.timestep"));
+    this.eventScheduler = "event".equalsIgnoreCase(Config.get("generate.scheduler", "timestep"));
     this.stop = options.endTime;
     this.referenceTime = options.referenceTime;
 
-    this.location = new Location(options.state, options.city);
+    if (options.location != null) {
+      this.location = options.location;
+    } else {
+      this.location = new Location(options.state, options.city);
+    }
 
     this.logLevel = Config.get("generate.log_patients.detail", "simple");
 
@@ -279,8 +331,10 @@ public class Generator {
     this.stats = Collections.synchronizedMap(new HashMap<String, AtomicInteger>());
     this.modulePredicate = getModulePredicate();
 
-    stats.put("alive", new AtomicInteger(0));
-    stats.put("dead", new AtomicInteger(0));
+    this.aliveCount = new AtomicInteger(0);
+    this.deadCount = new AtomicInteger(0);
+    stats.put("alive", aliveCount);
+    stats.put("dead", deadCount);
 
     // initialize hospitals
     Provider.loadProviders(location, this.clinicianRandom);
@@ -345,6 +399,11 @@ public class Generator {
    * Generate the population, using the currently set configuration settings.
    */
   public void run() {
+    // a run with an ID counts the utilization of its population on all of its threads
+    RunUtilization.wrap(exporterRuntimeOptions.getUtilization(), this::generatePopulation).run();
+  }
+
+  private void generatePopulation() {
 
     // Import the fixed patient demographics records file, if a file path is given.
     if (this.options.fixedRecordPath != null) {
@@ -367,7 +426,7 @@ public class Generator {
 
     }
 
-    ExecutorService threadPool = Executors.newFixedThreadPool(threadPoolSize);
+    ExecutorService threadPool = newExecutor();
 
     if (options.initialPopulationSnapshotPath != null) {
       FileInputStream fis = null;
@@ -389,15 +448,27 @@ public class Generator {
         for (int i = 0; i < initialPopulation.size(); i++) {
           final int index = i;
           final Person p = initialPopulation.get(i);
-          threadPool.submit(() -> updateRecordExportPerson(p, index));
+          threadPool.submit(RunUtilization.wrap(exporterRuntimeOptions.getUtilization(),
+              () -> updateRecordExportPerson(p, index)));
         }
       }
     } else if (this.options.singlePersonSeed == null) {
+      int shardEnd = options.shardEnd < 0 ? options.population : options.shardEnd;
+      if (options.shardFolders != null) {
+        // a merging run starts from the utilization of the shards and generates nobody
+        ShardMerger.loadStates(options.shardFolders);
+        shardEnd = 0;
+      }
       // Generate patients up to the specified population size.
+      // The seeds of all persons are drawn, even if only a shard is generated, so every
+      // person gets the same seed and the random state at the end is the same.
       for (int i = 0; i < this.options.population; i++) {
         final int index = i;
         final long seed = this.populationRandom.randLong();
-        threadPool.submit(() -> generatePerson(index, seed));
+        if (i >= options.shardStart && i < shardEnd) {
+          threadPool.submit(RunUtilization.wrap(exporterRuntimeOptions.getUtilization(),
+              () -> generatePerson(index, seed)));
+        }
       }
     } else {
       // we have a single fixed seed to generate, don't bother with threadpool
@@ -412,6 +483,12 @@ public class Generator {
     } catch (InterruptedException e) {
       System.out.println("Generator interrupted. Attempting to shut down associated thread pool.");
       threadPool.shutdownNow();
+      awaitTermination(threadPool);
+      // the population is incomplete, so only close what was written and let the caller
+      // see the interrupt, once no thread of this run writes into its output anymore
+      Exporter.closeInterruptedRun(exporterRuntimeOptions);
+      Thread.currentThread().interrupt();
+      return;
     }
 
     // Save a snapshot of the generated population using Java Serialization
@@ -428,6 +505,11 @@ public class Generator {
       }
     }
     Exporter.runPostCompletionExports(this, exporterRuntimeOptions);
+    if (options.isShard()) {
+      ShardMerger.exportState(exporterRuntimeOptions);
+    } else if (options.shardFolders != null) {
+      ShardMerger.mergeRecords(options.shardFolders, exporterRuntimeOptions);
+    }
 
     System.out.printf("Records: total=%d, alive=%d, dead=%d\n", totalGeneratedPopulation.get(),
         stats.get("alive").get(), stats.get("dead").get());
@@ -435,6 +517,65 @@ public class Generator {
     System.out.printf("Clinician RNG=%d\n", this.clinicianRandom.getCount());
   }
 
+  /**
+   * Wait until the tasks of a pool that was shut down have stopped, even if the current
+   * thread is interrupted again while it waits.
+   */
+  private static void awaitTermination(ExecutorService threadPool) {
+    while (!threadPool.isTerminated()) {
+      try {
+        if (!threadPool.awaitTermination(30, TimeUnit.SECONDS)) {
+          System.out.println("Waiting for threads to stop... " + threadPool);
+        }
+      } catch (InterruptedException e) {
+        // already stopping, keep waiting
+      }
+    }
+  }
+
+  /**
+   * Create the executor of the per-person tasks for the configured executor type.
+   */
+  private ExecutorService newExecutor() {
+    if (!"virtual".equalsIgnoreCase(options.executor)) {
+      return Executors.newFixedThreadPool(threadPoolSize);
+    }
+    simulationPermits = new Semaphore(threadPoolSize);
+    try {
+      // virtual threads need Java 21, look the factory up so older runtimes still work
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // twice as many platform threads as permits, so exports overlap the simulation
+      System.out.println("Virtual threads are not supported by this Java runtime, "
+          + "using a pool of " + (2 * threadPoolSize) + " threads.");
+      return Executors.newFixedThreadPool(2 * threadPoolSize);
+    }
+  }
+
+  /**
+   * Wait until another person may be simulated, if the number of persons simulated
+   * at once is limited.
+   * @return false if the thread was interrupted while waiting.
+   */
+  private boolean acquireSimulationPermit() {
+    if (simulationPermits != null) {
+      try {
+        simulationPermits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void releaseSimulationPermit() {
+    if (simulationPermits != null) {
+      simulationPermits.release();
+    }
+  }
+
   /**
    * Generate a completely random Person. The returned person will be alive at the
    * end of the
@@ -494,67 +635,77 @@ public class Generator {
 
       do {
         tryNumber++;
-        person = createPerson(personSeed, demoAttributes);
-        long finishTime = person.lastUpdated + timestep;
-
-        boolean isAlive = person.alive(finishTime);
-
-        CriteriaCheck check = checkCriteria(person, finishTime, index, isAlive);
-        patientMeetsCriteria = check.meetsCriteria();
-
-        if (!patientMeetsCriteria) {
-          if (this.maxAttemptsToKeepPatient != null
-              && tryNumber >= this.maxAttemptsToKeepPatient) {
-            // we've tried and failed to produce a patient that meets the criteria
-            // throw an exception to halt processing in this slot
-            String msg = "Failed to produce a matching patient after "
-                + tryNumber + " attempts. "
-                + "Ensure that it is possible for all "
-                + "requested demographics to meet the criteria. "
-                + "(e.g., make sure there is no age restriction "
-                + "that conflicts with a requested condition, "
-                + "such as limiting age to 0-18 and requiring "
-                + "all patients have a condition that only onsets after 55.) "
-                + "If you are confident that the constraints"
-                + " are possible to satisfy but rare, "
-                + "consider increasing the value in config setting "
-                + "`generate.max_attempts_to_keep_patient`";
-            throw new RuntimeException(msg);
+        if (!acquireSimulationPermit()) {
+          // the run is shutting down
+          return person;
+        }
+        long finishTime;
+        try {
+          person = createPerson(personSeed, demoAttributes);
+          person.populationIndex = index;
+          finishTime = person.lastUpdated + timestep;
+
+          boolean isAlive = person.alive(finishTime);
+
+          CriteriaCheck check = checkCriteria(person, finishTime, index, isAlive);
+          patientMeetsCriteria = check.meetsCriteria();
+
+          if (!patientMeetsCriteria) {
+            if (this.maxAttemptsToKeepPatient != null
+                && tryNumber >= this.maxAttemptsToKeepPatient) {
+              // we've tried and failed to produce a patient that meets the criteria
+              // throw an exception to halt processing in this slot
+              String msg = "Failed to produce a matching patient after "
+                  + tryNumber + " attempts. "
+                  + "Ensure that it is possible for all "
+                  + "requested demographics to meet the criteria. "
+                  + "(e.g., make sure there is no age restriction "
+                  + "that conflicts with a requested condition, "
+                  + "such as limiting age to 0-18 and requiring "
+                  + "all patients have a condition that only onsets after 55.) "
+                  + "If you are confident that the constraints"
+                  + " are possible to satisfy but rare, "
+                  + "consider increasing the value in config setting "
+                  + "`generate.max_attempts_to_keep_patient`";
+              throw new RuntimeException(msg);
+            }
+
+            // this should be false for any clauses in checkCriteria below
+            // when we want to export this patient, but keep trying to produce one meeting
+            // criteria
+            if (!check.exportAnyway()) {
+              // rotate the seed so the next attempt gets a consistent but different one
+              personSeed = person.randLong();
+              continue;
+              // skip the other stuff if the patient doesn't meet our goals
+              // note that this skips ahead to the while check
+              // also note, this may run forever if the requested criteria are impossible to
+              // meet
+            }
           }
 
-          // this should be false for any clauses in checkCriteria below
-          // when we want to export this patient, but keep trying to produce one meeting
-          // criteria
-          if (!check.exportAnyway()) {
+          recordPerson(person, index);
+
+          if (!isAlive) {
             // rotate the seed so the next attempt gets a consistent but different one
             personSeed = person.randLong();
-            continue;
-            // skip the other stuff if the patient doesn't meet our goals
-            // note that this skips ahead to the while check
-            // also note, this may run forever if the requested criteria are impossible to
-            // meet
-          }
-        }
 
-        recordPerson(person, index);
-
-        if (!isAlive) {
-          // rotate the seed so the next attempt gets a consistent but different one
-          personSeed = person.randLong();
-
-          // if we've tried and failed > 10 times to generate someone over age 90
-          // and the options allow for ages as low as 85
-          // reduce the age to increase the likelihood of success
-          if (tryNumber > 10 && (int) person.attributes.get(TARGET_AGE) > 90
-              && (!options.ageSpecified || options.minAge <= 85)) {
-            // pick a new target age between 85 and 90
-            int newTargetAge = person.randInt(5) + 85;
-            // the final age bracket is 85-110, but our patients rarely break 100
-            // so reducing a target age to 85-90 shouldn't affect numbers too much
-            demoAttributes.put(TARGET_AGE, newTargetAge);
-            long birthdate = birthdateFromTargetAge(newTargetAge, person);
-            demoAttributes.put(Person.BIRTHDATE, birthdate);
+            // if we've tried and failed > 10 times to generate someone over age 90
+            // and the options allow for ages as low as 85
+            // reduce the age to increase the likelihood of success
+            if (tryNumber > 10 && (int) person.attributes.get(TARGET_AGE) > 90
+                && (!options.ageSpecified || options.minAge <= 85)) {
+              // pick a new target age between 85 and 90
+              int newTargetAge = person.randInt(5) + 85;
+              // the final age bracket is 85-110, but our patients rarely break 100
+              // so reducing a target age to 85-90 shouldn't affect numbers too much
+              demoAttributes.put(TARGET_AGE, newTargetAge);
+              long birthdate = birthdateFromTargetAge(newTargetAge, person);
+              demoAttributes.put(Person.BIRTHDATE, birthdate);
+            }
           }
+        } finally {
+          releaseSimulationPermit();
         }
 
         // TODO - export is DESTRUCTIVE when it filters out data
@@ -709,6 +860,9 @@ public class Generator {
     HealthInsuranceModule healthInsuranceModule = new HealthInsuranceModule();
     EncounterModule encounterModule = new EncounterModule();
 
+    // with the event scheduler, the time before which each module cannot make progress
+    Map<Module, Long> wakeUpTimes = eventScheduler ? new IdentityHashMap<>() : null;
+
     long time = person.lastUpdated;
     while (person.alive(time) && time < stop) {
 
@@ -735,12 +889,22 @@ public class Generator {
       // Process encounters.
       encounterModule.process(person, time);
 
+      // the modules are always processed in the same order, since the order
+      // determines which random numbers each module draws
       Iterator<Module> iter = person.currentModules.iterator();
       while (iter.hasNext()) {
         Module module = iter.next();
 
+        if (wakeUpTimes != null && person.alive(time)) {
+          Long wakeUpTime = wakeUpTimes.get(module);
+          if (wakeUpTime != null && wakeUpTime > time) {
+            continue; // the module would not change anything until then
+          }
+        }
         if (module.process(person, time)) {
           iter.remove(); // this module has completed/terminated.
+        } else if (wakeUpTimes != null) {
+          wakeUpTimes.put(module, module.nextEventTime(person, time));
         }
       }
       encounterModule.endEncounterModuleEncounters(person, time);
@@ -976,9 +1140,7 @@ public class Generator {
       writeToConsole(person, index, finishTime, isAlive);
     }
 
-    String key = isAlive ? "alive" : "dead";
-
-    AtomicInteger count = stats.get(key);
+    AtomicInteger count = isAlive ? aliveCount : deadCount;
     count.incrementAndGet();
 
     totalGeneratedPopulation.incrementAndGet();
@@ -0,0 +1,87 @@
+package org.mitre.synthea.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.mitre.synthea.helpers.Config;
+
+/**
+ * Compares the throughput of the generator executors ("fixed" and "virtual") with the
+ * configured exporters. Every population size is generated once per executor, with the
+ * same seeds, into a temporary folder that is deleted afterwards.
+ *
+ * <p>Usage: gradle generatorBenchmark -Params="['1000,10000,100000', '--exporter.csv.export=true']"
+ * where the first argument is the list of population sizes and the others override
+ * configuration settings.</p>
+ */
+public class GeneratorBenchmark {
+  private static final String[] EXECUTORS = {"fixed", "virtual"};
+  private static final int WARM_UP_POPULATION = 100;
+
+  /**
+   * Run the benchmark.
+   * @param args Population sizes separated by commas, followed by --setting=value overrides.
+   * @throws IOException if the output folder cannot be created or deleted.
+   */
+  public static void main(String[] args) throws IOException {
+    String populations = args.length > 0 ? args[0] : "1000,10000,100000";
+    for (int i = 1; i < args.length; i++) {
+      String[] setting = args[i].substring(2).split("=", 2);
+      Config.set(setting[0], setting[1]);
+    }
+    Config.set("generate.log_patients.detail", "none");
+    File output = Files.createTempDirectory("synthea-benchmark").toFile();
+    Config.set("exporter.baseDirectory", output.getAbsolutePath());
+
+    try {
+      // let the JIT compile the simulation before anything is measured
+      for (String executor : EXECUTORS) {
+        generate(WARM_UP_POPULATION, executor);
+      }
+
+      List<String> results = new ArrayList<>();
+      for (String size : populations.split(",")) {
+        int population = Integer.parseInt(size.trim());
+        for (String executor : EXECUTORS) {
+          double seconds = generate(population, executor);
+          results.add(String.format(Locale.US, "%d,%s,%.1f,%.1f",
+              population, executor, seconds, population / seconds));
+        }
+      }
+
+      System.out.println("population,executor,seconds,persons_per_second");
+      results.forEach(System.out::println);
+    } finally {
+      FileUtils.deleteDirectory(output);
+    }
+  }
+
+  /**
+   * Generate a population and delete its output.
+   * @return the duration of the run in seconds.
+   */
+  private static double generate(int population, String executor) throws IOException {
+    Generator.GeneratorOptions options = new Generator.GeneratorOptions();
+    options.population = population;
+    options.seed = 1L;
+    options.clinicianSeed = 1L;
+    options.executor = executor;
+    // a folder per run, so every run gets its own CSV writers
+    options.runId = UUID.randomUUID();
+
+    Generator generator = new Generator(options);
+    long start = System.nanoTime();
+    generator.run();
+    double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+    FileUtils.deleteDirectory(
+        new File(Config.get("exporter.baseDirectory"), options.runId.toString()));
+    return seconds;
+  }
+}
@@ -11,6 +11,7 @@ import org.mitre.synthea.engine.Components.ExactWithUnit;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.PersonAttributes;
 import org.mitre.synthea.world.concepts.HealthRecord;
 import org.mitre.synthea.world.concepts.HealthRecord.CarePlan;
 import org.mitre.synthea.world.concepts.HealthRecord.Code;
@@ -35,6 +36,18 @@ public abstract class Logic implements Serializable {
    */
   public abstract boolean test(Person person, long time);
 
+  /**
+   * Get a time before which the logic cannot become true, when it is false at the given time.
+   * The default is the given time, meaning it may become true at any time.
+   *
+   * @param person Person to execute logic against
+   * @param time Timestamp at which the logic was false
+   * @return the given time, or a later time before which the logic stays false
+   */
+  public long earliestTimeTrue(Person person, long time) {
+    return time;
+  }
+
   /**
    * Find the most recent entry, of a specific type of HealthRecord.Entry
    * within the patient history. May return null.
@@ -82,6 +95,8 @@ public abstract class Logic implements Serializable {
    * (Ex, years for adults or months for young children)
    */
   public static class Age extends Logic {
+    private static final int BIRTHDATE_SLOT = PersonAttributes.slotOf(Person.BIRTHDATE);
+
     private Double quantity;
     private String unit;
     private String operator;
@@ -105,6 +120,20 @@ public abstract class Logic implements Serializable {
 
       return Utilities.compare(age, quantity, operator);
     }
+
+    @Override
+    public long earliestTimeTrue(Person person, long time) {
+      if (!person.attributes.containsKey(BIRTHDATE_SLOT)
+          || !(operator.equals(">") || operator.equals(">="))) {
+        return time;
+      }
+      // the age is a whole number of years or months
+      long age = (long) (operator.equals(">") ? Math.floor(quantity) + 1 : Math.ceil(quantity));
+      // a year has at least 365 days and a month at least 28, less a day for the time of birth
+      long days = (unit.equals("years") ? age * 365 : age * 28) - 1;
+      long birthdate = person.attributes.getLong(BIRTHDATE_SLOT, 0L);
+      return Math.max(time, birthdate + Utilities.convertTime("days", days));
+    }
   }
 
   /**
@@ -279,11 +308,16 @@ public abstract class Logic implements Serializable {
     private String operator;
 
     private Object value;
+    // the slot of the attribute plus one, 0 until the attribute is first tested
+    private transient int slot;
 
     @Override
     public boolean test(Person person, long time) {
+      if (slot == 0) {
+        slot = PersonAttributes.slotOf(attribute) + 1;
+      }
       try {
-        return Utilities.compare(person.attributes.get(attribute), value, operator);
+        return Utilities.compare(person.attributes.get(slot - 1), value, operator);
       } catch (Exception e) {
         String message = "Attribute Logic error: " + attribute + " " + operator + " " + value;
         message += ": " + e.getMessage();
@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -412,7 +411,7 @@ public class Module implements Cloneable, Serializable {
       historyKey = this.submoduleName;
     }
     if (!person.attributes.containsKey(historyKey)) {
-      person.history = new LinkedList<State>();
+      person.history = new StateHistory();
       State initial = initialState();
       person.history.add(initial);
       person.attributes.put(historyKey, person.history);
@@ -455,6 +454,27 @@ public class Module implements Cloneable, Serializable {
     return (current instanceof State.Terminal);
   }
 
+  /**
+   * Get the earliest time at which processing this module may change the person.
+   * Modules that are delayed or wait for an age report the time at which they can continue,
+   * Java modules and all other states report the given time, since they may make
+   * progress on any time step.
+   * @param person the person being simulated.
+   * @param time the time at which the module was last processed.
+   * @return the time of the next event of this module, not before the given time.
+   */
+  @SuppressWarnings("unchecked")
+  public long nextEventTime(Person person, long time) {
+    if (states == null) {
+      return time;
+    }
+    Object history = person.attributes.get(this.submodule ? this.submoduleName : this.name);
+    if (!(history instanceof List) || ((List<State>) history).isEmpty()) {
+      return time;
+    }
+    return Math.max(time, ((List<State>) history).get(0).nextEventTime(person, time));
+  }
+
   private State initialState() {
     return states.get("Initial").clone(); // all Initial states have name Initial
   }
@@ -12,10 +12,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -23,6 +26,7 @@ import org.apache.commons.math.ode.DerivativeException;
 import org.mitre.synthea.helpers.ChartRenderer;
 import org.mitre.synthea.helpers.ChartRenderer.MultiTableChartConfig;
 import org.mitre.synthea.helpers.ChartRenderer.MultiTableSeriesConfig;
+import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.Utilities;
 import org.sbml.jsbml.Model;
 import org.sbml.jsbml.SBMLDocument;
@@ -51,16 +55,78 @@ import org.yaml.snakeyaml.constructor.Constructor;
 public class PhysiologySimulator {
 
   private static final Map<String, Class<?>> SOLVER_CLASSES;
-  private static Map<String, Model> MODEL_CACHE;
+  private static final Map<String, CachedModel> MODEL_CACHE = new ConcurrentHashMap<>();
+  private static final int MODEL_CACHE_SIZE =
+      Config.getAsInteger("physiology.model_cache_size", 16);
+  private static final ThreadLocal<Map<CompiledModel, SBMLinterpreter>> INTERPRETERS =
+      ThreadLocal.withInitial(WeakHashMap::new);
   private static Path OUTPUT_PATH = Paths.get("output", "physiology");
 
-  private final Model model;
-  private final SBMLinterpreter interpreter;
+  private final CompiledModel model;
   private final AbstractDESSolver solver;
-  private final String[] modelFields;
-  private final double[] modelDefaults;
   private final double simDuration;
 
+  /**
+   * A loaded SBML model with its parameters and their default values. Each thread compiles
+   * the model into its own interpreter once, which all simulators of the model on that thread
+   * share, since a simulation reinitializes the interpreter before it starts.
+   */
+  private static final class CompiledModel {
+    private final Model model;
+    private final String[] fields;
+    private final double[] defaults;
+
+    private CompiledModel(Model model) {
+      this.model = model;
+      SBMLinterpreter interpreter = compile();
+      fields = interpreter.getIdentifiers();
+      defaults = interpreter.getInitialValues();
+      INTERPRETERS.get().put(this, interpreter);
+    }
+
+    /**
+     * Returns the interpreter of the current thread for this model.
+     * @return interpreter instance, which must not be used by other threads
+     */
+    private SBMLinterpreter interpreter() {
+      return INTERPRETERS.get().computeIfAbsent(this, compiledModel -> compile());
+    }
+
+    private synchronized SBMLinterpreter compile() {
+      // Interpreters read the shared model while they are built, so build one at a time
+      return getInterpreter(model);
+    }
+  }
+
+  /**
+   * A model cache entry. The first thread that needs the model loads it while holding only this
+   * entry, so other models stay available and are loaded concurrently.
+   */
+  private static final class CachedModel {
+    private final String modelPath;
+    private volatile CompiledModel model;
+    private volatile long lastUse = System.nanoTime();
+
+    private CachedModel(String modelPath) {
+      this.modelPath = modelPath;
+    }
+
+    private CompiledModel get() {
+      lastUse = System.nanoTime();
+      CompiledModel loaded = model;
+      if (loaded == null) {
+        synchronized (this) {
+          loaded = model;
+          if (loaded == null) {
+            loaded = loadModel(modelPath);
+            model = loaded;
+          }
+        }
+      }
+      return loaded;
+    }
+  }
+
   /** POJO configuration for the simulation. **/
   public static class SimConfig {
     private String name;
@@ -146,9 +212,6 @@ public class PhysiologySimulator {
 
     // Make unmodifiable so it doesn't change after initialization
     SOLVER_CLASSES = Collections.unmodifiableMap(initSolvers);
-
-    // Initialize our model cache
-    MODEL_CACHE = new HashMap<String, Model>();
   }
 
   /**
@@ -169,38 +232,55 @@ public class PhysiologySimulator {
   public PhysiologySimulator(String modelPath, String solverName, double stepSize,
       double simDuration) {
 
-    // Get the model from cache if it has already been loaded
-    if (MODEL_CACHE.containsKey(modelPath)) {
-      model = MODEL_CACHE.get(modelPath);
-    } else {
-      // Load and instantiate the model from the SBML file
-      SBMLReader reader = new SBMLReader();
-      SBMLDocument doc;
-      try {
-        String sbmlContent = Utilities.readResourceOrPath("physiology/models/" + modelPath);
-        doc = reader.readSBMLFromString(sbmlContent);
-      } catch (IOException | XMLStreamException ex) {
-        throw new RuntimeException(ex);
-      }
-      model = doc.getModel();
-
-      // Add the loaded model to the cache so we don't need to load it again
-      MODEL_CACHE.put(modelPath, model);
-    }
-    interpreter = getInterpreter(model);
+    // Get the model from cache, loading it only if it has not been loaded yet
+    model = getModel(modelPath);
     solver = getSolver(solverName);
     solver.setStepSize(stepSize);
-    modelFields = interpreter.getIdentifiers();
-    modelDefaults = interpreter.getInitialValues();
     this.simDuration = simDuration;
   }
 
+  /**
+   * Returns the compiled model from the cache. A model missing from the cache is added to it,
+   * and the least recently used models are dropped when the cache is full.
+   * @param modelPath Path to the SBML file to load relative to resources/physiology
+   * @return compiled model
+   */
+  private static CompiledModel getModel(String modelPath) {
+    CachedModel cached = MODEL_CACHE.get(modelPath);
+    if (cached == null) {
+      cached = MODEL_CACHE.computeIfAbsent(modelPath, CachedModel::new);
+      while (MODEL_CACHE.size() > MODEL_CACHE_SIZE) {
+        MODEL_CACHE.values().stream().min(Comparator.comparingLong(entry -> entry.lastUse))
+            .ifPresent(eldest -> MODEL_CACHE.remove(eldest.modelPath, eldest));
+      }
+    }
+    // An entry dropped meanwhile still loads its model for this simulator
+    return cached.get();
+  }
+
+  /**
+   * Loads and compiles the model from an SBML file.
+   * @param modelPath Path to the SBML file to load relative to resources/physiology
+   * @return compiled model
+   */
+  private static CompiledModel loadModel(String modelPath) {
+    SBMLReader reader = new SBMLReader();
+    SBMLDocument doc;
+    try {
+      String sbmlContent = Utilities.readResourceOrPath("physiology/models/" + modelPath);
+      doc = reader.readSBMLFromString(sbmlContent);
+    } catch (IOException | XMLStreamException ex) {
+      throw new RuntimeException(ex);
+    }
+    return new CompiledModel(doc.getModel());
+  }
+
   /**
    * Returns a list of all model parameters.
    * @return list of model parameters
    */
   public List<String> getParameters() {
-    return Arrays.asList(modelFields);
+    return Arrays.asList(model.fields);
   }
 
   /**
@@ -219,6 +299,7 @@ public class PhysiologySimulator {
    *        solution to differential equations
    */
   public MultiTable run(Map<String, Double> inputs) throws DerivativeException {
+    SBMLinterpreter interpreter = model.interpreter();
     try {
       // Reinitialize the interpreter to prevent old values from affecting the new simulation
       interpreter.init(true);
@@ -229,12 +310,12 @@ public class PhysiologySimulator {
     }
 
     // Create a copy of the default parameters to use
-    double[] params = Arrays.copyOf(modelDefaults, modelDefaults.length);
+    double[] params = Arrays.copyOf(model.defaults, model.defaults.length);
 
     // Overwrite model defaults with the provided input parameters, if present
     if (inputs != null) {
-      for (int i = 0; i < modelFields.length; i++) {
-        String field = modelFields[i];
+      for (int i = 0; i < model.fields.length; i++) {
+        String field = model.fields[i];
         if (inputs.containsKey(field)) {
           params[i] = inputs.get(field);
         }
@@ -350,7 +431,7 @@ public class PhysiologySimulator {
    * @return initial value
    */
   public double getParamDefault(String param) {
-    return modelDefaults[ArrayUtils.indexOf(interpreter.getIdentifiers(), param)];
+    return model.defaults[ArrayUtils.indexOf(model.fields, param)];
   }
 
   /**
@@ -46,6 +46,7 @@ import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.helpers.physiology.IoMapper;
 import org.mitre.synthea.modules.EncounterModule;
 import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.PersonAttributes;
 import org.mitre.synthea.world.agents.Provider;
 import org.mitre.synthea.world.concepts.ClinicianSpecialty;
 import org.mitre.synthea.world.concepts.HealthRecord;
@@ -209,6 +210,17 @@ public abstract class State implements Cloneable, Serializable {
     return exit;
   }
 
+  /**
+   * Get the earliest time at which processing this state may exit it, given that it did not
+   * exit at the given time. Used to skip modules that cannot make progress.
+   * @param person the person being simulated
+   * @param time the time at which the state was last processed
+   * @return the given time, or a later time if the state cannot exit before it.
+   */
+  public long nextEventTime(Person person, long time) {
+    return time;
+  }
+
   public String toString() {
     return this.getClass().getSimpleName() + " '" + name + "'";
   }
@@ -508,6 +520,11 @@ public abstract class State implements Cloneable, Serializable {
 
       return ((time >= this.next) && person.alive(this.next));
     }
+
+    @Override
+    public long nextEventTime(Person person, long time) {
+      return this.next == null ? time : Math.max(time, this.next);
+    }
   }
 
   public abstract static class LegacyStateWithUnitlessRV extends State {
@@ -635,6 +652,11 @@ public abstract class State implements Cloneable, Serializable {
       }
       return exit;
     }
+
+    @Override
+    public long nextEventTime(Person person, long time) {
+      return allow.earliestTimeTrue(person, time);
+    }
   }
 
   /**
@@ -657,6 +679,8 @@ public abstract class State implements Cloneable, Serializable {
     private double period;
     // For GMF 2.0 Support
     private Distribution distribution;
+    // the slot of the attribute plus one, 0 until it is resolved
+    private transient int slot;
 
 
     private ThreadLocal<ExpressionProcessor> getExpProcessor() {
@@ -735,11 +759,14 @@ public abstract class State implements Cloneable, Serializable {
         }
       }
 
+      if (slot == 0) {
+        slot = PersonAttributes.slotOf(attribute) + 1;
+      }
       if (value != null) {
-        person.attributes.put(attribute, value);
-      } else if (person.attributes.containsKey(attribute)) {
+        person.attributes.put(slot - 1, value);
+      } else {
         // intentionally clear out the variable
-        person.attributes.remove(attribute);
+        person.attributes.remove(slot - 1);
       }
 
       return true;
@@ -0,0 +1,140 @@
+package org.mitre.synthea.engine;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The states a person went through in a module, most recent first: index 0 is the current
+ * state and the last index is the Initial state, as with the list it replaces.
+ *
+ * <p>The states are stored oldest first in an array, so adding the next state at the front
+ * is an append, and the position of the latest visit to every state is indexed by name.
+ * This makes the checks of the PriorState logic independent of the length of the history.
+ * Inserting anywhere but at the front is supported, but rebuilds the index.</p>
+ */
+public class StateHistory extends AbstractList<State> implements RandomAccess, Serializable {
+  private static final long serialVersionUID = 2736504312898470912L;
+
+  /** The states, oldest first. */
+  private final ArrayList<State> states = new ArrayList<>();
+  /** Position in states of the latest visit to each state, by state name. */
+  private final Map<String, Integer> latest = new HashMap<>();
+
+  @Override
+  public State get(int index) {
+    return states.get(position(index));
+  }
+
+  @Override
+  public int size() {
+    return states.size();
+  }
+
+  @Override
+  public void add(int index, State state) {
+    if (index == 0) {
+      latest.put(state.name, states.size());
+      states.add(state);
+    } else {
+      states.add(states.size() - index, state);
+      reindex();
+    }
+    modCount++;
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends State> history) {
+    if (index != 0) {
+      return super.addAll(index, history);
+    }
+    // the given history is most recent first too, so the oldest state is appended first
+    List<State> added = new ArrayList<>(history);
+    for (int i = added.size() - 1; i >= 0; i--) {
+      State state = added.get(i);
+      latest.put(state.name, states.size());
+      states.add(state);
+    }
+    modCount++;
+    return !added.isEmpty();
+  }
+
+  @Override
+  public State set(int index, State state) {
+    State previous = states.set(position(index), state);
+    reindex();
+    return previous;
+  }
+
+  @Override
+  public State remove(int index) {
+    State removed = states.remove(position(index));
+    reindex();
+    modCount++;
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    states.clear();
+    latest.clear();
+    modCount++;
+  }
+
+  /**
+   * Check whether the history contains the given state, with the same result as walking
+   * the history from the current state: the walk stops with false at a visit to the
+   * "since" state or at a state that exited at or before "within". The walk checks the
+   * "since" state before the name, so a state is never found since itself.
+   *
+   * <p>States exit in the order in which they were added, so the first state after the
+   * visit that has exited decides the "within" check.</p>
+   *
+   * @param name Name of the state to look for.
+   * @param since Name of a state that must not have been visited after it, or null.
+   * @param within Time at or before which the states after the visit must not have exited,
+   *     or null.
+   * @return true if the state was visited.
+   */
+  public boolean hadPriorState(String name, String since, Long within) {
+    Integer visit = latest.get(name);
+    if (visit == null) {
+      return false;
+    }
+    if (since != null) {
+      Integer sinceVisit = latest.get(since);
+      // the latest visit of the state is also the latest visit of "since" when they are equal
+      if (sinceVisit != null && sinceVisit >= visit) {
+        return false;
+      }
+    }
+    if (within != null) {
+      for (int i = visit; i < states.size(); i++) {
+        Long exited = states.get(i).exited;
+        if (exited != null) {
+          return exited > within;
+        }
+      }
+    }
+    return true;
+  }
+
+  private int position(int index) {
+    if (index < 0 || index >= states.size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + states.size());
+    }
+    return states.size() - 1 - index;
+  }
+
+  private void reindex() {
+    latest.clear();
+    for (int i = 0; i < states.size(); i++) {
+      latest.put(states.get(i).name, i);
+    }
+  }
+}
@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.Range;
-import org.apache.commons.math3.distribution.EnumeratedDistribution;
+import org.mitre.synthea.helpers.AliasSampler;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
@@ -146,35 +146,22 @@ public abstract class Transition implements Serializable {
       } else {
         insuranceName = PayerManager.NO_INSURANCE;
       }
+      // the samplers are immutable and shared, and take their randomness from the person
+      AliasSampler<String> distribution;
       if (time < config.getTelemedicineStartTime()) {
         if (config.getHighEmergencyUseInsuranceNames().contains(insuranceName)) {
-          EnumeratedDistribution<String> preHigh = config.getPreTelemedHighEmergency();
-          synchronized (preHigh) {
-            preHigh.reseedRandomGenerator(person.randLong());
-            selectedTransition = preHigh.sample();
-          }
+          distribution = config.getPreTelemedHighEmergency();
         } else {
-          EnumeratedDistribution<String> preTypical = config.getPreTelemedTypicalEmergency();
-          synchronized (preTypical) {
-            preTypical.reseedRandomGenerator(person.randLong());
-            selectedTransition = preTypical.sample();
-          }
+          distribution = config.getPreTelemedTypicalEmergency();
         }
       } else {
         if (config.getHighEmergencyUseInsuranceNames().contains(insuranceName)) {
-          EnumeratedDistribution<String> high = config.getTelemedHighEmergency();
-          synchronized (high) {
-            high.reseedRandomGenerator(person.randLong());
-            selectedTransition = high.sample();
-          }
+          distribution = config.getTelemedHighEmergency();
         } else {
-          EnumeratedDistribution<String> typical = config.getTelemedTypicalEmergency();
-          synchronized (typical) {
-            typical.reseedRandomGenerator(person.randLong());
-            selectedTransition = typical.sample();
-          }
+          distribution = config.getTelemedTypicalEmergency();
         }
       }
+      selectedTransition = distribution.sample(person);
       switch (selectedTransition) {
         case TelemedicineConfig.AMBULATORY:
           return this.ambulatory;
@@ -1,9 +1,7 @@
 package org.mitre.synthea.export;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.charset.Charset;
@@ -16,16 +14,14 @@ import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.mitre.synthea.engine.Generator;
+import static org.mitre.synthea.export.CSVFileWriter.appendMoney;
 import static org.mitre.synthea.export.ExportHelper.dateFromTimestamp;
 import static org.mitre.synthea.export.ExportHelper.getSystemFromURI;
 import static org.mitre.synthea.export.ExportHelper.iso8601Timestamp;
@@ -70,81 +66,81 @@ public class CSVExporter {
   /**
    * Writer for patients.csv.
    */
-  private OutputStreamWriter patients;
+  private CSVFileWriter patients;
   /**
    * Writer for allergies.csv.
    */
-  private OutputStreamWriter allergies;
+  private CSVFileWriter allergies;
   /**
    * Writer for medications.csv.
    */
-  private OutputStreamWriter medications;
+  private CSVFileWriter medications;
   /**
    * Writer for conditions.csv.
    */
-  private OutputStreamWriter conditions;
+  private CSVFileWriter conditions;
   /**
    * Writer for careplans.csv.
    */
-  private OutputStreamWriter careplans;
+  private CSVFileWriter careplans;
   /**
    * Writer for observations.csv.
    */
-  private OutputStreamWriter observations;
+  private CSVFileWriter observations;
   /**
    * Writer for procedures.csv.
    */
-  private OutputStreamWriter procedures;
+  private CSVFileWriter procedures;
   /**
    * Writer for immunizations.csv.
    */
-  private OutputStreamWriter immunizations;
+  private CSVFileWriter immunizations;
   /**
    * Writer for encounters.csv.
    */
-  private OutputStreamWriter encounters;
+  private CSVFileWriter encounters;
   /**
    * Writer for imaging_studies.csv
    */
-  private OutputStreamWriter imagingStudies;
+  private CSVFileWriter imagingStudies;
   /**
    * Writer for devices.csv
    */
-  private OutputStreamWriter devices;
+  private CSVFileWriter devices;
   /**
    * Writer for supplies.csv
    */
-  private OutputStreamWriter supplies;
+  private CSVFileWriter supplies;
 
   /**
    * Writer for organizations.csv
    */
-  private OutputStreamWriter organizations;
+  private CSVFileWriter organizations;
   /**
    * Writer for providers.csv
    */
-  private OutputStreamWriter providers;
+  private CSVFileWriter providers;
 
   /**
    * Writer for payers.csv
    */
-  private OutputStreamWriter payers;
+  private CSVFileWriter payers;
   /**
    * Writer for payerTransitions.csv
    */
-  private OutputStreamWriter payerTransitions;
+  private CSVFileWriter payerTransitions;
   /**
    * Writer for claims.csv
    */
-  private OutputStreamWriter claims;
+  private CSVFileWriter claims;
   /**
    * Writer for claims_transactions.csv
    */
-  private OutputStreamWriter claimsTransactions;
+  private CSVFileWriter claimsTransactions;
   /**
    * Writer for patient_expenses.csv
    */
-  private OutputStreamWriter patientExpenses;
+  private CSVFileWriter patientExpenses;
 
   /**
    * Charset for specifying the character set of the output files.
@@ -165,28 +161,104 @@ public class CSVExporter {
    */
   private AtomicLong transactionId;
 
+  /**
+   * Milliseconds after which exported rows are flushed to the files, and the time
+   * of the last flush.
+   */
+  private final long flushInterval = Config.getAsLong("exporter.csv.flush_interval", 1000L);
+  private volatile long lastFlush = System.currentTimeMillis();
+
+  /**
+   * Folder the CSV files are written to.
+   */
+  private Path outputDirectory;
+
+  /**
+   * Shard files the patients are exported into when "exporter.csv.thread_shards" is set,
+   * and the shard of the patient that the current thread exports.
+   */
+  private CSVShards shards;
+  private final ThreadLocal<CSVShards.Shard> currentShard = new ThreadLocal<>();
+
+  /**
+   * Exporter options of the run this exporter belongs to, or null for the singleton.
+   */
+  private final Exporter.ExporterRuntimeOptions options;
+
+  /**
+   * Whether the tables are written as Parquet files into the "parquet" folder,
+   * instead of CSV files.
+   */
+  private final boolean parquet;
+
   /**
    * Constructor for the CSVExporter - initialize the specified files and store
    * the writers in fields.
    */
   private CSVExporter() {
+    this(null);
+  }
+
+  /**
+   * Constructor for the CSVExporter of a single run, which writes its files
+   * into the folder of that run.
+   *
+   * @param options Exporter options of the run.
+   */
+  CSVExporter(Exporter.ExporterRuntimeOptions options) {
+    this(options, false);
+  }
+
+  /**
+   * Constructor for the exporter of a single run, which writes the same tables either as
+   * CSV or as Parquet files.
+   *
+   * @param options Exporter options of the run, or null to use the shared output folders.
+   * @param parquet Whether to write Parquet files, see {@link ParquetTableWriter}.
+   */
+  CSVExporter(Exporter.ExporterRuntimeOptions options, boolean parquet) {
+    if (parquet && !hasParquetWriter()) {
+      throw new IllegalStateException("exporter.parquet.export needs the Parquet jars, "
+          + "which are only included in builds with -Pparquet");
+    }
+    this.options = options;
+    this.parquet = parquet;
     init();
   }
 
-  void init() {
+  /**
+   * Returns whether the Parquet jars are on the classpath. They are optional, see build.gradle.
+   */
+  private static boolean hasParquetWriter() {
+    try {
+      Class.forName("org.apache.parquet.hadoop.ParquetWriter", false,
+          CSVExporter.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * (Re-)initialize the output files. Any files opened by a previous call are closed first,
+   * so the same exporter can be used for several runs.
+   */
+  public void init() {
+    closeWriters();
     try {
-      File output = Exporter.getOutputFolder("csv", null);
+      File output = Exporter.getOutputFolder(parquet ? "parquet" : "csv", null, options);
       output.mkdirs();
       Path outputDirectory = output.toPath();
 
-      if (Config.getAsBoolean("exporter.csv.folder_per_run")) {
+      boolean ownRunFolder = options != null && options.getRunId() != null;
+      if (Config.getAsBoolean("exporter.csv.folder_per_run") && !ownRunFolder) {
         // we want a folder per run, so name it based on the timestamp
-        // String timestamp = ExportHelper.iso8601Timestamp(System.currentTimeMillis());
-        String subfolderName = Generator.getRunID(); // timestamp.replaceAll("\\W+", "_"); // make sure it's
-                                                     // filename-safe
+        String timestamp = ExportHelper.iso8601Timestamp(System.currentTimeMillis());
+        String subfolderName = timestamp.replaceAll("\\W+", "_"); // make sure it's filename-safe
         outputDirectory = outputDirectory.resolve(subfolderName);
         outputDirectory.toFile().mkdirs();
       }
+      this.outputDirectory = outputDirectory;
 
       String includedFilesStr = Config.get("exporter.csv.included_files", "").trim();
       String excludedFilesStr = Config.get("exporter.csv.excluded_files", "").trim();
@@ -211,7 +283,8 @@ public class CSVExporter {
         }
       }
 
-      boolean append = Config.getAsBoolean("exporter.csv.append_mode");
+      // Parquet files cannot be appended to
+      boolean append = !parquet && Config.getAsBoolean("exporter.csv.append_mode");
       patients = getWriter(outputDirectory, "patients.csv", append, includedFiles, excludedFiles);
 
       allergies = getWriter(outputDirectory, "allergies.csv", append, includedFiles, excludedFiles);
@@ -264,6 +337,17 @@ public class CSVExporter {
       if (!append) {
         writeCSVHeaders();
       }
+
+      shards = null;
+      if (!parquet && Config.getAsBoolean("exporter.csv.thread_shards", false)) {
+        // organizations, providers and payers are exported once, after the patients
+        List<CSVFileWriter> patientFiles = Arrays.asList(patients, allergies, medications,
+            conditions, careplans, observations, procedures, immunizations, encounters,
+            imagingStudies, devices, supplies, payerTransitions, claims, claimsTransactions,
+            patientExpenses);
+        shards = new CSVShards(outputDirectory.resolve("shards"), patientFiles, charset,
+            Config.getAsBoolean("exporter.csv.ordered_shards", true));
+      }
     } catch (IOException e) {
       // wrap the exception in a runtime exception.
       // the singleton pattern below doesn't work if the constructor can throw
@@ -274,6 +358,87 @@ public class CSVExporter {
     this.transactionId = new AtomicLong();
   }
 
+  /**
+   * Returns the number of charge IDs handed out for claims_transactions.csv so far.
+   */
+  long getChargeIdCount() {
+    return transactionId.get();
+  }
+
+  /**
+   * Returns the folder the CSV files are written to.
+   */
+  Path getOutputDirectory() {
+    return outputDirectory;
+  }
+
+  /**
+   * Merge any shards and close any open writers. The shared no-op writer of excluded files
+   * stays open.
+   */
+  void closeWriters() {
+    try {
+      mergeShards();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    for (CSVFileWriter writer : getWriters()) {
+      if (writer != null && writer != NO_OP) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /**
+   * Append the rows of the patients exported into shard files to the CSV files. This must
+   * be called once all patients have been exported, before the files are read.
+   *
+   * @throws IOException if any IO errors occur.
+   */
+  void mergeShards() throws IOException {
+    if (shards != null) {
+      shards.merge();
+    }
+  }
+
+  /**
+   * Write everything that has been exported so far to the files.
+   */
+  void flushWriters() {
+    lastFlush = System.currentTimeMillis();
+    for (CSVFileWriter writer : getWriters()) {
+      if (writer != null) {
+        try {
+          writer.flush();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /**
+   * Flush the files if the flush interval has passed since they were last flushed.
+   * The rows are written in large blocks anyway, this only limits how long they
+   * may wait in memory.
+   */
+  private void flushIfDue() {
+    if (System.currentTimeMillis() - lastFlush >= flushInterval) {
+      flushWriters();
+    }
+  }
+
+  private List<CSVFileWriter> getWriters() {
+    return Arrays.asList(patients, allergies, medications,
+        conditions, careplans, observations, procedures, immunizations, encounters,
+        imagingStudies, devices, supplies, organizations, providers, payers, payerTransitions,
+        claims, claimsTransactions, patientExpenses);
+  }
+
   /**
    * Helper function to convert a list of files directly from synthea.properties
    * to filenames.
@@ -413,9 +578,9 @@ public class CSVExporter {
           }
         }
       }
-      organizations.flush();
-      providers.flush();
     }
+    organizations.flush();
+    providers.flush();
   }
 
   /**
@@ -428,7 +593,6 @@ public class CSVExporter {
     // Export All Payers
     for (Payer payer : PayerManager.getAllPayers()) {
       payer(payer);
-      payers.flush();
     }
     // Export No Insurance statistics
     payer(PayerManager.getNoInsurancePlan().getPayer());
@@ -452,7 +616,6 @@ public class CSVExporter {
         payerTransition(person, planRecord);
       }
     }
-    payerTransitions.flush();
   }
 
   /**
@@ -472,7 +635,6 @@ public class CSVExporter {
         patientExpense(person, planRecord);
       }
     }
-    patientExpenses.flush();
   }
 
   /**
@@ -483,7 +645,25 @@ public class CSVExporter {
    * @throws IOException if any IO error occurs
    */
   public void export(Person person, long time) throws IOException {
+    if (shards == null) {
+      exportPatient(person, time);
+      flushIfDue();
+      return;
+    }
+    CSVShards.Shard shard = shards.checkOut(person.populationIndex);
+    currentShard.set(shard);
+    try {
+      exportPatient(person, time);
+    } finally {
+      currentShard.remove();
+      shards.checkIn(shard);
+    }
+  }
 
+  /**
+   * Write the rows of a single Person's health record.
+   */
+  private void exportPatient(Person person, long time) throws IOException {
     String personID = patient(person, time);
 
     for (Encounter encounter : person.record.encounters) {
@@ -550,8 +730,8 @@ public class CSVExporter {
       cutOff = Calendar.getInstance();
       cutOff.set(cutOff.get(Calendar.YEAR) - yearsOfHistory, 0, 1);
     }
-    CSVExporter.getInstance().exportPayerTransitions(person, cutOff.getTimeInMillis(), time);
-    CSVExporter.getInstance().exportPatientExpenses(person, cutOff.getTimeInMillis(), time);
+    exportPayerTransitions(person, cutOff.getTimeInMillis(), time);
+    exportPatientExpenses(person, cutOff.getTimeInMillis(), time);
     Calendar now = Calendar.getInstance();
     Calendar birthDay = Calendar.getInstance();
     birthDay.setTimeInMillis((long) person.attributes.get(Person.BIRTHDATE));
@@ -579,22 +759,6 @@ public class CSVExporter {
         }
       }
     }
-
-    patients.flush();
-    encounters.flush();
-    conditions.flush();
-    allergies.flush();
-    medications.flush();
-    careplans.flush();
-    observations.flush();
-    procedures.flush();
-    immunizations.flush();
-    imagingStudies.flush();
-    devices.flush();
-    supplies.flush();
-    claims.flush();
-    claimsTransactions.flush();
-    patientExpenses.flush();
   }
 
   /**
@@ -613,13 +777,14 @@ public class CSVExporter {
 
     // check if we've already exported this patient demographic data yet,
     // otherwise the "split record" feature could add a duplicate entry.
-    if (person.attributes.containsKey("exported_to_csv")) {
+    String exported = parquet ? "exported_to_parquet" : "exported_to_csv";
+    if (person.attributes.containsKey(exported)) {
       return personID;
     } else {
-      person.attributes.put("exported_to_csv", personID);
+      person.attributes.put(exported, personID);
     }
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     s.append(personID).append(',');
     s.append(dateFromTimestamp((long) person.attributes.get(Person.BIRTHDATE))).append(',');
     if (!person.alive(time)) {
@@ -665,7 +830,7 @@ public class CSVExporter {
     // s.append(person.attributes.get("most-recent-daly"));
 
     s.append(NEWLINE);
-    write(s.toString(), patients);
+    write(s, patients);
 
     return personID;
   }
@@ -682,7 +847,7 @@ public class CSVExporter {
       Encounter encounter) throws IOException {
     // Id,START,STOP,PATIENT,ORGANIZATION,PROVIDER,PAYER,ENCOUNTERCLASS,CODE,DESCRIPTION,
     // BASE_ENCOUNTER_COST,TOTAL_CLAIM_COST,PAYER_COVERAGE,REASONCODE,REASONDESCRIPTION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     String encounterID = encounter.uuid.toString();
     // ID
@@ -731,11 +896,11 @@ public class CSVExporter {
     s.append(clean(coding.display)).append(',');
 
     // BASE_ENCOUNTER_COST
-    s.append(String.format(Locale.US, "%.2f", encounter.getCost())).append(',');
+    appendMoney(s, encounter.getCost()).append(',');
     // TOTAL_COST
-    s.append(String.format(Locale.US, "%.2f", encounter.claim.getTotalClaimCost())).append(',');
+    appendMoney(s, encounter.claim.getTotalClaimCost()).append(',');
     // PAYER_COVERAGE
-    s.append(String.format(Locale.US, "%.2f", encounter.claim.getTotalCoveredCost())).append(',');
+    appendMoney(s, encounter.claim.getTotalCoveredCost()).append(',');
     // REASONCODE & REASONDESCRIPTION
     if (encounter.reason == null) {
       s.append(",");
@@ -745,7 +910,7 @@ public class CSVExporter {
     }
 
     s.append(NEWLINE);
-    write(s.toString(), encounters);
+    write(s, encounters);
 
     return encounterID;
   }
@@ -760,7 +925,7 @@ public class CSVExporter {
    */
   private void condition(String personID, String encounterID, Entry condition) throws IOException {
     // START,STOP,PATIENT,ENCOUNTER,SYSTEM,CODE,DESCRIPTION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(dateFromTimestamp(condition.start)).append(',');
     if (condition.stop != 0L) {
@@ -777,7 +942,7 @@ public class CSVExporter {
     s.append(clean(coding.display));
 
     s.append(NEWLINE);
-    write(s.toString(), conditions);
+    write(s, conditions);
   }
 
   /**
@@ -793,7 +958,7 @@ public class CSVExporter {
     // START,STOP,PATIENT,ENCOUNTER,CODE,SYSTEM,DESCRIPTION,TYPE,CATEGORY
     // REACTION1,DESCRIPTION1,SEVERITY1,
     // REACTION2,DESCRIPTION2,SEVERITY2
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(dateFromTimestamp(allergy.start)).append(',');
     if (allergy.stop != 0L) {
@@ -848,7 +1013,7 @@ public class CSVExporter {
     }
 
     s.append(NEWLINE);
-    write(s.toString(), allergies);
+    write(s, allergies);
   }
 
   /**
@@ -876,7 +1041,7 @@ public class CSVExporter {
     }
 
     // DATE,PATIENT,ENCOUNTER,CATEGORY,CODE,DESCRIPTION,VALUE,UNITS
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(iso8601Timestamp(observation.start)).append(',');
     s.append(personID).append(',');
@@ -898,7 +1063,7 @@ public class CSVExporter {
     s.append(type);
 
     s.append(NEWLINE);
-    write(s.toString(), observations);
+    write(s, observations);
   }
 
   /**
@@ -912,7 +1077,7 @@ public class CSVExporter {
   private void procedure(String personID, String encounterID,
       Procedure procedure) throws IOException {
     // START,STOP,PATIENT,ENCOUNTER,SYSTEM,CODE,DESCRIPTION,COST,REASONCODE,REASONDESCRIPTION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(iso8601Timestamp(procedure.start)).append(',');
     if (procedure.stop != 0L) {
@@ -928,7 +1093,7 @@ public class CSVExporter {
     // DESCRIPTION
     s.append(clean(coding.display)).append(',');
     // BASE_COST
-    s.append(String.format(Locale.US, "%.2f", procedure.getCost())).append(',');
+    appendMoney(s, procedure.getCost()).append(',');
     // REASONCODE & REASONDESCRIPTION
     if (procedure.reasons.isEmpty()) {
       s.append(','); // reason code & desc
@@ -939,7 +1104,7 @@ public class CSVExporter {
     }
 
     s.append(NEWLINE);
-    write(s.toString(), procedures);
+    write(s, procedures);
   }
 
   /**
@@ -957,7 +1122,7 @@ public class CSVExporter {
       throws IOException {
     // START,STOP,PATIENT,PAYER,ENCOUNTER,CODE,DESCRIPTION,
     // BASE_COST,PAYER_COVERAGE,DISPENSES,TOTALCOST,REASONCODE,REASONDESCRIPTION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(iso8601Timestamp(medication.start)).append(',');
     if (medication.stop != 0L) {
@@ -974,9 +1139,9 @@ public class CSVExporter {
     s.append(clean(coding.display)).append(',');
     // BASE_COST
     BigDecimal cost = medication.getCost();
-    s.append(String.format(Locale.US, "%.2f", cost)).append(',');
+    appendMoney(s, cost).append(',');
     // PAYER_COVERAGE
-    s.append(String.format(Locale.US, "%.2f", medication.claim.getTotalCoveredCost())).append(',');
+    appendMoney(s, medication.claim.getTotalCoveredCost()).append(',');
     long dispenses = 1; // dispenses = refills + original
     // makes the math cleaner and more explicit. dispenses * unit cost = total cost
 
@@ -1012,7 +1177,7 @@ public class CSVExporter {
     s.append(dispenses).append(',');
     BigDecimal totalCost = cost.multiply(
         BigDecimal.valueOf(dispenses)).setScale(2, RoundingMode.DOWN); // Truncate 2 decimal places
-    s.append(String.format(Locale.US, "%.2f", totalCost)).append(',');
+    appendMoney(s, totalCost).append(',');
 
     if (medication.reasons.isEmpty()) {
       s.append(','); // reason code & desc
@@ -1023,7 +1188,7 @@ public class CSVExporter {
     }
 
     s.append(NEWLINE);
-    write(s.toString(), medications);
+    write(s, medications);
   }
 
   /**
@@ -1037,7 +1202,7 @@ public class CSVExporter {
   private void immunization(String personID, String encounterID,
       Entry immunization) throws IOException {
     // DATE,PATIENT,ENCOUNTER,CODE,DESCRIPTION,BASE_COST
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(iso8601Timestamp(immunization.start)).append(',');
     s.append(personID).append(',');
@@ -1048,10 +1213,10 @@ public class CSVExporter {
     // DESCRIPTION
     s.append(clean(coding.display)).append(',');
     // BASE_COST
-    s.append(String.format(Locale.US, "%.2f", immunization.getCost()));
+    appendMoney(s, immunization.getCost());
 
     s.append(NEWLINE);
-    write(s.toString(), immunizations);
+    write(s, immunizations);
   }
 
   /**
@@ -1065,7 +1230,7 @@ public class CSVExporter {
   private String careplan(String personID, String encounterID,
       CarePlan careplan) throws IOException {
     // Id,START,STOP,PATIENT,ENCOUNTER,CODE,DESCRIPTION,REASONCODE,REASONDESCRIPTION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     String careplanID = careplan.uuid.toString();
     s.append(careplanID).append(',');
@@ -1091,7 +1256,7 @@ public class CSVExporter {
     }
     s.append(NEWLINE);
 
-    write(s.toString(), careplans);
+    write(s, careplans);
 
     return careplanID;
   }
@@ -1108,7 +1273,7 @@ public class CSVExporter {
       ImagingStudy imagingStudy) throws IOException {
     // Id,DATE,PATIENT,ENCOUNTER,SERIES_UID,BODYSITE_CODE,BODYSITE_DESCRIPTION,
     // MODALITY_CODE,MODALITY_DESCRIPTION,INSTANCE_UID,SOP_CODE,SOP_DESCRIPTION,PROCEDURE_CODE
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     String studyID = imagingStudy.uuid.toString();
 
@@ -1142,7 +1307,7 @@ public class CSVExporter {
       }
     }
 
-    write(s.toString(), imagingStudies);
+    write(s, imagingStudies);
 
     return studyID;
   }
@@ -1158,7 +1323,7 @@ public class CSVExporter {
   private void device(String personID, String encounterID, Device device)
       throws IOException {
     // START,STOP,PATIENT,ENCOUNTER,CODE,DESCRIPTION,UDI
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(iso8601Timestamp(device.start)).append(',');
     if (device.stop != 0L) {
@@ -1177,7 +1342,7 @@ public class CSVExporter {
 
     s.append(NEWLINE);
 
-    write(s.toString(), devices);
+    write(s, devices);
   }
 
   /**
@@ -1191,7 +1356,7 @@ public class CSVExporter {
   private void supply(String personID, String encounterID, Encounter encounter, Supply supply)
       throws IOException {
     // DATE,PATIENT,ENCOUNTER,CODE,DESCRIPTION,QUANTITY
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
 
     s.append(dateFromTimestamp(supply.start)).append(',');
     s.append(personID).append(',');
@@ -1205,7 +1370,7 @@ public class CSVExporter {
 
     s.append(NEWLINE);
 
-    write(s.toString(), supplies);
+    write(s, supplies);
   }
 
   /**
@@ -1217,7 +1382,7 @@ public class CSVExporter {
    */
   private void organization(Provider org, int utilization) throws IOException {
     // Id,NAME,ADDRESS,CITY,STATE,ZIP,PHONE,REVENUE,UTILIZATION
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     s.append(org.getResourceID()).append(',');
     s.append(clean(org.name)).append(',');
     s.append(clean(org.address)).append(',');
@@ -1231,7 +1396,7 @@ public class CSVExporter {
     s.append(utilization);
     s.append(NEWLINE);
 
-    write(s.toString(), organizations);
+    write(s, organizations);
   }
 
   /**
@@ -1244,7 +1409,7 @@ public class CSVExporter {
   private void provider(Clinician provider, String orgId) throws IOException {
     // Id,ORGANIZATION,NAME,GENDER,SPECIALITY,ADDRESS,CITY,STATE,ZIP,ENCOUNTERS,PROCEDURES
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     s.append(provider.getResourceID()).append(',');
     s.append(orgId).append(',');
     for (String attribute : new String[] { Clinician.NAME, Clinician.GENDER,
@@ -1260,7 +1425,7 @@ public class CSVExporter {
 
     s.append(NEWLINE);
 
-    write(s.toString(), providers);
+    write(s, providers);
   }
 
   /**
@@ -1276,7 +1441,7 @@ public class CSVExporter {
     // COVERED_PROCEDURES,UNCOVERED_PROCEDURES,COVERED_IMMUNIZATIONS,UNCOVERED_IMMUNIZATIONS,
     // UNIQUE_CUSTOMERS,QOLS_AVG,MEMBER_MONTHS
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     // UUID
     s.append(payer.getResourceID()).append(',');
     // NAME
@@ -1289,11 +1454,11 @@ public class CSVExporter {
       s.append(clean(value)).append(',');
     }
     // AMOUNT_COVERED
-    s.append(String.format(Locale.US, "%.2f", payer.getAmountCovered())).append(',');
+    appendMoney(s, payer.getAmountCovered()).append(',');
     // AMOUNT_UNCOVERED
-    s.append(String.format(Locale.US, "%.2f", payer.getAmountUncovered())).append(',');
+    appendMoney(s, payer.getAmountUncovered()).append(',');
     // REVENUE
-    s.append(String.format(Locale.US, "%.2f", payer.getRevenue())).append(',');
+    appendMoney(s, payer.getRevenue()).append(',');
     // Covered/Uncovered Encounters/Medications/Procedures/Immunizations
     s.append(payer.getEncountersCoveredCount()).append(",");
     s.append(payer.getEncountersUncoveredCount()).append(",");
@@ -1311,7 +1476,7 @@ public class CSVExporter {
     s.append(payer.getNumYearsCovered() * 12);
 
     s.append(NEWLINE);
-    write(s.toString(), payers);
+    write(s, payers);
   }
 
   /**
@@ -1324,7 +1489,7 @@ public class CSVExporter {
   private void payerTransition(Person person, PlanRecord planRecord) throws IOException {
     // PATIENT_ID,MEMBER_ID,START_YEAR,END_YEAR,PAYER_ID,SECONDARY_PAYER_ID,OWNERSHIP,OWNERNAME
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     // PATIENT_ID
     s.append(person.attributes.get(Person.ID)).append(",");
     // MEMBER_ID
@@ -1354,13 +1519,13 @@ public class CSVExporter {
       s.append(planRecord.ownerName);
     }
     s.append(NEWLINE);
-    write(s.toString(), payerTransitions);
+    write(s, payerTransitions);
   }
 
   private void patientExpense(Person person, PlanRecord planRecord) throws IOException {
     // PATIENT_ID,YEAR,PAYER_ID,HEALTHCARE_EXPENSES,INSURANCE_COSTS,COVERED_COSTS
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     // PATIENT_ID
     s.append(person.attributes.get(Person.ID)).append(",");
     // YEAR
@@ -1378,7 +1543,7 @@ public class CSVExporter {
     s.append(coveredExpenses);
 
     s.append(NEWLINE);
-    write(s.toString(), patientExpenses);
+    write(s, patientExpenses);
   }
 
   /**
@@ -1427,7 +1592,7 @@ public class CSVExporter {
       institutional = encounter.provider.institutional;
     }
 
-    StringBuilder s = new StringBuilder();
+    StringBuilder s = CSVFileWriter.row();
     // Claim Id. Should be a number.
     String claimId = claim.uuid.toString();
     s.append(claimId).append(',');
@@ -1555,20 +1720,20 @@ public class CSVExporter {
       // STATUSP for Patient as Payer
       s.append("BILLED,");
       // OUTSTANDING1 (TODO this should be the outstanding payer balance)
-      s.append(String.format(Locale.US, "%.2f", encounter.claim.getTotalCoveredCost()))
+      appendMoney(s, encounter.claim.getTotalCoveredCost())
           .append(',');
       // OUTSTANDING2
       if (claim.getSecondaryPayer() != null
           && claim.getSecondaryPayer().isNoInsurance()) {
         // TODO this is not correct
-        s.append(String.format(Locale.US, "%.2f", encounter.claim.getTotalCoveredCost()))
+        appendMoney(s, encounter.claim.getTotalCoveredCost())
             .append(',');
       } else {
         s.append(',');
       }
       // OUTSTANDINGP (TODO this should be the outstanding patient balance)
       BigDecimal patientCost = claim.getTotalClaimCost().subtract(claim.getTotalCoveredCost());
-      s.append(String.format(Locale.US, "%.2f", patientCost)).append(',');
+      appendMoney(s, patientCost).append(',');
       // LASTBILLEDDATE1
       s.append(iso8601Timestamp(encounter.start)).append(',');
       // LASTBILLEDDATE2
@@ -1600,7 +1765,7 @@ public class CSVExporter {
       s.append('0');
     }
     s.append(NEWLINE);
-    write(s.toString(), claims);
+    write(s, claims);
 
     // Main Claim
     simulateClaimProcess(person, claim, claimId, encounter, encounterID, claim.mainEntry,
@@ -1635,7 +1800,7 @@ public class CSVExporter {
     } else {
       t.transferType = "1";
     }
-    write(t.toString(), claimsTransactions);
+    write(t.toCSV(), claimsTransactions);
     chargeId = transactionId.getAndIncrement();
 
     BigDecimal remainder = claimEntry.cost;
@@ -1655,7 +1820,7 @@ public class CSVExporter {
         t.unpaid = remainder;
         t.departmentId = departmentId;
         t.diagnosisCodes = diagnosisCodes;
-        write(t.toString(), claimsTransactions);
+        write(t.toCSV(), claimsTransactions);
         chargeId = transactionId.getAndIncrement();
       }
     }
@@ -1674,7 +1839,7 @@ public class CSVExporter {
       t.unpaid = remainder;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       chargeId = transactionId.getAndIncrement();
     }
 
@@ -1690,7 +1855,7 @@ public class CSVExporter {
       t.unpaid = remainder;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       chargeId = transactionId.getAndIncrement();
     }
 
@@ -1704,7 +1869,7 @@ public class CSVExporter {
       t.unpaid = remainder;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       long transferOut = chargeId;
       chargeId = transactionId.getAndIncrement();
 
@@ -1718,7 +1883,7 @@ public class CSVExporter {
       t.unpaid = remainder;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       chargeId = transactionId.getAndIncrement();
 
       // PAYMENT FROM SECONDARY INSURANCE
@@ -1733,7 +1898,7 @@ public class CSVExporter {
       t.unpaid = remainder;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       chargeId = transactionId.getAndIncrement();
     }
 
@@ -1747,7 +1912,7 @@ public class CSVExporter {
         t.unpaid = remainder;
         t.departmentId = departmentId;
         t.diagnosisCodes = diagnosisCodes;
-        write(t.toString(), claimsTransactions);
+        write(t.toCSV(), claimsTransactions);
         long transferOut = chargeId;
         chargeId = transactionId.getAndIncrement();
 
@@ -1761,7 +1926,7 @@ public class CSVExporter {
         t.unpaid = remainder;
         t.departmentId = departmentId;
         t.diagnosisCodes = diagnosisCodes;
-        write(t.toString(), claimsTransactions);
+        write(t.toCSV(), claimsTransactions);
         chargeId = transactionId.getAndIncrement();
       }
       // PAYMENT
@@ -1777,7 +1942,7 @@ public class CSVExporter {
       t.unpaid = Claim.ZERO_CENTS;
       t.departmentId = departmentId;
       t.diagnosisCodes = diagnosisCodes;
-      write(t.toString(), claimsTransactions);
+      write(t.toCSV(), claimsTransactions);
       chargeId = transactionId.getAndIncrement();
     }
   }
@@ -1861,12 +2026,19 @@ public class CSVExporter {
      * Convert this ClaimTransaction into a CSV row.
      */
     public String toString() {
+      return toCSV().toString();
+    }
+
+    /**
+     * Build the CSV row of this ClaimTransaction in the row builder of the current thread.
+     */
+    StringBuilder toCSV() {
       // ID,CLAIMID,CHARGEID,PATIENTID,TYPE,AMOUNT,METHOD,FROMDATE,TODATE,
       // PLACEOFSERVICE,PROCEDURECODE,MODIFIER1,MODIFIER2,DIAGNOSISREF1,DIAGNOSISREF2,
       // DIAGNOSISREF3,DIAGNOSISREF4,UNITS,DEPARTMENTID,NOTES,UNITAMOUNT,TRANSFEROUTID,
       // TRANSFERTYPE,PAYMENTS,ADJUSTMENTS,TRANSFERS,OUTSTANDING,APPOINTMENTID,LINENOTE,
       // PATIENTINSURANCEID,FEESCHEDULEID,PROVIDERID,SUPERVISINGPROVIDERID
-      StringBuilder s = new StringBuilder();
+      StringBuilder s = CSVFileWriter.row();
       // ID
       s.append(id).append(',');
       // CLAIMID
@@ -1879,7 +2051,7 @@ public class CSVExporter {
       s.append(type.toString()).append(',');
       // AMOUNT
       if (type == ClaimTransactionType.CHARGE || type == ClaimTransactionType.TRANSFERIN) {
-        s.append(String.format(Locale.US, "%.2f", amount));
+        appendMoney(s, amount);
       }
       s.append(',');
       // METHOD
@@ -1920,7 +2092,7 @@ public class CSVExporter {
       s.append(clean(procedureDisplay)).append(',');
       // UNITAMOUNT
       if (unitAmount != null) {
-        s.append(String.format(Locale.US, "%.2f", unitAmount));
+        appendMoney(s, unitAmount);
       }
       s.append(',');
       // TRANSFEROUTID
@@ -1935,22 +2107,22 @@ public class CSVExporter {
       s.append(',');
       // PAYMENTS
       if (payment != null) {
-        s.append(String.format(Locale.US, "%.2f", payment));
+        appendMoney(s, payment);
       }
       s.append(',');
       // ADJUSTMENTS
       if (adjustment != null) {
-        s.append(String.format(Locale.US, "%.2f", adjustment));
+        appendMoney(s, adjustment);
       }
       s.append(',');
       // TRANSFERS
       if (type == ClaimTransactionType.TRANSFERIN || type == ClaimTransactionType.TRANSFEROUT) {
-        s.append(String.format(Locale.US, "%.2f", amount));
+        appendMoney(s, amount);
       }
       s.append(',');
       // OUTSTANDING
       if (unpaid != null) {
-        s.append(String.format(Locale.US, "%.2f", unpaid));
+        appendMoney(s, unpaid);
       }
       s.append(',');
       // APPOINTMENTID
@@ -1969,7 +2141,7 @@ public class CSVExporter {
       // SUPERVISINGPROVIDERID
       s.append(clinicianId);
       s.append(NEWLINE);
-      return s.toString();
+      return s;
     }
   }
 
@@ -1993,17 +2165,18 @@ public class CSVExporter {
    * @param writer The place to write it
    * @throws IOException if an I/O error occurs
    */
-  private static void write(String line, OutputStreamWriter writer) throws IOException {
-    synchronized (writer) {
-      writer.write(line);
+  private void write(CharSequence line, CSVFileWriter writer) throws IOException {
+    CSVShards.Shard shard = shards == null ? null : currentShard.get();
+    if (shard != null) {
+      writer = shard.writerFor(writer);
     }
+    writer.write(line);
   }
 
   /**
    * "No-op" writer to use to prevent writing to excluded files.
-   * Note that this uses an Apache "NullOutputStream", but JDK11 provides its own.
    */
-  private static final OutputStreamWriter NO_OP = new OutputStreamWriter(NullOutputStream.NULL_OUTPUT_STREAM);
+  private static final CSVFileWriter NO_OP = CSVFileWriter.discarding();
 
   /**
    * Helper method to get the writer for the given output file.
@@ -2017,9 +2190,9 @@ public class CSVExporter {
    * @param excludedFiles   List of filenames that should not be included in
    *                        output
    *
-   * @return OutputStreamWriter for the given output file.
+   * @return CSVFileWriter for the given output file.
    */
-  private OutputStreamWriter getWriter(Path outputDirectory, String filename, boolean append,
+  private CSVFileWriter getWriter(Path outputDirectory, String filename, boolean append,
       List<String> includedFiles, List<String> excludedFiles) throws IOException {
 
     boolean excluded = (!includedFiles.isEmpty() && !includedFiles.contains(filename))
@@ -2028,10 +2201,16 @@ public class CSVExporter {
       return NO_OP;
     }
 
+    if (parquet) {
+      String table = filename.substring(0, filename.length() - ".csv".length());
+      return ParquetTableWriter.open(outputDirectory.resolve(table + ".parquet").toFile(),
+          table);
+    }
+
     File file = outputDirectory.resolve(filename).toFile();
     // file writing may fail if we tell it to append to a file that doesn't already
     // exist
     append = append && file.exists();
-    return new OutputStreamWriter(new FileOutputStream(file, append), charset);
+    return CSVFileWriter.open(file, append, charset);
   }
 }
@@ -0,0 +1,240 @@
+package org.mitre.synthea.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer of a CSV file that many threads write whole rows to.
+ *
+ * <p>Rows are built in a {@link #row()} builder that each thread reuses, encoded by the
+ * calling thread into a byte array that it reuses as well, and copied into the buffer of the
+ * file under a short lock. The buffer is written to the file when it is full or flushed,
+ * so nothing reaches the disk per row or per patient.</p>
+ */
+class CSVFileWriter implements Closeable, Flushable {
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int INITIAL_ROW_SIZE = 1024;
+
+  private static final ThreadLocal<StringBuilder> rows =
+      ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_ROW_SIZE));
+  private static final ThreadLocal<byte[][]> encodedRows =
+      ThreadLocal.withInitial(() -> new byte[][] {new byte[INITIAL_ROW_SIZE * 3]});
+
+  private final OutputStream out;
+  private final FileChannel channel;
+  private final Charset charset;
+  private final boolean utf8;
+  private final byte[] buffer;
+  private int count;
+  private long written;
+
+  /**
+   * Create a writer of a file, or of nothing if the stream is null. Subclasses that store
+   * the rows in another format pass null and override the writing methods.
+   */
+  CSVFileWriter(FileOutputStream out, Charset charset) {
+    this.out = out;
+    this.channel = out == null ? null : out.getChannel();
+    this.charset = charset;
+    this.utf8 = StandardCharsets.UTF_8.equals(charset);
+    this.buffer = out == null ? null : new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Open a CSV file for writing.
+   *
+   * @param file The file.
+   * @param append Whether to append to the file rather than overwrite it.
+   * @param charset The character set of the file.
+   * @return the writer of the file.
+   * @throws IOException if the file cannot be opened.
+   */
+  static CSVFileWriter open(File file, boolean append, Charset charset) throws IOException {
+    return new CSVFileWriter(new FileOutputStream(file, append), charset);
+  }
+
+  /**
+   * Get a writer that discards everything, for files that are not exported.
+   */
+  static CSVFileWriter discarding() {
+    return new CSVFileWriter(null, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the empty row builder of the current thread. The builder is reused for the next row,
+   * so a row must be written before the next one is started.
+   */
+  static StringBuilder row() {
+    StringBuilder row = rows.get();
+    row.setLength(0);
+    return row;
+  }
+
+  /**
+   * Append an amount with two decimals, as String.format(Locale.US, "%.2f", value) would.
+   * Amounts that are already in cents, as most are, are appended without rounding.
+   *
+   * @param row The row to append to.
+   * @param value The amount.
+   * @return the row.
+   */
+  static StringBuilder appendMoney(StringBuilder row, BigDecimal value) {
+    BigDecimal rounded = value.setScale(2, RoundingMode.HALF_UP);
+    if (value.signum() < 0 && rounded.signum() == 0) {
+      // like the formatter, keep the sign of small negative amounts
+      row.append('-');
+    }
+    // with two decimals toString never uses an exponent, and it is cached by the value
+    return row.append(rounded.toString());
+  }
+
+  /**
+   * Write one or more whole rows, each ending with a line separator.
+   *
+   * @param rows The rows.
+   * @throws IOException if the file cannot be written.
+   */
+  void write(CharSequence rows) throws IOException {
+    if (out == null) {
+      return;
+    }
+    byte[][] holder = encodedRows.get();
+    int length = encode(rows, holder);
+    byte[] bytes = holder[0];
+    synchronized (this) {
+      if (length > buffer.length - count) {
+        flushBuffer();
+        if (length > buffer.length) {
+          out.write(bytes, 0, length);
+          written += length;
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, buffer, count, length);
+      count += length;
+    }
+  }
+
+  /**
+   * Copy a range of another file to the end of this one, after the rows written so far.
+   *
+   * @param source The other file.
+   * @param position Offset of the range in the other file.
+   * @param length Number of bytes to copy.
+   * @throws IOException if the range cannot be read or written.
+   */
+  synchronized void transferFrom(FileChannel source, long position, long length)
+      throws IOException {
+    if (out == null) {
+      return;
+    }
+    flushBuffer();
+    while (length > 0) {
+      long transferred = source.transferTo(position, length, channel);
+      if (transferred <= 0) {
+        throw new IOException("Unexpected end of file at " + position);
+      }
+      position += transferred;
+      length -= transferred;
+      written += transferred;
+    }
+  }
+
+  /**
+   * Returns the number of bytes written to this writer, including those still buffered.
+   */
+  synchronized long size() {
+    return written + count;
+  }
+
+  /**
+   * Returns whether this writer discards everything.
+   */
+  boolean isDiscarding() {
+    return out == null;
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    if (out != null) {
+      flushBuffer();
+      out.flush();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      flushBuffer();
+      out.close();
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (count > 0) {
+      out.write(buffer, 0, count);
+      written += count;
+      count = 0;
+    }
+  }
+
+  /**
+   * Encode the text into the array of the holder, replacing it with a larger one if needed.
+   * @return the number of bytes.
+   */
+  private int encode(CharSequence text, byte[][] holder) {
+    if (!utf8) {
+      ByteBuffer encoded = charset.encode(CharBuffer.wrap(text));
+      int length = encoded.remaining();
+      if (holder[0].length < length) {
+        holder[0] = new byte[length];
+      }
+      encoded.get(holder[0], 0, length);
+      return length;
+    }
+    int length = text.length();
+    // a char takes at most 3 bytes, surrogate pairs take 4 for 2 chars
+    if (holder[0].length < length * 3) {
+      holder[0] = new byte[length * 3];
+    }
+    byte[] bytes = holder[0];
+    int n = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        bytes[n++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[n++] = (byte) (0xC0 | (c >> 6));
+        bytes[n++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(text.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, text.charAt(++i));
+          bytes[n++] = (byte) (0xF0 | (codePoint >> 18));
+          bytes[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          bytes[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          bytes[n++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+          // the replacement of the standard encoder for a malformed surrogate
+          bytes[n++] = (byte) '?';
+        }
+      } else {
+        bytes[n++] = (byte) (0xE0 | (c >> 12));
+        bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return n;
+  }
+}
@@ -0,0 +1,269 @@
+package org.mitre.synthea.export;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shard files that the patients are exported into by parallel threads, each into its own
+ * shard, so that the threads never wait for each other's rows. The shards are merged into the
+ * CSV files once the population is complete.
+ *
+ * <p>A shard is taken for the export of one patient and given back afterwards, so there are
+ * only as many shards as patients exported at the same time. Each shard remembers where the
+ * rows of every patient start in its files, so the merge can order the rows by patient index.
+ * The order of the merged files then does not depend on which thread exported which patient.
+ * </p>
+ */
+class CSVShards {
+  private final Path folder;
+  private final List<CSVFileWriter> targets;
+  private final Charset charset;
+  private final boolean ordered;
+
+  private final ConcurrentLinkedQueue<Shard> idle = new ConcurrentLinkedQueue<>();
+  private final List<Shard> shards = new CopyOnWriteArrayList<>();
+  private final AtomicInteger shardNumber = new AtomicInteger();
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Create the shards of CSV files.
+   *
+   * @param folder Folder to write the shard files into, it is removed by the merge.
+   * @param targets Writers of the CSV files that the shards are merged into.
+   * @param charset The character set of the files.
+   * @param ordered Whether to order the merged rows by patient index, instead of appending
+   *     the shards one after the other.
+   */
+  CSVShards(Path folder, List<CSVFileWriter> targets, Charset charset, boolean ordered) {
+    this.folder = folder;
+    this.targets = targets;
+    this.charset = charset;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Take a shard to export a patient into. It must be given back with
+   * {@link #checkIn(Shard)} once the patient is exported.
+   *
+   * @param index Index of the patient in the population, used to order the merged rows.
+   * @return the shard.
+   * @throws IOException if a new shard cannot be created.
+   */
+  Shard checkOut(int index) throws IOException {
+    Shard shard = idle.poll();
+    if (shard == null) {
+      shard = new Shard(shardNumber.getAndIncrement());
+      shards.add(shard);
+    }
+    shard.startPatient(index, sequence.getAndIncrement());
+    return shard;
+  }
+
+  /**
+   * Give back a shard after the patient was exported into it.
+   *
+   * @param shard The shard.
+   */
+  void checkIn(Shard shard) {
+    idle.offer(shard);
+  }
+
+  /**
+   * Append the rows of all shards to the CSV files, and remove the shard files. The shards
+   * must not be in use anymore. New shards are created for patients exported afterwards.
+   *
+   * @throws IOException if the shards cannot be read or the CSV files cannot be written.
+   */
+  synchronized void merge() throws IOException {
+    List<Shard> merged = new ArrayList<>(shards);
+    shards.clear();
+    idle.clear();
+    if (merged.isEmpty()) {
+      return;
+    }
+    for (Shard shard : merged) {
+      shard.close();
+    }
+
+    List<long[]> segments = new ArrayList<>();
+    if (ordered) {
+      // {patient index, export sequence, shard, patient in shard}
+      for (int s = 0; s < merged.size(); s++) {
+        Shard shard = merged.get(s);
+        for (int p = 0; p < shard.patientCount; p++) {
+          segments.add(new long[] {shard.index(p), shard.sequence(p), s, p});
+        }
+      }
+      segments.sort(Comparator.<long[]>comparingLong(segment -> segment[0])
+          .thenComparingLong(segment -> segment[1]));
+    }
+
+    for (int t = 0; t < targets.size(); t++) {
+      CSVFileWriter target = targets.get(t);
+      if (target.isDiscarding()) {
+        continue;
+      }
+      FileChannel[] sources = new FileChannel[merged.size()];
+      try {
+        for (int s = 0; s < sources.length; s++) {
+          sources[s] = FileChannel.open(merged.get(s).file(t), StandardOpenOption.READ);
+        }
+        if (ordered) {
+          transferSegments(target, t, merged, sources, segments);
+        } else {
+          for (int s = 0; s < sources.length; s++) {
+            target.transferFrom(sources[s], 0, merged.get(s).sizes[t]);
+          }
+        }
+      } finally {
+        for (FileChannel source : sources) {
+          if (source != null) {
+            source.close();
+          }
+        }
+      }
+    }
+
+    for (Shard shard : merged) {
+      shard.delete();
+    }
+    Files.deleteIfExists(folder);
+  }
+
+  /**
+   * Copy the rows of one CSV file in the order of the segments. Rows of consecutive patients
+   * of the same shard are copied at once.
+   */
+  private static void transferSegments(CSVFileWriter target, int file, List<Shard> shards,
+      FileChannel[] sources, List<long[]> segments) throws IOException {
+    int pendingShard = -1;
+    long pendingStart = 0;
+    long pendingEnd = 0;
+    for (long[] segment : segments) {
+      int s = (int) segment[2];
+      Shard shard = shards.get(s);
+      int patient = (int) segment[3];
+      long start = shard.start(patient, file);
+      long end = shard.end(patient, file);
+      if (start == end) {
+        continue;
+      }
+      if (s == pendingShard && start == pendingEnd) {
+        pendingEnd = end;
+        continue;
+      }
+      if (pendingShard >= 0) {
+        target.transferFrom(sources[pendingShard], pendingStart, pendingEnd - pendingStart);
+      }
+      pendingShard = s;
+      pendingStart = start;
+      pendingEnd = end;
+    }
+    if (pendingShard >= 0) {
+      target.transferFrom(sources[pendingShard], pendingStart, pendingEnd - pendingStart);
+    }
+  }
+
+  /**
+   * The shard files of one thread at a time.
+   */
+  final class Shard {
+    private final int number;
+    private final Map<CSVFileWriter, CSVFileWriter> writers = new IdentityHashMap<>();
+    private final CSVFileWriter[] files;
+    private long[] sizes;
+    // per patient: index, sequence, and the start offset in each file
+    private long[] patients;
+    private int patientCount;
+
+    private Shard(int number) throws IOException {
+      this.number = number;
+      Files.createDirectories(folder);
+      files = new CSVFileWriter[targets.size()];
+      for (int t = 0; t < files.length; t++) {
+        CSVFileWriter target = targets.get(t);
+        files[t] = target.isDiscarding() ? target
+            : CSVFileWriter.open(file(t).toFile(), false, charset);
+        writers.put(target, files[t]);
+      }
+      patients = new long[64 * stride()];
+    }
+
+    /**
+     * Returns the writer of this shard to use instead of a CSV file writer.
+     *
+     * @param target Writer of the CSV file.
+     * @return the writer of the shard file, or the given one if it is not sharded.
+     */
+    CSVFileWriter writerFor(CSVFileWriter target) {
+      return writers.getOrDefault(target, target);
+    }
+
+    private int stride() {
+      return 2 + files.length;
+    }
+
+    private void startPatient(int index, long sequence) {
+      int offset = patientCount * stride();
+      if (offset + stride() > patients.length) {
+        patients = Arrays.copyOf(patients, patients.length * 2);
+      }
+      patients[offset] = index;
+      patients[offset + 1] = sequence;
+      for (int t = 0; t < files.length; t++) {
+        patients[offset + 2 + t] = files[t].size();
+      }
+      patientCount++;
+    }
+
+    private long index(int patient) {
+      return patients[patient * stride()];
+    }
+
+    private long sequence(int patient) {
+      return patients[patient * stride() + 1];
+    }
+
+    private long start(int patient, int file) {
+      return patients[patient * stride() + 2 + file];
+    }
+
+    private long end(int patient, int file) {
+      return patient + 1 < patientCount ? start(patient + 1, file) : sizes[file];
+    }
+
+    private Path file(int target) {
+      return folder.resolve(number + "-" + target + ".csv");
+    }
+
+    private void close() throws IOException {
+      sizes = new long[files.length];
+      for (int t = 0; t < files.length; t++) {
+        sizes[t] = files[t].size();
+        if (!files[t].isDiscarding()) {
+          files[t].close();
+        }
+      }
+    }
+
+    private void delete() throws IOException {
+      for (int t = 0; t < files.length; t++) {
+        Files.deleteIfExists(file(t));
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package org.mitre.synthea.export;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the throughput of writing CSV rows the way the CSVExporter used to, with a new
+ * StringBuilder per row, String.format for the amounts and a flush per patient, with the
+ * reused row builders and buffered encoding of {@link CSVFileWriter}.
+ *
+ * <p>Usage: gradle csvWriterBenchmark -Params="['1000000', '8']"
+ * where the arguments are the number of rows and the number of writing threads.</p>
+ */
+public class CSVWriterBenchmark {
+  // rows of one patient, after which the old exporter flushed its writers
+  private static final int ROWS_PER_PATIENT = 200;
+  private static final int ROUNDS = 3;
+
+  /**
+   * Run the benchmark.
+   * @param args The number of rows, and the number of threads.
+   * @throws Exception if the rows cannot be written.
+   */
+  public static void main(String[] args) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    BigDecimal[] amounts = new BigDecimal[1024];
+    for (int i = 0; i < amounts.length; i++) {
+      amounts[i] = BigDecimal.valueOf(i * 7919L % 100000, 2);
+    }
+
+    File output = Files.createTempDirectory("synthea-csv-benchmark").toFile();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<String> results = new ArrayList<>();
+    try {
+      // the first round lets the JIT compile both writers
+      for (int round = 0; round <= ROUNDS; round++) {
+        double formatted = run(executor, threads, rows, () -> new FormattedRows(
+            new File(output, "formatted.csv"), amounts));
+        double encoded = run(executor, threads, rows, () -> new EncodedRows(
+            new File(output, "encoded.csv"), amounts));
+        if (round > 0) {
+          results.add(String.format(Locale.US, "%d,%d,%.0f,%.0f",
+              round, threads, rows / formatted, rows / encoded));
+        }
+      }
+    } finally {
+      executor.shutdown();
+      for (File file : output.listFiles()) {
+        file.delete();
+      }
+      output.delete();
+    }
+    System.out.println("round,threads,formatted_rows_per_second,encoded_rows_per_second");
+    results.forEach(System.out::println);
+  }
+
+  private interface RowSink {
+    void write(int row) throws IOException;
+
+    void patientDone() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private interface SinkFactory {
+    RowSink open() throws IOException;
+  }
+
+  /**
+   * Write the rows from all threads into one file.
+   * @return the duration in seconds.
+   */
+  private static double run(ExecutorService executor, int threads, int rows,
+      SinkFactory factory) throws Exception {
+    RowSink sink = factory.open();
+    long start = System.nanoTime();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int first = t;
+      futures.add(executor.submit(() -> {
+        int written = 0;
+        for (int row = first; row < rows; row += threads) {
+          sink.write(row);
+          if (++written % ROWS_PER_PATIENT == 0) {
+            sink.patientDone();
+          }
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    sink.close();
+    return (System.nanoTime() - start) / 1_000_000_000.0;
+  }
+
+  private static class FormattedRows implements RowSink {
+    private final Writer writer;
+    private final BigDecimal[] amounts;
+
+    FormattedRows(File file, BigDecimal[] amounts) throws IOException {
+      this.writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+      this.amounts = amounts;
+    }
+
+    @Override
+    public void write(int row) throws IOException {
+      StringBuilder s = new StringBuilder();
+      s.append(UUID.nameUUIDFromBytes(new byte[] {(byte) row})).append(',');
+      s.append("Encounter for symptom (procedure)").append(',');
+      s.append(String.format(Locale.US, "%.2f", amounts[row & 1023])).append(',');
+      s.append(String.format(Locale.US, "%.2f", amounts[(row >> 3) & 1023])).append(',');
+      s.append(String.format(Locale.US, "%.2f", amounts[(row >> 6) & 1023]));
+      s.append(System.lineSeparator());
+      synchronized (writer) {
+        writer.write(s.toString());
+      }
+    }
+
+    @Override
+    public void patientDone() throws IOException {
+      writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+
+  private static class EncodedRows implements RowSink {
+    private final CSVFileWriter writer;
+    private final BigDecimal[] amounts;
+
+    EncodedRows(File file, BigDecimal[] amounts) throws IOException {
+      this.writer = CSVFileWriter.open(file, false, StandardCharsets.UTF_8);
+      this.amounts = amounts;
+    }
+
+    @Override
+    public void write(int row) throws IOException {
+      StringBuilder s = CSVFileWriter.row();
+      s.append(UUID.nameUUIDFromBytes(new byte[] {(byte) row})).append(',');
+      s.append("Encounter for symptom (procedure)").append(',');
+      CSVFileWriter.appendMoney(s, amounts[row & 1023]).append(',');
+      CSVFileWriter.appendMoney(s, amounts[(row >> 3) & 1023]).append(',');
+      CSVFileWriter.appendMoney(s, amounts[(row >> 6) & 1023]);
+      s.append(System.lineSeparator());
+      writer.write(s);
+    }
+
+    @Override
+    public void patientDone() {
+      // flushed by size, and by time in the exporter
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+}
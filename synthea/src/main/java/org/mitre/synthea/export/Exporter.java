@@ -3,16 +3,14 @@ package org.mitre.synthea.export;
 import ca.uhn.fhir.parser.IParser;
 import com.google.common.base.Strings;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -23,12 +21,14 @@ import java.util.ServiceLoader;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.StringType;
 import org.mitre.synthea.engine.Generator;
@@ -46,6 +46,7 @@ import org.mitre.synthea.identity.Seed;
 import org.mitre.synthea.identity.Variant;
 import org.mitre.synthea.modules.DeathModule;
 import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.RunUtilization;
 import org.mitre.synthea.world.concepts.Claim;
 import org.mitre.synthea.world.concepts.HealthRecord;
 import org.mitre.synthea.world.concepts.HealthRecord.Encounter;
@@ -63,15 +64,9 @@ public abstract class Exporter {
     R4
   }
 
-  private static final List<Pair<Person, Long>> deferredExports = Collections.synchronizedList(new LinkedList<>());
-
-  private static final ConcurrentHashMap<Path, PrintWriter> fileWriters = new ConcurrentHashMap<Path, PrintWriter>();
-
-  private static final int FILE_BUFFER_SIZE = 4 * 1024 * 1024;
-
-  private static List<PatientExporter> patientExporters;
-  private static List<PostCompletionExporter> postCompletionExporters;
-  private static Map<String, CodeMapper> codeMappers;
+  private static volatile List<PatientExporter> patientExporters;
+  private static volatile List<PostCompletionExporter> postCompletionExporters;
+  private static volatile Map<String, CodeMapper> codeMappers;
 
   /**
    * If the config setting "exporter.enable_custom_exporters" is enabled,
@@ -81,20 +76,24 @@ public abstract class Exporter {
    */
   public static void loadCustomExporters() {
     if (Config.getAsBoolean("exporter.enable_custom_exporters", false)) {
-      patientExporters = new ArrayList<>();
-      postCompletionExporters = new ArrayList<>();
+      // fill new lists, other generators may still be exporting with the current ones
+      List<PatientExporter> loadedPatientExporters = new ArrayList<>();
+      List<PostCompletionExporter> loadedPostCompletionExporters = new ArrayList<>();
 
       ServiceLoader<PatientExporter> loader = ServiceLoader.load(PatientExporter.class);
       for (PatientExporter instance : loader) {
         System.out.println(instance.getClass().getCanonicalName());
-        patientExporters.add(instance);
+        loadedPatientExporters.add(instance);
       }
 
       ServiceLoader<PostCompletionExporter> loader2 = ServiceLoader.load(PostCompletionExporter.class);
       for (PostCompletionExporter instance : loader2) {
         System.out.println(instance.getClass().getCanonicalName());
-        postCompletionExporters.add(instance);
+        loadedPostCompletionExporters.add(instance);
       }
+
+      patientExporters = loadedPatientExporters;
+      postCompletionExporters = loadedPostCompletionExporters;
     }
   }
 
@@ -111,7 +110,7 @@ public abstract class Exporter {
    * codes.
    */
   public static void loadCodeMappers() {
-    codeMappers = new HashMap<String, CodeMapper>();
+    Map<String, CodeMapper> loadedCodeMappers = new HashMap<String, CodeMapper>();
     List<String> codeSystemProperties = Config.allPropertyNames()
         .stream()
         .filter((key) -> key.startsWith("exporter.code_map"))
@@ -122,13 +121,14 @@ public abstract class Exporter {
       String[] resources = Config.get(codeSystemProperty).split(",");
       for (String resource : resources) {
         CodeMapper mapper = new CodeMapper(resource);
-        if (codeMappers.containsKey(codeSystem)) {
-          codeMappers.get(codeSystem).merge(mapper);
+        if (loadedCodeMappers.containsKey(codeSystem)) {
+          loadedCodeMappers.get(codeSystem).merge(mapper);
         } else {
-          codeMappers.put(codeSystem, mapper);
+          loadedCodeMappers.put(codeSystem, mapper);
         }
       }
     });
+    codeMappers = loadedCodeMappers;
   }
 
   /**
@@ -150,9 +150,19 @@ public abstract class Exporter {
     public boolean deferExports = false;
     public boolean terminologyService = !Config.get("generate.terminology_service_url", "").isEmpty();
     private BlockingQueue<String> recordQueue;
+    private boolean queueOnly;
     private SupportedFhirVersion fhirVersion;
     private List<Mapping> flexporterMappings;
 
+    // state of a single run, shared with copies of these options
+    private String runId;
+    private List<Pair<Person, Long>> deferredExports =
+        Collections.synchronizedList(new LinkedList<>());
+    private List<String> groupPatients = Collections.synchronizedList(new ArrayList<>());
+    // the CSV and Parquet exporters of the run, by output folder
+    private Map<String, CSVExporter> tableExporters = new ConcurrentHashMap<>();
+    private RunUtilization utilization;
+
     public ExporterRuntimeOptions() {
       yearsOfHistory = Config.getAsInteger("exporter.years_of_history", 10);
     }
@@ -165,19 +175,89 @@ public abstract class Exporter {
       deferExports = init.deferExports;
       terminologyService = init.terminologyService;
       recordQueue = init.recordQueue;
+      queueOnly = init.queueOnly;
       fhirVersion = init.fhirVersion;
       flexporterMappings = init.flexporterMappings;
+      runId = init.runId;
+      deferredExports = init.deferredExports;
+      groupPatients = init.groupPatients;
+      tableExporters = init.tableExporters;
+      utilization = init.utilization;
+    }
+
+    /**
+     * Sets the ID of the run these options belong to. A run with an ID writes
+     * all of its files into its own folder below "exporter.baseDirectory",
+     * so several runs can export at the same time. It also counts the utilization
+     * of the providers, clinicians and payers by its own population.
+     *
+     * @param runId ID of the run, or null to use the shared output folders.
+     */
+    public void setRunId(String runId) {
+      this.runId = runId;
+      this.utilization = runId == null ? null : new RunUtilization();
+    }
+
+    public String getRunId() {
+      return runId;
+    }
+
+    /**
+     * Returns the utilization counted by this run.
+     *
+     * @return the utilization, or null if the run has no ID and counts into the
+     *     providers, clinicians and payers themselves.
+     */
+    public RunUtilization getUtilization() {
+      return utilization;
+    }
+
+    /**
+     * Returns the CSV exporter of this run. Runs without an ID share the
+     * CSVExporter singleton.
+     */
+    CSVExporter getCSVExporter() {
+      if (runId == null) {
+        return CSVExporter.getInstance();
+      }
+      return tableExporters.computeIfAbsent("csv", folder -> new CSVExporter(this));
+    }
+
+    /**
+     * Returns the Parquet exporter of this run. It is closed at the end of the run, so
+     * every run gets its own.
+     */
+    CSVExporter getParquetExporter() {
+      return tableExporters.computeIfAbsent("parquet", folder -> new CSVExporter(this, true));
     }
 
     /**
      * Enables a blocking queue to which FHIR patient records will be written.
+     * The queue holds "exporter.record_queue.capacity" records (default 1).
      * 
      * @param version specifies the version of FHIR that will be written to the
      *                queue.
      */
     public void enableQueue(SupportedFhirVersion version) {
-      recordQueue = new LinkedBlockingQueue<>(1);
+      enableQueue(version, Config.getAsInteger("exporter.record_queue.capacity", 1), false);
+    }
+
+    /**
+     * Enables a blocking queue to which FHIR patient records will be written.
+     * Generator threads block when the queue is full, so a slow consumer slows
+     * down the generation instead of buffering an unbounded number of records.
+     *
+     * @param version   specifies the version of FHIR that will be written to the
+     *                  queue.
+     * @param capacity  the number of records the queue holds before generator
+     *                  threads block.
+     * @param queueOnly if true, records are only written to the queue and all
+     *                  file exports are skipped.
+     */
+    public void enableQueue(SupportedFhirVersion version, int capacity, boolean queueOnly) {
+      recordQueue = new LinkedBlockingQueue<>(Math.max(1, capacity));
       fhirVersion = version;
+      this.queueOnly = queueOnly;
     }
 
     public SupportedFhirVersion queuedFhirVersion() {
@@ -200,6 +280,31 @@ public abstract class Exporter {
       return recordQueue.take();
     }
 
+    /**
+     * Returns the next generated patient record, waiting up to the given time
+     * for one to become available.
+     * Returns null if there is no record queue or no record arrived in time.
+     */
+    public String pollNextRecord(long timeout, TimeUnit unit) throws InterruptedException {
+      if (recordQueue == null) {
+        return null;
+      }
+      return recordQueue.poll(timeout, unit);
+    }
+
+    /**
+     * Moves the records that are already waiting in the queue, up to maxRecords,
+     * into the given collection without blocking.
+     *
+     * @return the number of records moved.
+     */
+    public int drainRecords(Collection<? super String> records, int maxRecords) {
+      if (recordQueue == null) {
+        return 0;
+      }
+      return recordQueue.drainTo(records, maxRecords);
+    }
+
     /**
      * Returns true if record queue is empty or null. Otherwise returns false.
      */
@@ -236,7 +341,7 @@ public abstract class Exporter {
     boolean wasExported = false;
     if (options.deferExports) {
       wasExported = true;
-      deferredExports.add(new ImmutablePair<Person, Long>(person, stopTime));
+      options.deferredExports.add(new ImmutablePair<Person, Long>(person, stopTime));
     } else {
       if (options.yearsOfHistory > 0) {
         person = filterForExport(person, options.yearsOfHistory, stopTime);
@@ -296,43 +401,51 @@ public abstract class Exporter {
       valueSetCodeResolver.resolve();
     }
 
+    if (options.queueOnly) {
+      queueRecord(person, stopTime, options);
+      return wasExported;
+    }
+
     if (Config.getAsBoolean("exporter.fhir_stu3.export")) {
-      File outDirectory = getOutputFolder("fhir_stu3", person);
+      File outDirectory = getOutputFolder("fhir_stu3", person, options);
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
         org.hl7.fhir.dstu3.model.Bundle bundle = FhirStu3.convertToFHIR(person, stopTime);
-        IParser parser = FhirStu3.getContext().newJsonParser().setPrettyPrint(false);
+        IParser parser = FhirSerializer.jsonParser(FhirStu3.getContext(), false);
+        Map<Path, StringBuilder> batches = new HashMap<>();
         for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceType().toString() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
-          String entryJson = parser.encodeResourceToString(entry.getResource());
-          appendToFile(outFilePath, entryJson);
+          FhirSerializer.appendLine(parser, entry.getResource(), batchOf(batches, outFilePath));
         }
+        appendToFiles(batches);
       } else {
-        String bundleJson = FhirStu3.convertToFHIRJson(person, stopTime);
+        org.hl7.fhir.dstu3.model.Bundle bundle = FhirStu3.convertToFHIR(person, stopTime);
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, FhirSerializer.jsonParser(FhirStu3.getContext(),
+            Config.getAsBoolean("exporter.pretty_print", true)), bundle);
       }
     }
     if (Config.getAsBoolean("exporter.fhir_dstu2.export")) {
-      File outDirectory = getOutputFolder("fhir_dstu2", person);
+      File outDirectory = getOutputFolder("fhir_dstu2", person, options);
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
         ca.uhn.fhir.model.dstu2.resource.Bundle bundle = FhirDstu2.convertToFHIR(person, stopTime);
-        IParser parser = FhirDstu2.getContext().newJsonParser().setPrettyPrint(false);
+        IParser parser = FhirSerializer.jsonParser(FhirDstu2.getContext(), false);
+        Map<Path, StringBuilder> batches = new HashMap<>();
         for (ca.uhn.fhir.model.dstu2.resource.Bundle.Entry entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceName() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
-          String entryJson = parser.encodeResourceToString(entry.getResource());
-          appendToFile(outFilePath, entryJson);
+          FhirSerializer.appendLine(parser, entry.getResource(), batchOf(batches, outFilePath));
         }
+        appendToFiles(batches);
       } else {
-        String bundleJson = FhirDstu2.convertToFHIRJson(person, stopTime);
+        ca.uhn.fhir.model.dstu2.resource.Bundle bundle = FhirDstu2.convertToFHIR(person, stopTime);
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, FhirSerializer.jsonParser(FhirDstu2.getContext(),
+            Config.getAsBoolean("exporter.pretty_print", true)), bundle);
       }
     }
     if (Config.getAsBoolean("exporter.fhir.export")) {
-      String runIdFolder = "/" + Generator.getRunID();
-      File outDirectory = getOutputFolder("fhir" + runIdFolder, person);
+      File outDirectory = getOutputFolder("fhir", person, options);
       org.hl7.fhir.r4.model.Bundle bundle = FhirR4.convertToFHIR(person, stopTime);
 
       if (options.flexporterMappings != null) {
@@ -350,38 +463,43 @@ public abstract class Exporter {
         }
       }
 
-      IParser parser = FhirR4.getContext().newJsonParser();
       if (Config.getAsBoolean("exporter.fhir.bulk_data")) {
-        parser.setPrettyPrint(false);
+        IParser parser = FhirSerializer.jsonParser(FhirR4.getContext(), false);
+        Map<Path, StringBuilder> batches = new HashMap<>();
         for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
           String filename = entry.getResource().getResourceType().toString() + ".ndjson";
           Path outFilePath = outDirectory.toPath().resolve(filename);
-          String entryJson = parser.encodeResourceToString(entry.getResource());
-          appendToFile(outFilePath, entryJson);
+          FhirSerializer.appendLine(parser, entry.getResource(), batchOf(batches, outFilePath));
         }
+        appendToFiles(batches);
       } else {
-        parser.setPrettyPrint(true);
-        String bundleJson = parser.encodeResourceToString(bundle);
         Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
-        writeNewFile(outFilePath, bundleJson);
+        writeNewFile(outFilePath, FhirSerializer.jsonParser(FhirR4.getContext(), true), bundle);
       }
-      FhirGroupExporterR4.addPatient((String) person.attributes.get(Person.ID));
+      options.groupPatients.add((String) person.attributes.get(Person.ID));
     }
     if (Config.getAsBoolean("exporter.ccda.export")) {
       String ccdaXml = CCDAExporter.export(person, stopTime);
-      File outDirectory = getOutputFolder("ccda", person);
+      File outDirectory = getOutputFolder("ccda", person, options);
       Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "xml"));
       writeNewFile(outFilePath, ccdaXml);
     }
     if (Config.getAsBoolean("exporter.json.export")) {
       String json = JSONExporter.export(person);
-      File outDirectory = getOutputFolder("json", person);
+      File outDirectory = getOutputFolder("json", person, options);
       Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "json"));
       writeNewFile(outFilePath, json);
     }
     if (Config.getAsBoolean("exporter.csv.export")) {
       try {
-        CSVExporter.getInstance().export(person, stopTime);
+        options.getCSVExporter().export(person, stopTime);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    if (Config.getAsBoolean("exporter.parquet.export")) {
+      try {
+        options.getParquetExporter().export(person, stopTime);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -403,14 +521,14 @@ public abstract class Exporter {
     }
     if (Config.getAsBoolean("exporter.text.export")) {
       try {
-        TextExporter.exportAll(person, fileTag, stopTime);
+        TextExporter.exportAll(person, fileTag, stopTime, options);
       } catch (IOException e) {
         e.printStackTrace();
       }
     }
     if (Config.getAsBoolean("exporter.text.per_encounter_export")) {
       try {
-        TextExporter.exportEncounter(person, stopTime);
+        TextExporter.exportEncounter(person, stopTime, options);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -424,7 +542,7 @@ public abstract class Exporter {
     }
     if (Config.getAsBoolean("exporter.symptoms.text.export")) {
       try {
-        SymptomTextExporter.exportAll(person, fileTag, stopTime);
+        SymptomTextExporter.exportAll(person, fileTag, stopTime, options);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -437,7 +555,7 @@ public abstract class Exporter {
       }
     }
     if (Config.getAsBoolean("exporter.clinical_note.export")) {
-      File outDirectory = getOutputFolder("notes", person);
+      File outDirectory = getOutputFolder("notes", person, options);
       Path outFilePath = outDirectory.toPath().resolve(filename(person, fileTag, "txt"));
       String consolidatedNotes = ClinicalNoteExporter.export(person);
       writeNewFile(outFilePath, consolidatedNotes);
@@ -451,27 +569,40 @@ public abstract class Exporter {
     }
 
     if (options.isQueueEnabled()) {
-      try {
-        switch (options.queuedFhirVersion()) {
-          case DSTU2:
-            options.recordQueue.put(FhirDstu2.convertToFHIRJson(person, stopTime));
-            break;
-          case STU3:
-            options.recordQueue.put(FhirStu3.convertToFHIRJson(person, stopTime));
-            break;
-          default:
-            options.recordQueue.put(FhirR4.convertToFHIRJson(person, stopTime));
-            break;
-        }
-      } catch (InterruptedException ie) {
-        // ignore
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
+      queueRecord(person, stopTime, options);
     }
     return wasExported;
   }
 
+  /**
+   * Write the FHIR Bundle of a patient record to the record queue, waiting for
+   * space if the queue is full.
+   *
+   * @param person   Patient to write.
+   * @param stopTime Time at which the simulation stopped
+   * @param options  Runtime exporter options with an enabled record queue.
+   */
+  private static void queueRecord(Person person, long stopTime, ExporterRuntimeOptions options) {
+    try {
+      switch (options.queuedFhirVersion()) {
+        case DSTU2:
+          options.recordQueue.put(FhirDstu2.convertToFHIRJson(person, stopTime));
+          break;
+        case STU3:
+          options.recordQueue.put(FhirStu3.convertToFHIRJson(person, stopTime));
+          break;
+        default:
+          options.recordQueue.put(FhirR4.convertToFHIRJson(person, stopTime));
+          break;
+      }
+    } catch (InterruptedException ie) {
+      // the generator is shutting down, keep the flag so the thread stops
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
   /**
    * Write a new file with the given contents. Fails if the file already exists.
    * 
@@ -486,6 +617,22 @@ public abstract class Exporter {
     }
   }
 
+  /**
+   * Write a new file with the JSON of a FHIR resource, encoded straight into the file.
+   * Fails if the file already exists.
+   *
+   * @param file     Path to the new file.
+   * @param parser   Parser to encode the resource with.
+   * @param resource The resource, usually a Bundle.
+   */
+  private static void writeNewFile(Path file, IParser parser, IBaseResource resource) {
+    try {
+      FhirSerializer.writeNewFile(parser, resource, file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
   /**
    * Overwrite a file with the given contents. If the file doesn't exist it will
    * be created.
@@ -509,37 +656,51 @@ public abstract class Exporter {
    * @param contents The contents of the file.
    */
   public static void appendToFile(Path file, String contents) {
-    PrintWriter writer = fileWriters.get(file);
-
-    if (writer == null) {
-      synchronized (fileWriters) {
-        writer = fileWriters.get(file);
-        if (writer == null) {
-          try {
-            writer = new PrintWriter(
-                new BufferedWriter(new FileWriter(file.toFile(), true), FILE_BUFFER_SIZE));
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
-          fileWriters.put(file, writer);
-        }
-      }
-    }
+    FileAppender.forFile(file).appendLine(contents);
+  }
 
-    synchronized (writer) {
-      writer.println(contents);
+  /**
+   * Append a batch of lines to the end of each of the given files. The lines of
+   * a batch are written together.
+   *
+   * @param batches The lines to append, each ending with a line separator, by file.
+   */
+  public static void appendToFiles(Map<Path, StringBuilder> batches) {
+    for (Map.Entry<Path, StringBuilder> batch : batches.entrySet()) {
+      FileAppender.forFile(batch.getKey()).append(batch.getValue());
     }
   }
 
   /**
-   * Flushes the data and closes all open files.
+   * Returns the batch of lines of a file, see {@link #appendToFiles(Map)}.
    */
-  private static void closeOpenFiles() {
-    Iterator<PrintWriter> itr = fileWriters.values().iterator();
-    while (itr.hasNext()) {
-      itr.next().close();
+  private static StringBuilder batchOf(Map<Path, StringBuilder> batches, Path file) {
+    return batches.computeIfAbsent(file, f -> new StringBuilder());
+  }
+
+  /**
+   * Flushes the data and closes the open files of a run. Runs without an ID
+   * close all open files.
+   *
+   * @param options The exporter options of the run.
+   */
+  private static void closeOpenFiles(ExporterRuntimeOptions options) {
+    Path runFolder = options.runId == null ? null : getOutputFolder("", null, options).toPath();
+    FileAppender.close(file -> runFolder == null || file.startsWith(runFolder));
+  }
+
+  /**
+   * Close the files of a run that was interrupted before its population was complete.
+   * The post-completion exports are skipped, but what the patients' exports wrote is
+   * written out, so nothing writes into the run's output folder after this returns.
+   *
+   * @param options The runtime options of the run.
+   */
+  public static void closeInterruptedRun(ExporterRuntimeOptions options) {
+    for (CSVExporter tableExporter : options.tableExporters.values()) {
+      tableExporter.closeWriters();
     }
-    fileWriters.clear();
+    closeOpenFiles(options);
   }
 
   /**
@@ -565,50 +726,56 @@ public abstract class Exporter {
     if (options.deferExports) {
       ExporterRuntimeOptions nonDeferredOptions = new ExporterRuntimeOptions(options);
       nonDeferredOptions.deferExports = false;
-      for (Pair<Person, Long> entry : deferredExports) {
+      for (Pair<Person, Long> entry : options.deferredExports) {
         export(entry.getLeft(), entry.getRight(), nonDeferredOptions);
       }
-      deferredExports.clear();
+      options.deferredExports.clear();
+    }
+
+    if (options.queueOnly) {
+      // nothing was written to files, so there is nothing to complete
+      return;
     }
 
     try {
-      FhirGroupExporterR4.exportAndSave(generator.getRandomizer(), generator.stop);
+      FhirGroupExporterR4.exportAndSave(options.groupPatients, generator.getRandomizer(),
+          generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      HospitalExporterR4.export(generator.getRandomizer(), generator.stop);
+      HospitalExporterR4.export(generator.getRandomizer(), generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      FhirPractitionerExporterR4.export(generator.getRandomizer(), generator.stop);
+      FhirPractitionerExporterR4.export(generator.getRandomizer(), generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      HospitalExporterStu3.export(generator.stop);
+      HospitalExporterStu3.export(generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      FhirPractitionerExporterStu3.export(generator.stop);
+      FhirPractitionerExporterStu3.export(generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      HospitalExporterDstu2.export(generator.stop);
+      HospitalExporterDstu2.export(generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
 
     try {
-      FhirPractitionerExporterDstu2.export(generator.stop);
+      FhirPractitionerExporterDstu2.export(generator.stop, options);
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -631,8 +798,27 @@ public abstract class Exporter {
 
     if (Config.getAsBoolean("exporter.csv.export")) {
       try {
-        CSVExporter.getInstance().exportOrganizationsAndProviders();
-        CSVExporter.getInstance().exportPayers();
+        CSVExporter csvExporter = options.getCSVExporter();
+        csvExporter.mergeShards();
+        csvExporter.exportOrganizationsAndProviders();
+        csvExporter.exportPayers();
+        if (options.runId != null) {
+          csvExporter.closeWriters();
+        } else {
+          // the singleton stays open for later runs, but what was exported must be on disk
+          csvExporter.flushWriters();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    if (Config.getAsBoolean("exporter.parquet.export")) {
+      try {
+        CSVExporter parquetExporter = options.getParquetExporter();
+        parquetExporter.exportOrganizationsAndProviders();
+        parquetExporter.exportPayers();
+        parquetExporter.closeWriters();
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -640,7 +826,7 @@ public abstract class Exporter {
 
     if (Config.getAsBoolean("exporter.metadata.export", false)) {
       try {
-        MetadataExporter.exportMetadata(generator);
+        MetadataExporter.exportMetadata(generator, options);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -655,7 +841,7 @@ public abstract class Exporter {
       parser.setPrettyPrint(false);
       Parameters parameters = new Parameters()
           .addParameter("inputFormat", "application/fhir+ndjson");
-      File outDirectory = getOutputFolder("fhir", null);
+      File outDirectory = getOutputFolder("fhir", null, options);
 
       File[] files = outDirectory.listFiles(pathname -> pathname.getName().endsWith("ndjson"));
 
@@ -685,7 +871,7 @@ public abstract class Exporter {
       }
     }
 
-    closeOpenFiles();
+    closeOpenFiles(options);
   }
 
   /**
@@ -887,8 +1073,26 @@ public abstract class Exporter {
    *         settings.
    */
   public static File getOutputFolder(String folderName, Person person) {
+    return getOutputFolder(folderName, person, null);
+  }
+
+  /**
+   * Get the folder where the patient record of a run should be stored.
+   * Runs with an ID get their own folder below "exporter.baseDirectory".
+   *
+   * @param folderName The base folder to use.
+   * @param person     The person being exported.
+   * @param options    The exporter options of the run. May be null.
+   * @return Either the base folder provided, or a subdirectory, depending on
+   *         configuration settings, inside the folder of the run.
+   */
+  public static File getOutputFolder(String folderName, Person person,
+      ExporterRuntimeOptions options) {
     List<String> folders = new ArrayList<>();
 
+    if (options != null && options.runId != null) {
+      folders.add(options.runId);
+    }
     folders.add(folderName);
 
     if (person != null
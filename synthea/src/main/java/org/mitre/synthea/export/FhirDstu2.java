@@ -267,7 +267,7 @@ public class FhirDstu2 {
   public static String convertToFHIRJson(Person person, long stopTime) {
     Bundle bundle = convertToFHIR(person, stopTime);
     Boolean pretty = Config.getAsBoolean("exporter.pretty_print", true);
-    String bundleJson = FHIR_CTX.newJsonParser().setPrettyPrint(pretty)
+    String bundleJson = FhirSerializer.jsonParser(FHIR_CTX, pretty)
         .encodeResourceToString(bundle);
     return bundleJson;
   }
@@ -6,9 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -20,29 +18,13 @@ import org.mitre.synthea.helpers.RandomNumberGenerator;
 
 public abstract class FhirGroupExporterR4 {
 
-  private static final List<String> patientList = new ArrayList<String>();
-
-  /**
-   * Reset the patient list to empty.
-   */
-  public static void resetPatientList() {
-    patientList.clear();
-  }
-
-  /**
-   * Add the patient to the patient list.
-   * @param resourceId The resource ID of the patient.
-   */
-  public static synchronized void addPatient(String resourceId) {
-    patientList.add(resourceId);
-  }
-
   /**
    * Export the patient list as a FHIR Group resource.
+   * @param patientList The resource IDs of the patients of the run.
    * @param stop The stop time.
    * @return FHIR Group resource.
    */
-  public static Group export(RandomNumberGenerator rand, long stop) {
+  public static Group export(List<String> patientList, RandomNumberGenerator rand, long stop) {
     String uuid = rand.randUUID().toString();
 
     Group group = new Group();
@@ -62,19 +44,18 @@ public abstract class FhirGroupExporterR4 {
   }
 
   /**
-   * Export the current patient list as a FHIR Group resource and save it as a JSON file.
+   * Export the patient list of a run as a FHIR Group resource and save it as a JSON file.
+   * @param patientList The resource IDs of the patients of the run.
    * @param stop The stop time.
+   * @param options The exporter options of the run.
    */
-  public static void exportAndSave(RandomNumberGenerator rand, long stop) {
+  public static void exportAndSave(List<String> patientList, RandomNumberGenerator rand,
+      long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.groups.fhir.export")) {
-      Group group = export(rand, stop);
+      Group group = export(patientList, rand, stop);
 
       // get output folder
-      List<String> folders = new ArrayList<>();
-      folders.add("fhir");
-      String baseDirectory = Config.get("exporter.baseDirectory");
-      File f = Paths.get(baseDirectory, folders.toArray(new String[0])).toFile();
-      f.mkdirs();
+      File f = Exporter.getOutputFolder("fhir", null, options);
       Path outFilePath = null;
       String groupJson = null;
 
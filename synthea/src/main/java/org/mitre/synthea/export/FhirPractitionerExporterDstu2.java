@@ -29,6 +29,13 @@ public abstract class FhirPractitionerExporterDstu2 {
    * Export the practitioner in FHIR DSTU2 format.
    */
   public static void export(long stop) {
+    export(stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the practitioner of a run in FHIR DSTU2 format.
+   */
+  public static void export(long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.practitioner.fhir_dstu2.export")) {
 
       Bundle bundle = new Bundle();
@@ -61,7 +68,7 @@ public abstract class FhirPractitionerExporterDstu2 {
       }
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir_dstu2", null);
+      File outputFolder = Exporter.getOutputFolder("fhir_dstu2", null, options);
       IParser parser = FhirDstu2.getContext().newJsonParser();
 
       if (ndjson) {
@@ -32,6 +32,13 @@ public abstract class FhirPractitionerExporterR4 {
    * Export the practitioner in FHIR R4 format.
    */
   public static void export(RandomNumberGenerator rand, long stop) {
+    export(rand, stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the practitioner of a run in FHIR R4 format.
+   */
+  public static void export(RandomNumberGenerator rand, long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.practitioner.fhir.export")) {
 
       Bundle bundle = new Bundle();
@@ -69,7 +76,7 @@ public abstract class FhirPractitionerExporterR4 {
       }
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir", null);
+      File outputFolder = Exporter.getOutputFolder("fhir", null, options);
       IParser parser = FhirR4.getContext().newJsonParser();
 
       if (ndjson) {
@@ -28,6 +28,13 @@ public abstract class FhirPractitionerExporterStu3 {
    * Export the practitioner in FHIR STU3 format.
    */
   public static void export(long stop) {
+    export(stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the practitioner of a run in FHIR STU3 format.
+   */
+  public static void export(long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.practitioner.fhir_stu3.export")) {
 
       Bundle bundle = new Bundle();
@@ -60,7 +67,7 @@ public abstract class FhirPractitionerExporterStu3 {
       }
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir_stu3", null);
+      File outputFolder = Exporter.getOutputFolder("fhir_stu3", null, options);
       IParser parser = FhirStu3.getContext().newJsonParser();
 
       if (ndjson) {
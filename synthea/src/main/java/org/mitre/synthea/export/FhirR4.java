@@ -526,7 +526,7 @@ public class FhirR4 {
   public static String convertToFHIRJson(Person person, long stopTime) {
     Bundle bundle = convertToFHIR(person, stopTime);
     Boolean pretty = Config.getAsBoolean("exporter.pretty_print", true);
-    String bundleJson = FHIR_CTX.newJsonParser().setPrettyPrint(pretty)
+    String bundleJson = FhirSerializer.jsonParser(FHIR_CTX, pretty)
         .encodeResourceToString(bundle);
 
     return bundleJson;
@@ -2179,7 +2179,7 @@ public class FhirR4 {
     if (clinician.getEncounterCount() == 0) {
       clinician.incrementEncounters();
     }
-    if (providerOrganization.getUtilization().isEmpty()) {
+    if (!providerOrganization.hasUtilization()) {
       // If this provider has never been used, ensure they have at least one encounter
       // (encounter creating this Provenance record) so that the provider is exported.
       providerOrganization.incrementEncounters(EncounterType.VIRTUAL, Utilities.getYear(stopTime));
@@ -0,0 +1,82 @@
+package org.mitre.synthea.export;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+/**
+ * Encodes the FHIR resources of the patient records to JSON, without building the JSON of a
+ * whole record as one String.
+ *
+ * <p>Each thread keeps one parser per FHIR context, since parsers cannot be shared between
+ * threads. Bundles are encoded straight into a buffered file, and the resources of the bulk
+ * data export straight into the batch of their NDJSON file, so the heap never holds the
+ * encoded record next to an extra copy of it.</p>
+ */
+final class FhirSerializer {
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private static final ThreadLocal<Map<FhirContext, IParser>> parsers =
+      ThreadLocal.withInitial(IdentityHashMap::new);
+
+  private FhirSerializer() {
+  }
+
+  /**
+   * Get the JSON parser of the current thread for a FHIR context.
+   *
+   * @param context The FHIR context of the FHIR version.
+   * @param pretty Whether to pretty-print the JSON.
+   * @return the parser, which must not be used by other threads.
+   */
+  static IParser jsonParser(FhirContext context, boolean pretty) {
+    return parsers.get().computeIfAbsent(context, FhirContext::newJsonParser)
+        .setPrettyPrint(pretty);
+  }
+
+  /**
+   * Write a resource, usually a Bundle, to a new file followed by a line separator.
+   * Fails if the file already exists.
+   *
+   * @param parser Parser to encode the resource with.
+   * @param resource The resource.
+   * @param file Path to the new file.
+   * @throws IOException if the file cannot be written.
+   */
+  static void writeNewFile(IParser parser, IBaseResource resource, Path file)
+      throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      parser.encodeResourceToWriter(resource, writer);
+      writer.write(LINE_SEPARATOR);
+    }
+  }
+
+  /**
+   * Append a resource as one line to the batch of lines of an NDJSON file.
+   *
+   * @param parser Parser to encode the resource with, which must not pretty-print.
+   * @param resource The resource.
+   * @param batch The batch of lines.
+   */
+  static void appendLine(IParser parser, IBaseResource resource, StringBuilder batch) {
+    try {
+      parser.encodeResourceToWriter(resource, new StringBuilderWriter(batch));
+    } catch (IOException e) {
+      // a StringBuilderWriter does not throw
+      throw new IllegalStateException(e);
+    }
+    batch.append(LINE_SEPARATOR);
+  }
+}
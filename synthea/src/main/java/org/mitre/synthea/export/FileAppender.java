@@ -0,0 +1,213 @@
+package org.mitre.synthea.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import org.mitre.synthea.helpers.Config;
+
+/**
+ * Appends text to files that many generator threads write to, such as the NDJSON files of
+ * the FHIR bulk data export and the BFD RIF files.
+ *
+ * <p>The generator threads do not write or lock anything: they add their batch of lines,
+ * for example all resources of one type for one patient, to a lock-free queue of the file.
+ * A small pool of I/O threads drains each queue through a large direct buffer into the file
+ * channel, and writes batches larger than the buffer with a gathering write. Every batch is
+ * written in one piece, so the lines of different threads never interleave. Only the I/O
+ * threads hold a direct buffer, files are also closed on them.</p>
+ */
+public class FileAppender {
+  private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+  // queued bytes per file above which the generator threads wait for the I/O threads
+  private static final long MAX_PENDING_BYTES = 16L * BUFFER_SIZE;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private static final ConcurrentHashMap<Path, FileAppender> appenders =
+      new ConcurrentHashMap<>();
+  private static final ExecutorService ioThreads = Executors.newFixedThreadPool(
+      Math.max(1, Config.getAsInteger("exporter.io_threads", 2)), runnable -> {
+        Thread thread = new Thread(runnable, "file-appender");
+        thread.setDaemon(true);
+        return thread;
+      });
+  private static final ThreadLocal<ByteBuffer> buffers =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+  private final Path file;
+  private final FileChannel channel;
+  private final ConcurrentLinkedQueue<byte[]> batches = new ConcurrentLinkedQueue<>();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  // set while a thread drains the queue, and for good once the file is closed
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private volatile boolean closed;
+
+  private FileAppender(Path file) {
+    this.file = file;
+    try {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to open " + file + " for appending", e);
+    }
+  }
+
+  /**
+   * Get the appender of a file. The file is created if it does not exist yet and
+   * stays open until it is closed with {@link #close(Predicate)}.
+   *
+   * @param file Path to the file.
+   * @return the appender of the file.
+   */
+  public static FileAppender forFile(Path file) {
+    return appenders.computeIfAbsent(file, FileAppender::new);
+  }
+
+  /**
+   * Append a line to the file.
+   *
+   * @param line The line, without line separator.
+   */
+  public void appendLine(String line) {
+    append(line + LINE_SEPARATOR);
+  }
+
+  /**
+   * Append a batch of text to the file, in one piece.
+   *
+   * @param batch The text, usually several lines each ending with a line separator.
+   */
+  public void append(CharSequence batch) {
+    byte[] bytes = batch.toString().getBytes(Charset.defaultCharset());
+    batches.offer(bytes);
+    long pending = pendingBytes.addAndGet(bytes.length);
+    scheduleDrain();
+    while (pending > MAX_PENDING_BYTES && !closed) {
+      // the disk does not keep up, let the I/O threads catch up before queueing more
+      LockSupport.parkNanos(100_000L);
+      pending = pendingBytes.get();
+    }
+  }
+
+  /**
+   * Write everything that was appended and close the matching files.
+   *
+   * @param filter Selects the files to close.
+   */
+  public static void close(Predicate<Path> filter) {
+    Iterator<Map.Entry<Path, FileAppender>> itr = appenders.entrySet().iterator();
+    while (itr.hasNext()) {
+      Map.Entry<Path, FileAppender> entry = itr.next();
+      if (filter.test(entry.getKey())) {
+        entry.getValue().closeFile();
+        itr.remove();
+      }
+    }
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      ioThreads.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    try {
+      writeBatches();
+    } finally {
+      draining.set(false);
+    }
+    // a batch may have been queued after the last poll, before the flag was cleared
+    if (!batches.isEmpty()) {
+      scheduleDrain();
+    }
+  }
+
+  private void closeFile() {
+    // take over from the I/O thread, and keep the flag so no drain is scheduled anymore
+    while (!draining.compareAndSet(false, true)) {
+      LockSupport.parkNanos(100_000L);
+    }
+    closed = true;
+    // the caller may be a pooled thread of a server, which must not keep a direct buffer
+    Future<?> done = ioThreads.submit(() -> {
+      writeBatches();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    });
+    // the file must be complete when this returns, even if the caller is interrupted
+    boolean interrupted = false;
+    while (true) {
+      try {
+        done.get();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException e) {
+        e.getCause().printStackTrace();
+        break;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeBatches() {
+    ByteBuffer buffer = buffers.get();
+    buffer.clear();
+    try {
+      byte[] batch;
+      while ((batch = batches.poll()) != null) {
+        pendingBytes.addAndGet(-batch.length);
+        if (batch.length > buffer.remaining()) {
+          buffer.flip();
+          if (batch.length > buffer.capacity()) {
+            write(buffer, ByteBuffer.wrap(batch));
+            buffer.clear();
+            continue;
+          }
+          write(buffer);
+          buffer.clear();
+        }
+        buffer.put(batch);
+      }
+      buffer.flip();
+      write(buffer);
+    } catch (IOException e) {
+      System.err.println("Unable to append to " + file);
+      e.printStackTrace();
+      // drop what is queued, so the generator threads do not wait for it
+      batches.clear();
+      pendingBytes.set(0);
+    }
+  }
+
+  private void write(ByteBuffer... sources) throws IOException {
+    long remaining = 0;
+    for (ByteBuffer source : sources) {
+      remaining += source.remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(sources);
+    }
+  }
+}
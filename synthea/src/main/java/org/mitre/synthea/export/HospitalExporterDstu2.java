@@ -25,6 +25,13 @@ public abstract class HospitalExporterDstu2 {
    * Export the hospital in FHIR DSTU2 format.
    */
   public static void export(long stop) {
+    export(stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the hospital of a run in FHIR DSTU2 format.
+   */
+  public static void export(long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.hospital.fhir_dstu2.export")) {
 
       Bundle bundle = new Bundle();
@@ -45,7 +52,7 @@ public abstract class HospitalExporterDstu2 {
       }
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir_dstu2", null);
+      File outputFolder = Exporter.getOutputFolder("fhir_dstu2", null, options);
       IParser parser = FhirDstu2.getContext().newJsonParser();
 
       if (ndjson) {
@@ -27,6 +27,13 @@ public abstract class HospitalExporterR4 {
    * Export the hospital in FHIR R4 format.
    */
   public static void export(RandomNumberGenerator rand, long stop) {
+    export(rand, stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the hospital of a run in FHIR R4 format.
+   */
+  public static void export(RandomNumberGenerator rand, long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.hospital.fhir.export")) {
 
       Bundle bundle = new Bundle();
@@ -49,7 +56,7 @@ public abstract class HospitalExporterR4 {
       FhirR4.addPatientHomeLocation(bundle);
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir", null);
+      File outputFolder = Exporter.getOutputFolder("fhir", null, options);
       IParser parser = FhirR4.getContext().newJsonParser();
 
       if (ndjson) {
@@ -25,6 +25,13 @@ public abstract class HospitalExporterStu3 {
    * Export the hospital in FHIR STU3 format.
    */
   public static void export(long stop) {
+    export(stop, new Exporter.ExporterRuntimeOptions());
+  }
+
+  /**
+   * Export the hospital of a run in FHIR STU3 format.
+   */
+  public static void export(long stop, Exporter.ExporterRuntimeOptions options) {
     if (Config.getAsBoolean("exporter.hospital.fhir_stu3.export")) {
 
       Bundle bundle = new Bundle();
@@ -45,7 +52,7 @@ public abstract class HospitalExporterStu3 {
       }
 
       boolean ndjson = Config.getAsBoolean("exporter.fhir.bulk_data", false);
-      File outputFolder = Exporter.getOutputFolder("fhir_stu3", null);
+      File outputFolder = Exporter.getOutputFolder("fhir_stu3", null, options);
       IParser parser = FhirStu3.getContext().newJsonParser();
 
       if (ndjson) {
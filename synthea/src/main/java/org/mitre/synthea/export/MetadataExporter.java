@@ -30,9 +30,11 @@ public class MetadataExporter {
    * such as version, config settings, and runtime args.
    * 
    * @param generator Generator that was used to generate the population
+   * @param options Exporter options of the run
    * @throws IOException if an error occurs writing to the output directory
    */
-  public static void exportMetadata(Generator generator) throws IOException {
+  public static void exportMetadata(Generator generator, Exporter.ExporterRuntimeOptions options)
+      throws IOException {
     // use a linked hashmap in an attempt to preserve insertion order.
     // ie, most important things at the top/start
     Map<String, Object> metadata = new LinkedHashMap<>();
@@ -153,7 +155,7 @@ public class MetadataExporter {
 
     // make sure everything is filename-safe, replace "non-word characters" with _
     String filename = filenameBuilder.toString().replaceAll("\\W+", "_");
-    File outputDirectory = Exporter.getOutputFolder("metadata", null);
+    File outputDirectory = Exporter.getOutputFolder("metadata", null, options);
     outputDirectory.mkdirs();
     Path outputFile = outputDirectory.toPath().resolve(filename + ".json");
 
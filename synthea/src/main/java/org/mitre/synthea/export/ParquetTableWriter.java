@@ -0,0 +1,239 @@
+package org.mitre.synthea.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+import org.mitre.synthea.helpers.Config;
+
+/**
+ * Writer of a Parquet table that takes the same rows as the CSV file of the table.
+ *
+ * <p>The first row is the CSV header and names the columns. The columns listed in
+ * {@link #COLUMN_TYPES} are typed: dates, timestamps in UTC milliseconds, amounts as decimals
+ * with two digits, whole numbers and doubles. All other columns are strings, which Parquet
+ * dictionary-encodes, so repeated codes and descriptions take little space. Empty values are
+ * null.</p>
+ */
+class ParquetTableWriter extends CSVFileWriter {
+  /**
+   * Typed columns per table, other columns are strings.
+   */
+  private static final Map<String, String> COLUMN_TYPES = new HashMap<>();
+
+  static {
+    COLUMN_TYPES.put("patients", "BIRTHDATE:date,DEATHDATE:date,LAT:double,LON:double,"
+        + "HEALTHCARE_EXPENSES:money,HEALTHCARE_COVERAGE:money,INCOME:long");
+    COLUMN_TYPES.put("allergies", "START:date,STOP:date");
+    COLUMN_TYPES.put("medications", "START:timestamp,STOP:timestamp,BASE_COST:money,"
+        + "PAYER_COVERAGE:money,DISPENSES:long,TOTALCOST:money");
+    COLUMN_TYPES.put("conditions", "START:date,STOP:date");
+    COLUMN_TYPES.put("careplans", "START:date,STOP:date");
+    COLUMN_TYPES.put("observations", "DATE:timestamp");
+    COLUMN_TYPES.put("procedures", "START:timestamp,STOP:timestamp,BASE_COST:money");
+    COLUMN_TYPES.put("immunizations", "DATE:timestamp,BASE_COST:money");
+    COLUMN_TYPES.put("encounters", "START:timestamp,STOP:timestamp,BASE_ENCOUNTER_COST:money,"
+        + "TOTAL_CLAIM_COST:money,PAYER_COVERAGE:money");
+    COLUMN_TYPES.put("imaging_studies", "DATE:timestamp");
+    COLUMN_TYPES.put("devices", "START:timestamp,STOP:timestamp");
+    COLUMN_TYPES.put("supplies", "DATE:date,QUANTITY:long");
+    COLUMN_TYPES.put("organizations", "LAT:double,LON:double,REVENUE:money,UTILIZATION:long");
+    COLUMN_TYPES.put("providers", "LAT:double,LON:double,ENCOUNTERS:long,PROCEDURES:long");
+    COLUMN_TYPES.put("payers", "AMOUNT_COVERED:money,AMOUNT_UNCOVERED:money,REVENUE:money,"
+        + "COVERED_ENCOUNTERS:long,UNCOVERED_ENCOUNTERS:long,COVERED_MEDICATIONS:long,"
+        + "UNCOVERED_MEDICATIONS:long,COVERED_PROCEDURES:long,UNCOVERED_PROCEDURES:long,"
+        + "COVERED_IMMUNIZATIONS:long,UNCOVERED_IMMUNIZATIONS:long,UNIQUE_CUSTOMERS:long,"
+        + "QOLS_AVG:double,MEMBER_MONTHS:long");
+    COLUMN_TYPES.put("payer_transitions", "START_DATE:timestamp,END_DATE:timestamp");
+    COLUMN_TYPES.put("claims", "CURRENTILLNESSDATE:timestamp,SERVICEDATE:timestamp,"
+        + "OUTSTANDING1:money,OUTSTANDING2:money,OUTSTANDINGP:money,"
+        + "LASTBILLEDDATE1:timestamp,LASTBILLEDDATE2:timestamp,LASTBILLEDDATEP:timestamp,"
+        + "HEALTHCARECLAIMTYPEID1:long,HEALTHCARECLAIMTYPEID2:long");
+    COLUMN_TYPES.put("claims_transactions", "CHARGEID:long,AMOUNT:money,FROMDATE:timestamp,"
+        + "TODATE:timestamp,UNITS:long,UNITAMOUNT:money,PAYMENTS:money,ADJUSTMENTS:money,"
+        + "TRANSFERS:money,OUTSTANDING:money");
+    COLUMN_TYPES.put("patient_expenses", "YEAR:timestamp,HEALTHCARE_EXPENSES:money,"
+        + "INSURANCE_COSTS:money,COVERED_COSTS:money");
+  }
+
+  private enum ColumnType {
+    STRING, DATE, TIMESTAMP, MONEY, LONG, DOUBLE
+  }
+
+  private final String table;
+  private final OutputFile file;
+  private final StringBuilder pending = new StringBuilder();
+  private String[] columns;
+  private ColumnType[] types;
+  private SimpleGroupFactory groups;
+  private ParquetWriter<Group> writer;
+
+  private ParquetTableWriter(String table, OutputFile file) {
+    super(null, StandardCharsets.UTF_8);
+    this.table = table;
+    this.file = file;
+  }
+
+  /**
+   * Open a Parquet table for writing. The file is replaced if it exists.
+   *
+   * @param file The file.
+   * @param table Name of the table, the name of its CSV file without extension.
+   * @return the writer of the table.
+   */
+  static ParquetTableWriter open(File file, String table) {
+    return new ParquetTableWriter(table, new LocalOutputFile(file.toPath()));
+  }
+
+  @Override
+  synchronized void write(CharSequence rows) throws IOException {
+    pending.append(rows);
+    int start = 0;
+    for (int i = 0; i < pending.length(); i++) {
+      if (pending.charAt(i) == '\n') {
+        int end = i > start && pending.charAt(i - 1) == '\r' ? i - 1 : i;
+        writeRow(pending.substring(start, end));
+        start = i + 1;
+      }
+    }
+    pending.delete(0, start);
+  }
+
+  private void writeRow(String row) throws IOException {
+    // CSVExporter removes commas from the values, so splitting on them is safe
+    String[] values = row.split(",", -1);
+    if (columns == null) {
+      openTable(values);
+      return;
+    }
+    if (values.length != columns.length) {
+      throw new IOException("Row of " + table + " has " + values.length + " values instead of "
+          + columns.length + ": " + row);
+    }
+    writer.write(toGroup(values));
+  }
+
+  /**
+   * Convert the values of a row into the typed columns.
+   */
+  private Group toGroup(String[] values) {
+    Group group = groups.newGroup();
+    for (int c = 0; c < values.length; c++) {
+      String value = values[c];
+      if (value.isEmpty()) {
+        continue;
+      }
+      switch (types[c]) {
+        case DATE:
+          group.add(c, (int) LocalDate.parse(value).toEpochDay());
+          break;
+        case TIMESTAMP:
+          group.add(c, Instant.parse(value).toEpochMilli());
+          break;
+        case MONEY:
+          group.add(c, new BigDecimal(value).setScale(2, RoundingMode.HALF_UP)
+              .unscaledValue().longValueExact());
+          break;
+        case LONG:
+          group.add(c, Long.parseLong(value));
+          break;
+        case DOUBLE:
+          group.add(c, Double.parseDouble(value));
+          break;
+        default:
+          group.add(c, Binary.fromString(value));
+      }
+    }
+    return group;
+  }
+
+  private void openTable(String[] header) throws IOException {
+    columns = header;
+    types = new ColumnType[header.length];
+    Map<String, ColumnType> typed = new HashMap<>();
+    for (String column : COLUMN_TYPES.getOrDefault(table, "").split(",")) {
+      if (!column.isEmpty()) {
+        String[] nameAndType = column.split(":");
+        typed.put(nameAndType[0], ColumnType.valueOf(nameAndType[1].toUpperCase()));
+      }
+    }
+
+    Types.MessageTypeBuilder schema = Types.buildMessage();
+    for (int c = 0; c < header.length; c++) {
+      types[c] = typed.getOrDefault(header[c], ColumnType.STRING);
+      switch (types[c]) {
+        case DATE:
+          schema.optional(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType())
+              .named(header[c]);
+          break;
+        case TIMESTAMP:
+          schema.optional(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.timestampType(
+              true, LogicalTypeAnnotation.TimeUnit.MILLIS)).named(header[c]);
+          break;
+        case MONEY:
+          schema.optional(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.decimalType(2, 18))
+              .named(header[c]);
+          break;
+        case LONG:
+          schema.optional(PrimitiveTypeName.INT64).named(header[c]);
+          break;
+        case DOUBLE:
+          schema.optional(PrimitiveTypeName.DOUBLE).named(header[c]);
+          break;
+        default:
+          schema.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType())
+              .named(header[c]);
+      }
+    }
+
+    MessageType messageType = schema.named(table);
+    groups = new SimpleGroupFactory(messageType);
+    writer = ExampleParquetWriter.builder(file)
+        .withType(messageType)
+        .withConf(new PlainParquetConfiguration())
+        .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+        .withCompressionCodec(CompressionCodecName.fromConf(
+            Config.get("exporter.parquet.compression", "SNAPPY").toUpperCase()))
+        .withRowGroupSize(Config.getAsLong("exporter.parquet.row_group_size", 16L << 20))
+        .withDictionaryEncoding(true)
+        .build();
+  }
+
+  @Override
+  public synchronized void flush() {
+    // a Parquet file is complete only once it is closed
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  @Override
+  boolean isDiscarding() {
+    return false;
+  }
+}
@@ -0,0 +1,367 @@
+package org.mitre.synthea.export;
+
+import com.google.common.collect.Table;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.world.agents.Clinician;
+import org.mitre.synthea.world.agents.Payer;
+import org.mitre.synthea.world.agents.PayerManager;
+import org.mitre.synthea.world.agents.Provider;
+
+/**
+ * Splits the generation of a population across several processes or nodes.
+ *
+ * <p>Each shard generates a range of person indices and writes, next to its records, the
+ * utilization it added to the providers, clinicians and payers. A merging run loads the same
+ * world, adds up the utilization of all shards, exports the organizations, providers and
+ * payers once and appends the records of the shards in shard order.</p>
+ *
+ * <p>With the same seeds, configuration and a single thread per shard, the merged output
+ * matches a single run of the whole population, except for floating point sums such as
+ * organization revenue, whose rounding depends on the order of addition. Each shard numbers
+ * the charges of claims_transactions.csv from 0, so the merge offsets the CHARGEID and
+ * TRANSFEROUTID columns of a shard by the number of charge IDs of the shards before it. The
+ * ID of a claims transaction is derived from the charge ID of its shard, so it differs from
+ * a single run, but it is still unique.</p>
+ */
+public class ShardMerger {
+  /** Folder of the shard state below the output folder of a shard. */
+  public static final String STATE_FOLDER = "shard";
+  private static final String STATE_FILE = "utilization.csv";
+
+  /** CSV files that are exported once from the merged utilization, not appended. */
+  private static final Set<String> AGGREGATE_CSV_FILES = new HashSet<>(
+      Arrays.asList("organizations.csv", "providers.csv", "payers.csv"));
+  /** CSV file whose CHARGEID column is numbered per run, see CSVExporter. */
+  private static final String CLAIMS_TRANSACTIONS_CSV = "claims_transactions.csv";
+
+  private static final String PROVIDER = "provider";
+  private static final String PROVIDER_REVENUE = "provider_revenue";
+  private static final String CLINICIAN = "clinician";
+  private static final String PAYER = "payer";
+  private static final String PAYER_ENTRIES = "payer_entries";
+  private static final String PAYER_CUSTOMER = "payer_customer";
+  private static final String CHARGE_IDS = "charge_ids";
+  // fields of the keyed records, whose utilization key comes last
+  private static final int KEYED_FIELDS = 5;
+
+  /**
+   * Write the utilization of the providers, clinicians and payers after a shard
+   * has been generated.
+   *
+   * @param options Exporter options of the shard.
+   */
+  public static void exportState(Exporter.ExporterRuntimeOptions options) {
+    File folder = Exporter.getOutputFolder(STATE_FOLDER, null, options);
+    Path file = folder.toPath().resolve(STATE_FILE);
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (Provider provider : Provider.getProviderList()) {
+        String id = provider.getResourceID();
+        for (Table.Cell<Integer, String, AtomicInteger> cell
+            : provider.getUtilization().cellSet()) {
+          // the key is written last, it may contain commas
+          writeLine(writer, PROVIDER, id, cell.getRowKey(), cell.getValue(), cell.getColumnKey());
+        }
+        if (provider.getRevenue() != 0.0) {
+          writeLine(writer, PROVIDER_REVENUE, id, provider.getRevenue());
+        }
+        for (Clinician clinician : getClinicians(provider)) {
+          if (clinician.getEncounterCount() > 0 || clinician.getProcedureCount() > 0) {
+            writeLine(writer, CLINICIAN, clinician.getResourceID(),
+                clinician.getEncounterCount(), clinician.getProcedureCount());
+          }
+        }
+      }
+      for (Payer payer : getPayers()) {
+        String id = payer.getResourceID();
+        writeLine(writer, PAYER, id, payer.getRevenue(), payer.getAmountCovered(),
+            payer.getAmountUncovered(), payer.getTotalQols());
+        for (Table.Cell<Integer, String, AtomicInteger> cell
+            : payer.getEntryUtilization().cellSet()) {
+          writeLine(writer, PAYER_ENTRIES, id, cell.getRowKey(), cell.getValue(),
+              cell.getColumnKey());
+        }
+        for (Map.Entry<String, AtomicInteger> customer
+            : payer.getCustomerUtilization().entrySet()) {
+          writeLine(writer, PAYER_CUSTOMER, id, customer.getKey(), customer.getValue());
+        }
+      }
+      if (Config.getAsBoolean("exporter.csv.export")) {
+        writeLine(writer, CHARGE_IDS, options.getCSVExporter().getChargeIdCount());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write the shard state to " + file, e);
+    }
+  }
+
+  /**
+   * Add the utilization of the given shards to the loaded providers, clinicians and payers.
+   * Must be called after the world has been loaded with the configuration of the shards
+   * and before any person is generated.
+   *
+   * @param shardFolders Output folders of the shards, in shard order.
+   */
+  public static void loadStates(List<File> shardFolders) {
+    Map<String, Provider> providers = new HashMap<>();
+    Map<String, Clinician> clinicians = new HashMap<>();
+    for (Provider provider : Provider.getProviderList()) {
+      providers.put(provider.getResourceID(), provider);
+      for (Clinician clinician : getClinicians(provider)) {
+        clinicians.put(clinician.getResourceID(), clinician);
+      }
+    }
+    Map<String, Payer> payers = getPayers().stream()
+        .collect(Collectors.toMap(Payer::getResourceID, payer -> payer));
+
+    for (File shardFolder : shardFolders) {
+      Path file = shardFolder.toPath().resolve(STATE_FOLDER).resolve(STATE_FILE);
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          // only the last field may contain commas
+          String[] fields = line.split(",", KEYED_FIELDS);
+          switch (fields[0]) {
+            case PROVIDER:
+              get(providers, fields[1], file).addUtilization(Integer.valueOf(fields[2]),
+                  fields[4], Integer.parseInt(fields[3]));
+              break;
+            case PROVIDER_REVENUE:
+              get(providers, fields[1], file).addRevenue(Double.parseDouble(fields[2]));
+              break;
+            case CLINICIAN:
+              get(clinicians, fields[1], file).addCounts(Integer.parseInt(fields[2]),
+                  Integer.parseInt(fields[3]));
+              break;
+            case PAYER:
+              fields = line.split(",");
+              Payer payer = get(payers, fields[1], file);
+              payer.addRevenue(new BigDecimal(fields[2]));
+              payer.addCoveredCost(new BigDecimal(fields[3]));
+              payer.addUncoveredCost(new BigDecimal(fields[4]));
+              payer.addQols(Double.parseDouble(fields[5]));
+              break;
+            case PAYER_ENTRIES:
+              get(payers, fields[1], file).addEntries(Integer.valueOf(fields[2]), fields[4],
+                  Integer.parseInt(fields[3]));
+              break;
+            case PAYER_CUSTOMER:
+              get(payers, fields[1], file).addCustomerYears(fields[2],
+                  Integer.parseInt(fields[3]));
+              break;
+            case CHARGE_IDS:
+              // used by mergeRecords to number the charges
+              break;
+            default:
+              throw new IOException("Unknown shard state record: " + fields[0]);
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read the shard state " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Append the records of the given shards to the output of the merging run.
+   * Files that the merging run wrote itself, such as the organization and practitioner
+   * exports, are kept. Other files are copied, and files that several shards wrote are
+   * concatenated in shard order, CSV files without their repeated header. The charge IDs
+   * of each shard are offset to follow those of the shards before it.
+   *
+   * @param shardFolders Output folders of the shards, in shard order.
+   * @param options Exporter options of the merging run.
+   */
+  public static void mergeRecords(List<File> shardFolders,
+      Exporter.ExporterRuntimeOptions options) {
+    Path outputFolder = Paths.get(Config.get("exporter.baseDirectory"));
+    if (options.getRunId() != null) {
+      outputFolder = outputFolder.resolve(options.getRunId());
+    }
+    try {
+      Set<Path> existing;
+      try (Stream<Path> files = Files.walk(outputFolder)) {
+        existing = files.filter(Files::isRegularFile).collect(Collectors.toSet());
+      }
+
+      Path csvFolder = null;
+      long chargeIdBase = 0;
+      if (Config.getAsBoolean("exporter.csv.export")) {
+        CSVExporter csvExporter = options.getCSVExporter();
+        // the appended rows must follow the header and the aggregates on disk
+        csvExporter.closeWriters();
+        csvFolder = csvExporter.getOutputDirectory();
+        chargeIdBase = csvExporter.getChargeIdCount();
+      }
+
+      for (File shardFolder : shardFolders) {
+        Path shard = shardFolder.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(shard)) {
+          files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Path shardCsvFolder = findCsvFolder(shard);
+        for (Path file : files) {
+          Path relative = shard.relativize(file);
+          String folder = relative.getName(0).toString();
+          if (folder.equals(STATE_FOLDER)) {
+            continue;
+          }
+          if (folder.equals("csv")) {
+            String name = file.getFileName().toString();
+            if (csvFolder != null && file.getParent().equals(shardCsvFolder)
+                && !AGGREGATE_CSV_FILES.contains(name)
+                && Files.exists(csvFolder.resolve(name))) {
+              if (name.equals(CLAIMS_TRANSACTIONS_CSV)) {
+                appendCharges(file, csvFolder.resolve(name), chargeIdBase);
+              } else {
+                append(file, csvFolder.resolve(name), true);
+              }
+            }
+            continue;
+          }
+          Path target = outputFolder.resolve(relative);
+          if (existing.contains(target)) {
+            continue;
+          }
+          Files.createDirectories(target.getParent());
+          append(file, target, false);
+        }
+        chargeIdBase += readChargeIdCount(shard);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to merge the shards into " + outputFolder, e);
+    }
+  }
+
+  private static List<Clinician> getClinicians(Provider provider) {
+    List<Clinician> clinicians = new ArrayList<>();
+    if (provider.clinicianMap != null) {
+      for (List<Clinician> specialty : provider.clinicianMap.values()) {
+        clinicians.addAll(specialty);
+      }
+    }
+    return clinicians;
+  }
+
+  private static List<Payer> getPayers() {
+    List<Payer> payers = new ArrayList<>(PayerManager.getAllPayers());
+    payers.add(PayerManager.getNoInsurancePlan().getPayer());
+    return payers;
+  }
+
+  /**
+   * Read the number of charge IDs a shard handed out from its state.
+   */
+  private static long readChargeIdCount(Path shard) throws IOException {
+    Path file = shard.resolve(STATE_FOLDER).resolve(STATE_FILE);
+    try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+      return lines.filter(line -> line.startsWith(CHARGE_IDS + ","))
+          .mapToLong(line -> Long.parseLong(line.substring(CHARGE_IDS.length() + 1)))
+          .findFirst().orElse(0L);
+    }
+  }
+
+  private static <T> T get(Map<String, T> byId, String id, Path file) throws IOException {
+    T value = byId.get(id);
+    if (value == null) {
+      throw new IOException("Shard state " + file + " refers to unknown ID " + id
+          + ", was the shard generated with a different configuration?");
+    }
+    return value;
+  }
+
+  private static void writeLine(BufferedWriter writer, Object... fields) throws IOException {
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        writer.write(',');
+      }
+      writer.write(String.valueOf(fields[i]));
+    }
+    writer.newLine();
+  }
+
+  /**
+   * The CSV exporter writes into "csv", or into a timestamped folder below it when
+   * exporter.csv.folder_per_run is set. The latest folder holding patients.csv is used.
+   */
+  private static Path findCsvFolder(Path shard) throws IOException {
+    Path csv = shard.resolve("csv");
+    if (!Files.isDirectory(csv) || Files.exists(csv.resolve("patients.csv"))) {
+      return csv;
+    }
+    try (Stream<Path> folders = Files.list(csv)) {
+      return folders.filter(folder -> Files.exists(folder.resolve("patients.csv")))
+          .max(Path::compareTo).orElse(csv);
+    }
+  }
+
+  /**
+   * Append the claims transactions of a shard without their header, adding the given base
+   * to their CHARGEID column and to the charge ID that a TRANSFERIN row refers to.
+   */
+  private static void appendCharges(Path source, Path target, long chargeIdBase)
+      throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+        BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      String header = reader.readLine();
+      List<String> columns = header == null ? new ArrayList<>() : Arrays.asList(header.split(","));
+      int[] chargeIdColumns = {columns.indexOf("CHARGEID"), columns.indexOf("TRANSFEROUTID")};
+      if (chargeIdColumns[0] < 0 || chargeIdColumns[1] < 0) {
+        throw new IOException("No CHARGEID or TRANSFEROUTID column in " + source);
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // CSVExporter removes commas from the values, so splitting on them is safe
+        String[] fields = line.split(",", -1);
+        for (int column : chargeIdColumns) {
+          if (!fields[column].isEmpty()) {
+            fields[column] = Long.toString(Long.parseLong(fields[column]) + chargeIdBase);
+          }
+        }
+        writer.write(String.join(",", fields));
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Append a file to another, skipping its first line if it is a CSV header.
+   */
+  private static void append(Path source, Path target, boolean skipHeader) throws IOException {
+    try (InputStream in = Files.newInputStream(source);
+        OutputStream out = Files.newOutputStream(target,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      if (skipHeader) {
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+          // skip the header
+        }
+      }
+      in.transferTo(out);
+    }
+  }
+}
@@ -56,9 +56,11 @@ public class SymptomTextExporter {
    * @param person Person to export
    * @param fileTag Tag to add to the filename
    * @param endTime Time the simulation ended
+   * @param options Exporter options of the run
    * @throws IOException if any error occurs writing to the standard export location
    */
-  public static void exportAll(Person person, String fileTag, long endTime) throws IOException {
+  public static void exportAll(Person person, String fileTag, long endTime,
+      Exporter.ExporterRuntimeOptions options) throws IOException {
 
     String personID = (String) person.attributes.get(Person.ID);
 
@@ -133,7 +135,7 @@ public class SymptomTextExporter {
     breakline(textRecord);
 
     // finally write to the file
-    File outDirectory = Exporter.getOutputFolder("symptoms/text", person);
+    File outDirectory = Exporter.getOutputFolder("symptoms/text", person, options);
     Path outFilePath = outDirectory.toPath().resolve(Exporter.filename(person, fileTag, "txt"));
     Files.write(outFilePath, textRecord, StandardOpenOption.CREATE_NEW);
   }
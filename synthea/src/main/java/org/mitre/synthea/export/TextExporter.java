@@ -162,9 +162,11 @@ public class TextExporter {
    * @param person Person to export
    * @param fileTag Tag to add to the filename
    * @param time Time the simulation ended
+   * @param options Exporter options of the run
    * @throws IOException if any error occurs writing to the standard export location
    */
-  public static void exportAll(Person person, String fileTag, long time) throws IOException {
+  public static void exportAll(Person person, String fileTag, long time,
+      Exporter.ExporterRuntimeOptions options) throws IOException {
 
     List<Encounter> encounters = person.record.encounters;
     List<Entry> conditions = new ArrayList<>();
@@ -272,7 +274,7 @@ public class TextExporter {
     breakline(textRecord);
 
     // finally write to the file
-    File outDirectory = Exporter.getOutputFolder("text", person);
+    File outDirectory = Exporter.getOutputFolder("text", person, options);
     Path outFilePath = outDirectory.toPath().resolve(Exporter.filename(person, fileTag, "txt"));
     Files.write(outFilePath, textRecord, StandardOpenOption.CREATE_NEW);
   }
@@ -282,9 +284,11 @@ public class TextExporter {
    *
    * @param person Person
    * @param time Time the simulation ended
+   * @param options Exporter options of the run
    * @throws IOException if any error occurs writing to the standard export location
    */
-  public static void exportEncounter(Person person, long time) throws IOException {
+  public static void exportEncounter(Person person, long time,
+      Exporter.ExporterRuntimeOptions options) throws IOException {
     List<Encounter> encounters = person.record.encounters;
     List<Entry> conditions = new ArrayList<>();
     List<Entry> allergies = new ArrayList<>();
@@ -354,7 +358,7 @@ public class TextExporter {
       encounterNumber++;
 
       //write to the file
-      File outDirectory2 = Exporter.getOutputFolder("text_encounters", person);
+      File outDirectory2 = Exporter.getOutputFolder("text_encounters", person, options);
       Path outFilePath2 = outDirectory2.toPath().resolve(Exporter.filename(person,
           Integer.toString(encounterNumber), "txt"));
       Files.write(outFilePath2, textRecord, StandardOpenOption.CREATE_NEW);
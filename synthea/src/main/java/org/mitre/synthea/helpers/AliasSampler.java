@@ -0,0 +1,151 @@
+package org.mitre.synthea.helpers;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * An immutable distribution over a fixed set of values with weights, sampled with the
+ * <a href="https://en.wikipedia.org/wiki/Alias_method">alias method</a> (Vose's variant).
+ *
+ * <p>Unlike EnumeratedDistribution, the sampler does not hold a source of randomness. Each
+ * sample takes one draw from the random number generator it is given, usually the Person, and
+ * costs the same no matter how many values there are. Many threads can share one sampler
+ * without locking it or reseeding it, and a simulation stays reproducible by its seed.</p>
+ *
+ * @param <T> The type of the values.
+ */
+public final class AliasSampler<T> implements Serializable {
+  private static final long serialVersionUID = -2712646093512218437L;
+
+  private final Object[] values;
+  private final double[] probabilities;
+  // for each column, the chance of its own value rather than its alias
+  private final double[] cutoffs;
+  private final int[] aliases;
+
+  /**
+   * Create a sampler from a probability mass function, as for EnumeratedDistribution.
+   * @param pmf The values and their weights. The weights are normalized to sum to 1.
+   * @throws IllegalArgumentException if there are no values, a weight is negative or not
+   *     finite, or the weights sum to zero.
+   */
+  public AliasSampler(List<Pair<T, Double>> pmf) {
+    this(pmf.stream().map(Pair::getFirst).toArray(),
+        pmf.stream().mapToDouble(Pair::getSecond).toArray());
+  }
+
+  /**
+   * Create a sampler from values and their weights.
+   * @param values The values.
+   * @param weights The weight of each value. The weights are normalized to sum to 1.
+   * @throws IllegalArgumentException if there are no values, a weight is negative or not
+   *     finite, or the weights sum to zero.
+   */
+  public AliasSampler(List<T> values, double[] weights) {
+    this(values.toArray(), weights.clone());
+  }
+
+  private AliasSampler(Object[] values, double[] weights) {
+    if (values.length != weights.length) {
+      throw new IllegalArgumentException("Got " + values.length + " values but "
+          + weights.length + " weights.");
+    }
+    if (values.length == 0) {
+      throw new IllegalArgumentException("A distribution needs at least one value.");
+    }
+    double total = 0;
+    for (double weight : weights) {
+      if (!(weight >= 0) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("Weights must be non-negative and finite, got "
+            + weight + ".");
+      }
+      total += weight;
+    }
+    if (!(total > 0) || Double.isInfinite(total)) {
+      throw new IllegalArgumentException("Weights must sum to a positive finite number, got "
+          + total + ".");
+    }
+    int n = values.length;
+    this.values = values;
+    this.probabilities = new double[n];
+    this.cutoffs = new double[n];
+    this.aliases = new int[n];
+
+    // Vose: split the columns scaled to an average of 1 into those below and above 1, then
+    // fill up each small column with the excess of a large one
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+    double[] scaled = new double[n];
+    for (int i = 0; i < n; i++) {
+      probabilities[i] = weights[i] / total;
+      scaled[i] = probabilities[i] * n;
+      aliases[i] = i;
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      cutoffs[less] = scaled[less];
+      aliases[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // what is left is 1 up to rounding errors
+    while (largeCount > 0) {
+      cutoffs[large[--largeCount]] = 1.0;
+    }
+    while (smallCount > 0) {
+      cutoffs[small[--smallCount]] = 1.0;
+    }
+  }
+
+  /**
+   * Sample a value.
+   * @param random The source of randomness, from which one double is drawn.
+   * @return a value chosen at random by the weights.
+   */
+  @SuppressWarnings("unchecked")
+  public T sample(RandomNumberGenerator random) {
+    // one draw picks both the column and, by its fraction, the value or its alias
+    double draw = random.rand() * values.length;
+    int column = Math.min((int) draw, values.length - 1);
+    if (draw - column < cutoffs[column]) {
+      return (T) values[column];
+    }
+    return (T) values[aliases[column]];
+  }
+
+  /**
+   * Returns the values and their normalized probabilities, as EnumeratedDistribution does.
+   * @return the probability mass function.
+   */
+  @SuppressWarnings("unchecked")
+  public List<Pair<T, Double>> getPmf() {
+    List<Pair<T, Double>> pmf = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; i++) {
+      pmf.add(new Pair<>((T) values[i], probabilities[i]));
+    }
+    return pmf;
+  }
+
+  /**
+   * Returns the number of values.
+   * @return the number of values, including values with a weight of zero.
+   */
+  public int size() {
+    return values.length;
+  }
+}
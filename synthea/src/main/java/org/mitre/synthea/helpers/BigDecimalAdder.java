@@ -0,0 +1,78 @@
+package org.mitre.synthea.helpers;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sum of BigDecimal amounts that many threads can add to without locking.
+ *
+ * <p>Amounts with no more decimal digits than the scale of the sum, such as amounts in cents,
+ * are added as whole numbers of the smallest unit to a LongAdder, so that threads adding at
+ * the same time do not contend. Other amounts are added to a BigDecimal with compare-and-set.
+ * The sum is exact, and equal to adding all amounts to zero at the scale of the sum, in any
+ * order.</p>
+ */
+public final class BigDecimalAdder implements Serializable {
+  private static final long serialVersionUID = 4816263914357310587L;
+
+  private final int scale;
+  // transient, so that reflection (e.g. by Gson) never reaches into the atomic classes
+  private transient LongAdder units;
+  private transient AtomicReference<BigDecimal> rest;
+
+  /**
+   * Create a sum of zero.
+   * @param scale The scale of the sum, e.g. 2 for amounts in cents.
+   */
+  public BigDecimalAdder(int scale) {
+    this.scale = scale;
+    this.units = new LongAdder();
+    this.rest = new AtomicReference<>(BigDecimal.ZERO.setScale(scale));
+  }
+
+  /**
+   * Add an amount to the sum.
+   * @param amount The amount.
+   */
+  public void add(BigDecimal amount) {
+    if (amount.scale() <= scale) {
+      try {
+        // a whole number of units, since the scale is not larger than the scale of the sum
+        units.add(amount.movePointRight(scale).longValueExact());
+        return;
+      } catch (ArithmeticException e) {
+        // too large for a long
+      }
+    }
+    rest.accumulateAndGet(amount, BigDecimal::add);
+  }
+
+  /**
+   * Returns the sum. Amounts added while the sum is computed may or may not be included.
+   * @return the sum.
+   */
+  public BigDecimal sum() {
+    return BigDecimal.valueOf(units.sum(), scale).add(rest.get());
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeObject(sum());
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    units = new LongAdder();
+    rest = new AtomicReference<>((BigDecimal) in.readObject());
+  }
+
+  @Override
+  public String toString() {
+    return sum().toString();
+  }
+}
@@ -9,6 +9,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * A default implementation of the RandomNumberGenerator interface.
  * The goal is to isolate sources of randomness by consolidating the use of java.util.Random
  * or other sources of randomness for traceability.
+ *
+ * <p>This is the compatibility backend of generate.random_number_generator, which draws the
+ * same numbers for the same seed as earlier versions did.</p>
  */
 public class DefaultRandomNumberGenerator implements RandomNumberGenerator, Serializable {
 
@@ -76,4 +79,9 @@ public class DefaultRandomNumberGenerator implements RandomNumberGenerator, Seri
     return count.get();
   }
 
+  @Override
+  public RandomNumberGenerator split() {
+    return new DefaultRandomNumberGenerator(randLong());
+  }
+
 }
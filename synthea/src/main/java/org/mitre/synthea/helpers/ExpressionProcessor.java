@@ -11,7 +11,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -30,6 +29,12 @@ import org.cqframework.cql.elm.execution.ExpressionDef;
 import org.cqframework.cql.elm.execution.Library;
 import org.mitre.synthea.world.agents.Person;
 import org.mitre.synthea.world.concepts.VitalSign;
+import org.opencds.cqf.cql.engine.elm.execution.AddEvaluator;
+import org.opencds.cqf.cql.engine.elm.execution.DivideEvaluator;
+import org.opencds.cqf.cql.engine.elm.execution.MultiplyEvaluator;
+import org.opencds.cqf.cql.engine.elm.execution.NegateEvaluator;
+import org.opencds.cqf.cql.engine.elm.execution.SubtractEvaluator;
+import org.opencds.cqf.cql.engine.elm.execution.ToDecimalEvaluator;
 import org.opencds.cqf.cql.engine.execution.Context;
 import org.opencds.cqf.cql.engine.serializing.CqlLibraryReader;
 import org.opencds.cqf.cql.engine.serializing.jackson.XmlCqlLibraryReader;
@@ -43,11 +48,15 @@ public class ExpressionProcessor {
       new ConcurrentHashMap<String, VitalSign>();
   private static final Set<String> attributeSet =
       Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
-  private final LibraryManager libraryManager = new LibraryManager(modelManager);
+  // Compiled libraries by the text of their CQL, shared by all processors and threads
+  private static final ConcurrentMap<String, Library> libraryCache =
+      new ConcurrentHashMap<String, Library>();
+  private static final Pattern ARITHMETIC_TOKEN =
+      Pattern.compile("\\s*(?:(\\d+(?:\\.\\d+)?)|([A-Za-z_][A-Za-z0-9_]*)|([-+*/()]))");
   private String expression;
   private Library library;
-  private Context context;
-  private String elm;
+  private ThreadLocal<Context> context;
+  private Object[] arithmetic;
   private Map<String,String> paramTypeMap;
   private BiMap<String,String> cqlParamMap;
 
@@ -65,7 +74,8 @@ public class ExpressionProcessor {
    * @return result of the expression
    */
 
-  private String cqlToElm(String cql) {
+  private static String cqlToElm(String cql) {
+    LibraryManager libraryManager = new LibraryManager(modelManager);
     CqlTranslator translator = CqlTranslator.fromText(cql, modelManager, libraryManager);
 
     if (translator.getErrors().size() > 0) {
@@ -98,24 +108,228 @@ public class ExpressionProcessor {
     this.cqlParamMap = HashBiMap.create();
     this.paramTypeMap = paramTypeMap;
 
-    String cleanExpression = replaceParameters(expression);
+    String cleanExpression = normalize(replaceParameters(expression));
     String wrappedExpression = convertParameterizedExpressionToCql(cleanExpression);
 
-    // Compile our constructed CQL expression into elm once for execution
+    this.library = getLibrary(wrappedExpression);
+    this.context = ThreadLocal.withInitial(() -> new Context(library));
+    this.expression = expression;
+
+    if (Config.getAsBoolean("generate.expressions.arithmetic_fast_path", false)) {
+      this.arithmetic = compileArithmetic(cleanExpression);
+    }
+  }
+
+  /**
+   * Returns the compiled library of a CQL text, compiling it only if no other processor
+   * has compiled the same text before.
+   * @param cql CQL text of the library
+   * @return compiled library, which can be evaluated by many threads in their own contexts
+   */
+  private static Library getLibrary(String cql) {
+    Library library = libraryCache.get(cql);
+    if (library != null) {
+      return library;
+    }
     // The compiler isn't thread safe, so only allow one thread at a time
-    this.elm = cqlToElm(wrappedExpression);
     synchronized (ExpressionProcessor.class) {
-      try {
-        CqlLibraryReader reader = new XmlCqlLibraryReader();
-        this.library = reader.read(new ByteArrayInputStream(
-            elm.getBytes(StandardCharsets.UTF_8)));
-      } catch (IOException ex) {
-        throw new RuntimeException(ex);
+      library = libraryCache.get(cql);
+      if (library == null) {
+        String elm = cqlToElm(cql);
+        try {
+          CqlLibraryReader reader = new XmlCqlLibraryReader();
+          library = reader.read(new ByteArrayInputStream(elm.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+          throw new RuntimeException(ex);
+        }
+        libraryCache.put(cql, library);
       }
+      return library;
     }
+  }
 
-    this.context = new Context(library);
-    this.expression = expression;
+  /**
+   * Normalizes the white space of an expression, so expressions that only differ in spacing
+   * share their compiled library. Line breaks separate statements and are kept, as is the
+   * content of quoted strings.
+   * @param expression expression with CQL compatible parameter names
+   * @return normalized expression
+   */
+  private static String normalize(String expression) {
+    StringBuilder normalized = new StringBuilder(expression.length());
+    char quote = 0;
+    boolean space = false;
+    for (char c : expression.trim().toCharArray()) {
+      if (quote == 0 && (c == ' ' || c == '\t' || c == '\r')) {
+        space = true;
+        continue;
+      }
+      if (c == '\n') {
+        quote = 0;
+      } else if (space && normalized.length() > 0
+          && normalized.charAt(normalized.length() - 1) != '\n') {
+        normalized.append(' ');
+      }
+      space = false;
+      if (quote == 0 && (c == '\'' || c == '"')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+      normalized.append(c);
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * Compiles a single line of numbers, Decimal parameters, the operators + - * / and
+   * parentheses into postfix order, so it can be evaluated without the CQL engine.
+   * @param cleanExpression normalized expression with CQL compatible parameter names
+   * @return the literals, parameter names and operators in postfix order, or null if the
+   *     expression is not such simple arithmetic
+   */
+  private Object[] compileArithmetic(String cleanExpression) {
+    List<Object> output = new ArrayList<Object>();
+    List<Character> operators = new ArrayList<Character>();
+    Matcher matcher = ARITHMETIC_TOKEN.matcher(cleanExpression);
+    boolean operand = true;
+    int position = 0;
+    while (position < cleanExpression.length()) {
+      if (!matcher.find(position) || matcher.start() != position) {
+        return null;
+      }
+      position = matcher.end();
+      if (matcher.group(1) != null || matcher.group(2) != null) {
+        if (!operand) {
+          return null;
+        }
+        if (matcher.group(1) != null) {
+          String literal = matcher.group(1);
+          if (literal.indexOf('.') >= 0) {
+            output.add(new BigDecimal(literal));
+          } else {
+            try {
+              output.add(Integer.valueOf(literal));
+            } catch (NumberFormatException e) {
+              return null;
+            }
+          }
+        } else {
+          // Only parameters that CQL treats as Decimals
+          String param = cqlParamMap.inverse().get(matcher.group(2));
+          if (param == null || !"Decimal".equals(paramTypeMap.getOrDefault(param, "Decimal"))) {
+            return null;
+          }
+          output.add(param);
+        }
+        operand = false;
+        continue;
+      }
+      char op = matcher.group(3).charAt(0);
+      if (op == '(') {
+        if (!operand) {
+          return null;
+        }
+        operators.add(op);
+      } else if (op == ')') {
+        if (operand) {
+          return null;
+        }
+        while (!operators.isEmpty() && operators.get(operators.size() - 1) != '(') {
+          output.add(operators.remove(operators.size() - 1));
+        }
+        if (operators.isEmpty()) {
+          return null;
+        }
+        operators.remove(operators.size() - 1);
+      } else if (operand) {
+        if (op != '-') {
+          return null;
+        }
+        // Unary minus, which binds tighter than any binary operator
+        operators.add('~');
+      } else {
+        while (!operators.isEmpty()
+            && precedence(operators.get(operators.size() - 1)) >= precedence(op)) {
+          output.add(operators.remove(operators.size() - 1));
+        }
+        operators.add(op);
+        operand = true;
+      }
+    }
+    if (operand) {
+      return null;
+    }
+    while (!operators.isEmpty()) {
+      char op = operators.remove(operators.size() - 1);
+      if (op == '(') {
+        return null;
+      }
+      output.add(op);
+    }
+    return output.toArray();
+  }
+
+  private static int precedence(char op) {
+    switch (op) {
+      case '~':
+        return 3;
+      case '*':
+      case '/':
+        return 2;
+      case '+':
+      case '-':
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Evaluates the compiled arithmetic with the operators of the CQL engine, converting
+   * Integers to Decimals wherever CQL would.
+   * @param params parameters as a map of variable names to values
+   * @return evaluation result, or null if a parameter is not a Decimal
+   */
+  private Object evaluateArithmetic(Map<String,Object> params) {
+    Object[] stack = new Object[arithmetic.length];
+    int size = 0;
+    for (Object item : arithmetic) {
+      if (item instanceof String) {
+        Object value = params.get(item);
+        if (!(value instanceof BigDecimal)) {
+          return null;
+        }
+        stack[size++] = value;
+      } else if (!(item instanceof Character)) {
+        stack[size++] = item;
+      } else if ((Character) item == '~') {
+        stack[size - 1] = NegateEvaluator.negate(stack[size - 1]);
+      } else {
+        Object right = stack[--size];
+        Object left = stack[size - 1];
+        char op = (Character) item;
+        if (op == '/' || left instanceof BigDecimal != right instanceof BigDecimal) {
+          left = ToDecimalEvaluator.toDecimal(left);
+          right = ToDecimalEvaluator.toDecimal(right);
+        }
+        switch (op) {
+          case '+':
+            stack[size - 1] = AddEvaluator.add(left, right);
+            break;
+          case '-':
+            stack[size - 1] = SubtractEvaluator.subtract(left, right);
+            break;
+          case '*':
+            stack[size - 1] = MultiplyEvaluator.multiply(left, right);
+            break;
+          default:
+            stack[size - 1] = DivideEvaluator.divide(left, right, context.get());
+            break;
+        }
+      }
+    }
+    return stack[0];
   }
 
   /**
@@ -289,14 +503,7 @@ public class ExpressionProcessor {
    * @return evaluation result
    */
   public Object evaluate(Map<String,Object> params) {
-    // Keep track to make sure all parameters are set
-    Set<String> setParams = new HashSet<String>();
-    for (Entry<String,Object> entry : params.entrySet()) {
-      // Set the CQL compatible parameter name in the context
-      context.setParameter(null, cqlParamMap.get(entry.getKey()), entry.getValue());
-      setParams.add(entry.getKey());
-    }
-
+    Set<String> setParams = params.keySet();
     Set<String> missing = Sets.difference(cqlParamMap.keySet(), setParams);
     Set<String> extra = Sets.difference(setParams, cqlParamMap.keySet());
 
@@ -310,10 +517,24 @@ public class ExpressionProcessor {
               new Object[]{expression, String.join(", ",extra)});
     }
 
+    if (arithmetic != null) {
+      Object result = evaluateArithmetic(params);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    // Each thread evaluates the shared library in its own context
+    Context threadContext = context.get();
+    for (Entry<String,Object> entry : params.entrySet()) {
+      // Set the CQL compatible parameter name in the context
+      threadContext.setParameter(null, cqlParamMap.get(entry.getKey()), entry.getValue());
+    }
+
     Object retVal = null;
 
     for (ExpressionDef statement : library.getStatements().getDef()) {
-      retVal = statement.evaluate(context);
+      retVal = statement.evaluate(threadContext);
     }
 
     try {
@@ -0,0 +1,71 @@
+package org.mitre.synthea.helpers;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns names to small integer indexes, so that values can be kept by name in arrays.
+ *
+ * <p>A name is given the next index the first time it is interned, and keeps it for the life
+ * of the JVM. Finding the index of a name already interned does not lock, and neither does
+ * finding the name of an index. Names are only added under a lock.</p>
+ */
+public final class Interner {
+  private final ConcurrentHashMap<String, Integer> indexes = new ConcurrentHashMap<>();
+  private volatile String[] names;
+
+  /**
+   * Create an interner with no names.
+   * @param capacity The number of names expected, which only sizes the initial array.
+   */
+  public Interner(int capacity) {
+    names = new String[Math.max(capacity, 1)];
+  }
+
+  /**
+   * Get the index of a name, interning the name if it has none yet.
+   * @param name The name.
+   * @return the index.
+   */
+  public int intern(String name) {
+    Integer index = indexes.get(Objects.requireNonNull(name));
+    if (index != null) {
+      return index;
+    }
+    synchronized (indexes) {
+      index = indexes.get(name);
+      if (index == null) {
+        index = indexes.size();
+        String[] known = names;
+        if (index == known.length) {
+          known = Arrays.copyOf(known, known.length * 2);
+        }
+        known[index] = name;
+        // publish the name before its index
+        names = known;
+        indexes.put(name, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Get the index of a name, without interning it.
+   * @param name The name.
+   * @return the index, or -1 if the name was never interned.
+   */
+  public int indexOf(Object name) {
+    Integer index = indexes.get(Objects.requireNonNull(name));
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Get the name of an index.
+   * @param index An index returned by {@link #intern(String)}.
+   * @return the name.
+   */
+  public String nameOf(int index) {
+    return names[index];
+  }
+}
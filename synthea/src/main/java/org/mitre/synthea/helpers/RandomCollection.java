@@ -1,16 +1,33 @@
 package org.mitre.synthea.helpers;
 
 import java.io.Serializable;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
  * Random collection of objects, with weightings. Intended to be an equivalent to the ruby Pickup
  * gem. Adapted from https://stackoverflow.com/a/6409791/630384
+ *
+ * <p>The objects and the running total of their weights are kept in arrays. By default an item
+ * is selected by a binary search of the running totals, which selects the same items for the
+ * same random numbers as the TreeMap of running totals that this collection used to be. With
+ * generate.random_collection.alias_table = true, an item is selected with an alias table instead,
+ * built the first time an item is selected after items were added, so that a selection costs the
+ * same no matter how many items there are. The setting is read at that first selection too, and
+ * kept until items are added again.</p>
  */
 public class RandomCollection<E> implements Serializable {
-  private final TreeMap<Double, E> map = new TreeMap<Double, E>();
+  /** Property to select items with an alias table instead of by their running totals. */
+  static final String ALIAS_TABLE = "generate.random_collection.alias_table";
+
+  private Object[] items = new Object[8];
+  // the running total of the weights, up to and including each item
+  private double[] totals = new double[8];
+  private int size = 0;
   private double total = 0;
+  private transient volatile AliasSampler<E> sampler;
+  // whether items are selected with the alias table, null until read at the first selection
+  private transient volatile Boolean aliasTable;
 
   /**
    * Add an object (result) to the collection with a given weight.
@@ -24,18 +41,32 @@ public class RandomCollection<E> implements Serializable {
       return;
     }
     total += weight;
-    map.put(total, result);
+    sampler = null;
+    aliasTable = null;
+    if (size > 0 && totals[size - 1] == total) {
+      // the weight is too small to change the total, so the item takes the place of the last
+      items[size - 1] = result;
+      return;
+    }
+    if (size == items.length) {
+      items = Arrays.copyOf(items, size * 2);
+      totals = Arrays.copyOf(totals, size * 2);
+    }
+    items[size] = result;
+    totals[size] = total;
+    size++;
   }
 
   /**
    * Add all of the entries from the supplied RandomCollection.
    * @param other the collection from which to copy entries.
    */
+  @SuppressWarnings("unchecked")
   public void addAll(RandomCollection<E> other) {
-    Double weightAdj = 0.0;
-    for (Entry<Double, E> e: other.map.entrySet()) {
-      add(e.getKey() - weightAdj, e.getValue());
-      weightAdj = e.getKey();
+    double weightAdj = 0.0;
+    for (int i = 0; i < other.size; i++) {
+      add(other.totals[i] - weightAdj, (E) other.items[i]);
+      weightAdj = other.totals[i];
     }
   }
 
@@ -46,16 +77,60 @@ public class RandomCollection<E> implements Serializable {
    * the weights are severely imbalanced.
    * @param random the random number generator.
    * @return a random item from the collection weighted by the item weights.
+   * @throws NoSuchElementException if the collection is empty.
    */
   public E next(RandomNumberGenerator random) {
+    if (size == 0) {
+      throw new NoSuchElementException("The random collection is empty.");
+    }
+    Boolean useAliasTable = aliasTable;
+    if (useAliasTable == null) {
+      useAliasTable = Config.getAsBoolean(ALIAS_TABLE);
+      aliasTable = useAliasTable;
+    }
+    if (useAliasTable) {
+      AliasSampler<E> table = sampler;
+      if (table == null) {
+        table = buildSampler();
+      }
+      return table.sample(random);
+    }
     return next(random.rand() * total);
   }
 
+  @SuppressWarnings("unchecked")
+  private AliasSampler<E> buildSampler() {
+    double[] weights = new double[size];
+    for (int i = 0; i < size; i++) {
+      weights[i] = i == 0 ? totals[0] : totals[i] - totals[i - 1];
+    }
+    AliasSampler<E> table =
+        new AliasSampler<>(Arrays.asList((E[]) Arrays.copyOf(items, size)), weights);
+    sampler = table;
+    return table;
+  }
+
+  @SuppressWarnings("unchecked")
   private E next(double value) {
-    Entry<Double, E> entry = map.higherEntry(value);
-    if (entry == null) {
-      entry = map.lastEntry();
+    // the first item with a running total higher than the value, or else the last item
+    int low = 0;
+    int high = size - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (totals[middle] > value) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
     }
-    return entry.getValue();
+    return (E) items[low];
+  }
+
+  /**
+   * Returns the number of items in the collection.
+   * @return the number of items.
+   */
+  public int size() {
+    return size;
   }
 }
@@ -0,0 +1,131 @@
+package org.mitre.synthea.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.world.geography.Demographics;
+
+/**
+ * Compares the throughput of {@link RandomCollection#next} with the alias table, with the binary
+ * search of the running totals, and with the TreeMap of running totals that RandomCollection
+ * used to be, and checks that the binary search selects the same items as the TreeMap.
+ *
+ * <p>Usage: gradle randomCollectionBenchmark -Params="['Wien', '1000000', '100000']"
+ * where the arguments are the state whose cities are sampled by population, the number of
+ * draws from each collection, and the size of a collection with random weights. The zip code
+ * table is sampled with random weights as well.</p>
+ */
+public class RandomCollectionBenchmark {
+  private static final int ROUNDS = 3;
+
+  /**
+   * Run the benchmark.
+   * @param args The state, the number of draws, and the size of the random collection.
+   */
+  public static void main(String[] args) throws Exception {
+    String state = args.length > 0 ? args[0] : Generator.DEFAULT_STATE;
+    int draws = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+    int randomSize = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+    RandomNumberGenerator weights = new DefaultRandomNumberGenerator(1L);
+
+    Map<String, List<Double>> tables = new TreeMap<>();
+    List<Double> cities = new ArrayList<>();
+    for (Demographics demographics : Demographics.load(state).row(state).values()) {
+      cities.add((double) demographics.population);
+    }
+    tables.put("cities", cities);
+    String zipFile = Config.get("generate.geography.zipcodes.default_file");
+    int zipCount = SimpleCSV.parse(Utilities.readResource(zipFile, true, true)).size();
+    List<Double> zips = new ArrayList<>();
+    for (int i = 0; i < zipCount; i++) {
+      zips.add(weights.rand());
+    }
+    tables.put("zip codes", zips);
+    List<Double> random = new ArrayList<>();
+    for (int i = 0; i < randomSize; i++) {
+      random.add(weights.rand());
+    }
+    tables.put("random", random);
+
+    String aliasTable = Config.get(RandomCollection.ALIAS_TABLE);
+    List<String> results = new ArrayList<>();
+    long mismatches = 0;
+    for (Map.Entry<String, List<Double>> table : tables.entrySet()) {
+      RandomCollection<Integer> aliasCollection = new RandomCollection<>();
+      RandomCollection<Integer> collection = new RandomCollection<>();
+      TreeMap<Double, Integer> treeMap = new TreeMap<>();
+      double total = 0;
+      for (int i = 0; i < table.getValue().size(); i++) {
+        double weight = table.getValue().get(i);
+        aliasCollection.add(weight, i);
+        collection.add(weight, i);
+        if (weight > 0) {
+          total += weight;
+          treeMap.put(total, i);
+        }
+      }
+      // each collection reads the setting at its first selection
+      RandomNumberGenerator first = new DefaultRandomNumberGenerator(0L);
+      Config.set(RandomCollection.ALIAS_TABLE, "true");
+      aliasCollection.next(first);
+      Config.set(RandomCollection.ALIAS_TABLE, "false");
+      collection.next(first);
+      // the first round lets the JIT compile the selections
+      for (int round = 0; round <= ROUNDS; round++) {
+        int[] aliased = new int[draws];
+        int[] searched = new int[draws];
+        int[] mapped = new int[draws];
+        double aliasTime = run(aliasCollection, draws, aliased);
+        double searchTime = run(collection, draws, searched);
+        double treeMapTime = runTreeMap(treeMap, total, draws, mapped);
+        for (int i = 0; i < draws; i++) {
+          if (searched[i] != mapped[i]) {
+            mismatches++;
+          }
+        }
+        if (round > 0) {
+          results.add(String.format(Locale.US, "%s,%d,%d,%.0f,%.0f,%.0f", table.getKey(), round,
+              collection.size(), draws / treeMapTime, draws / searchTime, draws / aliasTime));
+        }
+      }
+    }
+    Config.set(RandomCollection.ALIAS_TABLE, aliasTable);
+    System.out.println("table,round,items,treemap_draws_per_second,search_draws_per_second,"
+        + "alias_draws_per_second");
+    results.forEach(System.out::println);
+    System.out.println("different items selected by search and treemap: " + mismatches);
+  }
+
+  /**
+   * Draw from the collection, and return the elapsed seconds.
+   */
+  private static double run(RandomCollection<Integer> collection, int draws, int[] selected) {
+    RandomNumberGenerator random = new DefaultRandomNumberGenerator(42L);
+    long start = System.nanoTime();
+    for (int i = 0; i < draws; i++) {
+      selected[i] = collection.next(random);
+    }
+    return (System.nanoTime() - start) / 1e9;
+  }
+
+  /**
+   * Draw from the running totals as RandomCollection used to, and return the elapsed seconds.
+   */
+  private static double runTreeMap(TreeMap<Double, Integer> treeMap, double total, int draws,
+      int[] selected) {
+    RandomNumberGenerator random = new DefaultRandomNumberGenerator(42L);
+    long start = System.nanoTime();
+    for (int i = 0; i < draws; i++) {
+      Map.Entry<Double, Integer> entry = treeMap.higherEntry(random.rand() * total);
+      if (entry == null) {
+        entry = treeMap.lastEntry();
+      }
+      selected[i] = entry.getValue();
+    }
+    return (System.nanoTime() - start) / 1e9;
+  }
+}
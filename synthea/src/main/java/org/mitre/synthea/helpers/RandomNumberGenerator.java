@@ -6,6 +6,26 @@ import java.util.Arrays;
 import java.util.UUID;
 
 public interface RandomNumberGenerator {
+  /**
+   * Create a random number generator with the backend of the generate.random_number_generator
+   * setting: java.util.Random, which keeps the sequences of earlier versions for the same seed,
+   * or xoshiro256**, which is faster but draws different numbers.
+   *
+   * @param seed The random number generator seed.
+   * @return a new random number generator.
+   */
+  public static RandomNumberGenerator create(long seed) {
+    String backend = Config.get("generate.random_number_generator", "java_util_random");
+    switch (backend) {
+      case "java_util_random":
+        return new DefaultRandomNumberGenerator(seed);
+      case "xoshiro256":
+        return new XoshiroRandomNumberGenerator(seed);
+      default:
+        throw new IllegalArgumentException("Unknown random number generator: " + backend);
+    }
+  }
+
   /** Returns a double between 0-1 from a uniform distribution. */
   public double rand();
 
@@ -107,4 +127,11 @@ public interface RandomNumberGenerator {
 
   /** Return the seed. */
   public long getSeed();
+
+  /**
+   * Returns a new generator of the same kind, seeded from this one, to give a person, module, or
+   * thread its own stream of random numbers that does not share state with this one.
+   * Splitting takes one draw from this generator, so it is reproducible by the seed.
+   */
+  public RandomNumberGenerator split();
 }
@@ -14,15 +14,15 @@ import org.mitre.synthea.world.agents.Person;
  * Class that wraps EnumeratedDistribution for thread safe use in Synthea. In several places in
  * Synthea, EnumeratedDistributions are used following a
  * <a href="https://en.wikipedia.org/wiki/Singleton_pattern">singleton pattern</a>. One distribution
- * is used in a particular aspect of simulation. To support reproducibility of simulations, its
- * source of randomness is reseeded for each individual. Since multiple threads may be accessing
- * the distribution at the same time, it would be possible to reseed the distribution in one thread
- * but sample on that seed in another thread. This class offers a synchronized method to prevent
- * that with the handy side benefit that it takes the well-known and loved Synthea Person as a
- * source of randomness.
+ * is used in a particular aspect of simulation, by many threads at the same time. Rather than
+ * reseeding the shared source of randomness of the distribution for each individual, which
+ * requires a lock, samples are taken with an immutable {@link AliasSampler} that draws from the
+ * well-known and loved Synthea Person as a source of randomness.
  * @param <T> The type to be returned when sampling from the distribiution.
  */
 public class SyncedEnumeratedDistro<T> extends EnumeratedDistribution {
+  private final AliasSampler<T> sampler;
+
   /**
    * Just calls super. Look at the docs for EnumeratedDistributed for more details.
    * @param pmf List of pairs of values and their weight in the distribution.
@@ -30,16 +30,16 @@ public class SyncedEnumeratedDistro<T> extends EnumeratedDistribution {
   public SyncedEnumeratedDistro(List<Pair<T, Double>> pmf) throws NotPositiveException,
       MathArithmeticException, NotFiniteNumberException, NotANumberException {
     super(pmf);
+    this.sampler = new AliasSampler<>(pmf);
   }
 
   /**
-   * Sample from the distribution after it has been reseeded using the Person provided as a source
-   * of randomness.
+   * Sample from the distribution using the Person provided as a source of randomness. This
+   * neither locks nor reseeds the distribution.
    * @param person Where the randomness comes from
    * @return a value from the distribution based on a weighted, random selection
    */
-  public synchronized T syncedReseededSample(Person person) {
-    reseedRandomGenerator(person.randLong());
-    return (T) sample();
+  public T syncedReseededSample(Person person) {
+    return sampler.sample(person);
   }
 }
@@ -0,0 +1,145 @@
+package org.mitre.synthea.helpers;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * A RandomNumberGenerator backed by
+ * <a href="https://prng.di.unimi.it/">xoshiro256**</a>, with its state seeded by SplitMix64.
+ *
+ * <p>Unlike java.util.Random, which updates an atomic 48 bit seed on every draw, the 256 bits of
+ * state are plain fields, and a double or a long takes one step instead of two. A generator is
+ * not safe to share between threads without locking: give each thread, person, or module its own
+ * stream with {@link #split()} instead.</p>
+ */
+public class XoshiroRandomNumberGenerator implements RandomNumberGenerator, Serializable {
+  private static final long serialVersionUID = 6093357513468017426L;
+
+  private final long seed;
+  private long s0;
+  private long s1;
+  private long s2;
+  private long s3;
+  private double nextGaussian;
+  private boolean haveNextGaussian;
+  private long count;
+
+  /**
+   * Create a new xoshiro256** random number generator.
+   * @param seed The random number generator seed.
+   */
+  public XoshiroRandomNumberGenerator(long seed) {
+    this.seed = seed;
+    // SplitMix64 spreads the seed over the state, which is never all zero
+    long x = seed;
+    s0 = mix(x += 0x9e3779b97f4a7c15L);
+    s1 = mix(x += 0x9e3779b97f4a7c15L);
+    s2 = mix(x += 0x9e3779b97f4a7c15L);
+    s3 = mix(x + 0x9e3779b97f4a7c15L);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private long next() {
+    long result = Long.rotateLeft(s1 * 5, 7) * 9;
+    long t = s1 << 17;
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft(s3, 45);
+    return result;
+  }
+
+  private double nextDouble() {
+    return (next() >>> 11) * 0x1.0p-53;
+  }
+
+  @Override
+  public long getSeed() {
+    return seed;
+  }
+
+  @Override
+  public double rand() {
+    count++;
+    return nextDouble();
+  }
+
+  @Override
+  public boolean randBoolean() {
+    count++;
+    return next() < 0;
+  }
+
+  @Override
+  public double randGaussian() {
+    count++;
+    if (haveNextGaussian) {
+      haveNextGaussian = false;
+      return nextGaussian;
+    }
+    // the polar method, as java.util.Random, which gives two values for each accepted pair
+    double v1;
+    double v2;
+    double s;
+    do {
+      v1 = 2 * nextDouble() - 1;
+      v2 = 2 * nextDouble() - 1;
+      s = v1 * v1 + v2 * v2;
+    } while (s >= 1 || s == 0);
+    double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    nextGaussian = v2 * multiplier;
+    haveNextGaussian = true;
+    return v1 * multiplier;
+  }
+
+  @Override
+  public int randInt() {
+    count++;
+    return (int) (next() >>> 32);
+  }
+
+  @Override
+  public int randInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    count++;
+    // Lemire's multiply and shift, rejecting the few values that would bias the result
+    long product = (next() >>> 32) * bound;
+    if ((product & 0xffffffffL) < bound) {
+      long threshold = (0x100000000L - bound) % bound;
+      while ((product & 0xffffffffL) < threshold) {
+        product = (next() >>> 32) * bound;
+      }
+    }
+    return (int) (product >>> 32);
+  }
+
+  @Override
+  public long randLong() {
+    count++;
+    return next();
+  }
+
+  @Override
+  public UUID randUUID() {
+    return new UUID(randLong(), randLong());
+  }
+
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public RandomNumberGenerator split() {
+    return new XoshiroRandomNumberGenerator(randLong());
+  }
+}
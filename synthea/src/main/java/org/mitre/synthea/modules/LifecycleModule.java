@@ -20,6 +20,7 @@ import org.mitre.synthea.helpers.TrendingValueGenerator;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.modules.BloodPressureValueGenerator.SysDias;
 import org.mitre.synthea.world.agents.Person;
+import org.mitre.synthea.world.agents.PersonAttributes;
 import org.mitre.synthea.world.agents.behaviors.planeligibility.QualifyingConditionCodesEligibility;
 import org.mitre.synthea.world.concepts.BMI;
 import org.mitre.synthea.world.concepts.BiometricsConfig;
@@ -51,6 +52,10 @@ public final class LifecycleModule extends Module {
   public static final String QUIT_ALCOHOLISM_PROBABILITY = "quit alcoholism probability";
   public static final String QUIT_ALCOHOLISM_AGE = "quit alcoholism age";
   public static final String ADHERENCE_PROBABILITY = "adherence probability";
+  // the attributes updated on every time step
+  private static final int AGE_SLOT = PersonAttributes.slotOf(AGE);
+  private static final int AGE_MONTHS_SLOT = PersonAttributes.slotOf(AGE_MONTHS);
+  private static final int DISABLED_SLOT = PersonAttributes.slotOf(Person.DISABLED);
 
   private static final String COUNTRY_CODE = Config.get("generate.geography.country_code");
   private static final Double MIDDLE_NAME_PROBABILITY =
@@ -121,7 +126,7 @@ public final class LifecycleModule extends Module {
     adherence(person, time);
     calculateVitalSigns(person, time);
     calculateFallRisk(person, time);
-    person.attributes.put(Person.DISABLED, isDisabled(person, time));
+    person.attributes.put(DISABLED_SLOT, isDisabled(person, time));
     /*
     if (person.ageInYears(time) >= 18) {
       ((Employment) person.attributes.get(Person.EMPLOYMENT_MODEL)).checkEmployment(person, time);
@@ -284,13 +289,13 @@ public final class LifecycleModule extends Module {
    * @return whether or not the patient should grow
    */
   private static boolean age(Person person, long time) {
-    int prevAge = (int) person.attributes.get(AGE);
-    int prevAgeMos = (int) person.attributes.get(AGE_MONTHS);
+    int prevAge = (int) person.attributes.getLong(AGE_SLOT, 0L);
+    int prevAgeMos = (int) person.attributes.getLong(AGE_MONTHS_SLOT, 0L);
 
     int newAge = person.ageInYears(time);
     int newAgeMos = person.ageInMonths(time);
-    person.attributes.put(AGE, newAge);
-    person.attributes.put(AGE_MONTHS, newAgeMos);
+    person.attributes.putInt(AGE_SLOT, newAge);
+    person.attributes.putInt(AGE_MONTHS_SLOT, newAgeMos);
     switch (newAge) {
       case 16:
         // driver's license
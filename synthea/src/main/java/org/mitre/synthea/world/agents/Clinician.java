@@ -2,10 +2,13 @@ package org.mitre.synthea.world.agents;
 
 import java.awt.geom.Point2D;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.world.geography.quadtree.QuadTreeElement;
@@ -41,10 +44,30 @@ public class Clinician implements Serializable, QuadTreeElement {
   public Map<String, Object> attributes;
   private ArrayList<String> servicesProvided;
   private Provider organization;
+  // counted with atomic adds, so that the threads generating people need not lock
   private int encounters;
   private int procedures;
   public long populationSeed;
 
+  private static final VarHandle ENCOUNTERS;
+  private static final VarHandle PROCEDURES;
+
+  /** The encounters and procedures of a clinician counted by one run. */
+  static final class Counts {
+    final AtomicInteger encounters = new AtomicInteger();
+    final AtomicInteger procedures = new AtomicInteger();
+  }
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      ENCOUNTERS = lookup.findVarHandle(Clinician.class, "encounters", int.class);
+      PROCEDURES = lookup.findVarHandle(Clinician.class, "procedures", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
   /**
    * Create a new clinician.
    * @param clinicianSeed The seed for this clinician.
@@ -109,10 +132,14 @@ public class Clinician implements Serializable, QuadTreeElement {
 
   /**
    * Increment the number of encounters performed by this Clinician.
-   * @return The incremented number of encounters.
+   * @return The number of encounters before the increment.
    */
-  public synchronized int incrementEncounters() {
-    return encounters++;
+  public int incrementEncounters() {
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      return run.of(this).encounters.getAndIncrement();
+    }
+    return (int) ENCOUNTERS.getAndAdd(this, 1);
   }
 
   /**
@@ -120,15 +147,23 @@ public class Clinician implements Serializable, QuadTreeElement {
    * @return The number of encounters.
    */
   public int getEncounterCount() {
-    return encounters;
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      return run.of(this).encounters.get();
+    }
+    return (int) ENCOUNTERS.getVolatile(this);
   }
 
   /**
    * Increment the number of procedures performed by this Clinician.
-   * @return The incremented number of procedures.
+   * @return The number of procedures before the increment.
    */
-  public synchronized int incrementProcedures() {
-    return procedures++;
+  public int incrementProcedures() {
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      return run.of(this).procedures.getAndIncrement();
+    }
+    return (int) PROCEDURES.getAndAdd(this, 1);
   }
 
   /**
@@ -136,7 +171,28 @@ public class Clinician implements Serializable, QuadTreeElement {
    * @return The number of procedures.
    */
   public int getProcedureCount() {
-    return procedures;
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      return run.of(this).procedures.get();
+    }
+    return (int) PROCEDURES.getVolatile(this);
+  }
+
+  /**
+   * Add encounters and procedures performed by this Clinician elsewhere,
+   * e.g. in a shard of the population.
+   * @param encounters The number of encounters to add.
+   * @param procedures The number of procedures to add.
+   */
+  public void addCounts(int encounters, int procedures) {
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      run.of(this).encounters.addAndGet(encounters);
+      run.of(this).procedures.addAndGet(procedures);
+      return;
+    }
+    ENCOUNTERS.getAndAdd(this, encounters);
+    PROCEDURES.getAndAdd(this, procedures);
   }
 
   @Override
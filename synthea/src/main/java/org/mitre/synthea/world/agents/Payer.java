@@ -1,24 +1,22 @@
 package org.mitre.synthea.world.agents;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.gson.internal.LinkedTreeMap;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.mitre.synthea.export.JSONSkip;
+import org.mitre.synthea.helpers.BigDecimalAdder;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.world.agents.behaviors.payeradjustment.IPayerAdjustment;
 import org.mitre.synthea.world.concepts.Claim;
@@ -48,64 +46,55 @@ public class Payer implements Serializable {
   // The States that this payer covers & operates in.
   private final Set<String> statesCovered;
 
-  /* Payer Statistics. */
-  private BigDecimal revenue;
-  private BigDecimal costsCovered;
-  private BigDecimal costsUncovered;
-  private double totalQOLS; // Total customer quality of life scores.
-  // Unique utilizers of Payer, by Person ID, with number of utilizations per Person.
-  private final Map<String, AtomicInteger> customerUtilization;
-  // row: year, column: type, value: count.
-  private transient Table<Integer, String, AtomicInteger> entryUtilization;
-
-  /**
-   * Simple bean used to add Java Serialization support to
-   * com.google.common.collect.Table&lt;Integer, String, AtomicInteger&gt; which doesn't natively
-   * support Serialization.
-   */
-  static class UtilizationBean implements Serializable {
-    public Integer year;
-    public String type;
-    public AtomicInteger count;
-
-    public UtilizationBean(Integer year, String type, AtomicInteger count) {
-      this.year = year;
-      this.type = type;
-      this.count = count;
+  /* Payer Statistics, which the threads generating people add to without locking. */
+  private final Statistics statistics;
+
+  // QOLS are summed as whole billionths, so that the sum does not depend on the order of adding
+  private static final double QOLS_UNITS = 1e9;
+
+  /** The statistics of a payer, counted by the payer itself or by one run. */
+  static final class Statistics implements Serializable {
+    private static final long serialVersionUID = 4032215496425431953L;
+
+    final BigDecimalAdder revenue = new BigDecimalAdder(Claim.ZERO_CENTS.scale());
+    final BigDecimalAdder costsCovered = new BigDecimalAdder(Claim.ZERO_CENTS.scale());
+    final BigDecimalAdder costsUncovered = new BigDecimalAdder(Claim.ZERO_CENTS.scale());
+    final LongAdder totalQOLS = new LongAdder(); // Total customer QOLS in units of QOLS_UNITS.
+    // Unique utilizers of Payer, by Person ID, with number of utilizations per Person.
+    final Map<String, AtomicInteger> customerUtilization = new ConcurrentHashMap<>();
+    // row: year, column: type, value: count.
+    final UtilizationCounter entryUtilization = new UtilizationCounter();
+  }
+
+  // The entry types, and the utilization keys by whether the entries were covered and type.
+  private static final String[] ENTRY_TYPES = {HealthRecord.ENCOUNTERS,
+      HealthRecord.MEDICATIONS, HealthRecord.PROCEDURES, HealthRecord.IMMUNIZATIONS, "no_cost"};
+  private static final int ENCOUNTER = 0;
+  private static final int MEDICATION = 1;
+  private static final int PROCEDURE = 2;
+  private static final int IMMUNIZATION = 3;
+  private static final int NO_COST = 4;
+  private static final int[] COVERED_KEYS = entryKeys("covered-");
+  private static final int[] UNCOVERED_KEYS = entryKeys("uncovered-");
+  private static final UtilizationCounter.SubtypeKeys[] COVERED_SUBTYPE_KEYS =
+      entrySubtypeKeys("covered-");
+  private static final UtilizationCounter.SubtypeKeys[] UNCOVERED_SUBTYPE_KEYS =
+      entrySubtypeKeys("uncovered-");
+
+  private static int[] entryKeys(String prefix) {
+    int[] keys = new int[ENTRY_TYPES.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = UtilizationCounter.keyOf(prefix + ENTRY_TYPES[i]);
     }
+    return keys;
   }
 
-  /**
-   * Java Serialization support for the entryUtilization field.
-   * @param oos stream to write to
-   */
-  private void writeObject(ObjectOutputStream oos) throws IOException {
-    oos.defaultWriteObject();
-    ArrayList<UtilizationBean> entryUtilizationElements = null;
-    if (entryUtilization != null) {
-      entryUtilizationElements = new ArrayList<>(entryUtilization.size());
-      for (Table.Cell<Integer, String, AtomicInteger> cell: entryUtilization.cellSet()) {
-        entryUtilizationElements.add(
-                new UtilizationBean(cell.getRowKey(), cell.getColumnKey(), cell.getValue()));
-      }
-    }
-    oos.writeObject(entryUtilizationElements);
-  }
-
-  /**
-   * Java Serialization support for the entryUtilization field.
-   * @param ois stream to read from
-   */
-  private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
-    ois.defaultReadObject();
-    ArrayList<UtilizationBean> entryUtilizationElements =
-            (ArrayList<UtilizationBean>)ois.readObject();
-    if (entryUtilizationElements != null) {
-      this.entryUtilization = HashBasedTable.create();
-      for (UtilizationBean u: entryUtilizationElements) {
-        this.entryUtilization.put(u.year, u.type, u.count);
-      }
+  private static UtilizationCounter.SubtypeKeys[] entrySubtypeKeys(String prefix) {
+    UtilizationCounter.SubtypeKeys[] keys = new UtilizationCounter.SubtypeKeys[ENTRY_TYPES.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new UtilizationCounter.SubtypeKeys(prefix + ENTRY_TYPES[i]);
     }
+    return keys;
   }
 
   /**
@@ -129,12 +118,15 @@ public class Payer implements Serializable {
     this.attributes = new LinkedTreeMap<>();
 
     // Initial tracking values.
-    this.entryUtilization = HashBasedTable.create();
-    this.customerUtilization = new HashMap<String, AtomicInteger>();
-    this.costsCovered = Claim.ZERO_CENTS;
-    this.costsUncovered = Claim.ZERO_CENTS;
-    this.revenue = Claim.ZERO_CENTS;
-    this.totalQOLS = 0.0;
+    this.statistics = new Statistics();
+  }
+
+  /**
+   * The statistics counted by the run the current thread works on, or else by this payer.
+   */
+  private Statistics statistics() {
+    RunUtilization run = RunUtilization.current();
+    return run == null ? statistics : run.of(this);
   }
 
   public void addPlan(InsurancePlan newPlan) {
@@ -207,11 +199,19 @@ public class Payer implements Serializable {
    *
    * @param personId the person id who utilized the payer.
    */
-  public synchronized void incrementCustomers(String personId) {
-    if (!customerUtilization.containsKey(personId)) {
-      customerUtilization.put(personId, new AtomicInteger(0));
-    }
-    customerUtilization.get(personId).incrementAndGet();
+  public void incrementCustomers(String personId) {
+    addCustomerYears(personId, 1);
+  }
+
+  /**
+   * Adds years that the given person was a customer of this payer.
+   *
+   * @param personId the person id who utilized the payer.
+   * @param years the number of years to add.
+   */
+  public void addCustomerYears(String personId, int years) {
+    statistics().customerUtilization.computeIfAbsent(personId, id -> new AtomicInteger())
+        .addAndGet(years);
   }
 
   /**
@@ -221,10 +221,12 @@ public class Payer implements Serializable {
    */
   public void incrementCoveredEntries(Entry entry) {
 
-    String entryType = getEntryType(entry);
+    int entryType = getEntryType(entry);
+    int year = Utilities.getYear(entry.start);
 
-    incrementEntries(Utilities.getYear(entry.start), "covered-" + entryType);
-    incrementEntries(Utilities.getYear(entry.start), "covered-" + entryType + "-" + entry.type);
+    UtilizationCounter entryUtilization = statistics().entryUtilization;
+    entryUtilization.increment(year, COVERED_KEYS[entryType]);
+    entryUtilization.increment(year, COVERED_SUBTYPE_KEYS[entryType].keyOf(entry.type));
   }
 
   /**
@@ -234,11 +236,12 @@ public class Payer implements Serializable {
    */
   public void incrementUncoveredEntries(Entry entry) {
 
-    String entryType = getEntryType(entry);
+    int entryType = getEntryType(entry);
+    int year = Utilities.getYear(entry.start);
 
-    incrementEntries(Utilities.getYear(entry.start), "uncovered-" + entryType);
-    incrementEntries(Utilities.getYear(entry.start), "uncovered-" + entryType
-        + "-" + entry.type);
+    UtilizationCounter entryUtilization = statistics().entryUtilization;
+    entryUtilization.increment(year, UNCOVERED_KEYS[entryType]);
+    entryUtilization.increment(year, UNCOVERED_SUBTYPE_KEYS[entryType].keyOf(entry.type));
   }
 
   // Perhaps move to HealthRecord.java
@@ -246,37 +249,45 @@ public class Payer implements Serializable {
    * Determines what entry type (Immunization/Encounter/Procedure/Medication) of the given entry.
    *
    * @param entry the entry to parse.
+   * @return the index of the entry type in ENTRY_TYPES.
    */
-  private String getEntryType(Entry entry) {
+  private static int getEntryType(Entry entry) {
 
-    String entryType;
+    int entryType;
 
     if (entry instanceof Encounter) {
-      entryType = HealthRecord.ENCOUNTERS;
+      entryType = ENCOUNTER;
     } else if (entry instanceof Medication) {
-      entryType = HealthRecord.MEDICATIONS;
+      entryType = MEDICATION;
     } else if (entry instanceof Procedure) {
-      entryType = HealthRecord.PROCEDURES;
+      entryType = PROCEDURE;
     } else if (entry instanceof Immunization) {
-      entryType = HealthRecord.IMMUNIZATIONS;
+      entryType = IMMUNIZATION;
     } else {
       // Not an entry with a cost.
-      entryType = "no_cost";
+      entryType = NO_COST;
     }
     return entryType;
   }
 
   /**
-   * Increments encounter utilization for a given year and encounter type.
+   * Adds to the entry utilization for a given year and entry type, e.g. the utilization
+   * recorded by a shard of the population.
    *
-   * @param year the year of the encounter to add
-   * @param key the key (the encounter type and whether it was covered/uncovered)
+   * @param year the year of the entries to add
+   * @param key the key (the entry type and whether it was covered/uncovered)
+   * @param count the number of entries to add
    */
-  private synchronized void incrementEntries(Integer year, String key) {
-    if (!entryUtilization.contains(year, key)) {
-      entryUtilization.put(year, key, new AtomicInteger(0));
-    }
-    entryUtilization.get(year, key).incrementAndGet();
+  public void addEntries(Integer year, String key, int count) {
+    statistics().entryUtilization.add(year, UtilizationCounter.keyOf(key), count);
+  }
+
+  /**
+   * Returns the entry utilization of this payer by year and entry type.
+   * @return a table of the entry utilization counted so far.
+   */
+  public Table<Integer, String, AtomicInteger> getEntryUtilization() {
+    return statistics().entryUtilization.toTable();
   }
 
   /**
@@ -285,7 +296,7 @@ public class Payer implements Serializable {
    * @param costToPayer the cost of the current encounter, after the patient's copay.
    */
   public void addCoveredCost(BigDecimal costToPayer) {
-    this.costsCovered = this.costsCovered.add(costToPayer);
+    statistics().costsCovered.add(costToPayer);
   }
 
   /**
@@ -294,7 +305,7 @@ public class Payer implements Serializable {
    * @param costToPatient the costs that the payer did not cover.
    */
   public void addUncoveredCost(BigDecimal costToPatient) {
-    this.costsUncovered = this.costsUncovered.add(costToPatient);
+    statistics().costsUncovered.add(costToPatient);
   }
 
   /**
@@ -305,7 +316,15 @@ public class Payer implements Serializable {
    * @param qols the Quality of Life Score to be added.
    */
   public void addQols(double qols) {
-    this.totalQOLS += qols;
+    statistics().totalQOLS.add(Math.round(qols * QOLS_UNITS));
+  }
+
+  /**
+   * Returns the sum of the Quality of Life Scores of the customers.
+   * @return the total QOLS.
+   */
+  public double getTotalQols() {
+    return statistics().totalQOLS.sum() / QOLS_UNITS;
   }
 
   /**
@@ -314,7 +333,7 @@ public class Payer implements Serializable {
    * @return the total revenue.
    */
   public BigDecimal getRevenue() {
-    return this.revenue;
+    return statistics().revenue.sum();
   }
 
   /**
@@ -323,10 +342,19 @@ public class Payer implements Serializable {
    * @return  The number of years the person was with the payer.
    */
   public int getCustomerUtilization(String personId) {
-    if (!customerUtilization.containsKey(personId)) {
+    AtomicInteger years = statistics().customerUtilization.get(personId);
+    if (years == null) {
       return 0;
     }
-    return customerUtilization.get(personId).get();
+    return years.get();
+  }
+
+  /**
+   * Returns the number of years each customer was with this Payer.
+   * @return  The number of years by person ID.
+   */
+  public Map<String, AtomicInteger> getCustomerUtilization() {
+    return statistics().customerUtilization;
   }
 
   /**
@@ -334,7 +362,7 @@ public class Payer implements Serializable {
    * @return the number of unique customers.
    */
   public int getUniqueCustomers() {
-    return customerUtilization.size();
+    return statistics().customerUtilization.size();
   }
 
   /**
@@ -342,7 +370,8 @@ public class Payer implements Serializable {
    * @return the number of years covered.
    */
   public int getNumYearsCovered() {
-    return this.customerUtilization.values().stream().mapToInt(AtomicInteger::intValue).sum();
+    return statistics().customerUtilization.values().stream()
+        .mapToInt(AtomicInteger::intValue).sum();
   }
 
   /**
@@ -350,8 +379,7 @@ public class Payer implements Serializable {
    * @return the number of covered encounters.
    */
   public int getEncountersCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.ENCOUNTERS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(COVERED_KEYS[ENCOUNTER]);
   }
 
   /**
@@ -359,8 +387,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient encounters.
    */
   public int getEncountersUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.ENCOUNTERS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(UNCOVERED_KEYS[ENCOUNTER]);
   }
 
   /**
@@ -368,8 +395,7 @@ public class Payer implements Serializable {
    * @return the number of covered medications.
    */
   public int getMedicationsCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.MEDICATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(COVERED_KEYS[MEDICATION]);
   }
 
   /**
@@ -377,8 +403,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient medications.
    */
   public int getMedicationsUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.MEDICATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(UNCOVERED_KEYS[MEDICATION]);
   }
 
   /**
@@ -386,8 +411,7 @@ public class Payer implements Serializable {
    * @return the number of covered procedures.
    */
   public int getProceduresCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.PROCEDURES).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(COVERED_KEYS[PROCEDURE]);
   }
 
   /**
@@ -395,8 +419,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient procedures.
    */
   public int getProceduresUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.PROCEDURES).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(UNCOVERED_KEYS[PROCEDURE]);
   }
 
   /**
@@ -404,8 +427,7 @@ public class Payer implements Serializable {
    * @return the number of covered immunizations.
    */
   public int getImmunizationsCoveredCount() {
-    return entryUtilization.column("covered-"
-        + HealthRecord.IMMUNIZATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(COVERED_KEYS[IMMUNIZATION]);
   }
 
   /**
@@ -413,8 +435,7 @@ public class Payer implements Serializable {
    * @return the number of uncovered patient immunizations.
    */
   public int getImmunizationsUncoveredCount() {
-    return entryUtilization.column("uncovered-"
-        + HealthRecord.IMMUNIZATIONS).values().stream().mapToInt(ai -> ai.get()).sum();
+    return (int) statistics().entryUtilization.sum(UNCOVERED_KEYS[IMMUNIZATION]);
   }
 
   /**
@@ -422,7 +443,7 @@ public class Payer implements Serializable {
    * @return the total value of coverage paid.
    */
   public BigDecimal getAmountCovered() {
-    return this.costsCovered;
+    return statistics().costsCovered.sum();
   }
 
   /**
@@ -430,7 +451,7 @@ public class Payer implements Serializable {
    * @return the total value of uncovered patient healthcare.
    */
   public BigDecimal getAmountUncovered() {
-    return this.costsUncovered;
+    return statistics().costsUncovered.sum();
   }
 
   /**
@@ -439,7 +460,7 @@ public class Payer implements Serializable {
    */
   public double getQolsAverage() {
     int numYears = this.getNumYearsCovered();
-    return this.totalQOLS / numYears;
+    return getTotalQols() / numYears;
   }
 
   @Override
@@ -450,11 +471,10 @@ public class Payer implements Serializable {
     hash = 53 * hash + Objects.hashCode(this.uuid);
     hash = 53 * hash + Objects.hashCode(this.ownership);
     hash = 53 * hash + Objects.hashCode(this.statesCovered);
-    hash = 53 * hash + this.revenue.hashCode();
-    hash = 53 * hash + this.costsCovered.hashCode();
-    hash = 53 * hash + this.costsUncovered.hashCode();
-    hash = 53 * hash + (int) (Double.doubleToLongBits(this.totalQOLS)
-            ^ (Double.doubleToLongBits(this.totalQOLS) >>> 32));
+    hash = 53 * hash + this.getRevenue().hashCode();
+    hash = 53 * hash + this.getAmountCovered().hashCode();
+    hash = 53 * hash + this.getAmountUncovered().hashCode();
+    hash = 53 * hash + Double.hashCode(this.getTotalQols());
     return hash;
   }
 
@@ -470,17 +490,17 @@ public class Payer implements Serializable {
       return false;
     }
     final Payer other = (Payer) obj;
-    if (!this.revenue.equals(other.revenue)) {
+    if (!this.getRevenue().equals(other.getRevenue())) {
       return false;
     }
-    if (!this.costsCovered.equals(other.costsCovered)) {
+    if (!this.getAmountCovered().equals(other.getAmountCovered())) {
       return false;
     }
-    if (!this.costsUncovered.equals(other.costsUncovered)) {
+    if (!this.getAmountUncovered().equals(other.getAmountUncovered())) {
       return false;
     }
-    if (Double.doubleToLongBits(this.totalQOLS)
-            != Double.doubleToLongBits(other.totalQOLS)) {
+    if (Double.doubleToLongBits(this.getTotalQols())
+            != Double.doubleToLongBits(other.getTotalQols())) {
       return false;
     }
     if (!Objects.equals(this.plans, other.plans)) {
@@ -521,7 +541,7 @@ public class Payer implements Serializable {
    * @param additionalRevenue The revenue to add.
    */
   public void addRevenue(BigDecimal additionalRevenue) {
-    this.revenue = this.revenue.add(additionalRevenue);
+    statistics().revenue.add(additionalRevenue);
   }
 
   /**
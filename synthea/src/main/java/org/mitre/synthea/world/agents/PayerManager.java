@@ -87,6 +87,9 @@ public class PayerManager {
   // Payer Finder.
   private static IPlanFinder planFinder;
 
+  // Index of the plans of the loaded payers, built when first needed.
+  private static volatile PlanIndex planIndex;
+
   /**
    * Load into cache the list of payers for a state.
    *
@@ -109,6 +112,7 @@ public class PayerManager {
         statesLoaded.add(location.state);
         statesLoaded.add(Location.getAbbreviation(location.state));
         statesLoaded.add(Location.getStateName(location.state));
+        planIndex = null;
       } catch (IOException e) {
         System.err.println("ERROR: unable to load payers for state: " + location.state);
         e.printStackTrace();
@@ -328,6 +332,25 @@ public class PayerManager {
     payers.clear();
     statesLoaded.clear();
     planFinder = buildPlanFinder();
+    planIndex = null;
+  }
+
+  /**
+   * Returns the index of the plans of the loaded payers, building it after payers were loaded.
+   * @return the plan index
+   */
+  private static PlanIndex getPlanIndex() {
+    PlanIndex index = planIndex;
+    if (index == null) {
+      synchronized (PayerManager.class) {
+        index = planIndex;
+        if (index == null) {
+          index = new PlanIndex(getAllPayers());
+          planIndex = index;
+        }
+      }
+    }
+    return index;
   }
 
   /**
@@ -339,10 +362,8 @@ public class PayerManager {
    * @return a payer who the person can accept and vice versa.
    */
   public static InsurancePlan findPlan(Person person, EncounterType service, long time) {
-    List<InsurancePlan> plans = getActivePlans(getAllPayers(), time);
     // Remove medicare supplement plans from this check.
-    plans = plans.stream().filter(plan -> !plan.isMedicareSupplementPlan())
-        .collect(Collectors.toList());
+    List<InsurancePlan> plans = getPlanIndex().find(PlanIndex.NOT_SUPPLEMENT, person, time);
     InsurancePlan potentialPlan = planFinder.find(plans, person, service, time);
     if (potentialPlan.isGovernmentPlan()) {
       // Person will always choose a government plan.
@@ -393,10 +414,8 @@ public class PayerManager {
    */
   public static InsurancePlan findMedicareSupplement(Person person,
       EncounterType service, long time) {
-    List<InsurancePlan> plans = getActivePlans(getAllPayers(), time);
     // Remove non-medicare supplement plans from this check.
-    plans = plans.stream().filter(plan -> plan.isMedicareSupplementPlan())
-        .collect(Collectors.toList());
+    List<InsurancePlan> plans = getPlanIndex().find(PlanIndex.SUPPLEMENT, person, time);
     InsurancePlan potentialPlan = planFinder.find(plans, person, service, time);
     return potentialPlan;
   }
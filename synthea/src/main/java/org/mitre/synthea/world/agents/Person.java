@@ -24,9 +24,9 @@ import org.mitre.synthea.engine.ExpressedConditionRecord;
 import org.mitre.synthea.engine.ExpressedSymptom;
 import org.mitre.synthea.engine.Module;
 import org.mitre.synthea.engine.State;
+import org.mitre.synthea.engine.StateHistory;
 import org.mitre.synthea.helpers.Config;
 import org.mitre.synthea.helpers.ConstantValueGenerator;
-import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.Utilities;
 import org.mitre.synthea.helpers.ValueGenerator;
@@ -121,8 +121,18 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
   public static final String NO_VEHICLE_ACCESS = "no_vehicle_access";
   public static final String UNINSURED = "uninsured";
 
-  private final DefaultRandomNumberGenerator random;
+  // the attributes read on every time step
+  private static final int BIRTHDATE_SLOT = PersonAttributes.slotOf(BIRTHDATE);
+  private static final int BIRTHDATE_AS_LOCALDATE_SLOT =
+      PersonAttributes.slotOf(BIRTHDATE_AS_LOCALDATE);
+  private static final int DEATHDATE_SLOT = PersonAttributes.slotOf(DEATHDATE);
+
+  private final RandomNumberGenerator random;
   public long populationSeed;
+  /**
+   * Index of the person in the generated population, or -1 if not generated as part of one.
+   */
+  public int populationIndex = -1;
   /**
    * Tracks the last time that the person was updated over a serialize/deserialize.
    */
@@ -131,7 +141,7 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    * Tracks the remaining modules for a person over a serialize/deserialize.
    */
   public List<Module> currentModules;
-  public Map<String, Object> attributes;
+  public PersonAttributes attributes;
   public Map<VitalSign, ValueGenerator> vitalSigns;
   /** Data structure for storing symptoms faced by a person.
    * Adding the Long keyset to keep track of the time a symptom is set. */
@@ -159,13 +169,15 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
   public List<State> history;
   /** Record of insurance coverage. */
   public final CoverageRecord coverage;
+  /** Nearest providers found for this person at the current location. */
+  transient ProviderIndex.Nearest nearestProviders;
 
   /**
    * Person constructor.
    */
   public Person(long seed) {
-    random = new DefaultRandomNumberGenerator(seed);
-    attributes = new ConcurrentHashMap<String, Object>();
+    random = RandomNumberGenerator.create(seed);
+    attributes = new PersonAttributes();
     vitalSigns = new ConcurrentHashMap<VitalSign, ValueGenerator>();
     symptoms = new ConcurrentHashMap<String, ExpressedSymptom>();
     /* initialized the onsetConditions field */
@@ -252,21 +264,26 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
     return random.getSeed();
   }
 
+  @Override
+  public RandomNumberGenerator split() {
+    return random.split();
+  }
+
   /**
    * Returns a person's age in Period form.
    */
   public Period age(long time) {
     Period age = Period.ZERO;
 
-    if (attributes.containsKey(BIRTHDATE)) {
+    if (attributes.containsKey(BIRTHDATE_SLOT)) {
       LocalDate now = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
 
       // we call age() a lot, so caching the birthdate as a LocalDate saves some translation
-      LocalDate birthdate = (LocalDate) attributes.get(BIRTHDATE_AS_LOCALDATE);
+      LocalDate birthdate = (LocalDate) attributes.get(BIRTHDATE_AS_LOCALDATE_SLOT);
       if (birthdate == null) {
-        birthdate = Instant.ofEpochMilli((long) attributes.get(BIRTHDATE))
+        birthdate = Instant.ofEpochMilli(attributes.getLong(BIRTHDATE_SLOT, 0L))
             .atZone(ZoneOffset.UTC).toLocalDate();
-        attributes.put(BIRTHDATE_AS_LOCALDATE, birthdate);
+        attributes.put(BIRTHDATE_AS_LOCALDATE_SLOT, birthdate);
       }
 
       age = Period.between(birthdate, now);
@@ -327,9 +344,9 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
    * Returns whether a person is alive at the given time.
    */
   public boolean alive(long time) {
-    boolean born = attributes.containsKey(Person.BIRTHDATE);
-    Long died = (Long) attributes.get(Person.DEATHDATE);
-    return (born && (died == null || died > time));
+    boolean born = attributes.containsKey(BIRTHDATE_SLOT);
+    return (born && (!attributes.containsKey(DEATHDATE_SLOT)
+        || attributes.getLong(DEATHDATE_SLOT, 0L) > time));
   }
 
   /**
@@ -534,6 +551,9 @@ public class Person implements Serializable, RandomNumberGenerator, QuadTreeElem
     if (history == null) {
       return false;
     }
+    if (history instanceof StateHistory) {
+      return ((StateHistory) history).hadPriorState(name, since, within);
+    }
     for (State state : history) {
       if (within != null && state.exited != null && state.exited <= within) {
         return false;
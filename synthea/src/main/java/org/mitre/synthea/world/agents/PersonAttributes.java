@@ -0,0 +1,523 @@
+package org.mitre.synthea.world.agents;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.mitre.synthea.helpers.Interner;
+
+/**
+ * The attributes of a person, stored by interned key.
+ *
+ * <p>Every attribute name is interned once to an integer slot, shared by all people: the
+ * constants of {@link Person} when this class is loaded, and the names used by modules the
+ * first time they are read or written. Each person keeps a small open-addressing table from
+ * slot to entry, and the entries in parallel arrays. Long, Integer and Double values are kept
+ * unboxed in a primitive array, so birthdates, incomes and vital signs take no object of their
+ * own. Other values are kept as they are.</p>
+ *
+ * <p>Callers on a hot path resolve the slot of a name once with {@link #slotOf(String)}, and
+ * then use the methods that take a slot, such as {@link #getLong(int, long)}, which neither
+ * hash the name nor box the value. All other code uses the {@link Map} view, which returns the
+ * values with the type they were stored with. Like the ConcurrentHashMap this replaces, the
+ * map rejects null keys and values, and its iterators never throw
+ * ConcurrentModificationException, so attributes can be changed while iterating. The entries
+ * are iterated in the order their keys were first added.</p>
+ *
+ * <p>The attributes are not synchronized: like the rest of the state of a person, they are
+ * only used by the thread that simulates or exports the person at the time.</p>
+ */
+public final class PersonAttributes extends AbstractMap<String, Object>
+    implements Serializable {
+  private static final long serialVersionUID = -3013626410585524473L;
+
+  private static final Interner SLOTS = new Interner(256);
+
+  private static final byte ABSENT = 0;
+  private static final byte OBJECT = 1;
+  private static final byte LONG = 2;
+  private static final byte INTEGER = 3;
+  private static final byte DOUBLE = 4;
+
+  static {
+    // the known attributes take the first slots
+    for (Field field : Person.class.getFields()) {
+      int modifiers = field.getModifiers();
+      if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)
+          && field.getType() == String.class) {
+        try {
+          slotOf((String) field.get(null));
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+  }
+
+  // slot + 1 of each entry by hash of the slot, 0 where empty
+  private transient int[] table;
+  // the entries, in the order their keys were first added
+  private transient int[] slots;
+  private transient byte[] kinds;
+  private transient Object[] objects;
+  private transient long[] numbers;
+  private transient int entries;
+  private transient int size;
+
+  /**
+   * Create an empty set of attributes.
+   */
+  public PersonAttributes() {
+    init(16);
+  }
+
+  private void init(int capacity) {
+    table = new int[capacity * 2];
+    slots = new int[capacity];
+    kinds = new byte[capacity];
+    objects = new Object[capacity];
+    numbers = new long[capacity];
+    entries = 0;
+    size = 0;
+  }
+
+  /**
+   * Get the slot of an attribute name, interning the name if it has none yet.
+   * @param name The attribute name.
+   * @return the slot, the same for all people for the life of the JVM.
+   */
+  public static int slotOf(String name) {
+    return SLOTS.intern(name);
+  }
+
+  /**
+   * Get the attribute name of a slot.
+   * @param slot A slot returned by {@link #slotOf(String)}.
+   * @return the attribute name.
+   */
+  public static String nameOf(int slot) {
+    return SLOTS.nameOf(slot);
+  }
+
+  /**
+   * Find the entry of a slot.
+   * @return the entry, or -1 if the slot never had a value.
+   */
+  private int find(int slot) {
+    int mask = table.length - 1;
+    for (int i = hash(slot) & mask; ; i = (i + 1) & mask) {
+      int entry = table[i] - 1;
+      if (entry < 0 || slots[entry] == slot) {
+        return entry;
+      }
+    }
+  }
+
+  private static int hash(int slot) {
+    int h = slot * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Find the entry of a slot, adding an empty one if the slot never had a value.
+   */
+  private int entryOf(int slot) {
+    int entry = find(slot);
+    if (entry >= 0) {
+      return entry;
+    }
+    if (entries == slots.length) {
+      grow();
+    }
+    entry = entries++;
+    slots[entry] = slot;
+    int mask = table.length - 1;
+    int i = hash(slot) & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = entry + 1;
+    return entry;
+  }
+
+  private void grow() {
+    int capacity = slots.length * 2;
+    slots = Arrays.copyOf(slots, capacity);
+    kinds = Arrays.copyOf(kinds, capacity);
+    objects = Arrays.copyOf(objects, capacity);
+    numbers = Arrays.copyOf(numbers, capacity);
+    table = new int[capacity * 2];
+    int mask = table.length - 1;
+    for (int entry = 0; entry < entries; entry++) {
+      int i = hash(slots[entry]) & mask;
+      while (table[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      table[i] = entry + 1;
+    }
+  }
+
+  private Object valueAt(int entry) {
+    switch (kinds[entry]) {
+      case OBJECT:
+        return objects[entry];
+      case LONG:
+        return numbers[entry];
+      case INTEGER:
+        return (int) numbers[entry];
+      case DOUBLE:
+        return Double.longBitsToDouble(numbers[entry]);
+      default:
+        return null;
+    }
+  }
+
+  private Object set(int entry, Object value) {
+    Object previous = valueAt(entry);
+    if (previous == null) {
+      size++;
+    }
+    Class<?> type = value.getClass();
+    if (type == Long.class) {
+      kinds[entry] = LONG;
+      numbers[entry] = (Long) value;
+      objects[entry] = null;
+    } else if (type == Integer.class) {
+      kinds[entry] = INTEGER;
+      numbers[entry] = (Integer) value;
+      objects[entry] = null;
+    } else if (type == Double.class) {
+      kinds[entry] = DOUBLE;
+      numbers[entry] = Double.doubleToRawLongBits((Double) value);
+      objects[entry] = null;
+    } else {
+      kinds[entry] = OBJECT;
+      objects[entry] = value;
+    }
+    return previous;
+  }
+
+  private Object clearEntry(int entry) {
+    Object previous = valueAt(entry);
+    if (previous != null) {
+      kinds[entry] = ABSENT;
+      objects[entry] = null;
+      size--;
+    }
+    return previous;
+  }
+
+  /**
+   * Get the value of an attribute.
+   * @param slot The slot of the attribute.
+   * @return the value, or null if the person does not have the attribute.
+   */
+  public Object get(int slot) {
+    int entry = find(slot);
+    return entry < 0 ? null : valueAt(entry);
+  }
+
+  /**
+   * Whether the person has an attribute.
+   * @param slot The slot of the attribute.
+   * @return true if the attribute has a value.
+   */
+  public boolean containsKey(int slot) {
+    int entry = find(slot);
+    return entry >= 0 && kinds[entry] != ABSENT;
+  }
+
+  /**
+   * Get the value of a numeric attribute, without boxing it.
+   * @param slot The slot of the attribute.
+   * @param defaultValue The value to return if the person does not have the attribute.
+   * @return the value, converted to a long.
+   * @throws ClassCastException if the value is not a Number.
+   */
+  public long getLong(int slot, long defaultValue) {
+    int entry = find(slot);
+    if (entry < 0) {
+      return defaultValue;
+    }
+    switch (kinds[entry]) {
+      case LONG:
+      case INTEGER:
+        return numbers[entry];
+      case DOUBLE:
+        return (long) Double.longBitsToDouble(numbers[entry]);
+      case OBJECT:
+        return ((Number) objects[entry]).longValue();
+      default:
+        return defaultValue;
+    }
+  }
+
+  /**
+   * Get the value of a numeric attribute, without boxing it.
+   * @param slot The slot of the attribute.
+   * @param defaultValue The value to return if the person does not have the attribute.
+   * @return the value, converted to a double.
+   * @throws ClassCastException if the value is not a Number.
+   */
+  public double getDouble(int slot, double defaultValue) {
+    int entry = find(slot);
+    if (entry < 0) {
+      return defaultValue;
+    }
+    switch (kinds[entry]) {
+      case LONG:
+      case INTEGER:
+        return numbers[entry];
+      case DOUBLE:
+        return Double.longBitsToDouble(numbers[entry]);
+      case OBJECT:
+        return ((Number) objects[entry]).doubleValue();
+      default:
+        return defaultValue;
+    }
+  }
+
+  /**
+   * Set the value of an attribute.
+   * @param slot The slot of the attribute.
+   * @param value The value, not null.
+   * @return the previous value, or null if the person did not have the attribute.
+   */
+  public Object put(int slot, Object value) {
+    Objects.requireNonNull(value);
+    return set(entryOf(slot), value);
+  }
+
+  /**
+   * Set a Long attribute, without boxing it.
+   * @param slot The slot of the attribute.
+   * @param value The value.
+   */
+  public void putLong(int slot, long value) {
+    int entry = entryOf(slot);
+    if (kinds[entry] == ABSENT) {
+      size++;
+    }
+    kinds[entry] = LONG;
+    numbers[entry] = value;
+    objects[entry] = null;
+  }
+
+  /**
+   * Set an Integer attribute, without boxing it.
+   * @param slot The slot of the attribute.
+   * @param value The value.
+   */
+  public void putInt(int slot, int value) {
+    int entry = entryOf(slot);
+    if (kinds[entry] == ABSENT) {
+      size++;
+    }
+    kinds[entry] = INTEGER;
+    numbers[entry] = value;
+    objects[entry] = null;
+  }
+
+  /**
+   * Set a Double attribute, without boxing it.
+   * @param slot The slot of the attribute.
+   * @param value The value.
+   */
+  public void putDouble(int slot, double value) {
+    int entry = entryOf(slot);
+    if (kinds[entry] == ABSENT) {
+      size++;
+    }
+    kinds[entry] = DOUBLE;
+    numbers[entry] = Double.doubleToRawLongBits(value);
+    objects[entry] = null;
+  }
+
+  /**
+   * Remove an attribute.
+   * @param slot The slot of the attribute.
+   * @return the previous value, or null if the person did not have the attribute.
+   */
+  public Object remove(int slot) {
+    int entry = find(slot);
+    return entry < 0 ? null : clearEntry(entry);
+  }
+
+  /**
+   * Get the slot of a key of the Map view, without interning it. Keys that no person has had
+   * yet and keys that are not Strings have no slot.
+   */
+  private static int slotOfKey(Object key) {
+    return SLOTS.indexOf(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    int slot = slotOfKey(key);
+    return slot < 0 ? null : get(slot);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int slot = slotOfKey(key);
+    return slot >= 0 && containsKey(slot);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    return put(slotOf(key), value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int slot = slotOfKey(key);
+    return slot < 0 ? null : remove(slot);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    init(16);
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    Objects.requireNonNull(value);
+    for (int entry = 0; entry < entries; entry++) {
+      if (value.equals(valueAt(entry))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super Object> action) {
+    for (Map.Entry<String, Object> entry : entrySet()) {
+      action.accept(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new EntrySet();
+  }
+
+  /**
+   * The entries of the Map view. Iterators see the values at the time they reach an entry,
+   * and entries added while iterating.
+   */
+  private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+    @Override
+    public int size() {
+      return PersonAttributes.this.size();
+    }
+
+    @Override
+    public void clear() {
+      PersonAttributes.this.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, Object>> iterator() {
+      return new Iterator<Map.Entry<String, Object>>() {
+        private int position;
+        private Map.Entry<String, Object> next;
+        private Map.Entry<String, Object> last;
+
+        @Override
+        public boolean hasNext() {
+          while (next == null && position < entries) {
+            Object value = valueAt(position);
+            if (value != null) {
+              next = new Attribute(nameOf(slots[position]), value);
+            }
+            position++;
+          }
+          return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          last = next;
+          next = null;
+          return last;
+        }
+
+        @Override
+        public void remove() {
+          if (last == null) {
+            throw new IllegalStateException();
+          }
+          PersonAttributes.this.remove(last.getKey());
+          last = null;
+        }
+      };
+    }
+  }
+
+  /**
+   * An entry of the Map view, which writes through to the attributes.
+   */
+  private final class Attribute extends SimpleEntry<String, Object> {
+    private static final long serialVersionUID = 1L;
+
+    private Attribute(String key, Object value) {
+      super(key, value);
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      put(getKey(), Objects.requireNonNull(value));
+      return super.setValue(value);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // slots differ between JVMs, so the attributes are written by name
+    out.defaultWriteObject();
+    List<Object> pairs = new ArrayList<>(size * 2);
+    for (int entry = 0; entry < entries; entry++) {
+      Object value = valueAt(entry);
+      if (value != null) {
+        pairs.add(nameOf(slots[entry]));
+        pairs.add(value);
+      }
+    }
+    out.writeInt(pairs.size() / 2);
+    for (Object pair : pairs) {
+      out.writeObject(pair);
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int count = in.readInt();
+    init(Math.max(16, Integer.highestOneBit(Math.max(count, 1)) * 2));
+    for (int i = 0; i < count; i++) {
+      String key = (String) in.readObject();
+      put(key, in.readObject());
+    }
+  }
+}
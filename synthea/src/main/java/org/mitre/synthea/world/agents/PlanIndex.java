@@ -0,0 +1,149 @@
+package org.mitre.synthea.world.agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.Range;
+import org.mitre.synthea.world.agents.behaviors.planeligibility.DefaultPlanEligibility;
+import org.mitre.synthea.world.agents.behaviors.planeligibility.IPlanEligibility;
+import org.mitre.synthea.world.concepts.healthinsurance.InsurancePlan;
+
+/**
+ * Index of the plans of the loaded payers, for {@link PayerManager#findPlan} and
+ * {@link PayerManager#findMedicareSupplement}.
+ *
+ * <p>Time is split into spans at the start and end years of the plans, so that the same plans
+ * are active throughout a span. Within a span the plans are split by category: government,
+ * private, Medicare supplement and no insurance. A lookup finds its span with a binary search
+ * and only looks at the plans of the categories asked for. The plans are kept in the order of
+ * their payers and of the plans of each payer, the order of
+ * {@link PayerManager#getActivePlans}, so that the plan finders choose the same plan.</p>
+ *
+ * <p>Plans with a deterministic eligibility are also filtered before they are passed to the
+ * plan finder: each distinct eligibility among the plans is checked once for the person, and
+ * the plans it rejects are dropped. Other eligibilities, which may draw random numbers, are left
+ * to the plan finder.</p>
+ */
+final class PlanIndex {
+  static final int GOVERNMENT = 1;
+  static final int PRIVATE = 2;
+  static final int SUPPLEMENT = 4;
+  static final int NO_INSURANCE = 8;
+  static final int NOT_SUPPLEMENT = GOVERNMENT | PRIVATE | NO_INSURANCE;
+  private static final int CATEGORY_SETS = 16;
+
+  // the times the spans start at, in order, starting with Long.MIN_VALUE
+  private final long[] starts;
+  // the plans by span and by set of categories
+  private final Candidates[][] candidates;
+
+  /**
+   * Index the plans of the payers.
+   * @param payers The loaded payers, in the order they were loaded.
+   */
+  PlanIndex(List<Payer> payers) {
+    List<InsurancePlan> plans = new ArrayList<>();
+    TreeSet<Long> bounds = new TreeSet<>();
+    bounds.add(Long.MIN_VALUE);
+    for (Payer payer : payers) {
+      for (InsurancePlan plan : payer.getPlans()) {
+        plans.add(plan);
+        // the range is inclusive at both ends, so it ends where the next span starts
+        Range<Long> range = plan.getActiveTimeRange();
+        bounds.add(range.getMinimum());
+        if (range.getMaximum() != Long.MAX_VALUE) {
+          bounds.add(range.getMaximum() + 1);
+        }
+      }
+    }
+    starts = bounds.stream().mapToLong(Long::longValue).toArray();
+    candidates = new Candidates[starts.length][CATEGORY_SETS];
+    for (int span = 0; span < starts.length; span++) {
+      for (int categories = 0; categories < CATEGORY_SETS; categories++) {
+        List<InsurancePlan> active = new ArrayList<>();
+        for (InsurancePlan plan : plans) {
+          if ((categoryOf(plan) & categories) != 0 && plan.isActive(starts[span])) {
+            active.add(plan);
+          }
+        }
+        candidates[span][categories] = new Candidates(active);
+      }
+    }
+  }
+
+  private static int categoryOf(InsurancePlan plan) {
+    if (plan.isMedicareSupplementPlan()) {
+      return SUPPLEMENT;
+    } else if (plan.isNoInsurance()) {
+      return NO_INSURANCE;
+    } else if (plan.isGovernmentPlan()) {
+      return GOVERNMENT;
+    }
+    return PRIVATE;
+  }
+
+  /**
+   * Find the plans of some categories that are active at the given time, without the plans
+   * that the person is known not to be eligible for.
+   * @param categories The categories, e.g. GOVERNMENT | PRIVATE.
+   * @param person The person who needs insurance.
+   * @param time The time.
+   * @return the candidate plans, which must not be modified.
+   */
+  List<InsurancePlan> find(int categories, Person person, long time) {
+    int span = Arrays.binarySearch(starts, time);
+    if (span < 0) {
+      span = -span - 2;
+    }
+    return candidates[span][categories].eligible(person, time);
+  }
+
+  /**
+   * The active plans of a span and set of categories.
+   */
+  private static final class Candidates {
+    private final List<InsurancePlan> plans;
+    // the distinct deterministic eligibilities, and the one of each plan or -1 if it has none
+    private final IPlanEligibility[] eligibilities;
+    private final int[] eligibilityOf;
+
+    private Candidates(List<InsurancePlan> plans) {
+      this.plans = Collections.unmodifiableList(plans);
+      Map<IPlanEligibility, Integer> distinct = new IdentityHashMap<>();
+      eligibilityOf = new int[plans.size()];
+      for (int i = 0; i < eligibilityOf.length; i++) {
+        IPlanEligibility eligibility = plans.get(i).getPlanEligibility();
+        if (eligibility instanceof DefaultPlanEligibility || !eligibility.isDeterministic()) {
+          // everyone is eligible, or the eligibility is left to the plan finder
+          eligibilityOf[i] = -1;
+        } else {
+          eligibilityOf[i] = distinct.computeIfAbsent(eligibility, e -> distinct.size());
+        }
+      }
+      eligibilities = new IPlanEligibility[distinct.size()];
+      distinct.forEach((eligibility, index) -> eligibilities[index] = eligibility);
+    }
+
+    private List<InsurancePlan> eligible(Person person, long time) {
+      if (eligibilities.length == 0) {
+        return plans;
+      }
+      boolean[] accepted = new boolean[eligibilities.length];
+      for (int e = 0; e < eligibilities.length; e++) {
+        accepted[e] = eligibilities[e].isPersonEligible(person, time);
+      }
+      List<InsurancePlan> eligible = new ArrayList<>(plans.size());
+      for (int i = 0; i < eligibilityOf.length; i++) {
+        if (eligibilityOf[i] < 0 || accepted[eligibilityOf[i]]) {
+          eligible.add(plans.get(i));
+        }
+      }
+      return eligible;
+    }
+  }
+}
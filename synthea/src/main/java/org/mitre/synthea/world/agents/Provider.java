@@ -1,6 +1,5 @@
 package org.mitre.synthea.world.agents;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.gson.internal.LinkedTreeMap;
 
@@ -10,6 +9,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -18,10 +18,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
 
 import org.mitre.synthea.export.JSONSkip;
 import org.mitre.synthea.helpers.Config;
-import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
 import org.mitre.synthea.helpers.RandomNumberGenerator;
 import org.mitre.synthea.helpers.SimpleCSV;
 import org.mitre.synthea.helpers.Utilities;
@@ -64,6 +64,10 @@ public class Provider implements QuadTreeElement, Serializable {
   private static final double MAX_PROVIDER_SEARCH_DISTANCE =
       Config.getAsDouble("generate.providers.maximum_search_distance", 2);
   private static IProviderFinder providerFinder = buildProviderFinder();
+  /** Whether the nearest provider selection searches the index instead of the QuadTree. */
+  static boolean useNearestIndex =
+      Config.getAsBoolean("generate.providers.nearest_index", true);
+  private static volatile ProviderIndex nearestIndex;
   public static final Boolean USE_HOSPITAL_AS_DEFAULT =
       Config.getAsBoolean("generate.providers.default_to_hospital_on_failure", true);
 
@@ -102,23 +106,32 @@ public class Provider implements QuadTreeElement, Serializable {
   @JSONSkip
   public Map<String, ArrayList<Clinician>> clinicianMap;
   // row: year, column: type, value: count
-  private transient Table<Integer, String, AtomicInteger> utilization;
+  private transient UtilizationCounter utilization;
+
+  // the utilization keys, and the keys of the encounters by service
+  private static final int ENCOUNTERS_KEY = UtilizationCounter.keyOf(ENCOUNTERS);
+  private static final int PROCEDURES_KEY = UtilizationCounter.keyOf(PROCEDURES);
+  private static final int LABS_KEY = UtilizationCounter.keyOf(LABS);
+  private static final int PRESCRIPTIONS_KEY = UtilizationCounter.keyOf(PRESCRIPTIONS);
+  private static final UtilizationCounter.SubtypeKeys ENCOUNTER_SERVICE_KEYS =
+      new UtilizationCounter.SubtypeKeys(ENCOUNTERS);
+  private static final int[] SERVICE_KEYS = Arrays.stream(EncounterType.values())
+      .mapToInt(service -> ENCOUNTER_SERVICE_KEYS.keyOf(service.toString())).toArray();
+
+  /** The utilization and revenue of a provider counted by one run. */
+  static final class Counts {
+    final UtilizationCounter utilization = new UtilizationCounter();
+    final DoubleAdder revenue = new DoubleAdder();
+  }
 
   /**
-   * Java Serialization support for the utilization field.
+   * Java Serialization support for the utilization field, which is transient so that it is
+   * not exported to JSON.
    * @param oos stream to write to
    */
   private void writeObject(ObjectOutputStream oos) throws IOException {
     oos.defaultWriteObject();
-    ArrayList<Payer.UtilizationBean> entryUtilizationElements = null;
-    if (utilization != null) {
-      entryUtilizationElements = new ArrayList<>(utilization.size());
-      for (Table.Cell<Integer, String, AtomicInteger> cell: utilization.cellSet()) {
-        entryUtilizationElements.add(
-                new Payer.UtilizationBean(cell.getRowKey(), cell.getColumnKey(), cell.getValue()));
-      }
-    }
-    oos.writeObject(entryUtilizationElements);
+    oos.writeObject(utilization);
   }
 
   /**
@@ -127,14 +140,7 @@ public class Provider implements QuadTreeElement, Serializable {
    */
   private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
     ois.defaultReadObject();
-    ArrayList<Payer.UtilizationBean> entryUtilizationElements =
-            (ArrayList<Payer.UtilizationBean>)ois.readObject();
-    if (entryUtilizationElements != null) {
-      this.utilization = HashBasedTable.create();
-      for (Payer.UtilizationBean u: entryUtilizationElements) {
-        this.utilization.put(u.year, u.type, u.count);
-      }
-    }
+    utilization = (UtilizationCounter) ois.readObject();
   }
 
   /**
@@ -146,7 +152,7 @@ public class Provider implements QuadTreeElement, Serializable {
     locationUuid = UUID.randomUUID().toString();
     attributes = new LinkedTreeMap<>();
     revenue = 0.0;
-    utilization = HashBasedTable.create();
+    utilization = new UtilizationCounter();
     servicesProvided = new HashSet<EncounterType>();
     clinicianMap = new HashMap<String, ArrayList<Clinician>>();
     coordinates = new Point2D.Double();
@@ -189,34 +195,57 @@ public class Provider implements QuadTreeElement, Serializable {
   }
 
   public void incrementEncounters(EncounterType service, int year) {
-    increment(year, ENCOUNTERS);
-    increment(year, ENCOUNTERS + "-" + service);
+    UtilizationCounter utilization = utilization();
+    utilization.increment(year, ENCOUNTERS_KEY);
+    utilization.increment(year, service == null
+        ? ENCOUNTER_SERVICE_KEYS.keyOf(null) : SERVICE_KEYS[service.ordinal()]);
   }
 
   public void incrementProcedures(int year) {
-    increment(year, PROCEDURES);
+    utilization().increment(year, PROCEDURES_KEY);
   }
 
   public void incrementLabs(int year) {
-    increment(year, LABS);
+    utilization().increment(year, LABS_KEY);
   }
 
   public void incrementPrescriptions(int year) {
-    increment(year, PRESCRIPTIONS);
+    utilization().increment(year, PRESCRIPTIONS_KEY);
   }
 
-  private synchronized void increment(Integer year, String key) {
-    if (utilization != null) { // TODO remove once utilization stats are made serializable
-      if (!utilization.contains(year, key)) {
-        utilization.put(year, key, new AtomicInteger(0));
-      }
-
-      utilization.get(year, key).incrementAndGet();
-    }
+  /**
+   * Adds to the utilization of this provider, e.g. the utilization recorded by a shard
+   * of the population.
+   * @param year The year of the utilization.
+   * @param key The type of utilization, e.g. ENCOUNTERS.
+   * @param count The number to add.
+   */
+  public void addUtilization(Integer year, String key, int count) {
+    utilization().add(year, UtilizationCounter.keyOf(key), count);
   }
 
+  /**
+   * Returns the utilization of this provider by year and type.
+   * @return a table of the utilization counted so far.
+   */
   public Table<Integer, String, AtomicInteger> getUtilization() {
-    return utilization;
+    return utilization().toTable();
+  }
+
+  /**
+   * Returns whether this provider has any utilization.
+   * @return true if any encounter, procedure, lab or prescription was counted.
+   */
+  public boolean hasUtilization() {
+    return !utilization().isEmpty();
+  }
+
+  /**
+   * The utilization counted by the run the current thread works on, or else by this provider.
+   */
+  private UtilizationCounter utilization() {
+    RunUtilization run = RunUtilization.current();
+    return run == null ? utilization : run.of(this).utilization;
   }
 
   /**
@@ -257,6 +286,11 @@ public class Provider implements QuadTreeElement, Serializable {
    * @param costOfCare the cost of the care to be added to revenue.
    */
   public void addRevenue(double costOfCare) {
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      run.of(this).revenue.add(costOfCare);
+      return;
+    }
     this.revenue += costOfCare;
   }
 
@@ -264,6 +298,10 @@ public class Provider implements QuadTreeElement, Serializable {
    * Returns the total revenue of this provider.
    */
   public double getRevenue() {
+    RunUtilization run = RunUtilization.current();
+    if (run != null) {
+      return run.of(this).revenue.sum();
+    }
     return this.revenue;
   }
 
@@ -275,6 +313,22 @@ public class Provider implements QuadTreeElement, Serializable {
    * @return Service provider or null if none is available.
    */
   public static Provider findService(Person person, EncounterType service, long time) {
+    if (useNearestIndex && providerFinder.getClass() == ProviderFinderNearest.class) {
+      List<Provider> nearest = getNearestIndex().nearest(person, service,
+          largestSearchDistance());
+      List<Provider> options = new ArrayList<Provider>(nearest.size());
+      for (Provider provider : nearest) {
+        if (provider.accepts(person, time)) {
+          options.add(provider);
+        }
+      }
+      if (!options.isEmpty()) {
+        return options.size() > 1 ? options.get(person.randInt(options.size())) : options.get(0);
+      } else if (nearest.isEmpty()) {
+        return null;
+      }
+      // none of the nearest providers accepts the person, search farther away
+    }
     double maxDistance = MAX_PROVIDER_SEARCH_DISTANCE;
     double degrees = 0.125;
     List<Provider> options = null;
@@ -290,6 +344,40 @@ public class Provider implements QuadTreeElement, Serializable {
     return null;
   }
 
+  /**
+   * The radius of the last search of {@link #findService}, which doubles the radius from
+   * 0.125 degrees up to the maximum search distance.
+   * @return the radius in degrees, or -1 if no search is made
+   */
+  private static double largestSearchDistance() {
+    double degrees = 0.125;
+    if (degrees > MAX_PROVIDER_SEARCH_DISTANCE) {
+      return -1;
+    }
+    while (degrees * 2.0 <= MAX_PROVIDER_SEARCH_DISTANCE) {
+      degrees *= 2.0;
+    }
+    return degrees;
+  }
+
+  /**
+   * Returns the index of the loaded providers, building it after providers were loaded.
+   * @return the nearest provider index
+   */
+  private static ProviderIndex getNearestIndex() {
+    ProviderIndex index = nearestIndex;
+    if (index == null) {
+      synchronized (Provider.class) {
+        index = nearestIndex;
+        if (index == null) {
+          index = new ProviderIndex(providerMap.elements());
+          nearestIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
   /**
    * Find a provider that does not already have a healthrecord for the given person.
    */
@@ -345,6 +433,7 @@ public class Provider implements QuadTreeElement, Serializable {
     statesLoaded.clear();
     providerMap = generateQuadTree();
     providerFinder = buildProviderFinder();
+    nearestIndex = null;
     loaded = 0;
   }
 
@@ -361,7 +450,7 @@ public class Provider implements QuadTreeElement, Serializable {
    * Load into cache the list of providers for a state.
    * @param location the state being loaded.
    */
-  public static void loadProviders(Location location, DefaultRandomNumberGenerator random) {
+  public static void loadProviders(Location location, RandomNumberGenerator random) {
     if (!statesLoaded.contains(location.state)
         || !statesLoaded.contains(Location.getAbbreviation(location.state))
         || !statesLoaded.contains(Location.getStateName(location.state))) {
@@ -520,6 +609,7 @@ public class Provider implements QuadTreeElement, Serializable {
         }
       }
     }
+    nearestIndex = null;
   }
 
   /**
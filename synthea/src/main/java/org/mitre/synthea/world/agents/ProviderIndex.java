@@ -0,0 +1,236 @@
+package org.mitre.synthea.world.agents;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mitre.synthea.world.agents.Provider.ProviderType;
+import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
+import org.mitre.synthea.world.geography.quadtree.QuadTreeElement;
+
+/**
+ * Nearest neighbor index of the loaded providers, for the "nearest" provider selection of
+ * {@link Provider#findService}.
+ *
+ * <p>The providers are split by the service they offer and by whether they are VA facilities,
+ * IHS facilities or other providers, the groups that the nearest provider finder filters on.
+ * Each split is a 2-d tree, so a search only measures the distance to a few providers instead
+ * of every provider within a growing radius. It returns all eligible providers at the nearest
+ * distance, in the order the provider QuadTree would return them, so that the random choice
+ * between them is the same as with the radius search.</p>
+ */
+final class ProviderIndex {
+  private static final int OTHER = 0;
+  private static final int VETERAN = 1;
+  private static final int IHS = 2;
+  private static final int GROUPS = 3;
+
+  // the trees by service, and the last row for providers of any service
+  private final Tree[][] trees;
+  private final Map<Provider, Integer> order = new IdentityHashMap<>();
+
+  /**
+   * Index the providers.
+   * @param providers All providers, in the order the provider QuadTree returns them.
+   */
+  ProviderIndex(List<QuadTreeElement> providers) {
+    EncounterType[] services = EncounterType.values();
+    List<List<List<Provider>>> split = new ArrayList<>();
+    for (int s = 0; s <= services.length; s++) {
+      List<List<Provider>> groups = new ArrayList<>();
+      for (int g = 0; g < GROUPS; g++) {
+        groups.add(new ArrayList<>());
+      }
+      split.add(groups);
+    }
+    for (QuadTreeElement element : providers) {
+      Provider provider = (Provider) element;
+      order.put(provider, order.size());
+      int group = groupOf(provider);
+      for (EncounterType service : services) {
+        if (provider.hasService(service)) {
+          split.get(service.ordinal()).get(group).add(provider);
+        }
+      }
+      split.get(services.length).get(group).add(provider);
+    }
+    trees = new Tree[services.length + 1][GROUPS];
+    for (int s = 0; s <= services.length; s++) {
+      for (int g = 0; g < GROUPS; g++) {
+        trees[s][g] = new Tree(split.get(s).get(g));
+      }
+    }
+  }
+
+  private static int groupOf(Provider provider) {
+    if (ProviderType.VETERAN.equals(provider.type)) {
+      return VETERAN;
+    } else if (ProviderType.IHS.equals(provider.type)) {
+      return IHS;
+    }
+    return OTHER;
+  }
+
+  /**
+   * The groups of providers that the nearest provider finder can choose from for the person.
+   * VA facilities only accept veterans and IHS facilities only Native Americans. Unless it is
+   * an emergency, veterans only go to VA facilities.
+   * @return a bit per group
+   */
+  private static int groupsFor(Person person, EncounterType service) {
+    boolean veteran = person.attributes.containsKey(Person.VETERAN);
+    boolean nativeAmerican = "native".equals(person.attributes.get(Person.RACE));
+    boolean emergency = EncounterType.URGENTCARE.equals(service)
+        || EncounterType.EMERGENCY.equals(service);
+    if (veteran && !emergency) {
+      return 1 << VETERAN;
+    }
+    int groups = 1 << OTHER;
+    if (veteran) {
+      groups |= 1 << VETERAN;
+    }
+    if (nativeAmerican) {
+      groups |= 1 << IHS;
+    }
+    return groups;
+  }
+
+  /**
+   * Find the nearest providers of a service for the person, remembering them for the person
+   * until the person moves or the providers change. Whether the providers accept the person
+   * is left to the caller.
+   * @param person The patient who requires the service.
+   * @param service The service required, or null for any service.
+   * @param maxDistance Largest distance to search, in degrees.
+   * @return The providers at the nearest distance, possibly empty.
+   */
+  List<Provider> nearest(Person person, EncounterType service, double maxDistance) {
+    Point2D.Double point = person.getLonLat();
+    Nearest cache = person.nearestProviders;
+    if (cache == null || cache.index != this || !cache.point.equals(point)) {
+      cache = new Nearest(this, new Point2D.Double(point.x, point.y));
+      person.nearestProviders = cache;
+    }
+    int groups = groupsFor(person, service);
+    Integer key = ((service == null ? 0 : service.ordinal() + 1) << GROUPS) | groups;
+    List<Provider> providers = cache.providers.get(key);
+    if (providers == null) {
+      providers = search(point, service, groups, maxDistance);
+      cache.providers.put(key, providers);
+    }
+    return providers;
+  }
+
+  private List<Provider> search(Point2D.Double point, EncounterType service, int groups,
+      double maxDistance) {
+    Tree[] row = trees[service == null ? trees.length - 1 : service.ordinal()];
+    Search search = new Search(point);
+    for (int g = 0; g < GROUPS; g++) {
+      if ((groups & (1 << g)) != 0) {
+        row[g].search(search, 0, row[g].providers.length, 0);
+      }
+    }
+    if (search.nearest.isEmpty() || search.distance > maxDistance) {
+      return new ArrayList<>();
+    }
+    if (search.nearest.size() > 1) {
+      search.nearest.sort(Comparator.comparing(order::get));
+    }
+    return search.nearest;
+  }
+
+  /**
+   * The nearest providers found so far.
+   */
+  private static final class Search {
+    private final Point2D.Double point;
+    private double distance = Double.POSITIVE_INFINITY;
+    private final List<Provider> nearest = new ArrayList<>();
+
+    private Search(Point2D.Double point) {
+      this.point = point;
+    }
+
+    private void consider(Provider provider) {
+      // the same distance as ProviderFinderNearest, so that ties are exact
+      double d = provider.getLonLat().distance(point);
+      if (d < distance) {
+        distance = d;
+        nearest.clear();
+        nearest.add(provider);
+      } else if (d == distance) {
+        nearest.add(provider);
+      }
+    }
+
+    private boolean mayReach(double axisDistance) {
+      // leave room for the rounding of the distances
+      return axisDistance <= distance * (1 + 1e-9);
+    }
+  }
+
+  /**
+   * A 2-d tree of providers, stored as a sorted array where the middle of each range splits
+   * it by longitude or latitude, alternating with depth.
+   */
+  private static final class Tree {
+    private final Provider[] providers;
+
+    private Tree(List<Provider> list) {
+      providers = list.toArray(new Provider[0]);
+      build(0, providers.length, 0);
+    }
+
+    private void build(int from, int to, int depth) {
+      if (to - from <= 1) {
+        return;
+      }
+      Arrays.sort(providers, from, to, depth % 2 == 0
+          ? Comparator.comparingDouble(Provider::getX) : Comparator.comparingDouble(Provider::getY));
+      int middle = (from + to) >>> 1;
+      build(from, middle, depth + 1);
+      build(middle + 1, to, depth + 1);
+    }
+
+    private void search(Search search, int from, int to, int depth) {
+      if (from >= to) {
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      Provider provider = providers[middle];
+      search.consider(provider);
+      double axisDistance = depth % 2 == 0
+          ? search.point.x - provider.getX() : search.point.y - provider.getY();
+      if (axisDistance < 0) {
+        search(search, from, middle, depth + 1);
+        if (search.mayReach(-axisDistance)) {
+          search(search, middle + 1, to, depth + 1);
+        }
+      } else {
+        search(search, middle + 1, to, depth + 1);
+        if (search.mayReach(axisDistance)) {
+          search(search, from, middle, depth + 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * The nearest providers found for a person at one location.
+   */
+  static final class Nearest {
+    private final ProviderIndex index;
+    private final Point2D.Double point;
+    private final Map<Integer, List<Provider>> providers = new HashMap<>();
+
+    private Nearest(ProviderIndex index, Point2D.Double point) {
+      this.index = index;
+      this.point = point;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.mitre.synthea.world.agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.mitre.synthea.engine.Generator;
+import org.mitre.synthea.helpers.Config;
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
+import org.mitre.synthea.world.geography.Location;
+
+/**
+ * Compares the throughput of {@link Provider#findService} for the nearest provider selection,
+ * with the nearest provider index and with the QuadTree search of growing radius, and checks
+ * that both find the same providers.
+ *
+ * <p>Usage: gradle providerSearchBenchmark -Params="['Wien', '10000']"
+ * where the arguments are the state to load the providers of and the number of people. Every
+ * person looks up each service twice, the second time as when the preferred provider of the
+ * person is looked up again.</p>
+ */
+public class ProviderSearchBenchmark {
+  private static final int ROUNDS = 3;
+
+  /**
+   * Run the benchmark.
+   * @param args The state, and the number of people.
+   */
+  public static void main(String[] args) {
+    String state = args.length > 0 ? args[0] : Generator.DEFAULT_STATE;
+    int people = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    Config.set("generate.providers.selection_behavior", Provider.NEAREST);
+    Provider.clear();
+    Location location = new Location(state, null);
+    Provider.loadProviders(location, new DefaultRandomNumberGenerator(1L));
+
+    List<String> results = new ArrayList<>();
+    long mismatches = 0;
+    // the first round lets the JIT compile both searches
+    for (int round = 0; round <= ROUNDS; round++) {
+      List<Person> indexedPeople = createPeople(location, people);
+      List<Person> searchedPeople = createPeople(location, people);
+      List<Provider> indexed = new ArrayList<>();
+      List<Provider> searched = new ArrayList<>();
+      double indexedTime = run(indexedPeople, true, indexed);
+      double searchedTime = run(searchedPeople, false, searched);
+      for (int i = 0; i < indexed.size(); i++) {
+        if (indexed.get(i) != searched.get(i)) {
+          mismatches++;
+        }
+      }
+      if (round > 0) {
+        results.add(String.format(Locale.US, "%d,%d,%.0f,%.0f", round, Provider.getProviderList()
+            .size(), indexed.size() / searchedTime, indexed.size() / indexedTime));
+      }
+    }
+    Provider.useNearestIndex = true;
+    System.out.println("round,providers,searched_lookups_per_second,indexed_lookups_per_second");
+    results.forEach(System.out::println);
+    System.out.println("different providers found: " + mismatches);
+  }
+
+  private static List<Person> createPeople(Location location, int count) {
+    List<Person> people = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Person person = new Person(i);
+      location.assignPoint(person, location.randomCityName(person));
+      if (i % 20 == 1) {
+        person.attributes.put(Person.VETERAN, "vietnam");
+      }
+      people.add(person);
+    }
+    return people;
+  }
+
+  /**
+   * Look up the services for the people, and return the elapsed seconds.
+   */
+  private static double run(List<Person> people, boolean useIndex, List<Provider> found) {
+    Provider.useNearestIndex = useIndex;
+    long start = System.nanoTime();
+    for (Person person : people) {
+      for (int repeat = 0; repeat < 2; repeat++) {
+        for (EncounterType service : EncounterType.values()) {
+          found.add(Provider.findService(person, service, 0L));
+        }
+      }
+    }
+    return (System.nanoTime() - start) / 1e9;
+  }
+}
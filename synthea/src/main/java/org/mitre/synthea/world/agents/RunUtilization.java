@@ -0,0 +1,74 @@
+package org.mitre.synthea.world.agents;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The utilization, revenue and costs of the providers, clinicians and payers counted by a single
+ * run of the generator.
+ *
+ * <p>Providers, clinicians and payers are loaded once per process and shared by every run in it.
+ * When several runs execute in one process, e.g. in a server that embeds the generator, each run
+ * must report only what its own population used. While a thread works on behalf of a run, see
+ * {@link #wrap}, the agents count into the utilization of that run and report it instead of
+ * their own. Threads outside of a run keep counting into the agents themselves.</p>
+ */
+public final class RunUtilization {
+  private static final ThreadLocal<RunUtilization> current = new ThreadLocal<>();
+
+  private final Map<Provider, Provider.Counts> providers = new ConcurrentHashMap<>();
+  private final Map<Clinician, Clinician.Counts> clinicians = new ConcurrentHashMap<>();
+  // payers are equal by their statistics, so they are found by their ID instead
+  private final Map<String, Payer.Statistics> payers = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the utilization of the run the current thread works on.
+   * @return the utilization, or null if the thread does not work on behalf of a run.
+   */
+  static RunUtilization current() {
+    return current.get();
+  }
+
+  /**
+   * Wraps a task, so that it counts into the given utilization while it runs.
+   * @param utilization The utilization of the run, or null to count into the agents.
+   * @param task The task.
+   * @return the wrapped task, or the task itself if the utilization is null.
+   */
+  public static Runnable wrap(RunUtilization utilization, Runnable task) {
+    if (utilization == null) {
+      return task;
+    }
+    return () -> {
+      RunUtilization previous = current.get();
+      current.set(utilization);
+      try {
+        task.run();
+      } finally {
+        if (previous == null) {
+          current.remove();
+        } else {
+          current.set(previous);
+        }
+      }
+    };
+  }
+
+  Provider.Counts of(Provider provider) {
+    Provider.Counts counts = providers.get(provider);
+    return counts != null ? counts
+        : providers.computeIfAbsent(provider, key -> new Provider.Counts());
+  }
+
+  Clinician.Counts of(Clinician clinician) {
+    Clinician.Counts counts = clinicians.get(clinician);
+    return counts != null ? counts
+        : clinicians.computeIfAbsent(clinician, key -> new Clinician.Counts());
+  }
+
+  Payer.Statistics of(Payer payer) {
+    Payer.Statistics statistics = payers.get(payer.uuid);
+    return statistics != null ? statistics
+        : payers.computeIfAbsent(payer.uuid, key -> new Payer.Statistics());
+  }
+}
@@ -0,0 +1,214 @@
+package org.mitre.synthea.world.agents;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mitre.synthea.helpers.Interner;
+
+/**
+ * Counts of the utilization of a provider or payer by year and type, e.g. the encounters of
+ * a provider or the covered medications of a payer, that many threads can count without
+ * locking.
+ *
+ * <p>The types are interned to keys shared by all counters, and each count is a LongAdder
+ * found by year and key in arrays, so counting neither builds nor hashes a String and threads
+ * counting at the same time do not contend. The arrays are only replaced, under a lock, the
+ * first time a year and key is counted. The counts are merged into a table when they are
+ * exported.</p>
+ */
+public final class UtilizationCounter implements Serializable {
+  private static final long serialVersionUID = -1651356719432217117L;
+
+  private static final Interner KEYS = new Interner(64);
+
+  // the counts by year, starting with the first year, and by key
+  private transient volatile Rows rows;
+
+  private static final class Rows {
+    private final int firstYear;
+    private final LongAdder[][] counts;
+
+    private Rows(int firstYear, LongAdder[][] counts) {
+      this.firstYear = firstYear;
+      this.counts = counts;
+    }
+  }
+
+  /**
+   * Get the key of a type of utilization, interning the type if it has no key yet.
+   * @param type The type of utilization, e.g. "encounters".
+   * @return the key.
+   */
+  public static int keyOf(String type) {
+    return KEYS.intern(type);
+  }
+
+  /**
+   * The keys of a type of utilization split by subtype, e.g. "encounters-wellness" for the
+   * "wellness" subtype of "encounters", which are found without building their names.
+   */
+  public static final class SubtypeKeys {
+    private final String type;
+    private final ConcurrentHashMap<String, Integer> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Create the keys of the subtypes of a type of utilization.
+     * @param type The type of utilization.
+     */
+    public SubtypeKeys(String type) {
+      this.type = type;
+    }
+
+    /**
+     * Get the key of a subtype.
+     * @param subtype The subtype, possibly null.
+     * @return the key of the type followed by a dash and the subtype.
+     */
+    public int keyOf(String subtype) {
+      String name = String.valueOf(subtype);
+      Integer key = keys.get(name);
+      if (key == null) {
+        key = UtilizationCounter.keyOf(type + "-" + name);
+        keys.put(name, key);
+      }
+      return key;
+    }
+  }
+
+  /**
+   * Add one to the count of a year and key.
+   * @param year The year.
+   * @param key The key of the type of utilization.
+   */
+  public void increment(int year, int key) {
+    count(year, key).increment();
+  }
+
+  /**
+   * Add to the count of a year and key.
+   * @param year The year.
+   * @param key The key of the type of utilization.
+   * @param count The number to add.
+   */
+  public void add(int year, int key, long count) {
+    count(year, key).add(count);
+  }
+
+  private LongAdder count(int year, int key) {
+    Rows current = rows;
+    if (current != null) {
+      int index = year - current.firstYear;
+      if (index >= 0 && index < current.counts.length) {
+        LongAdder[] row = current.counts[index];
+        if (row != null && key < row.length && row[key] != null) {
+          return row[key];
+        }
+      }
+    }
+    return addCount(year, key);
+  }
+
+  /**
+   * Add the count of a year and key, replacing the arrays that hold it.
+   */
+  private synchronized LongAdder addCount(int year, int key) {
+    Rows current = rows;
+    int firstYear = current == null ? year : Math.min(year, current.firstYear);
+    int lastYear = current == null ? year
+        : Math.max(year, current.firstYear + current.counts.length - 1);
+    LongAdder[][] counts = new LongAdder[lastYear - firstYear + 1][];
+    if (current != null) {
+      System.arraycopy(current.counts, 0, counts, current.firstYear - firstYear,
+          current.counts.length);
+    }
+    int index = year - firstYear;
+    LongAdder[] row = counts[index];
+    if (row != null && key < row.length && row[key] != null) {
+      // added by another thread
+      return row[key];
+    }
+    row = row == null ? new LongAdder[key + 1] : Arrays.copyOf(row, Math.max(row.length, key + 1));
+    row[key] = new LongAdder();
+    counts[index] = row;
+    rows = new Rows(firstYear, counts);
+    return row[key];
+  }
+
+  /**
+   * Returns whether nothing was counted.
+   * @return true if no year and key has a count.
+   */
+  public boolean isEmpty() {
+    return rows == null;
+  }
+
+  /**
+   * Returns the sum of the counts of a key over all years.
+   * @param key The key of the type of utilization.
+   * @return the sum.
+   */
+  public long sum(int key) {
+    long sum = 0;
+    Rows current = rows;
+    if (current != null) {
+      for (LongAdder[] row : current.counts) {
+        if (row != null && key < row.length && row[key] != null) {
+          sum += row[key].sum();
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Merge the counts into a table.
+   * @return the counts, with the year as row and the type of utilization as column.
+   */
+  public Table<Integer, String, AtomicInteger> toTable() {
+    Table<Integer, String, AtomicInteger> table = HashBasedTable.create();
+    Rows current = rows;
+    if (current != null) {
+      for (int index = 0; index < current.counts.length; index++) {
+        LongAdder[] row = current.counts[index];
+        for (int key = 0; row != null && key < row.length; key++) {
+          if (row[key] != null) {
+            table.put(current.firstYear + index, KEYS.nameOf(key),
+                new AtomicInteger((int) row[key].sum()));
+          }
+        }
+      }
+    }
+    return table;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    // keys differ between JVMs, so the counts are written by type
+    out.defaultWriteObject();
+    Table<Integer, String, AtomicInteger> table = toTable();
+    out.writeInt(table.size());
+    for (Table.Cell<Integer, String, AtomicInteger> cell : table.cellSet()) {
+      out.writeInt(cell.getRowKey());
+      out.writeUTF(cell.getColumnKey());
+      out.writeInt(cell.getValue().get());
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int cells = in.readInt();
+    for (int i = 0; i < cells; i++) {
+      int year = in.readInt();
+      int key = keyOf(in.readUTF());
+      add(year, key, in.readInt());
+    }
+  }
+}
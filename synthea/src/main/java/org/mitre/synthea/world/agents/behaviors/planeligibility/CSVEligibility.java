@@ -39,8 +39,11 @@ public class CSVEligibility implements IPlanEligibility {
   /**
    * Constructor.
    * @param inputEligibilities The row of eligiblity inputs.
+   * @param definedEligibilities The eligibilities defined so far, which may be used
+   *                             as sub-eligibilities.
    */
-  public CSVEligibility(Map<String, String> inputEligibilities) throws IllegalArgumentException {
+  public CSVEligibility(Map<String, String> inputEligibilities,
+      Map<String, IPlanEligibility> definedEligibilities) throws IllegalArgumentException {
     this.eligibilityCriteria = new ArrayList<>();
 
     String logicalOperator = inputEligibilities.remove(LOGICAL_OPERATOR);
@@ -49,7 +52,7 @@ public class CSVEligibility implements IPlanEligibility {
     if (subEligibilitiesStr != null) {
       List<String> subEligibilities = Arrays.asList(subEligibilitiesStr.split("\\|"));
       subEligibilities.forEach(subEligibility -> this.eligibilityCriteria.add(
-          PlanEligibilityFinder.getEligibilityAlgorithm(subEligibility)));
+          PlanEligibilityFinder.getEligibilityAlgorithm(subEligibility, definedEligibilities)));
     }
 
     for (String key : inputEligibilities.keySet()) {
@@ -70,6 +73,12 @@ public class CSVEligibility implements IPlanEligibility {
     return this.eligibilityLogic.apply(person, time);
   }
 
+  @Override
+  public boolean isDeterministic() {
+    // an acceptance likelihood draws a random number
+    return this.eligibilityCriteria.stream().allMatch(IPlanEligibility::isDeterministic);
+  }
+
   /**
    * Builds the eligibility options and their mappings for all CSV input eligibilties.
    */
@@ -81,6 +90,11 @@ public class CSVEligibility implements IPlanEligibility {
             double incomeThreshold = Double.parseDouble(input);
             return income <= incomeThreshold;
           }
+
+          @Override
+          public boolean isDeterministic() {
+            return true;
+          }
         });
     eligbilityOptions.put(POVERTY_MULTIPLIER, (input) -> new IPlanEligibility() {
           public boolean isPersonEligible(Person person, long time) {
@@ -90,6 +104,11 @@ public class CSVEligibility implements IPlanEligibility {
             int income = (int) person.attributes.get(Person.INCOME);
             return income <= incomeThreshold;
           }
+
+          @Override
+          public boolean isDeterministic() {
+            return true;
+          }
         });
     eligbilityOptions.put(AGE_THRESHOLD, (input) -> new IPlanEligibility() {
           public boolean isPersonEligible(Person person, long time) {
@@ -97,6 +116,11 @@ public class CSVEligibility implements IPlanEligibility {
             int ageThreshold = Integer.parseInt(input);
             return age >= ageThreshold;
           }
+
+          @Override
+          public boolean isDeterministic() {
+            return true;
+          }
         });
     eligbilityOptions.put(QUALIFYING_CONDITIONS, (input)
         -> new QualifyingConditionCodesEligibility(input));
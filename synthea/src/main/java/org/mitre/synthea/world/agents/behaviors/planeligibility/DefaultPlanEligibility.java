@@ -11,4 +11,9 @@ public class DefaultPlanEligibility implements IPlanEligibility {
   public boolean isPersonEligible(Person person, long time) {
     return true;
   }
+
+  @Override
+  public boolean isDeterministic() {
+    return true;
+  }
 }
@@ -16,4 +16,14 @@ public interface IPlanEligibility extends Serializable {
    */
   public boolean isPersonEligible(Person person, long time);
 
+  /**
+   * Returns whether this eligibility depends only on the person and time, and has no side
+   * effects such as drawing random numbers from the person. Such an eligibility may be checked
+   * once, ahead of the plan finder, for all plans that share it.
+   * @return Whether the eligibility can be checked ahead of time. False by default.
+   */
+  public default boolean isDeterministic() {
+    return false;
+  }
+
 }
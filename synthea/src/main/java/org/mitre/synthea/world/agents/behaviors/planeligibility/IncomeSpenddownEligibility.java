@@ -75,4 +75,9 @@ public class IncomeSpenddownEligibility implements IPlanEligibility {
     return spenddownEligible;
   }
 
+  @Override
+  public boolean isDeterministic() {
+    return true;
+  }
+
 }
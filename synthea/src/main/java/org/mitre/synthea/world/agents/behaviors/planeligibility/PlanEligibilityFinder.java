@@ -16,7 +16,7 @@ import org.mitre.synthea.helpers.Utilities;
  */
 public class PlanEligibilityFinder {
 
-  private static Map<String, IPlanEligibility> planEligibilities;
+  private static volatile Map<String, IPlanEligibility> planEligibilities;
 
   private static final String ELIGIBILITY_NAME = "Name";
   public static final String GENERIC = "GENERIC";
@@ -28,11 +28,22 @@ public class PlanEligibilityFinder {
    * @return  The requested payer eligibility algorithm.
    */
   public static IPlanEligibility getEligibilityAlgorithm(String eligibility) {
+    return getEligibilityAlgorithm(eligibility, planEligibilities);
+  }
+
+  /**
+   * Returns the correct eligibility algorithm based on the given string.
+   * @param eligibility The name of the eligibility type.
+   * @param eligibilities The eligibility algorithms to choose from.
+   * @return  The requested payer eligibility algorithm.
+   */
+  static IPlanEligibility getEligibilityAlgorithm(String eligibility,
+      Map<String, IPlanEligibility> eligibilities) {
     String cleanedEligibility = eligibility.replaceAll("\\s", "").toUpperCase();
     if (cleanedEligibility.equals(GENERIC)) {
       return DEFAULT;
-    } else if (planEligibilities.containsKey(cleanedEligibility)) {
-      return planEligibilities.get(cleanedEligibility);
+    } else if (eligibilities.containsKey(cleanedEligibility)) {
+      return eligibilities.get(cleanedEligibility);
     }
     throw new RuntimeException("Plan eligibility " + eligibility + " does not exist.");
   }
@@ -41,8 +52,9 @@ public class PlanEligibilityFinder {
    * Builds the plan eligibilities for the given state and CSV input file.
    * @param state The state.
    */
-  public static void buildPlanEligibilities(String state, String fileName) {
-    planEligibilities = new HashMap<>();
+  public static synchronized void buildPlanEligibilities(String state, String fileName) {
+    // build the map completely before publishing it, generators may already be using the old one
+    Map<String, IPlanEligibility> eligibilities = new HashMap<>();
     // Build the CSV input eligibility algorithms.
     CSVEligibility.buildEligibilityOptions(state);
     String resource = null;
@@ -57,12 +69,13 @@ public class PlanEligibilityFinder {
       Map<String, String> row = removeBlankMapStringValues(csv.next());
       row.keySet().forEach(key -> row.put(key, row.get(key).trim()));
       String eligblilityName = row.remove(ELIGIBILITY_NAME).replaceAll("\\s", "").toUpperCase();
-      if (planEligibilities.containsKey(eligblilityName)) {
+      if (eligibilities.containsKey(eligblilityName)) {
         throw new IllegalArgumentException("Plan eligibility name '"
             + eligblilityName + "'' is reserved or already in use.");
       }
-      planEligibilities.put(eligblilityName, new CSVEligibility(row));
+      eligibilities.put(eligblilityName, new CSVEligibility(row, eligibilities));
     }
+    planEligibilities = eligibilities;
   }
 
   private static <T> Map<T, String> removeBlankMapStringValues(Map<T, String> map) {
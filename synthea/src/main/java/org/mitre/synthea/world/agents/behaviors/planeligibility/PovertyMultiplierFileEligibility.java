@@ -34,6 +34,11 @@ public class PovertyMultiplierFileEligibility implements IPlanEligibility {
     return (income <= incomeThreshold);
   }
 
+  @Override
+  public boolean isDeterministic() {
+    return true;
+  }
+
   /**
    * Determines the poverty multiplier this person qualifies for at this time.
    * @param person  The person to check the poverty multiplier for.
@@ -42,6 +42,11 @@ public class QualifyingAttributesEligibility implements IPlanEligibility {
       attributeLogic.checkLogic(person));
   }
 
+  @Override
+  public boolean isDeterministic() {
+    return true;
+  }
+
   private static List<AttributeQualifier> convertAttributeExpressionSet(String attributeInput) {
     List<AttributeQualifier> qualifyingAttributes = new ArrayList<>();
     for (String attributeExpression : Arrays.asList(attributeInput.split("\\|"))) {
@@ -46,6 +46,11 @@ public class QualifyingConditionCodesEligibility implements IPlanEligibility {
     return conditionEligible;
   }
 
+  @Override
+  public boolean isDeterministic() {
+    return true;
+  }
+
   /**
    * Builds a list of codes that would qualify a person for this eligibility type.
    * @return
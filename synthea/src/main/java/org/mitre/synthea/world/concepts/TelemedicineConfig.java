@@ -9,8 +9,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.math3.distribution.EnumeratedDistribution;
 import org.apache.commons.math3.util.Pair;
+import org.mitre.synthea.helpers.AliasSampler;
 import org.mitre.synthea.helpers.Utilities;
 
 /**
@@ -28,10 +28,10 @@ public class TelemedicineConfig implements Serializable {
   private long telemedicineStartTime;
   private List<String> highEmergencyUseInsuranceNames;
 
-  private EnumeratedDistribution<String> preTelemedHighEmergency;
-  private EnumeratedDistribution<String> preTelemedTypicalEmergency;
-  private EnumeratedDistribution<String> telemedHighEmergency;
-  private EnumeratedDistribution<String> telemedTypicalEmergency;
+  private AliasSampler<String> preTelemedHighEmergency;
+  private AliasSampler<String> preTelemedTypicalEmergency;
+  private AliasSampler<String> telemedHighEmergency;
+  private AliasSampler<String> telemedTypicalEmergency;
 
   /**
    * A class to hold the transition probabilities of a given scenario. A scenario could be a person
@@ -55,18 +55,18 @@ public class TelemedicineConfig implements Serializable {
     }
 
     /**
-     * Turn the configuration information into an actual EnumeratedDistribution which can be used
+     * Turn the configuration information into an actual distribution which can be used
      * to select transitions.
-     * @return A fully populated EnumeratedDistribution
+     * @return A fully populated AliasSampler
      */
-    public EnumeratedDistribution<String> toEnumeratedDistribution() {
+    public AliasSampler<String> toAliasSampler() {
       List<Pair<String, Double>> pmf = new ArrayList<>();
       pmf.add(new Pair(AMBULATORY, ambulatory));
       pmf.add(new Pair(EMERGENCY, emergency));
       if (telemedicine != 0) {
         pmf.add(new Pair(TELEMEDICINE, telemedicine));
       }
-      return new EnumeratedDistribution<>(pmf);
+      return new AliasSampler<>(pmf);
     }
   }
 
@@ -78,19 +78,19 @@ public class TelemedicineConfig implements Serializable {
     return highEmergencyUseInsuranceNames;
   }
 
-  public EnumeratedDistribution<String> getPreTelemedHighEmergency() {
+  public AliasSampler<String> getPreTelemedHighEmergency() {
     return preTelemedHighEmergency;
   }
 
-  public EnumeratedDistribution<String> getPreTelemedTypicalEmergency() {
+  public AliasSampler<String> getPreTelemedTypicalEmergency() {
     return preTelemedTypicalEmergency;
   }
 
-  public EnumeratedDistribution<String> getTelemedHighEmergency() {
+  public AliasSampler<String> getTelemedHighEmergency() {
     return telemedHighEmergency;
   }
 
-  public EnumeratedDistribution<String> getTelemedTypicalEmergency() {
+  public AliasSampler<String> getTelemedTypicalEmergency() {
     return telemedTypicalEmergency;
   }
 
@@ -116,19 +116,19 @@ public class TelemedicineConfig implements Serializable {
               (Map<String, Map<String, Double>>) configHash.get("pre_telemedicine");
       TelemedicineProbabilities preHigh =
               new TelemedicineProbabilities(pre.get("high_emergency_distribution"));
-      config.preTelemedHighEmergency = preHigh.toEnumeratedDistribution();
+      config.preTelemedHighEmergency = preHigh.toAliasSampler();
       TelemedicineProbabilities preTypical =
               new TelemedicineProbabilities(pre.get("typical_emergency_distribution"));
-      config.preTelemedTypicalEmergency = preTypical.toEnumeratedDistribution();
+      config.preTelemedTypicalEmergency = preTypical.toAliasSampler();
 
       Map<String, Map<String, Double>> telemedicine =
               (Map<String, Map<String, Double>>) configHash.get("during_telemedicine");
       TelemedicineProbabilities telemedicineHigh =
               new TelemedicineProbabilities(telemedicine.get("high_emergency_distribution"));
-      config.telemedHighEmergency = telemedicineHigh.toEnumeratedDistribution();
+      config.telemedHighEmergency = telemedicineHigh.toAliasSampler();
       TelemedicineProbabilities telemedicineTypical =
               new TelemedicineProbabilities(telemedicine.get("typical_emergency_distribution"));
-      config.telemedTypicalEmergency = telemedicineTypical.toEnumeratedDistribution();
+      config.telemedTypicalEmergency = telemedicineTypical.toAliasSampler();
 
     } catch (Exception e) {
       System.err.println("ERROR: unable to load json: " + filename);
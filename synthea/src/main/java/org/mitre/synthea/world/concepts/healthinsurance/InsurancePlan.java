@@ -280,6 +280,22 @@ public class InsurancePlan implements Serializable {
     return this.planEligibility.isPersonEligible(person, time);
   }
 
+  /**
+   * Returns the eligibility criteria that this plan accepts patients by.
+   * @return the plan eligibility.
+   */
+  public IPlanEligibility getPlanEligibility() {
+    return this.planEligibility;
+  }
+
+  /**
+   * Returns the time range, inclusive at both ends, in which this plan is active.
+   * @return the active time range.
+   */
+  public Range<Long> getActiveTimeRange() {
+    return this.activeTimeRange;
+  }
+
   /**
    * Returns whether this plan is based on the no insurance payer.
    * @return
@@ -139,6 +139,20 @@ public class QuadTree {
     return results;
   }
 
+  /**
+   * Get all elements of this QuadTree, in the order that queries return them.
+   * @return A non-null list of all elements.
+   */
+  public List<QuadTreeElement> elements() {
+    List<QuadTreeElement> results = new ArrayList<QuadTreeElement>(data);
+    if (!isLeaf) {
+      for (QuadTree branch : branches) {
+        results.addAll(branch.elements());
+      }
+    }
+    return results;
+  }
+
   /**
    * Get the count of elements within this QuadTree including all branches.
    * @return The count of elements within this QuadTree including all branches.
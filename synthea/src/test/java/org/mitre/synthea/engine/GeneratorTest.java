@@ -14,6 +14,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -70,6 +71,38 @@ public class GeneratorTest {
     assertEquals(numberOfPeople, generator.stats.get("alive").longValue());
   }
 
+  @Test
+  public void testGeneratorWithVirtualExecutor() throws Exception {
+    int numberOfPeople = 3;
+    Generator generator = new Generator(numberOfPeople);
+    generator.options.executor = "virtual";
+    generator.run();
+    assertEquals(numberOfPeople, generator.stats.get("alive").longValue());
+  }
+
+  @Test
+  public void testInterruptedGeneratorStopsItsThreads() throws Exception {
+    int numberOfPeople = 1000;
+    Generator generator = new Generator(numberOfPeople);
+    AtomicBoolean interrupted = new AtomicBoolean();
+    Thread runner = new Thread(() -> {
+      generator.run();
+      interrupted.set(Thread.currentThread().isInterrupted());
+    });
+    runner.start();
+    while (generator.totalGeneratedPopulation.get() == 0) {
+      Thread.sleep(10);
+    }
+    runner.interrupt();
+    runner.join();
+    // the interrupt is passed on, and no thread of the run generates anyone after it returned
+    assertTrue(interrupted.get());
+    int generated = generator.totalGeneratedPopulation.get();
+    assertTrue(generated < numberOfPeople);
+    Thread.sleep(200);
+    assertEquals(generated, generator.totalGeneratedPopulation.get());
+  }
+
   @Test
   public void testGenerateWithDetailedLogLevel() throws Exception {
     int numberOfPeople = 1;
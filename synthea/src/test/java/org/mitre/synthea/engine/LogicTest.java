@@ -18,6 +18,7 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.Before;
@@ -148,6 +149,25 @@ public class LogicTest {
     assertTrue(doTest("ageNe40Test"));
   }
 
+  @Test
+  public void testAgeEarliestTimeTrue() {
+    long day = Utilities.convertTime("days", 1);
+    for (String testName : new String[] {"ageGte40Test", "ageGt40Test", "ageLt40Test"}) {
+      Logic logic = Utilities.getGson().fromJson(tests.getAsJsonObject(testName), Logic.class);
+      for (int age = 35; age <= 42; age++) {
+        setPatientAge(age);
+        long earliest = logic.earliestTimeTrue(person, time);
+        assertTrue(earliest >= time);
+        if (!logic.test(person, time)) {
+          // the logic must stay false until then
+          for (long t = time; t < earliest; t += day) {
+            assertFalse(logic.test(person, t));
+          }
+        }
+      }
+    }
+  }
+
   @Test
   public void test_race_exists() {
     person.attributes.put(Person.RACE, "white");
@@ -481,7 +501,16 @@ public class LogicTest {
 
   @Test
   public void test_prior_state() {
-    person.history = new LinkedList<>();
+    testPriorState(new LinkedList<>());
+  }
+
+  @Test
+  public void test_prior_state_indexed_history() {
+    testPriorState(new StateHistory());
+  }
+
+  private void testPriorState(List<State> history) {
+    person.history = history;
     assertFalse(doTest("priorStateDoctorVisitTest"));
     assertFalse(doTest("priorStateCarePlanSinceDoctorVisitTest"));
     assertFalse(doTest("priorStateDoctorVisitWithin3YearsTest"));
@@ -522,6 +551,11 @@ public class LogicTest {
     assertTrue(doTest("priorStateCarePlanSinceDoctorVisitTest"));
     assertFalse(doTest("priorStateDoctorVisitWithin3YearsTest"));
     assertFalse(doTest("priorStateCarePlanSinceDoctorVisitWithin3YearsTest"));
+
+    // the walk reaches the "since" state before it checks the name, so a state is never
+    // found since its own latest visit
+    assertFalse(person.hadPriorState("CarePlan", "CarePlan", null));
+    assertFalse(person.hadPriorState("DoctorVisit", "DoctorVisit", null));
   }
 
   @Test
@@ -16,6 +16,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.math.ode.DerivativeException;
@@ -111,6 +114,27 @@ public class PhysiologySimulatorTest {
     }
   }
 
+  @Test
+  public void testSimulatorsOnManyThreads() throws Exception {
+    Map<String,Double> inputs = new HashMap<String,Double>();
+    inputs.put("R_sys", 2.0);
+    List<Double> expected = Lists.newArrayList(new PhysiologySimulator(
+        "circulation/Smith2004_CVS_human.xml", "runge_kutta", 0.01, 4)
+        .run(inputs).getColumn("P_ao"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<List<Double>>> futures = new ArrayList<Future<List<Double>>>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(executor.submit(() -> Lists.newArrayList(new PhysiologySimulator(
+          "circulation/Smith2004_CVS_human.xml", "runge_kutta", 0.01, 4)
+          .run(inputs).getColumn("P_ao"))));
+    }
+    for (Future<List<Double>> future : futures) {
+      assertEquals(expected, future.get());
+    }
+    executor.shutdown();
+  }
+
   @Test
   public void testPhysiologyMain() throws DerivativeException, URISyntaxException, IOException {
     ClassLoader loader = getClass().getClassLoader();
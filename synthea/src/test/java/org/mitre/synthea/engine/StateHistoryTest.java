@@ -0,0 +1,80 @@
+package org.mitre.synthea.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mitre.synthea.world.agents.Person;
+
+public class StateHistoryTest {
+
+  private static State state(String name, Long exited) {
+    State state = new State.Simple();
+    state.name = name;
+    state.entered = exited;
+    state.exited = exited;
+    return state;
+  }
+
+  @Test
+  public void testMostRecentFirst() {
+    StateHistory history = new StateHistory();
+    State initial = state("Initial", 0L);
+    State first = state("A", 1L);
+    State second = state("B", 2L);
+    history.add(initial);
+    history.add(0, first);
+    history.add(0, second);
+
+    assertEquals(Arrays.asList(second, first, initial), history);
+    assertEquals(second, history.get(0));
+
+    // a submodule history is added in front, keeping its order
+    State sub1 = state("C", 3L);
+    State sub2 = state("D", 4L);
+    history.addAll(0, Arrays.asList(sub2, sub1));
+    assertEquals(Arrays.asList(sub2, sub1, second, first, initial), history);
+    assertTrue(history.hadPriorState("C", null, null));
+    assertFalse(history.hadPriorState("B", "C", null));
+
+    history.remove(0);
+    assertEquals(sub1, history.get(0));
+    assertFalse(history.hadPriorState("D", null, null));
+  }
+
+  @Test
+  public void testSameResultsAsList() {
+    Random random = new Random(42L);
+    String[] names = {"Initial", "A", "B", "C", "D"};
+    List<State> list = new LinkedList<>();
+    StateHistory history = new StateHistory();
+    Person person = new Person(0L);
+
+    for (long time = 0; time < 500; time++) {
+      // the current state has not exited yet
+      State state = state(names[random.nextInt(names.length)], null);
+      if (!list.isEmpty()) {
+        list.get(0).exited = time;
+      }
+      list.add(0, state);
+      history.add(0, state);
+
+      for (String name : names) {
+        for (String since : new String[] {null, "A", "D"}) {
+          for (Long within : new Long[] {null, time - 3, time - 50}) {
+            person.history = list;
+            boolean expected = person.hadPriorState(name, since, within);
+            person.history = history;
+            assertEquals(expected, person.hadPriorState(name, since, within));
+          }
+        }
+      }
+    }
+  }
+}
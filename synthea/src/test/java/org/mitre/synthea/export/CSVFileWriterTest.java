@@ -0,0 +1,102 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CSVFileWriterTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testAppendMoneyMatchesFormat() {
+    Random random = new Random(42);
+    BigDecimal[] values = new BigDecimal[] {
+        BigDecimal.ZERO, new BigDecimal("-0.001"), new BigDecimal("-0.005"),
+        new BigDecimal("0.005"), new BigDecimal("1E+3"), new BigDecimal("12.345"),
+        new BigDecimal("-12.355"), new BigDecimal("100")
+    };
+    for (BigDecimal value : values) {
+      assertMoney(value);
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertMoney(BigDecimal.valueOf(random.nextLong() % 10000000, random.nextInt(6)));
+      assertMoney(BigDecimal.valueOf(random.nextDouble() * 2000 - 1000));
+    }
+  }
+
+  private static void assertMoney(BigDecimal value) {
+    assertEquals(String.format(Locale.US, "%.2f", value),
+        CSVFileWriter.appendMoney(new StringBuilder(), value).toString());
+  }
+
+  @Test
+  public void testEncoding() throws Exception {
+    String text = "plain,café,中文,😀,lone\ud800,end\n";
+    assertEncoded(text, StandardCharsets.UTF_8);
+    assertEncoded(text, StandardCharsets.ISO_8859_1);
+  }
+
+  private void assertEncoded(String text, Charset charset) throws Exception {
+    File file = tempFolder.newFile();
+    CSVFileWriter writer = CSVFileWriter.open(file, false, charset);
+    StringBuilder row = CSVFileWriter.row();
+    row.append(text);
+    writer.write(row);
+    writer.close();
+    assertArrayEquals(text.getBytes(charset), Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  public void testConcurrentRows() throws Exception {
+    File file = tempFolder.newFile();
+    CSVFileWriter writer = CSVFileWriter.open(file, false, StandardCharsets.UTF_8);
+    int threads = 8;
+    int rowsPerThread = 20000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      executor.execute(() -> {
+        try {
+          for (int r = 0; r < rowsPerThread; r++) {
+            StringBuilder row = CSVFileWriter.row();
+            row.append(thread).append(',').append(r).append(",é").append('\n');
+            writer.write(row);
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    writer.close();
+
+    List<String> lines = Files.readAllLines(file.toPath());
+    assertEquals(threads * rowsPerThread, lines.size());
+    Set<String> unique = new HashSet<>(lines);
+    assertEquals(lines.size(), unique.size());
+    for (String line : lines) {
+      assertTrue(line, line.matches("\\d+,\\d+,é"));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CSVShardsTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final int PATIENTS = 2000;
+
+  /**
+   * Export the patients from several threads into shards of two files, and merge them.
+   * Patient i gets i % 3 rows in the first file, and one row in the second.
+   */
+  private List<List<String>> exportAndMerge(boolean ordered) throws Exception {
+    File folder = tempFolder.newFolder();
+    CSVFileWriter first = CSVFileWriter.open(new File(folder, "first.csv"), false,
+        StandardCharsets.UTF_8);
+    CSVFileWriter second = CSVFileWriter.open(new File(folder, "second.csv"), false,
+        StandardCharsets.UTF_8);
+    first.write("HEADER\n");
+    Path shardFolder = folder.toPath().resolve("shards");
+    CSVShards shards = new CSVShards(shardFolder, Arrays.asList(first,
+        CSVFileWriter.discarding(), second), StandardCharsets.UTF_8, ordered);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < PATIENTS; i++) {
+      final int index = i;
+      executor.execute(() -> {
+        try {
+          CSVShards.Shard shard = shards.checkOut(index);
+          for (int r = 0; r < index % 3; r++) {
+            StringBuilder row = CSVFileWriter.row();
+            row.append(index).append(',').append(r).append('\n');
+            shard.writerFor(first).write(row);
+          }
+          StringBuilder row = CSVFileWriter.row();
+          row.append(index).append('\n');
+          shard.writerFor(second).write(row);
+          shards.checkIn(shard);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    shards.merge();
+    first.close();
+    second.close();
+
+    assertFalse(Files.exists(shardFolder));
+    return Arrays.asList(Files.readAllLines(folder.toPath().resolve("first.csv")),
+        Files.readAllLines(folder.toPath().resolve("second.csv")));
+  }
+
+  private static List<String> expectedFirst() {
+    List<String> expected = new ArrayList<>();
+    expected.add("HEADER");
+    for (int i = 0; i < PATIENTS; i++) {
+      for (int r = 0; r < i % 3; r++) {
+        expected.add(i + "," + r);
+      }
+    }
+    return expected;
+  }
+
+  private static List<String> expectedSecond() {
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < PATIENTS; i++) {
+      expected.add(Integer.toString(i));
+    }
+    return expected;
+  }
+
+  @Test
+  public void testOrderedMerge() throws Exception {
+    List<List<String>> files = exportAndMerge(true);
+    assertEquals(expectedFirst(), files.get(0));
+    assertEquals(expectedSecond(), files.get(1));
+  }
+
+  @Test
+  public void testUnorderedMerge() throws Exception {
+    List<List<String>> files = exportAndMerge(false);
+    List<String> first = files.get(0);
+    assertEquals("HEADER", first.get(0));
+    // the rows of a patient stay together
+    for (int i = 1; i < first.size(); i++) {
+      String[] row = first.get(i).split(",");
+      if (!row[1].equals("0")) {
+        assertEquals(row[0] + "," + (Integer.parseInt(row[1]) - 1), first.get(i - 1));
+      }
+    }
+    Collections.sort(first.subList(1, first.size()),
+        (a, b) -> Integer.compare(Integer.parseInt(a.split(",")[0]),
+            Integer.parseInt(b.split(",")[0])));
+    assertEquals(expectedFirst(), first);
+    List<String> second = files.get(1);
+    second.sort((a, b) -> Integer.compare(Integer.parseInt(a), Integer.parseInt(b)));
+    assertEquals(expectedSecond(), second);
+  }
+}
@@ -0,0 +1,73 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import ca.uhn.fhir.parser.IParser;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FhirSerializerTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Bundle bundle() {
+    Bundle bundle = new Bundle();
+    bundle.setType(Bundle.BundleType.COLLECTION);
+    for (int i = 0; i < 3; i++) {
+      Patient patient = new Patient();
+      patient.setId("patient-" + i);
+      patient.addName().setFamily("Müller").addGiven("Zoë " + i);
+      bundle.addEntry().setResource(patient);
+    }
+    return bundle;
+  }
+
+  @Test
+  public void testParserPerThread() throws Exception {
+    IParser parser = FhirSerializer.jsonParser(FhirR4.getContext(), false);
+    assertSame(parser, FhirSerializer.jsonParser(FhirR4.getContext(), true));
+    assertNotSame(parser, FhirSerializer.jsonParser(FhirStu3.getContext(), true));
+
+    AtomicReference<IParser> other = new AtomicReference<>();
+    Thread thread = new Thread(() -> other.set(
+        FhirSerializer.jsonParser(FhirR4.getContext(), false)));
+    thread.start();
+    thread.join();
+    assertNotSame(parser, other.get());
+  }
+
+  @Test
+  public void testWriteNewFile() throws Exception {
+    Bundle bundle = bundle();
+    IParser parser = FhirSerializer.jsonParser(FhirR4.getContext(), true);
+    String expected = parser.encodeResourceToString(bundle) + System.lineSeparator();
+    Path file = tempFolder.getRoot().toPath().resolve("bundle.json");
+    FhirSerializer.writeNewFile(parser, bundle, file);
+    assertEquals(expected, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testAppendLine() {
+    Bundle bundle = bundle();
+    IParser parser = FhirSerializer.jsonParser(FhirR4.getContext(), false);
+    StringBuilder batch = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+      FhirSerializer.appendLine(parser, entry.getResource(), batch);
+      expected.append(parser.encodeResourceToString(entry.getResource()))
+          .append(System.lineSeparator());
+    }
+    assertEquals(expected.toString(), batch.toString());
+  }
+}
@@ -0,0 +1,78 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileAppenderTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testConcurrentBatches() throws Exception {
+    File folder = tempFolder.newFolder();
+    Path file = folder.toPath().resolve("Patient.ndjson");
+    int threads = 8;
+    int batchesPerThread = 200;
+    int linesPerBatch = 5;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      executor.execute(() -> {
+        for (int b = 0; b < batchesPerThread; b++) {
+          StringBuilder batch = new StringBuilder();
+          for (int l = 0; l < linesPerBatch; l++) {
+            batch.append(thread).append('-').append(b).append('-').append(l)
+                .append(System.lineSeparator());
+          }
+          FileAppender.forFile(file).append(batch);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    FileAppender.close(path -> path.startsWith(folder.toPath()));
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(threads * batchesPerThread * linesPerBatch, lines.size());
+    Set<String> unique = new HashSet<>(lines);
+    assertEquals(lines.size(), unique.size());
+    // the lines of a batch are written together
+    for (int i = 0; i < lines.size(); i += linesPerBatch) {
+      String batch = lines.get(i).substring(0, lines.get(i).lastIndexOf('-'));
+      for (int l = 0; l < linesPerBatch; l++) {
+        assertEquals(batch + "-" + l, lines.get(i + l));
+      }
+    }
+  }
+
+  @Test
+  public void testAppendAfterClose() throws Exception {
+    Path file = tempFolder.newFolder().toPath().resolve("Observation.ndjson");
+    Exporter.appendToFile(file, "first");
+    FileAppender.close(path -> path.equals(file));
+    // a closed file is opened again and appended to
+    Exporter.appendToFile(file, "second");
+    FileAppender.close(path -> path.equals(file));
+
+    List<String> expected = new ArrayList<>();
+    expected.add("first");
+    expected.add("second");
+    assertEquals(expected, Files.readAllLines(file));
+  }
+}
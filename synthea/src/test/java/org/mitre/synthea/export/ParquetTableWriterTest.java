@@ -0,0 +1,96 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParquetTableWriterTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static List<Group> read(File file) throws Exception {
+    List<Group> rows = new ArrayList<>();
+    try (ParquetReader<Group> reader = new ParquetReader.Builder<Group>(
+        new LocalInputFile(file.toPath())) {
+          @Override
+          protected ReadSupport<Group> getReadSupport() {
+            return new GroupReadSupport();
+          }
+        }.withConf(new PlainParquetConfiguration()).build()) {
+      Group row;
+      while ((row = reader.read()) != null) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  public void testTypedColumns() throws Exception {
+    File file = tempFolder.newFile("encounters.parquet");
+    ParquetTableWriter writer = ParquetTableWriter.open(file, "encounters");
+    // the header is written in two parts, like CSVExporter does
+    writer.write("Id,START,STOP,CODE,BASE_ENCOUNTER_COST");
+    writer.write(System.lineSeparator());
+    writer.write("a,2020-01-02T03:04:05Z,,185349003,129.16" + System.lineSeparator());
+    writer.write("b,2021-06-07T08:09:10Z,2021-06-07T09:09:10Z,,-0.50" + System.lineSeparator()
+        + "c,1999-12-31T23:59:59Z,,185349003,0.00" + System.lineSeparator());
+    writer.close();
+
+    List<Group> rows = read(file);
+    assertEquals(3, rows.size());
+    MessageType schema = (MessageType) rows.get(0).getType();
+    assertEquals(LogicalTypeAnnotation.stringType(),
+        schema.getType("CODE").getLogicalTypeAnnotation());
+    assertEquals(LogicalTypeAnnotation.decimalType(2, 18),
+        schema.getType("BASE_ENCOUNTER_COST").getLogicalTypeAnnotation());
+
+    Group first = rows.get(0);
+    assertEquals("a", first.getString("Id", 0));
+    assertEquals(Instant.parse("2020-01-02T03:04:05Z").toEpochMilli(),
+        first.getLong("START", 0));
+    assertEquals(0, first.getFieldRepetitionCount("STOP"));
+    assertEquals("185349003", first.getString("CODE", 0));
+    assertEquals(12916L, first.getLong("BASE_ENCOUNTER_COST", 0));
+
+    Group second = rows.get(1);
+    assertEquals(Instant.parse("2021-06-07T09:09:10Z").toEpochMilli(),
+        second.getLong("STOP", 0));
+    assertEquals(0, second.getFieldRepetitionCount("CODE"));
+    assertEquals(-50L, second.getLong("BASE_ENCOUNTER_COST", 0));
+    assertEquals("c", rows.get(2).getString("Id", 0));
+  }
+
+  @Test
+  public void testDatesAndNumbers() throws Exception {
+    File file = tempFolder.newFile("patients.parquet");
+    ParquetTableWriter writer = ParquetTableWriter.open(file, "patients");
+    writer.write("Id,BIRTHDATE,DEATHDATE,LAT,INCOME\n");
+    writer.write("p,1980-02-29,2020-03-01,42.36,56000\n");
+    writer.close();
+
+    Group row = read(file).get(0);
+    assertEquals(LocalDate.parse("1980-02-29").toEpochDay(), row.getInteger("BIRTHDATE", 0));
+    assertEquals(LocalDate.parse("2020-03-01").toEpochDay(), row.getInteger("DEATHDATE", 0));
+    assertEquals(42.36, row.getDouble("LAT", 0), 0.0);
+    assertEquals(56000L, row.getLong("INCOME", 0));
+    assertEquals(LogicalTypeAnnotation.stringType(),
+        ((MessageType) row.getType()).getType("Id").getLogicalTypeAnnotation());
+  }
+}
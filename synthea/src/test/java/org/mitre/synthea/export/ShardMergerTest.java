@@ -0,0 +1,86 @@
+package org.mitre.synthea.export;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mitre.synthea.helpers.Config;
+
+public class ShardMergerTest {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static final String HEADER = "ID,CLAIMID,CHARGEID,PATIENTID,TYPE,AMOUNT,TRANSFEROUTID";
+
+  /**
+   * Write the claims transactions and the state of a shard, which numbers its charges from 0.
+   */
+  private File shard(String name, long chargeIds, String patient) throws IOException {
+    File folder = tempFolder.newFolder(name);
+    Path csv = folder.toPath().resolve("csv");
+    Files.createDirectories(csv);
+    Files.write(csv.resolve("patients.csv"), Arrays.asList("Id", patient));
+    List<String> rows = new ArrayList<>();
+    rows.add(HEADER);
+    for (int i = 0; i < chargeIds; i += 4) {
+      // a charge moved to the secondary payer, the last charge ID is not used as by CSVExporter
+      rows.add(name + i + ",claim," + i + "," + patient + ",CHARGE,10.00,");
+      rows.add(name + (i + 1) + ",claim," + (i + 1) + "," + patient + ",TRANSFEROUT,10.00,");
+      rows.add(name + (i + 2) + ",claim," + (i + 2) + "," + patient + ",TRANSFERIN,10.00,"
+          + (i + 1));
+    }
+    Files.write(csv.resolve("claims_transactions.csv"), rows);
+    Path state = folder.toPath().resolve(ShardMerger.STATE_FOLDER);
+    Files.createDirectories(state);
+    Files.write(state.resolve("utilization.csv"), Arrays.asList("charge_ids," + chargeIds),
+        StandardCharsets.UTF_8);
+    return folder;
+  }
+
+  @Test
+  public void testMergedChargeIdsAreUnique() throws Exception {
+    String baseDirectory = Config.get("exporter.baseDirectory");
+    String csvExport = Config.get("exporter.csv.export");
+    try {
+      Config.set("exporter.baseDirectory", tempFolder.newFolder("merged").toString());
+      Config.set("exporter.csv.export", "true");
+      List<File> shards = Arrays.asList(shard("first", 4, "a"), shard("second", 8, "b"));
+      Exporter.ExporterRuntimeOptions options = new Exporter.ExporterRuntimeOptions();
+      options.setRunId("run");
+      // the merging run has written the headers before the shards are appended
+      Path csv = options.getCSVExporter().getOutputDirectory();
+
+      ShardMerger.mergeRecords(shards, options);
+
+      assertEquals(Arrays.asList("a", "b"),
+          Files.readAllLines(csv.resolve("patients.csv")).subList(1, 3));
+      List<String> transactions = Files.readAllLines(csv.resolve("claims_transactions.csv"));
+      // the merged file keeps the header of the merging run
+      // the transfers in of the second shard still refer to its transfers out
+      assertEquals(Arrays.asList(
+          "first0,claim,0,a,CHARGE,10.00,",
+          "first1,claim,1,a,TRANSFEROUT,10.00,",
+          "first2,claim,2,a,TRANSFERIN,10.00,1",
+          "second0,claim,4,b,CHARGE,10.00,",
+          "second1,claim,5,b,TRANSFEROUT,10.00,",
+          "second2,claim,6,b,TRANSFERIN,10.00,5",
+          "second4,claim,8,b,CHARGE,10.00,",
+          "second5,claim,9,b,TRANSFEROUT,10.00,",
+          "second6,claim,10,b,TRANSFERIN,10.00,9"),
+          transactions.subList(1, transactions.size()));
+    } finally {
+      Config.set("exporter.baseDirectory", baseDirectory);
+      Config.set("exporter.csv.export", csvExport);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.util.Pair;
+import org.junit.Test;
+
+public class AliasSamplerTest {
+  @Test
+  public void testSamplesByWeight() {
+    List<Pair<String, Double>> pmf = new ArrayList<>();
+    pmf.add(new Pair<>("a", 6.0));
+    pmf.add(new Pair<>("b", 0.0));
+    pmf.add(new Pair<>("c", 3.0));
+    pmf.add(new Pair<>("d", 1.0));
+    AliasSampler<String> sampler = new AliasSampler<>(pmf);
+    assertEquals(4, sampler.size());
+    assertEquals(0.6, sampler.getPmf().get(0).getSecond(), 1e-12);
+    assertEquals(0.0, sampler.getPmf().get(1).getSecond(), 0.0);
+
+    Map<String, Integer> counts = new HashMap<>();
+    RandomNumberGenerator random = new DefaultRandomNumberGenerator(12345L);
+    int samples = 100000;
+    for (int i = 0; i < samples; i++) {
+      counts.merge(sampler.sample(random), 1, Integer::sum);
+    }
+    assertEquals(samples, random.getCount());
+    assertEquals(0.6, counts.get("a") / (double) samples, 0.01);
+    assertEquals(null, counts.get("b"));
+    assertEquals(0.3, counts.get("c") / (double) samples, 0.01);
+    assertEquals(0.1, counts.get("d") / (double) samples, 0.01);
+  }
+
+  @Test
+  public void testReproducibleBySeed() {
+    AliasSampler<Integer> sampler = new AliasSampler<>(Arrays.asList(1, 2, 3, 4, 5),
+        new double[] {0.1, 0.2, 0.3, 0.25, 0.15});
+    RandomNumberGenerator first = new DefaultRandomNumberGenerator(42L);
+    RandomNumberGenerator second = new DefaultRandomNumberGenerator(42L);
+    RandomNumberGenerator other = new DefaultRandomNumberGenerator(43L);
+    List<Integer> firstSamples = new ArrayList<>();
+    List<Integer> secondSamples = new ArrayList<>();
+    List<Integer> otherSamples = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      firstSamples.add(sampler.sample(first));
+      secondSamples.add(sampler.sample(second));
+      otherSamples.add(sampler.sample(other));
+    }
+    assertEquals(firstSamples, secondSamples);
+    assertNotEquals(firstSamples, otherSamples);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNegativeWeights() {
+    new AliasSampler<>(Arrays.asList("a", "b"), new double[] {1.0, -1.0});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsZeroTotal() {
+    new AliasSampler<>(Arrays.asList("a", "b"), new double[] {0.0, 0.0});
+  }
+}
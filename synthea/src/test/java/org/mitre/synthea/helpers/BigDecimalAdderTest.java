@@ -0,0 +1,69 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mitre.synthea.world.concepts.Claim;
+
+public class BigDecimalAdderTest {
+  @Test
+  public void testSumEqualsBigDecimalAdd() {
+    BigDecimal[] amounts = {new BigDecimal("129.16"), new BigDecimal("-0.5"),
+        new BigDecimal("3"), new BigDecimal("0.125"), new BigDecimal("1E+3"),
+        new BigDecimal("99999999999999999999.99")};
+    BigDecimalAdder adder = new BigDecimalAdder(2);
+    BigDecimal expected = Claim.ZERO_CENTS;
+    assertEquals(expected, adder.sum());
+    for (BigDecimal amount : amounts) {
+      adder.add(amount);
+      expected = expected.add(amount);
+      // same value and scale
+      assertEquals(expected, adder.sum());
+    }
+  }
+
+  @Test
+  public void testAddFromManyThreads() throws Exception {
+    BigDecimalAdder adder = new BigDecimalAdder(2);
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    for (int t = 0; t < 4; t++) {
+      threads.submit(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          adder.add(new BigDecimal("0.01"));
+          adder.add(new BigDecimal("0.001"));
+        }
+      });
+    }
+    threads.shutdown();
+    threads.awaitTermination(1, TimeUnit.MINUTES);
+    assertEquals(new BigDecimal("440.000"), adder.sum());
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    BigDecimalAdder adder = new BigDecimalAdder(2);
+    adder.add(new BigDecimal("12.34"));
+    adder.add(new BigDecimal("0.005"));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(adder);
+    }
+    BigDecimalAdder copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (BigDecimalAdder) in.readObject();
+    }
+    assertEquals(new BigDecimal("12.345"), copy.sum());
+    copy.add(new BigDecimal("1.00"));
+    assertEquals(new BigDecimal("13.345"), copy.sum());
+  }
+}
@@ -2,12 +2,16 @@ package org.mitre.synthea.helpers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.mitre.synthea.world.agents.Person;
@@ -130,4 +134,56 @@ public class ExpressionProcessorTest {
     assertEquals(18.0, result.doubleValue(), 0.0001);
 
   }
+
+  @Test
+  public void testArithmeticFastPath() {
+    String[] expressions = {
+        "10 + 3", "25 / 2", "2 * (10 + 6) + 4 + 3 * ((10 / 2) * (9 / 3))",
+        "#{var_one} * (#{var two} + 3.0)", "-#{var_one} - -2 * 1.5", "7 - 2 - 1",
+        "#{var_one} / 3", "(#{var two}   - 1)*#{var_one}", "Max({#{var_one}, 4.0})"};
+    Map<String,Object> params = new HashMap<String,Object>();
+    params.put("var_one", new BigDecimal("2.5"));
+    params.put("var two", new BigDecimal(3.0));
+
+    for (String expression : expressions) {
+      Map<String,Object> expParams = new HashMap<String,Object>();
+      ExpressionProcessor cql = new ExpressionProcessor(expression);
+      for (String param : cql.getParamNames()) {
+        expParams.put(param, params.get(param));
+      }
+      Object expected = cql.evaluate(expParams);
+
+      Config.set("generate.expressions.arithmetic_fast_path", "true");
+      try {
+        Object result = new ExpressionProcessor(expression).evaluate(expParams);
+        // the same value and type as the CQL engine, down to the scale of decimals
+        assertEquals(expression, expected, result);
+      } finally {
+        Config.set("generate.expressions.arithmetic_fast_path", "false");
+      }
+    }
+  }
+
+  @Test
+  public void testSharedAcrossThreads() throws Exception {
+    ExpressionProcessor expProcessor = new ExpressionProcessor("#{var_one} * 2 + Max({1, 2})");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 200; i++) {
+          Map<String,Object> params = new HashMap<String,Object>();
+          params.put("var_one", new BigDecimal(i));
+          if (expProcessor.evaluateNumeric(params).intValue() != i * 2 + 2) {
+            return false;
+          }
+        }
+        return true;
+      }));
+    }
+    for (Future<Boolean> future : futures) {
+      assertTrue(future.get());
+    }
+    executor.shutdown();
+  }
 }
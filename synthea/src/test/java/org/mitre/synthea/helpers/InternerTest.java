@@ -0,0 +1,48 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class InternerTest {
+  @Test
+  public void testNamesKeepTheirIndexes() {
+    Interner interner = new Interner(1);
+    assertEquals(-1, interner.indexOf("a"));
+    assertEquals(0, interner.intern("a"));
+    assertEquals(1, interner.intern("b"));
+    // the array of names grows past its capacity
+    assertEquals(2, interner.intern("c"));
+    assertEquals(0, interner.intern("a"));
+    assertEquals(1, interner.indexOf("b"));
+    assertEquals("c", interner.nameOf(2));
+  }
+
+  @Test
+  public void testInternFromManyThreads() throws Exception {
+    Interner interner = new Interner(4);
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(threads.submit(() -> {
+        for (int i = 0; i < 1000; i++) {
+          int index = interner.intern("name" + i);
+          assertEquals("name" + i, interner.nameOf(index));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    threads.shutdown();
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("name" + i, interner.nameOf(interner.indexOf("name" + i)));
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package org.mitre.synthea.helpers;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.junit.Assert;
@@ -62,6 +66,11 @@ public class RandomCollectionTest {
     public long getSeed() {
       return 0;
     }
+
+    @Override
+    public RandomNumberGenerator split() {
+      return null;
+    }
   }
 
   @Test
@@ -120,4 +129,77 @@ public class RandomCollectionTest {
     Assert.assertTrue(3 == asian);
   }
 
+  @Test
+  public void testRunningTotalsSelectAsTreeMap() {
+    String aliasTable = Config.get(RandomCollection.ALIAS_TABLE);
+    try {
+      Config.set(RandomCollection.ALIAS_TABLE, "false");
+      RandomNumberGenerator weights = new DefaultRandomNumberGenerator(7L);
+      RandomCollection<Integer> first = new RandomCollection<>();
+      RandomCollection<Integer> second = new RandomCollection<>();
+      // the collection used to be this map of running totals
+      TreeMap<Double, Integer> map = new TreeMap<>();
+      double total = 0;
+      for (int i = 0; i < 1000; i++) {
+        double weight = i % 10 == 0 ? 0.0 : weights.rand();
+        (i < 500 ? first : second).add(weight, i);
+        if (weight > 0) {
+          total += weight;
+          map.put(total, i);
+        }
+      }
+      RandomCollection<Integer> rc = new RandomCollection<>();
+      rc.addAll(first);
+      rc.addAll(second);
+      Assert.assertEquals(map.size(), rc.size());
+
+      RandomNumberGenerator random = new DefaultRandomNumberGenerator(11L);
+      RandomNumberGenerator mapRandom = new DefaultRandomNumberGenerator(11L);
+      for (int i = 0; i < 10000; i++) {
+        Map.Entry<Double, Integer> entry = map.higherEntry(mapRandom.rand() * total);
+        if (entry == null) {
+          entry = map.lastEntry();
+        }
+        Assert.assertEquals(entry.getValue(), rc.next(random));
+      }
+    } finally {
+      Config.set(RandomCollection.ALIAS_TABLE, aliasTable);
+    }
+  }
+
+  @Test
+  public void testAliasTableCounts() {
+    String aliasTable = Config.get(RandomCollection.ALIAS_TABLE);
+    try {
+      Config.set(RandomCollection.ALIAS_TABLE, "true");
+      RandomCollection<String> rc = new RandomCollection<String>();
+      rc.add(0.5, "white");
+      rc.add(0.3, "black");
+      rc.add(0.2, "asian");
+      Map<String, Integer> counts = new HashMap<>();
+      RandomNumberGenerator random = new DefaultRandomNumberGenerator(0);
+      for (int i = 0; i < 100000; i++) {
+        counts.merge(rc.next(random), 1, Integer::sum);
+      }
+      Assert.assertEquals(100000, random.getCount());
+      Assert.assertEquals(0.5, counts.get("white") / 100000.0, 0.01);
+      Assert.assertEquals(0.3, counts.get("black") / 100000.0, 0.01);
+      Assert.assertEquals(0.2, counts.get("asian") / 100000.0, 0.01);
+
+      // adding an item rebuilds the table
+      rc.add(1.0, "hawaiian");
+      counts.clear();
+      for (int i = 0; i < 100000; i++) {
+        counts.merge(rc.next(random), 1, Integer::sum);
+      }
+      Assert.assertEquals(0.5, counts.get("hawaiian") / 100000.0, 0.01);
+    } finally {
+      Config.set(RandomCollection.ALIAS_TABLE, aliasTable);
+    }
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testEmpty() {
+    new RandomCollection<String>().next(new DefaultRandomNumberGenerator(0));
+  }
 }
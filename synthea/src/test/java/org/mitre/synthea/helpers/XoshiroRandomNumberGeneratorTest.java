@@ -0,0 +1,111 @@
+package org.mitre.synthea.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class XoshiroRandomNumberGeneratorTest {
+  @Test
+  public void testReferenceSequence() {
+    // xoshiro256** with the state seeded by SplitMix64 from 0
+    RandomNumberGenerator random = new XoshiroRandomNumberGenerator(0L);
+    assertEquals(-7355399402456485196L, random.randLong());
+    assertEquals(-4652746763540216534L, random.randLong());
+    assertEquals(1900383378846508768L, random.randLong());
+    assertEquals(3, random.getCount());
+    assertEquals(0L, random.getSeed());
+  }
+
+  @Test
+  public void testDistributions() {
+    RandomNumberGenerator random = new XoshiroRandomNumberGenerator(12345L);
+    int samples = 100000;
+    double sum = 0;
+    double gaussianSum = 0;
+    double gaussianSquares = 0;
+    int trues = 0;
+    int[] buckets = new int[7];
+    for (int i = 0; i < samples; i++) {
+      double value = random.rand();
+      assertTrue(value >= 0.0 && value < 1.0);
+      sum += value;
+      double gaussian = random.randGaussian();
+      gaussianSum += gaussian;
+      gaussianSquares += gaussian * gaussian;
+      if (random.randBoolean()) {
+        trues++;
+      }
+      buckets[random.randInt(buckets.length)]++;
+    }
+    assertEquals(4L * samples, random.getCount());
+    assertEquals(0.5, sum / samples, 0.01);
+    assertEquals(0.0, gaussianSum / samples, 0.01);
+    assertEquals(1.0, gaussianSquares / samples, 0.02);
+    assertEquals(0.5, trues / (double) samples, 0.01);
+    for (int bucket : buckets) {
+      assertEquals(1.0 / buckets.length, bucket / (double) samples, 0.01);
+    }
+  }
+
+  @Test
+  public void testSplitStreamsAreReproducible() {
+    RandomNumberGenerator first = new XoshiroRandomNumberGenerator(42L);
+    RandomNumberGenerator second = new XoshiroRandomNumberGenerator(42L);
+    RandomNumberGenerator firstChild = first.split();
+    RandomNumberGenerator secondChild = second.split();
+    assertEquals(1, first.getCount());
+    assertEquals(0, firstChild.getCount());
+    List<Long> parentDraws = new ArrayList<>();
+    List<Long> childDraws = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      long draw = firstChild.randLong();
+      assertEquals(draw, secondChild.randLong());
+      childDraws.add(draw);
+      draw = first.randLong();
+      assertEquals(draw, second.randLong());
+      parentDraws.add(draw);
+    }
+    assertNotEquals(parentDraws, childDraws);
+    assertNotEquals(firstChild.randLong(), first.split().randLong());
+  }
+
+  @Test
+  public void testCompatibilityBackendKeepsJavaUtilRandomSequence() {
+    String backend = Config.get("generate.random_number_generator");
+    try {
+      Config.set("generate.random_number_generator", "java_util_random");
+      RandomNumberGenerator random = RandomNumberGenerator.create(7L);
+      assertTrue(random instanceof DefaultRandomNumberGenerator);
+      Random reference = new Random(7L);
+      for (int i = 0; i < 10; i++) {
+        assertEquals(reference.nextDouble(), random.rand(), 0.0);
+        assertEquals(reference.nextLong(), random.randLong());
+      }
+      // a split stream is seeded by the next long, as a Person is by the population generator
+      long childSeed = reference.nextLong();
+      assertEquals(childSeed, random.split().getSeed());
+
+      Config.set("generate.random_number_generator", "xoshiro256");
+      assertTrue(RandomNumberGenerator.create(7L) instanceof XoshiroRandomNumberGenerator);
+    } finally {
+      Config.set("generate.random_number_generator", backend);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownBackend() {
+    String backend = Config.get("generate.random_number_generator");
+    try {
+      Config.set("generate.random_number_generator", "mersenne_twister");
+      RandomNumberGenerator.create(7L);
+    } finally {
+      Config.set("generate.random_number_generator", backend);
+    }
+  }
+}
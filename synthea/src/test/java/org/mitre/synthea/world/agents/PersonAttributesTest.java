@@ -0,0 +1,119 @@
+package org.mitre.synthea.world.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PersonAttributesTest {
+  @Test
+  public void testValuesKeepTheirType() {
+    PersonAttributes attributes = new PersonAttributes();
+    attributes.put(Person.BIRTHDATE, 1234567890123L);
+    attributes.put(Person.INCOME, 56000);
+    attributes.put(Person.OCCUPATION_LEVEL, 0.5);
+    attributes.put(Person.GENDER, "F");
+    attributes.put(Person.VETERAN, true);
+
+    assertEquals(Long.valueOf(1234567890123L), attributes.get(Person.BIRTHDATE));
+    assertEquals(Integer.valueOf(56000), attributes.get(Person.INCOME));
+    assertEquals(Double.valueOf(0.5), attributes.get(Person.OCCUPATION_LEVEL));
+    assertEquals("F", attributes.get(Person.GENDER));
+    assertEquals(Boolean.TRUE, attributes.get(Person.VETERAN));
+    assertEquals(5, attributes.size());
+
+    int birthdate = PersonAttributes.slotOf(Person.BIRTHDATE);
+    assertEquals(Person.BIRTHDATE, PersonAttributes.nameOf(birthdate));
+    assertEquals(1234567890123L, attributes.getLong(birthdate, 0L));
+    assertEquals(56000.0, attributes.getDouble(PersonAttributes.slotOf(Person.INCOME), 0.0), 0.0);
+    assertEquals(-1L, attributes.getLong(PersonAttributes.slotOf(Person.DEATHDATE), -1L));
+
+    attributes.putLong(birthdate, 42L);
+    attributes.putInt(PersonAttributes.slotOf(Person.INCOME), 7);
+    attributes.putDouble(PersonAttributes.slotOf("a module attribute"), 2.5);
+    assertEquals(Long.valueOf(42L), attributes.get(Person.BIRTHDATE));
+    assertEquals(Integer.valueOf(7), attributes.get(Person.INCOME));
+    assertEquals(Double.valueOf(2.5), attributes.get("a module attribute"));
+    assertEquals(6, attributes.size());
+  }
+
+  @Test
+  public void testMapView() {
+    PersonAttributes attributes = new PersonAttributes();
+    for (int i = 0; i < 100; i++) {
+      attributes.put("attribute " + i, i % 2 == 0 ? (Object) (long) i : "value " + i);
+    }
+    assertEquals(100, attributes.size());
+    assertNull(attributes.get("no person has this attribute"));
+    assertFalse(attributes.containsKey("no person has this attribute"));
+    assertNull(attributes.get(Integer.valueOf(3)));
+
+    assertEquals("value 1", attributes.remove("attribute 1"));
+    assertNull(attributes.remove("attribute 1"));
+    assertFalse(attributes.containsKey("attribute 1"));
+    assertEquals(99, attributes.size());
+    attributes.put("attribute 1", "again");
+    assertTrue(attributes.containsValue("again"));
+
+    // the entries are in the order they were first added
+    List<String> keys = new ArrayList<>(attributes.keySet());
+    assertEquals(Arrays.asList("attribute 0", "attribute 1", "attribute 2"), keys.subList(0, 3));
+
+    // values can be changed and removed while iterating
+    Iterator<Map.Entry<String, Object>> iterator = attributes.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Object> entry = iterator.next();
+      if (entry.getValue() instanceof String) {
+        iterator.remove();
+      } else {
+        attributes.put(entry.getKey(), (Long) entry.getValue() + 1);
+      }
+    }
+    assertEquals(50, attributes.size());
+    assertEquals(Long.valueOf(99L), attributes.get("attribute 98"));
+
+    attributes.clear();
+    assertTrue(attributes.isEmpty());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testRejectsNullValues() {
+    new PersonAttributes().put(Person.GENDER, null);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    PersonAttributes attributes = new PersonAttributes();
+    attributes.put(Person.BIRTHDATE, 1234567890123L);
+    attributes.put(Person.NAME, "Jane Doe");
+    attributes.put("a serialized attribute", 3.25);
+    attributes.put(Person.GENDER, "F");
+    attributes.remove(Person.GENDER);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(attributes);
+    }
+    PersonAttributes copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (PersonAttributes) in.readObject();
+    }
+    assertEquals(attributes, copy);
+    assertEquals(3, copy.size());
+    assertEquals(1234567890123L,
+        copy.getLong(PersonAttributes.slotOf(Person.BIRTHDATE), 0L));
+  }
+}
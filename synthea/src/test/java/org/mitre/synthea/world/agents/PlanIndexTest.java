@@ -0,0 +1,67 @@
+package org.mitre.synthea.world.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mitre.synthea.helpers.Utilities;
+import org.mitre.synthea.world.agents.behaviors.planeligibility.PlanEligibilityFinder;
+import org.mitre.synthea.world.concepts.healthinsurance.InsurancePlan;
+
+public class PlanIndexTest {
+  private static InsurancePlan addPlan(Payer payer, int id, boolean supplement,
+      int yearStart, int yearEnd, String eligibility) {
+    InsurancePlan plan = new InsurancePlan(id, payer, Collections.singleton("*"),
+        BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.TEN,
+        supplement, false, false, yearStart, yearEnd, 1, eligibility);
+    payer.addPlan(plan);
+    return plan;
+  }
+
+  @Test
+  public void testFindsActivePlansByCategory() {
+    PlanEligibilityFinder.buildPlanEligibilities("Wien", "payers/insurance_eligibilities.csv");
+    Payer government = new Payer("Government", 1, Collections.singleton("*"),
+        PayerManager.GOV_OWNERSHIP);
+    Payer first = new Payer("First", 2, Collections.singleton("*"),
+        PayerManager.PRIVATE_OWNERSHIP);
+    Payer second = new Payer("Second", 3, Collections.singleton("*"),
+        PayerManager.PRIVATE_OWNERSHIP);
+    addPlan(first, 20, false, 1965, 1968, PlanEligibilityFinder.GENERIC);
+    addPlan(government, 10, false, 0, Integer.MAX_VALUE, PlanEligibilityFinder.GENERIC);
+    addPlan(second, 30, true, 1960, Integer.MAX_VALUE, PlanEligibilityFinder.GENERIC);
+    // an age threshold of 0, which the person only meets after they were born
+    addPlan(second, 31, false, 0, Integer.MAX_VALUE, "EveryoneEligible");
+    addPlan(first, 21, false, 1967, 1970, "EveryoneEligible");
+    List<Payer> payers = Arrays.asList(government, first, second);
+    PlanIndex index = new PlanIndex(payers);
+
+    Person person = new Person(0L);
+    person.attributes.put(Person.BIRTHDATE, Utilities.convertCalendarYearsToTime(1966));
+    for (int year = 1958; year <= 1972; year++) {
+      long start = Utilities.convertCalendarYearsToTime(year);
+      for (long time : new long[] {start - 1, start, start + 1, start + 1000000000L}) {
+        List<InsurancePlan> active = PayerManager.getActivePlans(payers, time).stream()
+            .filter(plan -> plan.accepts(person, time)).collect(Collectors.toList());
+        assertEquals(active.stream().filter(plan -> !plan.isMedicareSupplementPlan())
+            .collect(Collectors.toList()),
+            index.find(PlanIndex.NOT_SUPPLEMENT, person, time));
+        assertEquals(active.stream().filter(plan -> plan.isMedicareSupplementPlan())
+            .collect(Collectors.toList()),
+            index.find(PlanIndex.SUPPLEMENT, person, time));
+        assertEquals(active.stream().filter(plan -> plan.isGovernmentPlan())
+            .collect(Collectors.toList()),
+            index.find(PlanIndex.GOVERNMENT, person, time));
+      }
+    }
+    assertTrue(index.find(PlanIndex.NO_INSURANCE, person, 0L).isEmpty());
+    assertEquals(5, index.find(PlanIndex.NOT_SUPPLEMENT | PlanIndex.SUPPLEMENT, person,
+        Utilities.convertCalendarYearsToTime(1968)).size());
+  }
+}
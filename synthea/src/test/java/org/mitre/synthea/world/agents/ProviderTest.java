@@ -5,7 +5,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -234,6 +236,41 @@ public class ProviderTest {
          });
   }
 
+  @Test
+  public void testNearestIndexMatchesRadiusSearch() {
+    Provider.loadProviders(location, providerRandom);
+    List<EncounterType> services = new ArrayList<EncounterType>(
+        Arrays.asList(EncounterType.values()));
+    services.add(null);
+    try {
+      for (long seed = 0; seed < 200; seed++) {
+        Person indexed = new Person(seed);
+        Person searched = new Person(seed);
+        location.assignPoint(indexed, location.randomCityName(indexed));
+        location.assignPoint(searched, location.randomCityName(searched));
+        if (seed % 3 == 1) {
+          indexed.attributes.put(Person.VETERAN, "vietnam");
+          searched.attributes.put(Person.VETERAN, "vietnam");
+        } else if (seed % 3 == 2) {
+          indexed.attributes.put(Person.RACE, "native");
+          searched.attributes.put(Person.RACE, "native");
+        }
+        for (EncounterType service : services) {
+          // twice, the second time from the nearest providers remembered for the person
+          for (int i = 0; i < 2; i++) {
+            Provider.useNearestIndex = true;
+            Provider expected = Provider.findService(indexed, service, 0);
+            Provider.useNearestIndex = false;
+            Provider actual = Provider.findService(searched, service, 0);
+            Assert.assertSame("seed " + seed + " " + service, expected, actual);
+          }
+        }
+      }
+    } finally {
+      Provider.useNearestIndex = true;
+    }
+  }
+
   @Test
   public void testNPICreation() {
     Assert.assertEquals("1234567893", Provider.toNPI(123_456_789L));
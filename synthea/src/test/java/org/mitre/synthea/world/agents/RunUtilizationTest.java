@@ -0,0 +1,69 @@
+package org.mitre.synthea.world.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.mitre.synthea.helpers.DefaultRandomNumberGenerator;
+import org.mitre.synthea.world.concepts.HealthRecord.EncounterType;
+
+public class RunUtilizationTest {
+  @Test
+  public void testRunsCountSeparately() {
+    Provider provider = new Provider();
+    Clinician clinician = new Clinician(0L, new DefaultRandomNumberGenerator(0L), 1L, provider);
+    Payer payer = new Payer("Payer", 1, Collections.singleton("*"),
+        PayerManager.PRIVATE_OWNERSHIP);
+    RunUtilization first = new RunUtilization();
+    RunUtilization second = new RunUtilization();
+
+    RunUtilization.wrap(first, () -> {
+      provider.incrementEncounters(EncounterType.WELLNESS, 2020);
+      provider.incrementEncounters(EncounterType.WELLNESS, 2021);
+      provider.addRevenue(10.0);
+      clinician.incrementEncounters();
+      payer.addRevenue(BigDecimal.TEN);
+      payer.incrementCustomers("a");
+    }).run();
+    RunUtilization.wrap(second, () -> {
+      provider.incrementProcedures(2020);
+      clinician.incrementProcedures();
+      payer.addCoveredCost(BigDecimal.ONE);
+    }).run();
+
+    RunUtilization.wrap(first, () -> {
+      assertEquals(2, provider.getUtilization().column(Provider.ENCOUNTERS).size());
+      assertTrue(provider.getUtilization().column(Provider.PROCEDURES).isEmpty());
+      assertEquals(10.0, provider.getRevenue(), 0.0);
+      assertEquals(1, clinician.getEncounterCount());
+      assertEquals(0, clinician.getProcedureCount());
+      assertEquals(0, BigDecimal.TEN.compareTo(payer.getRevenue()));
+      assertEquals(0, BigDecimal.ZERO.compareTo(payer.getAmountCovered()));
+      assertEquals(1, payer.getUniqueCustomers());
+    }).run();
+    RunUtilization.wrap(second, () -> {
+      assertTrue(provider.getUtilization().column(Provider.ENCOUNTERS).isEmpty());
+      assertEquals(1, provider.getUtilization().column(Provider.PROCEDURES).size());
+      assertEquals(0.0, provider.getRevenue(), 0.0);
+      assertEquals(0, clinician.getEncounterCount());
+      assertEquals(1, clinician.getProcedureCount());
+      assertEquals(0, BigDecimal.ZERO.compareTo(payer.getRevenue()));
+      assertEquals(0, BigDecimal.ONE.compareTo(payer.getAmountCovered()));
+      assertEquals(0, payer.getUniqueCustomers());
+    }).run();
+
+    // outside of a run, the agents count for themselves
+    assertFalse(provider.hasUtilization());
+    assertEquals(0.0, provider.getRevenue(), 0.0);
+    assertEquals(0, clinician.getEncounterCount());
+    assertEquals(0, payer.getUniqueCustomers());
+    provider.incrementLabs(2020);
+    assertTrue(provider.hasUtilization());
+    RunUtilization.wrap(first, () -> assertEquals(2,
+        provider.getUtilization().column(Provider.ENCOUNTERS).size())).run();
+  }
+}
@@ -0,0 +1,81 @@
+package org.mitre.synthea.world.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class UtilizationCounterTest {
+  @Test
+  public void testCountsByYearAndKey() {
+    UtilizationCounter counter = new UtilizationCounter();
+    assertTrue(counter.isEmpty());
+    int encounters = UtilizationCounter.keyOf(Provider.ENCOUNTERS);
+    int wellness = new UtilizationCounter.SubtypeKeys(Provider.ENCOUNTERS).keyOf("wellness");
+    assertEquals(UtilizationCounter.keyOf("encounters-wellness"), wellness);
+
+    counter.increment(2020, encounters);
+    counter.increment(2020, wellness);
+    // years before and after the first year counted
+    counter.add(1950, encounters, 3);
+    counter.increment(0, encounters);
+    counter.add(2100, wellness, 5);
+    assertFalse(counter.isEmpty());
+    assertEquals(5, counter.sum(encounters));
+    assertEquals(6, counter.sum(wellness));
+    assertEquals(0, counter.sum(UtilizationCounter.keyOf(Provider.LABS)));
+
+    Table<Integer, String, AtomicInteger> table = counter.toTable();
+    assertEquals(5, table.size());
+    assertEquals(3, table.get(1950, Provider.ENCOUNTERS).get());
+    assertEquals(1, table.get(0, Provider.ENCOUNTERS).get());
+    assertEquals(5, table.get(2100, "encounters-wellness").get());
+  }
+
+  @Test
+  public void testCountFromManyThreads() throws Exception {
+    UtilizationCounter counter = new UtilizationCounter();
+    int procedures = UtilizationCounter.keyOf(Provider.PROCEDURES);
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    for (int t = 0; t < 4; t++) {
+      threads.submit(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          counter.increment(1900 + i % 100, procedures);
+        }
+      });
+    }
+    threads.shutdown();
+    threads.awaitTermination(1, TimeUnit.MINUTES);
+    assertEquals(40_000, counter.sum(procedures));
+    assertEquals(400, counter.toTable().get(1999, Provider.PROCEDURES).get());
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    UtilizationCounter counter = new UtilizationCounter();
+    counter.add(2020, UtilizationCounter.keyOf("covered-medications"), 7);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(counter);
+    }
+    UtilizationCounter copy;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (UtilizationCounter) in.readObject();
+    }
+    assertEquals(7, copy.toTable().get(2020, "covered-medications").get());
+    assertEquals(1, copy.toTable().size());
+  }
+}